@@ -302,7 +302,12 @@ public class CommandExecutorImpl implements CommandExecutor
                 File file = r.getNetworkFile().getFile();
                 boolean isDeleted = file.delete();
            
-                if(!isDeleted)
+                if(!isDeleted && r.getNetworkFile().isContentLinked())
+                {
+                    // The file shares its data with the content, so it must be left alone
+                    logger.debug("unable to delete linked temp file:" + r.getNetworkFile());
+                }
+                else if(!isDeleted)
                 {          
                     logger.debug("unable to delete temp file:" + r.getNetworkFile() + ", closed="+ r.getNetworkFile().isClosed());
  
@@ -81,6 +81,7 @@ import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.content.encoding.ContentCharsetFinder;
 import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.repo.model.filefolder.HiddenAspect;
 import org.alfresco.repo.node.archive.NodeArchiveService;
 import org.alfresco.repo.policy.BehaviourFilter;
@@ -2881,7 +2882,16 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                     ContentWriter writer = contentService.getWriter(target, ContentModel.PROP_CONTENT, true);
                     writer.setMimetype(mimetype);
                     writer.setEncoding(encoding);
-                    writer.putContent(tempFile.getFile());
+                    
+                    // The temp file is finished with, so a file based store can take it over without copying it
+                    if (writer instanceof FileContentWriter && ((FileContentWriter) writer).linkContent(tempFile.getFile()))
+                    {
+                        tempFile.setContentLinked(true);
+                    }
+                    else
+                    {
+                        writer.putContent(tempFile.getFile());
+                    }
                 } // if content changed
             }
         }
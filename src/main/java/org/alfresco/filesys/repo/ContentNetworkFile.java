@@ -63,6 +63,11 @@ import org.springframework.extensions.surf.util.I18NUtil;
  * with the channel repository.
  * <p>
  * This provides the interaction with the Alfresco Content Model file/folder structure.
+ * <p>
+ * Small requests are served from a read-ahead buffer and small sequential writes are coalesced
+ * in a write buffer, so that a client reading or saving a large file a few kilobytes at a time
+ * does not make a channel call per request.  Pending writes are flushed before anything that
+ * looks at the channel.
  * 
  * @author Derek Hulley
  */
@@ -70,6 +75,9 @@ public class ContentNetworkFile extends NodeRefNetworkFile
 {
     private static final Log logger = LogFactory.getLog(ContentNetworkFile.class);
     
+    // Size of the read-ahead and write-coalescing buffers.  Larger requests go straight to the channel.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
     // Services
     private NodeService nodeService;
     private ContentService contentService;
@@ -85,6 +93,14 @@ public class ContentNetworkFile extends NodeRefNetworkFile
     
     // Flag to indicate if the file channel is writable
     private boolean writableChannel;
+    
+    // Read-ahead buffer and the file offset of its first byte, or -1 if it holds nothing
+    private ByteBuffer readBuffer;
+    private long readBufferOffset = -1L;
+    
+    // Write-coalescing buffer and the file offset of its first byte, or -1 if no writes are pending
+    private ByteBuffer writeBuffer;
+    private long writeBufferOffset = -1L;
 
     /**
      * Helper method to create a {@link NetworkFile network file} given a node reference.
@@ -331,6 +347,7 @@ public class ContentNetworkFile extends NodeRefNetworkFile
                     channel.close();
                     channel = null;
                     content = null;
+                    readBufferOffset = -1L;
                 }
                 catch (IOException ex)
                 {
@@ -476,9 +493,11 @@ public class ContentNetworkFile extends NodeRefNetworkFile
                 // We may be in a retry block, in which case this section will already have executed and channel will be null
                 if (channel != null)
                 {
-                    // Close the channel
+                    // Write out any pending data and close the channel
+                    flushWriteBuffer();
                     channel.close();
                     channel = null;
+                    readBufferOffset = -1L;
                 }
                 
                 // Do we need the mimetype guessing for us when we're done?
@@ -538,6 +557,7 @@ public class ContentNetworkFile extends NodeRefNetworkFile
                 channel.close();
                 channel = null;
                 content = null;
+                readBufferOffset = -1L;
                 setClosed(true);
             }
         }
@@ -572,7 +592,12 @@ public class ContentNetworkFile extends NodeRefNetworkFile
 
                 // Truncate or extend the channel
                 
-                channel.truncate(size);
+                synchronized(this)
+                {
+                    flushWriteBuffer();
+                    readBufferOffset = -1L;
+                    channel.truncate(size);
+                }
             }
     	}
     	catch ( ContentIOException ex) {
@@ -639,10 +664,37 @@ public class ContentNetworkFile extends NodeRefNetworkFile
     		throw new DiskFullException("Failed to open " + getFullName() + " for write");
     	}
         
-        // Write to the channel
+        // Write to the channel, coalescing small sequential writes
         
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, position, length);
-        int count = channel.write(byteBuffer, fileOffset);
+        long size;
+        synchronized(this)
+        {
+            readBufferOffset = -1L;
+            if (length >= BUFFER_SIZE)
+            {
+                flushWriteBuffer();
+                writeFully(ByteBuffer.wrap(buffer, position, length), fileOffset);
+            }
+            else
+            {
+                if (writeBufferOffset >= 0L &&
+                        (fileOffset != writeBufferOffset + writeBuffer.position() || writeBuffer.remaining() < length))
+                {
+                    flushWriteBuffer();
+                }
+                if (writeBufferOffset < 0L)
+                {
+                    if (writeBuffer == null)
+                    {
+                        writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                    }
+                    writeBufferOffset = fileOffset;
+                }
+                writeBuffer.put(buffer, position, length);
+            }
+            size = getContentSize();
+        }
+        int count = length;
         
         // Set modification flag
         
@@ -651,7 +703,7 @@ public class ContentNetworkFile extends NodeRefNetworkFile
 
         // Update the current file size
         
-        setFileSize(channel.size());
+        setFileSize(size);
         
         // Update the modification date/time and live file size
         
@@ -683,10 +735,22 @@ public class ContentNetworkFile extends NodeRefNetworkFile
         
         openContent(false, false);
         
-        // Read from the channel
+        // Read from the channel, reading ahead for small requests
         
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, position, length);
-        int count = channel.read(byteBuffer, fileOffset);
+        int count;
+        synchronized(this)
+        {
+            flushWriteBuffer();
+            if (length >= BUFFER_SIZE)
+            {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, position, length);
+                count = channel.read(byteBuffer, fileOffset);
+            }
+            else
+            {
+                count = readBuffered(buffer, length, position, fileOffset);
+            }
+        }
         if (count < 0)
         {
             count = 0;  // doesn't obey the same rules, i.e. just returns the bytes read
@@ -738,6 +802,11 @@ public class ContentNetworkFile extends NodeRefNetworkFile
         //  Open the file, if not already open
 
         openContent( false, false);
+        
+        synchronized(this)
+        {
+            flushWriteBuffer();
+        }
 
         //  Check if the current file position is the required file position
 
@@ -798,6 +867,10 @@ public class ContentNetworkFile extends NodeRefNetworkFile
         
         // Flush the channel - metadata flushing is not important
         
+        synchronized(this)
+        {
+            flushWriteBuffer();
+        }
         channel.force(false);
         
         // Update the access date/time
@@ -811,6 +884,90 @@ public class ContentNetworkFile extends NodeRefNetworkFile
             logger.debug("Flush file=" + this);
     }
     
+    /**
+     * Serve a read from the read-ahead buffer, refilling it from the requested offset if it does
+     * not hold the requested data.
+     * 
+     * @return the number of bytes read, or -1 at the end of the file
+     */
+    private int readBuffered(byte[] buffer, int length, int position, long fileOffset)
+        throws IOException
+    {
+        if (readBufferOffset < 0L || fileOffset < readBufferOffset ||
+                fileOffset + length > readBufferOffset + readBuffer.limit())
+        {
+            if (readBuffer == null)
+            {
+                readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            }
+            readBuffer.clear();
+            readBufferOffset = -1L;
+            if (channel.read(readBuffer, fileOffset) < 0)
+            {
+                readBuffer.limit(0);
+                return -1;
+            }
+            readBuffer.flip();
+            readBufferOffset = fileOffset;
+        }
+        int start = (int) (fileOffset - readBufferOffset);
+        int count = Math.min(length, readBuffer.limit() - start);
+        if (count <= 0)
+        {
+            return -1;
+        }
+        ByteBuffer data = readBuffer.duplicate();
+        data.position(start);
+        data.get(buffer, position, count);
+        return count;
+    }
+
+    /**
+     * Write any coalesced data to the channel
+     */
+    private void flushWriteBuffer()
+        throws IOException
+    {
+        if (writeBufferOffset < 0L)
+        {
+            return;
+        }
+        writeBuffer.flip();
+        try
+        {
+            writeFully(writeBuffer, writeBufferOffset);
+        }
+        finally
+        {
+            writeBuffer.clear();
+            writeBufferOffset = -1L;
+        }
+    }
+
+    private void writeFully(ByteBuffer data, long fileOffset)
+        throws IOException
+    {
+        long offset = fileOffset;
+        while (data.hasRemaining())
+        {
+            offset += channel.write(data, offset);
+        }
+    }
+
+    /**
+     * @return the size of the content including any pending writes
+     */
+    private long getContentSize()
+        throws IOException
+    {
+        long size = channel.size();
+        if (writeBufferOffset >= 0L)
+        {
+            size = Math.max(size, writeBufferOffset + writeBuffer.position());
+        }
+        return size;
+    }
+
     /**
      * Return the modified status
      * 
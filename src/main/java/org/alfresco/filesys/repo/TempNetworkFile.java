@@ -45,6 +45,7 @@ public class TempNetworkFile extends JavaNetworkFile
     NetworkFileLegacyReferenceCount
 {
     private boolean changed = false;
+    private boolean contentLinked = false;
     boolean modificationDateSetDirectly = false;
     
  
@@ -191,6 +192,22 @@ public class TempNetworkFile extends JavaNetworkFile
         return changed;
     }
     
+    /**
+     * Records that the temporary file has been linked into the content store, so that it now
+     * shares its data with the content and must never be written to again.
+     * 
+     * @param contentLinked boolean
+     */
+    public void setContentLinked(boolean contentLinked)
+    {
+        this.contentLinked = contentLinked;
+    }
+    
+    public boolean isContentLinked()
+    {
+        return contentLinked;
+    }
+    
     public boolean isModificationDateSetDirectly()
     {
         return modificationDateSetDirectly;
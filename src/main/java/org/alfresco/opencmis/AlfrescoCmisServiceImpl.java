@@ -503,6 +503,8 @@ public class AlfrescoCmisServiceImpl extends AbstractCmisService implements Alfr
 
         if (max > 0)
         {
+            // siblings with the same permissions and state share their allowable actions
+            Map<Serializable, AllowableActions> sharedActions = (includeAllowableActions ? new HashMap<Serializable, AllowableActions>() : null);
             for (FileInfo child : pageOfNodeInfos.getPage())
             {
                 try
@@ -527,7 +529,7 @@ public class AlfrescoCmisServiceImpl extends AbstractCmisService implements Alfr
                     }
 
                     ObjectData object = connector.createCMISObject(ni, filter, includeAllowableActions,
-                            includeRelationships, renditionFilter, false, false/*, getContext().getCmisVersion()*/);
+                            includeRelationships, renditionFilter, false, false, sharedActions/*, getContext().getCmisVersion()*/);
 
                 	boolean isObjectInfoRequired = getContext().isObjectInfoRequired();
                     if (isObjectInfoRequired)
@@ -714,6 +716,7 @@ public class AlfrescoCmisServiceImpl extends AbstractCmisService implements Alfr
     {
         // get the children references
         List<ChildAssociationRef> childrenList = connector.getNodeService().getChildAssocs(folderNodeRef);
+        Map<Serializable, AllowableActions> sharedActions = (includeAllowableActions ? new HashMap<Serializable, AllowableActions>() : null);
         for (ChildAssociationRef child : childrenList)
         {
             try
@@ -753,7 +756,7 @@ public class AlfrescoCmisServiceImpl extends AbstractCmisService implements Alfr
                 CMISNodeInfo ni = createNodeInfo(child.getChildRef(), null, false); // note: checkExists=false (don't need to check again)
                 object.setObject(connector.createCMISObject(
                         ni, filter, includeAllowableActions, includeRelationships,
-                        renditionFilter, false, false));
+                        renditionFilter, false, false, sharedActions));
                 if (isObjectInfoRequired)
                 {
                     getObjectInfo(repositoryId, ni.getObjectId(), includeRelationships);
@@ -1023,6 +1026,7 @@ public class AlfrescoCmisServiceImpl extends AbstractCmisService implements Alfr
         int skipCounter = skip;
         if (max > 0)
         {
+            Map<Serializable, AllowableActions> sharedActions = (includeAllowableActions ? new HashMap<Serializable, AllowableActions>() : null);
             for (NodeRef nodeRef : nodeRefs)
             {
                 // TODO - perhaps filter by path in the query instead?
@@ -1048,7 +1052,7 @@ public class AlfrescoCmisServiceImpl extends AbstractCmisService implements Alfr
                     CMISNodeInfo ni = createNodeInfo(nodeRef);
                     ObjectData object = connector.createCMISObject(
                             ni, filter, includeAllowableActions,
-                            includeRelationships, renditionFilter, false, false);
+                            includeRelationships, renditionFilter, false, false, sharedActions);
 
                 	boolean isObjectInfoRequired = getContext().isObjectInfoRequired();
                     if (isObjectInfoRequired)
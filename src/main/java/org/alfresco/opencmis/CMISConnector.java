@@ -114,6 +114,7 @@ import org.alfresco.service.cmr.dictionary.AspectDefinition;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.dictionary.InvalidAspectException;
+import org.alfresco.repo.lock.mem.LockState;
 import org.alfresco.service.cmr.lock.LockService;
 import org.alfresco.service.cmr.model.FileExistsException;
 import org.alfresco.service.cmr.model.FileFolderService;
@@ -1543,6 +1544,21 @@ public class CMISConnector implements ApplicationContextAware, ApplicationListen
     public ObjectData createCMISObject(CMISNodeInfo info, String filter, boolean includeAllowableActions,
             IncludeRelationships includeRelationships, String renditionFilter, boolean includePolicyIds,
             boolean includeAcl)
+    {
+        return createCMISObject(info, filter, includeAllowableActions, includeRelationships, renditionFilter,
+                includePolicyIds, includeAcl, null);
+    }
+
+    /**
+     * Creates the CMIS object for a node that is one of a list of objects, sharing the allowable
+     * actions with the other objects in the list.
+     * 
+     * @param sharedActions         the allowable actions evaluated for the list so far
+     *                              (see {@link #getAllowableActions(CMISNodeInfo, Map)})
+     */
+    public ObjectData createCMISObject(CMISNodeInfo info, String filter, boolean includeAllowableActions,
+            IncludeRelationships includeRelationships, String renditionFilter, boolean includePolicyIds,
+            boolean includeAcl, Map<Serializable, AllowableActions> sharedActions)
     {
         if (info.getType() == null)
         {
@@ -1552,20 +1568,20 @@ public class CMISConnector implements ApplicationContextAware, ApplicationListen
         Properties nodeProps = (info.isRelationship() ? getAssocProperties(info, filter) : getNodeProperties(info, filter));
 
         return createCMISObjectImpl(info, nodeProps, filter, includeAllowableActions, includeRelationships,
-                renditionFilter, includePolicyIds, includeAcl);
+                renditionFilter, includePolicyIds, includeAcl, sharedActions);
     }
 
     @SuppressWarnings("unchecked")
     private ObjectData createCMISObjectImpl(final CMISNodeInfo info, Properties nodeProps, String filter,
             boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter,
-            boolean includePolicyIds, boolean includeAcl)
+            boolean includePolicyIds, boolean includeAcl, Map<Serializable, AllowableActions> sharedActions)
     {
         final ObjectDataImpl result = new ObjectDataImpl();
 
         // set allowable actions
         if (includeAllowableActions)
         {
-            result.setAllowableActions(getAllowableActions(info));
+            result.setAllowableActions(getAllowableActions(info, sharedActions));
         }
 
         // set policy ids
@@ -2351,6 +2367,82 @@ public class CMISConnector implements ApplicationContextAware, ApplicationListen
         return result;
     }
 
+    /**
+     * Gets the allowable actions for a node that is one of a list of nodes, such as a page of children
+     * or query results.  The action evaluators only depend on the type, ACL, aspects, owner, lock and
+     * parents of a node, so siblings that share those are evaluated once for the whole list.
+     * 
+     * @param info                  the node
+     * @param sharedActions         the allowable actions evaluated for the list so far, keyed by node
+     *                              signature, or <tt>null</tt> to evaluate the node on its own
+     */
+    public AllowableActions getAllowableActions(CMISNodeInfo info, Map<Serializable, AllowableActions> sharedActions)
+    {
+        Serializable signature = (sharedActions == null ? null : getAllowableActionsSignature(info));
+        if (signature == null)
+        {
+            return getAllowableActions(info);
+        }
+
+        AllowableActions actions = sharedActions.get(signature);
+        if (actions == null)
+        {
+            actions = getAllowableActions(info);
+            sharedActions.put(signature, actions);
+        }
+
+        // each object gets its own copy
+        AllowableActionsImpl result = new AllowableActionsImpl();
+        result.setAllowableActions(new HashSet<Action>(actions.getAllowableActions()));
+        return result;
+    }
+
+    /**
+     * Gets everything that the action evaluators (and the dynamic authorities of the permission checks
+     * they make) depend on for a node.
+     * 
+     * @return the signature or <tt>null</tt> if the allowable actions of the node should not be shared
+     */
+    private Serializable getAllowableActionsSignature(CMISNodeInfo info)
+    {
+        CMISObjectVariant variant = info.getObjectVariant();
+        if ((variant != CMISObjectVariant.CURRENT_VERSION) && (variant != CMISObjectVariant.FOLDER)
+                && (variant != CMISObjectVariant.ITEM))
+        {
+            // versions, working copies (whose lock owner is that of the checked out node) and relationships
+            return null;
+        }
+        NodeRef nodeRef = info.getNodeRef();
+        Long aclId = nodeService.getNodeAclId(nodeRef);
+        if (aclId == null)
+        {
+            return null;
+        }
+
+        ArrayList<Serializable> signature = new ArrayList<Serializable>(12);
+        signature.add(info.getType().getTypeId());
+        signature.add(variant);
+        signature.add(info.hasPWC());
+        signature.add(info.isRootFolder());
+        signature.add(aclId);
+        signature.add(new HashSet<QName>(nodeService.getAspects(nodeRef)));
+        signature.add(serviceRegistry.getOwnableService().getOwner(nodeRef));
+        LockState lockState = lockService.getLockState(nodeRef);
+        if (lockState != null)
+        {
+            signature.add(lockState.getLockType());
+            signature.add(lockState.getOwner());
+            signature.add(lockState.getExpires());
+        }
+        ArrayList<NodeRef> parentRefs = new ArrayList<NodeRef>(1);
+        for (ChildAssociationRef parent : nodeService.getParentAssocs(nodeRef, ContentModel.ASSOC_CONTAINS, RegexQNamePattern.MATCH_ALL))
+        {
+            parentRefs.add(parent.getParentRef());
+        }
+        signature.add(parentRefs);
+        return signature;
+    }
+
     public List<ObjectData> getRelationships(NodeRef nodeRef, IncludeRelationships includeRelationships/*, CmisVersion cmisVersion*/)
     {
         List<ObjectData> result = new ArrayList<ObjectData>();
@@ -2996,6 +3088,7 @@ public class CMISConnector implements ApplicationContextAware, ApplicationListen
         try
         {
             CMISResultSetColumn[] columns = rs.getMetaData().getColumns();
+            Map<Serializable, AllowableActions> sharedActions = (includeAllowableActions ? new HashMap<Serializable, AllowableActions>() : null);
 
             for (CMISResultSetRow row : rs)
             {
@@ -3034,7 +3127,7 @@ public class CMISConnector implements ApplicationContextAware, ApplicationListen
                         CMISNodeInfoImpl nodeInfo = createNodeInfo(nodeRef);
                         if(!nodeInfo.getObjectVariant().equals(CMISObjectVariant.NOT_EXISTING))
                         {
-                            hit.setAllowableActions(getAllowableActions(nodeInfo));
+                            hit.setAllowableActions(getAllowableActions(nodeInfo, sharedActions));
                         }
                     }
 
@@ -84,6 +84,20 @@ public abstract class AbstractAsynchronousActionFilter implements Comparator<Ong
         this.asynchronousActionExecutionQueue = asynchronousActionExecutionQueue;
     }
     
+    /**
+     * Gets the key under which queues that deduplicate pending actions, such as the
+     * {@link DurableAsynchronousActionExecutionQueueImpl}, coalesce equivalent actions. Actions with the same
+     * key are treated as equivalent, so subclasses should refine the default of action definition name and
+     * actioned upon node to agree with their {@link #compare} implementation.
+     * 
+     * @param action the pending action
+     * @return the deduplication key
+     */
+    public String getDeduplicationKey(OngoingAsyncAction action)
+    {
+        return action.getAction().getActionDefinitionName() + '|' + action.getNodeRef();
+    }
+
     public void init()
     {
         this.asynchronousActionExecutionQueue.registerActionFilter(this);
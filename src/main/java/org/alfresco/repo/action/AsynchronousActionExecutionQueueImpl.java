@@ -153,6 +153,26 @@ public class AsynchronousActionExecutionQueueImpl implements AsynchronousActionE
     {
         this.policyComponent = policyComponent;
     }
+
+    protected ActionServiceImpl getActionServiceImpl()
+    {
+        return actionServiceImpl;
+    }
+
+    protected ThreadPoolExecutor getThreadPoolExecutor()
+    {
+        return threadPoolExecutor;
+    }
+
+    protected TransactionService getTransactionService()
+    {
+        return transactionService;
+    }
+
+    protected String getId()
+    {
+        return id;
+    }
     
     private void invokeOnAsyncActionExecutePolicy(Action action, NodeRef actionedUponNodeRef)
     {
@@ -192,6 +212,24 @@ public class AsynchronousActionExecutionQueueImpl implements AsynchronousActionE
         
         this.actionFilters.put(filter.getName(), filter);
     }
+
+    /**
+     * Gets the filter registered for an action definition, if any.
+     * 
+     * @param actionDefinitionName the action definition name
+     * @return the filter or <tt>null</tt>
+     */
+    protected AbstractAsynchronousActionFilter getActionFilter(String actionDefinitionName)
+    {
+        for (AbstractAsynchronousActionFilter filter : actionFilters.values())
+        {
+            if (actionDefinitionName.equals(filter.getActionDefinitionName()))
+            {
+                return filter;
+            }
+        }
+        return null;
+    }
     
     /**
      * {@inheritDoc}
@@ -224,7 +262,7 @@ public class AsynchronousActionExecutionQueueImpl implements AsynchronousActionE
 
         Set<RuleServiceImpl.ExecutedRuleData> executedRules =
             (Set<RuleServiceImpl.ExecutedRuleData>) AlfrescoTransactionSupport.getResource("RuleServiceImpl.ExecutedRules");
-        Runnable runnable = new ActionExecutionWrapper(
+        Runnable runnable = createActionExecutionWrapper(
                 actionService,
                 action,
                 actionedUponNodeRef,
@@ -308,6 +346,20 @@ public class AsynchronousActionExecutionQueueImpl implements AsynchronousActionE
         }
     }
     
+    /**
+     * Creates the runnable that executes an action in its own transaction, as the action's run-as user.
+     */
+    protected Runnable createActionExecutionWrapper(
+            RuntimeActionService actionService,
+            Action action,
+            NodeRef actionedUponNodeRef,
+            boolean checkConditions,
+            Set<String> actionChain,
+            Set<RuleServiceImpl.ExecutedRuleData> executedRules)
+    {
+        return new ActionExecutionWrapper(actionService, action, actionedUponNodeRef, checkConditions, actionChain, executedRules);
+    }
+
     private void handleAsyncActionIsCompleted(NodeRef n, Action action) {
         if (logger.isDebugEnabled())
         {
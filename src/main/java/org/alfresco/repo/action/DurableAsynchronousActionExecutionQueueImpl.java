@@ -0,0 +1,710 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.rule.RuleServiceImpl;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.GUID;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * An asynchronous action execution queue that persists pending actions, coalesces duplicates and
+ * executes actions in priority order.
+ * <p>
+ * <ul>
+ *   <li>Pending actions are stored with the {@link AttributeService} until they have run, so actions queued
+ *       when the server stops are executed once it has restarted.  Each server keeps its pending actions under
+ *       its own server id and holds a {@link JobLockService} lock on them while it runs.  On startup a server
+ *       replays its own pending actions, and takes over those of any server whose lock has expired.</li>
+ *   <li>An action that is equivalent to one that is still waiting to run is dropped. Actions are equivalent if
+ *       they share a deduplication key: the key of the {@link AbstractAsynchronousActionFilter} registered for
+ *       the action definition, or else the action definition, the actioned upon node and the parameter values.
+ *       Unlike the filters of the default queue, an action that is equivalent to one that is already running is
+ *       still queued, as the running action may not see the changes that triggered the new one.</li>
+ *   <li>Each action definition can be given a {@link Priority}; interactive actions are started ahead of normal
+ *       ones, and normal ones ahead of bulk ones.</li>
+ *   <li>Actions are handed to the thread pool in batches, no more than the pool's maximum size at a time so that
+ *       priorities are respected, and with an optional limit on the number of concurrent actions of each
+ *       definition.</li>
+ * </ul>
+ * Executers opt in to this queue by setting their <tt>queueName</tt> to the queue's id.
+ * 
+ * @since 7.0
+ */
+public class DurableAsynchronousActionExecutionQueueImpl extends AsynchronousActionExecutionQueueImpl
+        implements ApplicationListener<ContextRefreshedEvent>, ApplicationContextAware
+{
+    private static Log logger = LogFactory.getLog(DurableAsynchronousActionExecutionQueueImpl.class);
+
+    /** Top-level key of the persisted pending actions */
+    private static final String KEY_PENDING_ACTIONS = ".asyncActionQueue";
+
+    /** How long a server's lock on its pending actions lasts if it is not refreshed */
+    private static final long LOCK_TTL = 60000L;
+    private static final long LOCK_RETRY_WAIT = 1000L;
+
+    /**
+     * The classes of priority for actions, highest first.
+     */
+    public enum Priority
+    {
+        INTERACTIVE,
+        NORMAL,
+        BULK
+    }
+
+    private AttributeService attributeService;
+    private JobLockService jobLockService;
+    private String serverId;
+    private boolean persistent = true;
+    private int drainBatchSize = 20;
+    private Map<String, Priority> actionPriorities = Collections.emptyMap();
+    private Map<String, Integer> maxConcurrentActions = Collections.emptyMap();
+
+    /** Actions waiting to run, by priority, in the order they were queued. Guarded by <tt>this</tt>. */
+    private final Map<Priority, Deque<QueuedAction>> queues = new EnumMap<Priority, Deque<QueuedAction>>(Priority.class);
+    /** The deduplication keys of the actions waiting to run. Guarded by <tt>this</tt>. */
+    private final Map<String, QueuedAction> waiting = new HashMap<String, QueuedAction>();
+    /** The number of running actions by action definition name. Guarded by <tt>this</tt>. */
+    private final Map<String, Integer> runningByDefinition = new HashMap<String, Integer>();
+    /** The ids of the persisted actions that are waiting or running on this server. Guarded by <tt>this</tt>. */
+    private final Set<String> liveIds = new HashSet<String>();
+    private int running;
+    private boolean recovered;
+    private ApplicationContext applicationContext;
+
+    public DurableAsynchronousActionExecutionQueueImpl()
+    {
+        for (Priority priority : Priority.values())
+        {
+            queues.put(priority, new ArrayDeque<QueuedAction>());
+        }
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext)
+    {
+        this.applicationContext = applicationContext;
+    }
+
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * @param serverId      the id under which this server's pending actions are kept.  Defaults to the host name,
+     *                      so servers that share a host must each be given their own id.
+     */
+    public void setServerId(String serverId)
+    {
+        this.serverId = serverId;
+    }
+
+    /**
+     * @param persistent    <tt>true</tt> (the default) to keep pending actions across restarts
+     */
+    public void setPersistent(boolean persistent)
+    {
+        this.persistent = persistent;
+    }
+
+    /**
+     * @param drainBatchSize    the maximum number of actions handed to the thread pool at a time
+     */
+    public void setDrainBatchSize(int drainBatchSize)
+    {
+        this.drainBatchSize = drainBatchSize;
+    }
+
+    /**
+     * @param actionPriorities  the priority of each action definition name; others are {@link Priority#NORMAL}
+     */
+    public void setActionPriorities(Map<String, String> actionPriorities)
+    {
+        Map<String, Priority> priorities = new HashMap<String, Priority>();
+        for (Map.Entry<String, String> entry : actionPriorities.entrySet())
+        {
+            priorities.put(entry.getKey(), Priority.valueOf(entry.getValue().trim().toUpperCase()));
+        }
+        this.actionPriorities = priorities;
+    }
+
+    /**
+     * @param maxConcurrentActions  the maximum number of concurrently running actions of each action definition name
+     */
+    public void setMaxConcurrentActions(Map<String, Integer> maxConcurrentActions)
+    {
+        this.maxConcurrentActions = new HashMap<String, Integer>(maxConcurrentActions);
+    }
+
+    @Override
+    public void init()
+    {
+        if (persistent)
+        {
+            PropertyCheck.mandatory(this, "attributeService", attributeService);
+            PropertyCheck.mandatory(this, "jobLockService", jobLockService);
+            if (serverId == null || serverId.trim().isEmpty())
+            {
+                serverId = getHostName();
+            }
+        }
+        super.init();
+    }
+
+    /**
+     * Re-queues the actions that were pending when the server last stopped.
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event)
+    {
+        if (event.getApplicationContext() != applicationContext)
+        {
+            // Ignore the refresh of subsystem contexts
+            return;
+        }
+        synchronized (this)
+        {
+            if (recovered || !persistent)
+            {
+                return;
+            }
+            recovered = true;
+        }
+        AuthenticationUtil.runAsSystem(new AuthenticationUtil.RunAsWork<Void>()
+        {
+            @Override
+            public Void doWork() throws Exception
+            {
+                recoverPendingActions();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Claims this server's persisted pending actions, and those of any server that is no longer running, and
+     * queues them, dropping any duplicates.
+     */
+    void recoverPendingActions()
+    {
+        if (!claimPendingActions())
+        {
+            return;
+        }
+        Map<String, List<QueuedAction>> pendingByServer = readPendingActions();
+
+        List<QueuedAction> recoveredActions = new ArrayList<QueuedAction>();
+        List<QueuedAction> ownActions = pendingByServer.remove(serverId);
+        if (ownActions != null)
+        {
+            recoveredActions.addAll(ownActions);
+        }
+        for (Map.Entry<String, List<QueuedAction>> entry : pendingByServer.entrySet())
+        {
+            recoveredActions.addAll(takeOver(entry.getKey(), entry.getValue()));
+        }
+
+        if (!recoveredActions.isEmpty())
+        {
+            if (logger.isInfoEnabled())
+            {
+                logger.info("Recovered " + recoveredActions.size() + " pending asynchronous actions for queue '" + getQueueKey() + "'");
+            }
+            synchronized (this)
+            {
+                for (QueuedAction queuedAction : recoveredActions)
+                {
+                    enqueue(queuedAction);
+                }
+            }
+            drain();
+        }
+    }
+
+    /**
+     * Takes this server's lock on its pending actions and keeps it for as long as the queue is running.  A lock
+     * left behind by this server before a restart is waited for until it expires.
+     * 
+     * @return <tt>false</tt> if another server holds the lock, in which case nothing is recovered
+     */
+    private boolean claimPendingActions()
+    {
+        QName lockQName = getLockQName(serverId);
+        try
+        {
+            String lockToken = jobLockService.getLock(lockQName, LOCK_TTL, LOCK_RETRY_WAIT, (int) (LOCK_TTL / LOCK_RETRY_WAIT) + 1);
+            jobLockService.refreshLock(lockToken, lockQName, LOCK_TTL, new JobLockRefreshCallback()
+            {
+                @Override
+                public boolean isActive()
+                {
+                    return !getThreadPoolExecutor().isShutdown();
+                }
+
+                @Override
+                public void lockReleased()
+                {
+                    if (!getThreadPoolExecutor().isShutdown())
+                    {
+                        logger.warn("Lost the lock on the pending asynchronous actions of server '" + serverId + "' for queue '" + getQueueKey() + "'");
+                    }
+                }
+            });
+            return true;
+        }
+        catch (LockAcquisitionException e)
+        {
+            logger.error("The pending asynchronous actions of server '" + serverId + "' for queue '" + getQueueKey() +
+                    "' are locked by another server and will not be recovered.  Each server needs its own serverId.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the persisted pending actions of every server, leaving out those this server has queued since it started.
+     */
+    private Map<String, List<QueuedAction>> readPendingActions()
+    {
+        final Map<String, List<QueuedAction>> pendingByServer = new LinkedHashMap<String, List<QueuedAction>>();
+        getTransactionService().getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                pendingByServer.clear();
+                attributeService.getAttributes(new AttributeService.AttributeQueryCallback()
+                {
+                    @Override
+                    public boolean handleAttribute(Long id, Serializable value, Serializable[] keys)
+                    {
+                        if (value instanceof PendingAction && keys.length == 4)
+                        {
+                            String owner = (String) keys[2];
+                            String actionId = (String) keys[3];
+                            if (owner.equals(serverId) && isLive(actionId))
+                            {
+                                return true;
+                            }
+                            List<QueuedAction> pending = pendingByServer.get(owner);
+                            if (pending == null)
+                            {
+                                pending = new ArrayList<QueuedAction>();
+                                pendingByServer.put(owner, pending);
+                            }
+                            pending.add(new QueuedAction(actionId, (PendingAction) value, null));
+                        }
+                        return true;
+                    }
+                }, KEY_PENDING_ACTIONS, getQueueKey());
+                return null;
+            }
+        }, true, true);
+        return pendingByServer;
+    }
+
+    /**
+     * Moves the pending actions of another server to this one, if that server is not running.
+     * 
+     * @return the actions taken over, or an empty list if the other server holds its lock
+     */
+    private List<QueuedAction> takeOver(final String otherServerId, final List<QueuedAction> pendingActions)
+    {
+        QName lockQName = getLockQName(otherServerId);
+        String lockToken;
+        try
+        {
+            lockToken = jobLockService.getLock(lockQName, LOCK_TTL, 0L, 0);
+        }
+        catch (LockAcquisitionException e)
+        {
+            // The server is running and replays its own actions
+            return Collections.emptyList();
+        }
+        try
+        {
+            getTransactionService().getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    for (QueuedAction queuedAction : pendingActions)
+                    {
+                        attributeService.setAttribute(queuedAction.pendingAction, KEY_PENDING_ACTIONS, getQueueKey(), serverId, queuedAction.id);
+                        attributeService.removeAttribute(KEY_PENDING_ACTIONS, getQueueKey(), otherServerId, queuedAction.id);
+                    }
+                    return null;
+                }
+            }, false, true);
+        }
+        finally
+        {
+            jobLockService.releaseLock(lockToken, lockQName);
+        }
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Took over " + pendingActions.size() + " pending asynchronous actions of stopped server '" + otherServerId + "'");
+        }
+        return pendingActions;
+    }
+
+    private synchronized boolean isLive(String actionId)
+    {
+        return liveIds.contains(actionId);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void executeAction(RuntimeActionService actionService, Action action, NodeRef actionedUponNodeRef,
+            boolean checkConditions, Set<String> actionChain, NodeRef actionExecutionHistoryNodeRef)
+    {
+        Set<RuleServiceImpl.ExecutedRuleData> executedRules =
+            (Set<RuleServiceImpl.ExecutedRuleData>) AlfrescoTransactionSupport.getResource("RuleServiceImpl.ExecutedRules");
+        PendingAction pendingAction = new PendingAction(action, actionedUponNodeRef, checkConditions,
+                actionChain == null ? null : new HashSet<String>(actionChain));
+        QueuedAction queuedAction = new QueuedAction(GUID.generate(), pendingAction, executedRules);
+        queuedAction.runtimeActionService = actionService;
+
+        synchronized (this)
+        {
+            if (waiting.containsKey(queuedAction.deduplicationKey))
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Coalescing action " + action + " with an equivalent waiting action.");
+                }
+                return;
+            }
+            // Reserve the key before persisting, so that concurrent duplicates are dropped
+            waiting.put(queuedAction.deduplicationKey, queuedAction);
+            liveIds.add(queuedAction.id);
+        }
+
+        try
+        {
+            persist(queuedAction);
+        }
+        catch (RuntimeException e)
+        {
+            synchronized (this)
+            {
+                waiting.remove(queuedAction.deduplicationKey);
+                liveIds.remove(queuedAction.id);
+            }
+            throw e;
+        }
+
+        synchronized (this)
+        {
+            queues.get(queuedAction.priority).addLast(queuedAction);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Queued " + queuedAction.priority + " action " + action + " on " + actionedUponNodeRef);
+        }
+        drain();
+    }
+
+    private void enqueue(QueuedAction queuedAction)
+    {
+        if (waiting.containsKey(queuedAction.deduplicationKey))
+        {
+            // A duplicate was queued before the server stopped
+            remove(queuedAction);
+            return;
+        }
+        waiting.put(queuedAction.deduplicationKey, queuedAction);
+        liveIds.add(queuedAction.id);
+        queues.get(queuedAction.priority).addLast(queuedAction);
+    }
+
+    /**
+     * Hands the highest priority waiting actions to the thread pool, within the concurrency limits.
+     */
+    protected void drain()
+    {
+        int capacity = Math.max(1, getThreadPoolExecutor().getMaximumPoolSize());
+        synchronized (this)
+        {
+            int submitted = 0;
+            for (Priority priority : Priority.values())
+            {
+                Iterator<QueuedAction> iterator = queues.get(priority).iterator();
+                while (iterator.hasNext() && submitted < drainBatchSize && running < capacity)
+                {
+                    QueuedAction queuedAction = iterator.next();
+                    String definitionName = queuedAction.definitionName;
+                    Integer limit = maxConcurrentActions.get(definitionName);
+                    int runningForDefinition = getRunning(definitionName);
+                    if (limit != null && runningForDefinition >= limit)
+                    {
+                        // Leave it waiting, but let other types of action go ahead of it
+                        continue;
+                    }
+                    try
+                    {
+                        getThreadPoolExecutor().execute(new QueuedActionRunner(queuedAction));
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        // The pool is full; try again when an action completes
+                        return;
+                    }
+                    iterator.remove();
+                    waiting.remove(queuedAction.deduplicationKey);
+                    runningByDefinition.put(definitionName, runningForDefinition + 1);
+                    running++;
+                    submitted++;
+                }
+            }
+        }
+    }
+
+    private int getRunning(String definitionName)
+    {
+        Integer count = runningByDefinition.get(definitionName);
+        return count == null ? 0 : count;
+    }
+
+    private void completed(QueuedAction queuedAction)
+    {
+        try
+        {
+            remove(queuedAction);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                runningByDefinition.put(queuedAction.definitionName, getRunning(queuedAction.definitionName) - 1);
+                running--;
+            }
+            drain();
+        }
+    }
+
+    private void persist(final QueuedAction queuedAction)
+    {
+        if (!persistent)
+        {
+            return;
+        }
+        getTransactionService().getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                attributeService.setAttribute(queuedAction.pendingAction, KEY_PENDING_ACTIONS, getQueueKey(), serverId, queuedAction.id);
+                return null;
+            }
+        }, false, true);
+    }
+
+    private void remove(final QueuedAction queuedAction)
+    {
+        synchronized (this)
+        {
+            liveIds.remove(queuedAction.id);
+        }
+        if (!persistent)
+        {
+            return;
+        }
+        try
+        {
+            getTransactionService().getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    attributeService.removeAttribute(KEY_PENDING_ACTIONS, getQueueKey(), serverId, queuedAction.id);
+                    return null;
+                }
+            }, false, true);
+        }
+        catch (RuntimeException e)
+        {
+            // The action will be run again after a restart, which is preferable to losing it
+            logger.warn("Failed to remove completed asynchronous action " + queuedAction.id + " from the persistent queue", e);
+        }
+    }
+
+    private String getQueueKey()
+    {
+        String id = getId();
+        return id == null || id.isEmpty() ? "default" : id;
+    }
+
+    private QName getLockQName(String server)
+    {
+        return QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "asyncActionQueue." + getQueueKey() + "." + server);
+    }
+
+    private static String getHostName()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (UnknownHostException e)
+        {
+            return "localhost";
+        }
+    }
+
+    private String getDeduplicationKey(Action action, NodeRef actionedUponNodeRef)
+    {
+        OngoingAsyncAction ongoingAction = new OngoingAsyncAction(actionedUponNodeRef, action);
+        AbstractAsynchronousActionFilter filter = getActionFilter(action.getActionDefinitionName());
+        if (filter != null)
+        {
+            return filter.getDeduplicationKey(ongoingAction);
+        }
+        // Sort the parameters so that equal maps give equal keys
+        return action.getActionDefinitionName() + '|' + actionedUponNodeRef + '|' +
+                new TreeMap<String, Serializable>(action.getParameterValues());
+    }
+
+    /**
+     * The persisted state of a pending action.
+     */
+    static class PendingAction implements Serializable
+    {
+        private static final long serialVersionUID = -2473125863158574382L;
+
+        private final Action action;
+        private final NodeRef actionedUponNodeRef;
+        private final boolean checkConditions;
+        private final HashSet<String> actionChain;
+
+        PendingAction(Action action, NodeRef actionedUponNodeRef, boolean checkConditions, HashSet<String> actionChain)
+        {
+            this.action = action;
+            this.actionedUponNodeRef = actionedUponNodeRef;
+            this.checkConditions = checkConditions;
+            this.actionChain = actionChain;
+        }
+    }
+
+    /**
+     * A pending action held in memory.
+     */
+    private class QueuedAction
+    {
+        private final String id;
+        private final PendingAction pendingAction;
+        private final Set<RuleServiceImpl.ExecutedRuleData> executedRules;
+        private final String definitionName;
+        private final String deduplicationKey;
+        private final Priority priority;
+        private RuntimeActionService runtimeActionService;
+
+        QueuedAction(String id, PendingAction pendingAction, Set<RuleServiceImpl.ExecutedRuleData> executedRules)
+        {
+            this.id = id;
+            this.pendingAction = pendingAction;
+            this.executedRules = executedRules;
+            this.definitionName = pendingAction.action.getActionDefinitionName();
+            this.deduplicationKey = getDeduplicationKey(pendingAction.action, pendingAction.actionedUponNodeRef);
+            Priority configured = actionPriorities.get(definitionName);
+            this.priority = configured == null ? Priority.NORMAL : configured;
+        }
+    }
+
+    /**
+     * Runs a queued action and then releases its slot.
+     */
+    private class QueuedActionRunner implements Runnable
+    {
+        private final QueuedAction queuedAction;
+
+        QueuedActionRunner(QueuedAction queuedAction)
+        {
+            this.queuedAction = queuedAction;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                RuntimeActionService actionService = queuedAction.runtimeActionService;
+                if (actionService == null)
+                {
+                    // Recovered after a restart
+                    actionService = getActionServiceImpl();
+                }
+                PendingAction pendingAction = queuedAction.pendingAction;
+                createActionExecutionWrapper(actionService, pendingAction.action, pendingAction.actionedUponNodeRef,
+                        pendingAction.checkConditions, pendingAction.actionChain, queuedAction.executedRules).run();
+            }
+            finally
+            {
+                completed(queuedAction);
+            }
+        }
+    }
+}
@@ -28,8 +28,11 @@ package org.alfresco.repo.action.evaluator.compare;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.alfresco.repo.action.evaluator.ComparePropertyValueEvaluator;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.service.cmr.action.ActionServiceException;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 
@@ -50,6 +53,18 @@ public class TextPropertyValueComparator implements PropertyValueComparator
      */
     private static final String STAR = "*";
     
+    /**
+     * The number of compiled patterns to keep
+     */
+    private static final int PATTERN_CACHE_SIZE = 500;
+    
+    /**
+     * Compiled patterns by operation and compare text.  Rule conditions compare against the same few values
+     * (name patterns, mimetypes) for every node they are evaluated for.
+     */
+    private final SimpleCache<String, Pattern> patterns = new DefaultSimpleCache<String, Pattern>(
+            PATTERN_CACHE_SIZE, TextPropertyValueComparator.class.getName() + ".patterns");
+    
     /**
      * @see org.alfresco.repo.action.evaluator.compare.PropertyValueComparator#compare(java.io.Serializable, java.io.Serializable, org.alfresco.repo.action.evaluator.compare.ComparePropertyValueOperation)
      */
@@ -82,18 +97,34 @@ public class TextPropertyValueComparator implements PropertyValueComparator
             }
         }
             
-        // Build the reg ex
-        String regEx = buildRegEx(compareText, operation);
-        
         // Do the match
         if (propertyValue != null)
         {
-            result = ((String)propertyValue).toLowerCase().matches(regEx);
+            result = getPattern(compareText, operation).matcher(((String)propertyValue).toLowerCase()).matches();
         }
         
         return result;
     }
     
+    /**
+     * Gets the compiled pattern for the text to match, building the regular expression only once
+     * 
+     * @param matchText     the raw text to be matched
+     * @param operation     the operation
+     * @return              the compiled pattern
+     */
+    private Pattern getPattern(String matchText, ComparePropertyValueOperation operation)
+    {
+        String key = operation.toString() + ":" + matchText;
+        Pattern pattern = patterns.get(key);
+        if (pattern == null)
+        {
+            pattern = Pattern.compile(buildRegEx(matchText, operation));
+            patterns.put(key, pattern);
+        }
+        return pattern;
+    }
+    
     /**
      * Builds the regular expressin that it used to make the match
      * 
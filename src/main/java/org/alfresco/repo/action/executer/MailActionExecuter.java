@@ -552,7 +552,7 @@ public class MailActionExecuter extends ActionExecuterAbstractBase
         return sendAfterCommit == null ? false : sendAfterCommit.booleanValue();
     }
     
-    private MimeMessageHelper[] prepareEmails(final Action ruleAction, final NodeRef actionedUponNodeRef)
+    MimeMessageHelper[] prepareEmails(final Action ruleAction, final NodeRef actionedUponNodeRef)
     {
         Serializable ref = ruleAction.getParameterValue(PARAM_TEMPLATE);
         String templateRef = (ref instanceof NodeRef ? ((NodeRef)ref).toString() : (String)ref);
@@ -574,6 +574,8 @@ public class MailActionExecuter extends ActionExecuterAbstractBase
         }
         
         MimeMessageHelper[] messages = new MimeMessageHelper[recipients.size()];
+        // the template nodes are shared by the recipients with the same locale, so that each node is only looked up once per locale
+        Map<Locale, Map<String, Object>> sharedModels = new HashMap<Locale, Map<String, Object>>(4);
         int recipientIndex = 0;
         for (Pair<String, Locale> recipient : recipients)
         {
@@ -582,13 +584,24 @@ public class MailActionExecuter extends ActionExecuterAbstractBase
                 logger.debug("Recipient: address=" + recipient.getFirst() + " ,locale=" + recipient.getSecond());
             }
             
-            messages[recipientIndex] = prepareEmail(ruleAction, actionedUponNodeRef, recipient, from);
+            messages[recipientIndex] = prepareEmail(ruleAction, actionedUponNodeRef, recipient, from, sharedModels);
             recipientIndex++;
         }
         return messages;
     }
     
     public MimeMessageHelper prepareEmail(final Action ruleAction , final NodeRef actionedUponNodeRef, final Pair<String, Locale> recipient, final Pair<InternetAddress, Locale> sender)
+    {
+        return prepareEmail(ruleAction, actionedUponNodeRef, recipient, sender, null);
+    }
+    
+    /**
+     * @param sharedModels  the email template models built for earlier recipients of the same action, by locale, or
+     *                      <tt>null</tt> if the model is not to be shared.  Template nodes read their properties in the
+     *                      locale of the first template that uses them, so they can only be shared within a locale.
+     */
+    private MimeMessageHelper prepareEmail(final Action ruleAction , final NodeRef actionedUponNodeRef, final Pair<String, Locale> recipient,
+            final Pair<InternetAddress, Locale> sender, final Map<Locale, Map<String, Object>> sharedModels)
     {
         // Create the mime mail message.
         // Hack: using an array here to get around the fact that inner classes aren't closures.
@@ -927,9 +940,6 @@ public class MailActionExecuter extends ActionExecuterAbstractBase
                         }
                     }
                     
-                    // build the email template model
-                    Map<String, Object> model = createEmailTemplateModel(actionedUponNodeRef, suppliedModel, fromPerson, toRecipients);
-
                     // Determine the locale to use to send the email.
                     Locale locale = recipient.getSecond();
                     if (locale == null)
@@ -941,6 +951,22 @@ public class MailActionExecuter extends ActionExecuterAbstractBase
                         locale = sender.getSecond();
                     }
                     
+                    // build the email template model - it only depends on the action, so recipients with the same locale may share it
+                    Map<String, Object> model;
+                    Map<String, Object> sharedModel = (sharedModels == null ? null : sharedModels.get(locale));
+                    if (sharedModel != null)
+                    {
+                        model = new HashMap<String, Object>(sharedModel);
+                    }
+                    else
+                    {
+                        model = createEmailTemplateModel(actionedUponNodeRef, suppliedModel, fromPerson, toRecipients);
+                        if (sharedModels != null)
+                        {
+                            sharedModels.put(locale, new HashMap<String, Object>(model));
+                        }
+                    }
+                    
                     // set subject line
                     String subject = (String)ruleAction.getParameterValue(PARAM_SUBJECT);
                     Object subjectParamsObject = ruleAction.getParameterValue(PARAM_SUBJECT_PARAMS);
@@ -127,6 +127,7 @@ public abstract class FeedTaskProcessor
             Map<Pair<String, String>, Set<String>> followerConnectedUsers = new HashMap<Pair<String, String>, Set<String>>(); // user -> followers
             Map<Pair<String, String>, Boolean> canUserReadSite = new HashMap<Pair<String, String>, Boolean>();                // <user, site> -> true/false (note: used when following, implied as true for site members)
             Map<String, List<FeedControlEntity>> userFeedControls = new HashMap<String, List<FeedControlEntity>>();
+            Map<Pair<String, String>, Boolean> canUserReadNode = new HashMap<Pair<String, String>, Boolean>();            // <user, node> -> true/false (note: posts often refer to the same node)
             
             List<String> fmTemplates = Arrays.asList(new String[]{"activities/org/alfresco/generic.json.ftl"});
             
@@ -249,7 +250,7 @@ public abstract class FeedTaskProcessor
                         else
                         {
                             // node read permission check (if nodeRef is present)
-                            if (! canRead(ctx, recipient, model))
+                            if (! canRead(ctx, recipient, model, canUserReadNode))
                             {
                                 excludedConnections++;
                                 continue;
@@ -650,6 +651,33 @@ public abstract class FeedTaskProcessor
         return textWriter.toString();
     }
 
+    /**
+     * Checks read permission for the node of an activity post, reusing the result of an earlier post of this run
+     * about the same node.
+     */
+    private boolean canRead(RepoCtx ctx, String connectedUser, Map<String, Object> model, Map<Pair<String, String>, Boolean> canUserReadNode) throws Exception
+    {
+        String nodeRefStr = (String) model.get(PostLookup.JSON_NODEREF);
+        if (nodeRefStr == null)
+        {
+            nodeRefStr = (String) model.get(PostLookup.JSON_NODEREF_PARENT);
+        }
+        if (nodeRefStr == null)
+        {
+            return canRead(ctx, connectedUser, model);
+        }
+        // note: node refs are tenant-specific
+        String tenantDomain = (String) model.get(PostLookup.JSON_TENANT_DOMAIN);
+        Pair<String, String> userNodeKey = new Pair<String, String>(connectedUser, (tenantDomain == null ? "" : tenantDomain) + "@" + nodeRefStr);
+        Boolean canRead = canUserReadNode.get(userNodeKey);
+        if (canRead == null)
+        {
+            canRead = canRead(ctx, connectedUser, model);
+            canUserReadNode.put(userNodeKey, canRead);
+        }
+        return canRead;
+    }
+
     protected List<FeedControlEntity> getFeedControls(String connectedUser) throws SQLException
     {
         //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
@@ -103,6 +103,8 @@ public abstract class AbstractPatch implements Patch,  ApplicationEventPublisher
     
     /** whether the patch must be deferred (not to be executed in bootstrap) or not */
     private boolean deferred = false;    
+    /** whether the patch may be applied in the background after bootstrap */
+    private boolean resumable = false;
 
     
     // Does the patch require an enclosing transaction?
@@ -753,6 +755,21 @@ public abstract class AbstractPatch implements Patch,  ApplicationEventPublisher
     {
         return this.deferred;
     }    
+    
+    /**
+     * Can the patch be interrupted and applied again, carrying on where it left off?  Such patches are
+     * applied in the background, typically processing their data with a {@link BatchProcessor}.
+     * @param resumable boolean
+     */
+    public void setResumable(boolean resumable)
+    {
+        this.resumable = resumable;
+    }
+
+    public boolean isResumable()
+    {
+        return this.resumable;
+    }
 
     private int getReportingInterval(long soFar, long toGo)
     {
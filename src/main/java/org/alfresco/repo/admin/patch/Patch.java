@@ -128,4 +128,13 @@ public interface Patch
      * @return true if the patch must be deferred, false otherwise
      */
     public boolean isDeferred();
+    
+    /**
+     * Indicates whether the patch can be interrupted and applied again, carrying on where it left off.
+     * Unless a patch applied at bootstrap depends on it, a resumable patch is applied in the background
+     * once the bootstrap patches are done.
+     * 
+     * @return true if the patch may be applied in the background, false otherwise
+     */
+    public boolean isResumable();
 }
@@ -25,8 +25,10 @@
  */
 package org.alfresco.repo.admin.patch;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
@@ -83,8 +85,16 @@ public class PatchExecuter extends AbstractLifecycleBean
         boolean applySucceeded = patchService.applyOutstandingPatches();
         Date after = new Date(System .currentTimeMillis() + 20000L);  // 20 seconds ahead
         
-        // get all the patches executed in the time
-        List<AppliedPatch> appliedPatches = patchService.getPatches(before, after);
+        // get all the patches executed in the time, except for those applied in the background - these report themselves
+        Set<String> backgroundPatchIds = patchService.getBackgroundPatchIds();
+        List<AppliedPatch> appliedPatches = new ArrayList<AppliedPatch>();
+        for (AppliedPatch patchInfo : patchService.getPatches(before, after))
+        {
+            if (!backgroundPatchIds.contains(patchInfo.getId()))
+            {
+                appliedPatches.add(patchInfo);
+            }
+        }
         
         // don't report anything if nothing was done
         if (applySucceeded && appliedPatches.size() == 0)
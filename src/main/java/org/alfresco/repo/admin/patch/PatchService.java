@@ -27,6 +27,7 @@ package org.alfresco.repo.admin.patch;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Manages patches applied against the repository.
@@ -101,4 +102,13 @@ public interface PatchService
      * @return true if validation is successful. Outputs errors and returns false otherwise.
      */
     public boolean validatePatch(Patch patch);
+    
+    /**
+     * Gets the {@link Patch#isResumable() resumable} patches that the last call to {@link #applyOutstandingPatches()}
+     * left to be applied in the background.  These may still be running, or may have failed, after that call returns.
+     * 
+     * @return the IDs of the patches being applied in the background
+     * @since 7.0
+     */
+    public Set<String> getBackgroundPatchIds();
 }
@@ -30,11 +30,23 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.domain.patch.AppliedPatchDAO;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transaction.TransactionServiceImpl;
@@ -46,6 +58,7 @@ import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.ParameterCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.extensions.surf.util.I18NUtil;
@@ -66,9 +79,12 @@ public class PatchServiceImpl implements PatchService
     private static final String MSG_PRECEEDED_BY_ALTERNATIVE = "patch.service.preceeded_by_alternative";
     private static final String MSG_APPLYING_PATCH = "patch.service.applying_patch";
     private static final String MSG_VALIDATION_FAILED = "patch.validation.failed";
+    private static final String MSG_EXECUTED = "patch.executer.executed";
     
     private static final Date ZERO_DATE = new Date(0L);
     private static final Date INFINITE_DATE = new Date(Long.MAX_VALUE);
+    /** The time to live of the lock held while a background patch is applied, which is refreshed until it is done */
+    private static final long LOCK_TTL = 60000L;
     
     private static Log logger = LogFactory.getLog(PatchExecuter.class);
     
@@ -77,6 +93,9 @@ public class PatchServiceImpl implements PatchService
     private RuleService ruleService;
     private AppliedPatchDAO appliedPatchDAO;
     private List<Patch> patches;
+    private JobLockService jobLockService;
+    private int backgroundPatchThreads = 2;
+    private volatile Set<String> backgroundPatchIds = Collections.emptySet();
 
     public PatchServiceImpl()
     {
@@ -102,6 +121,23 @@ public class PatchServiceImpl implements PatchService
     {
         this.ruleService = ruleService;
     }
+    
+    /**
+     * @param jobLockService         ensures that a background patch is only applied by one server at a time
+     */
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+    
+    /**
+     * @param backgroundPatchThreads    the number of threads applying {@link Patch#isResumable() resumable}
+     *                                  patches in the background - independent patches are applied concurrently
+     */
+    public void setBackgroundPatchThreads(int backgroundPatchThreads)
+    {
+        this.backgroundPatchThreads = backgroundPatchThreads;
+    }
 
     public void registerPatch(Patch patch)
     {
@@ -187,10 +223,19 @@ public class PatchServiceImpl implements PatchService
                     }
                 }
             
+                // resumable patches that no other patch is waiting for are left for the background
+                List<Patch> backgroundPatches = getBackgroundPatches(sortedPatches, appliedPatchesById);
+                Set<String> ids = new HashSet<String>(backgroundPatches.size() * 2);
+                for (Patch patch : backgroundPatches)
+                {
+                    ids.add(patch.getId());
+                }
+                backgroundPatchIds = Collections.unmodifiableSet(ids);
+                
                 // go through all the patches and apply them where necessary        
                 for (Patch patch : sortedPatches)
                 {
-                    if(patch.isDeferred())
+                    if(patch.isDeferred() || backgroundPatches.contains(patch))
                     {
                         continue;
                     }
@@ -202,6 +247,11 @@ public class PatchServiceImpl implements PatchService
                         break;
                     }
                 }        
+                
+                if (success && !backgroundPatches.isEmpty())
+                {
+                    new BackgroundPatches(backgroundPatches, appliedPatchesById).start();
+                }
             }
             finally
             {
@@ -218,6 +268,14 @@ public class PatchServiceImpl implements PatchService
         return success;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    public Set<String> getBackgroundPatchIds()
+    {
+        return backgroundPatchIds;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -321,6 +379,53 @@ public class PatchServiceImpl implements PatchService
         }
     }
     
+    /**
+     * Finds the outstanding {@link Patch#isResumable() resumable} patches that no patch applied at bootstrap
+     * depends on, directly or indirectly.
+     */
+    private List<Patch> getBackgroundPatches(List<Patch> sortedPatches, Map<String, AppliedPatch> appliedPatchesById)
+    {
+        Set<Patch> backgroundPatches = new HashSet<Patch>();
+        for (Patch patch : sortedPatches)
+        {
+            AppliedPatch appliedPatch = appliedPatchesById.get(patch.getId());
+            boolean done = (appliedPatch != null && appliedPatch.getSucceeded() && appliedPatch.getWasExecuted());
+            if (patch.isResumable() && !patch.isDeferred() && !done)
+            {
+                backgroundPatches.add(patch);
+            }
+        }
+        if (backgroundPatches.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        for (Patch patch : sortedPatches)
+        {
+            if (!patch.isDeferred() && !backgroundPatches.contains(patch))
+            {
+                removeDependencies(patch, backgroundPatches);
+            }
+        }
+        List<Patch> result = new ArrayList<Patch>(backgroundPatches.size());
+        for (Patch patch : sortedPatches)
+        {
+            if (backgroundPatches.contains(patch))
+            {
+                result.add(patch);
+            }
+        }
+        return result;
+    }
+    
+    private void removeDependencies(Patch patch, Set<Patch> backgroundPatches)
+    {
+        for (Patch dependencyPatch : patch.getDependsOn())
+        {
+            backgroundPatches.remove(dependencyPatch);
+            removeDependencies(dependencyPatch, backgroundPatches);
+        }
+    }
+    
     private AppliedPatch applyPatch(Patch patch)
     {
         PatchWork work = new PatchWork(patch);
@@ -350,6 +455,227 @@ public class PatchServiceImpl implements PatchService
         return (List<AppliedPatch>) appliedPatches;
     }
 
+    /**
+     * Applies resumable patches on a pool of threads once the bootstrap patches are done.  A patch is
+     * started as soon as the background patches it depends on have been applied, so independent patches
+     * are applied concurrently.  A patch that fails is recorded as failed and the patches that depend on
+     * it are left for the next startup.
+     * <p>
+     * Each patch is applied under a job lock named after it, so that only one server of a cluster applies
+     * it.  A server that finds the lock taken leaves the patch and its dependents to the server holding it.
+     */
+    private class BackgroundPatches
+    {
+        private final Map<String, AppliedPatch> appliedPatchesById;
+        private final Map<Patch, Integer> outstandingDependencies = new HashMap<Patch, Integer>();
+        private final Map<Patch, List<Patch>> dependents = new HashMap<Patch, List<Patch>>();
+        private final ThreadPoolExecutor executor;
+        private int remaining;
+        
+        private BackgroundPatches(List<Patch> patches, Map<String, AppliedPatch> appliedPatchesById)
+        {
+            this.appliedPatchesById = new ConcurrentHashMap<String, AppliedPatch>(appliedPatchesById);
+            for (Patch patch : patches)
+            {
+                int count = 0;
+                for (Patch dependencyPatch : patch.getDependsOn())
+                {
+                    if (patches.contains(dependencyPatch))
+                    {
+                        List<Patch> dependencyDependents = dependents.get(dependencyPatch);
+                        if (dependencyDependents == null)
+                        {
+                            dependencyDependents = new ArrayList<Patch>(2);
+                            dependents.put(dependencyPatch, dependencyDependents);
+                        }
+                        dependencyDependents.add(patch);
+                        count++;
+                    }
+                }
+                outstandingDependencies.put(patch, count);
+            }
+            remaining = patches.size();
+            
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setThreadDaemon(true);
+            threadFactory.setNamePrefix("BackgroundPatch");
+            int threads = Math.max(1, backgroundPatchThreads);
+            executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), threadFactory);
+        }
+        
+        private synchronized void start()
+        {
+            logger.info("Applying " + remaining + " resumable patches in the background");
+            for (Map.Entry<Patch, Integer> entry : outstandingDependencies.entrySet())
+            {
+                if (entry.getValue() == 0)
+                {
+                    submit(entry.getKey());
+                }
+            }
+        }
+        
+        private void submit(final Patch patch)
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    // Other servers in the cluster apply the same background patches
+                    final QName lockQName = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "PatchServiceImpl." + patch.getId());
+                    String lockToken;
+                    try
+                    {
+                        lockToken = jobLockService.getLock(lockQName, LOCK_TTL);
+                    }
+                    catch (LockAcquisitionException e)
+                    {
+                        skipped(patch);
+                        return;
+                    }
+                    final AtomicBoolean running = new AtomicBoolean(true);
+                    jobLockService.refreshLock(lockToken, lockQName, LOCK_TTL, new JobLockRefreshCallback()
+                    {
+                        @Override
+                        public boolean isActive()
+                        {
+                            return running.get();
+                        }
+                        
+                        @Override
+                        public void lockReleased()
+                        {
+                            if (running.get())
+                            {
+                                logger.warn("Lost the lock on background patch " + patch.getId() + " while applying it");
+                            }
+                        }
+                    });
+                    boolean success;
+                    try
+                    {
+                        success = apply(patch);
+                    }
+                    finally
+                    {
+                        running.set(false);
+                        jobLockService.releaseLock(lockToken, lockQName);
+                    }
+                    done(patch, success);
+                }
+            });
+        }
+        
+        private boolean apply(final Patch patch)
+        {
+            // Rules are disabled per thread
+            ruleService.disableRules();
+            try
+            {
+                return AuthenticationUtil.runAs(new RunAsWork<Boolean>()
+                {
+                    public Boolean doWork() throws Exception
+                    {
+                        // Another server may have applied the patch since startup
+                        AppliedPatch appliedPatch = appliedPatchDAO.getAppliedPatch(patch.getId());
+                        if (appliedPatch != null)
+                        {
+                            appliedPatchesById.put(appliedPatch.getId(), appliedPatch);
+                        }
+                        return applyPatchAndDependencies(patch, appliedPatchesById);
+                    }
+                }, AuthenticationUtil.getSystemUserName());
+            }
+            catch (Throwable e)
+            {
+                logger.error("Failed to apply patch in the background: " + patch.getId(), e);
+                return false;
+            }
+            finally
+            {
+                ruleService.enableRules();
+            }
+        }
+        
+        private synchronized void done(Patch patch, boolean success)
+        {
+            remaining--;
+            List<Patch> patchDependents = dependents.get(patch);
+            if (success)
+            {
+                AppliedPatch appliedPatch = appliedPatchesById.get(patch.getId());
+                if (appliedPatch != null && appliedPatch.getWasExecuted())
+                {
+                    logger.info(I18NUtil.getMessage(MSG_EXECUTED, appliedPatch.getId(), appliedPatch.getReport()));
+                }
+                if (patchDependents != null)
+                {
+                    for (Patch dependent : patchDependents)
+                    {
+                        Integer count = outstandingDependencies.get(dependent);
+                        if (count == null)
+                        {
+                            // skipped as another of its dependencies failed
+                            continue;
+                        }
+                        outstandingDependencies.put(dependent, --count);
+                        if (count == 0)
+                        {
+                            submit(dependent);
+                        }
+                    }
+                }
+            }
+            else
+            {
+                // the failure has been reported
+                logger.warn("Patch " + patch.getId() + " will be applied again on the next startup");
+                skipDependents(patch);
+            }
+            checkFinished();
+        }
+        
+        /**
+         * Leaves a patch, and the patches that depend on it, to the server that is applying it.
+         */
+        private synchronized void skipped(Patch patch)
+        {
+            remaining--;
+            logger.info("Patch " + patch.getId() + " is being applied by another server");
+            skipDependents(patch);
+            checkFinished();
+        }
+        
+        private void checkFinished()
+        {
+            if (remaining == 0)
+            {
+                executor.shutdown();
+                logger.info("Finished applying resumable patches in the background");
+            }
+        }
+        
+        private void skipDependents(Patch patch)
+        {
+            List<Patch> patchDependents = dependents.get(patch);
+            if (patchDependents == null)
+            {
+                return;
+            }
+            for (Patch dependent : patchDependents)
+            {
+                // a dependent may depend on the failed patch in more than one way
+                if (outstandingDependencies.remove(dependent) != null)
+                {
+                    remaining--;
+                    logger.warn("Patch " + dependent.getId() + " will be applied on the next startup as patch " + patch.getId() + " failed");
+                    skipDependents(dependent);
+                }
+            }
+        }
+    }
+
     /**
      * Executes a patch, ensuring that pre-conditions are met and patch information is saved.
      * Introduced with fix for ALF-5621. 
@@ -0,0 +1,266 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An append-only journal recording the progress of a pipelined bulk import so that an interrupted
+ * import can be resumed.
+ * <p>
+ * Three kinds of record are written, each on its own line and relative to the source folder:
+ * <ul>
+ *   <li><tt>D &lt;path&gt; &lt;nodeRef&gt;</tt> - the folder has been committed to the repository</li>
+ *   <li><tt>F &lt;path&gt;</tt> - the file has been committed to the repository</li>
+ *   <li><tt>C &lt;path&gt;</tt> - all of the direct children of the folder have been committed</li>
+ * </ul>
+ * Records are flushed as they are written, so at most the records of the transactions in flight at the
+ * time of a crash are lost; those items are simply imported again on resume, subject to the
+ * {@link org.alfresco.repo.bulkimport.BulkImportParameters.ExistingFileMode existing file mode}.
+ * 
+ * @since 7.0
+ */
+public class BulkImportCheckpoint
+{
+    private static final Log logger = LogFactory.getLog(BulkImportCheckpoint.class);
+
+    private static final String FOLDER_COMMITTED = "D";
+    private static final String FOLDER_COMPLETED = "C";
+    private static final String FILE_COMMITTED = "F";
+    private static final String SEPARATOR = "\t";
+
+    private final Path sourceFolder;
+    private final Path journal;
+    private final Map<String, NodeRef> committedFolders = new HashMap<String, NodeRef>();
+    private final Set<String> completedFolders = new HashSet<String>();
+    private final Set<String> committedFiles = new HashSet<String>();
+    private BufferedWriter writer;
+
+    /**
+     * @param checkpointDirectory   the directory in which checkpoint journals are kept
+     * @param sourceFolder          the source folder of the import
+     * @param target                the target folder of the import
+     */
+    public BulkImportCheckpoint(File checkpointDirectory, Path sourceFolder, NodeRef target)
+    {
+        this.sourceFolder = sourceFolder.toAbsolutePath().normalize();
+        String key = DigestUtils.sha1Hex(this.sourceFolder.toString() + SEPARATOR + target.toString());
+        this.journal = checkpointDirectory.toPath().resolve("bulkimport-" + key + ".checkpoint");
+    }
+
+    /**
+     * Reads any existing journal and opens it for appending.
+     * 
+     * @return <tt>true</tt> if a previous, unfinished import is being resumed
+     */
+    public synchronized boolean open()
+    {
+        boolean resuming = Files.exists(journal);
+        try
+        {
+            Files.createDirectories(journal.getParent());
+            if (resuming)
+            {
+                load();
+            }
+            writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (resuming)
+            {
+                // Terminate any record left incomplete by the previous run
+                writer.newLine();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Unable to open bulk import checkpoint: " + journal, e);
+        }
+        if (resuming && logger.isInfoEnabled())
+        {
+            logger.info("Resuming bulk import from checkpoint " + journal + ": " + committedFolders.size() +
+                    " folders committed, " + completedFolders.size() + " folders completed.");
+        }
+        return resuming;
+    }
+
+    private void load() throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.isEmpty())
+                {
+                    continue;
+                }
+                String[] fields = line.split(SEPARATOR);
+                if (fields.length == 3 && FOLDER_COMMITTED.equals(fields[0]) && NodeRef.isNodeRef(fields[2]))
+                {
+                    committedFolders.put(fields[1], new NodeRef(fields[2]));
+                }
+                else if (fields.length == 2 && FOLDER_COMPLETED.equals(fields[0]))
+                {
+                    completedFolders.add(fields[1]);
+                }
+                else if (fields.length == 2 && FILE_COMMITTED.equals(fields[0]))
+                {
+                    committedFiles.add(fields[1]);
+                }
+                else
+                {
+                    // A partially written line left behind by a crash
+                    logger.warn("Ignoring unreadable bulk import checkpoint record: " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the node that a folder was imported as by a previous run, or <tt>null</tt>
+     */
+    public synchronized NodeRef getCommittedFolder(Path folder)
+    {
+        return committedFolders.get(relativize(folder));
+    }
+
+    /**
+     * @return <tt>true</tt> if all of the direct children of the folder were imported by a previous run
+     */
+    public synchronized boolean isFolderCompleted(Path folder)
+    {
+        return completedFolders.contains(relativize(folder));
+    }
+
+    /**
+     * @return <tt>true</tt> if the file was imported by a previous run
+     */
+    public synchronized boolean isFileCommitted(Path file)
+    {
+        return committedFiles.contains(relativize(file));
+    }
+
+    public synchronized void folderCommitted(Path folder, NodeRef nodeRef)
+    {
+        String path = relativize(folder);
+        committedFolders.put(path, nodeRef);
+        append(FOLDER_COMMITTED + SEPARATOR + path + SEPARATOR + nodeRef);
+    }
+
+    public synchronized void fileCommitted(Path file)
+    {
+        String path = relativize(file);
+        if (committedFiles.add(path))
+        {
+            append(FILE_COMMITTED + SEPARATOR + path);
+        }
+    }
+
+    public synchronized void folderCompleted(Path folder)
+    {
+        String path = relativize(folder);
+        if (completedFolders.add(path))
+        {
+            append(FOLDER_COMPLETED + SEPARATOR + path);
+        }
+    }
+
+    /**
+     * Closes the journal, deleting it if the import finished without errors.
+     */
+    public synchronized void close(boolean finished)
+    {
+        try
+        {
+            if (writer != null)
+            {
+                writer.close();
+                writer = null;
+            }
+            if (finished)
+            {
+                Files.deleteIfExists(journal);
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to close bulk import checkpoint: " + journal, e);
+        }
+    }
+
+    public Path getJournal()
+    {
+        return journal;
+    }
+
+    public synchronized Map<String, NodeRef> getCommittedFolders()
+    {
+        return Collections.unmodifiableMap(new HashMap<String, NodeRef>(committedFolders));
+    }
+
+    private String relativize(Path folder)
+    {
+        // Use '/' regardless of platform so that a journal remains valid if the source is remounted
+        String path = sourceFolder.relativize(folder.toAbsolutePath().normalize()).toString();
+        return path.isEmpty() ? "." : path.replace(File.separatorChar, '/');
+    }
+
+    private void append(String record)
+    {
+        if (writer == null)
+        {
+            throw new IllegalStateException("Bulk import checkpoint is not open: " + journal);
+        }
+        try
+        {
+            writer.write(record);
+            writer.newLine();
+            writer.flush();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Unable to write bulk import checkpoint: " + journal, e);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.bulkimport.BulkImportParameters;
+import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.bulkimport.MetadataLoader;
+import org.alfresco.repo.bulkimport.impl.BulkImportStatusImpl.NodeState;
+import org.alfresco.repo.domain.mimetype.MimetypeDAO;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.repo.usage.ContentUsageImpl;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.DuplicateChildNodeNameException;
+import org.alfresco.service.cmr.repository.MimetypeService;
+import org.alfresco.service.cmr.repository.MimetypeServiceAware;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.OwnableService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Triple;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * Creates node importers that load new files with as few repository writes as possible.  This is an
+ * opt-in alternative to the {@link StreamingNodeImporterFactory}.
+ * <p>
+ * The content of a new file is written to the content store before its node exists and the node is
+ * then created with its content and metadata in one go.  Whether the names are free is checked once
+ * for each folder in a transaction, for a run of files from the same source directory, and the
+ * mimetypes guessed from the names of that run are looked up together.
+ * <p>
+ * The behaviours of the file's type and its super types are disabled while the node is created.  Those
+ * that fire for a new file are:
+ * <ul>
+ *   <li>the content usage behaviours of <b>cm:content</b>.  The usages are instead added up for each
+ *       owner and added when the transaction commits.</li>
+ *   <li>the tag update behaviour of <b>cm:content</b>.  Tag scopes are still updated by the create
+ *       behaviour of <b>cm:taggable</b>.</li>
+ *   <li>the IMAP property update behaviour of <b>cm:content</b>.  New files are still picked up by its
+ *       child association behaviour.</li>
+ * </ul>
+ * Aspect behaviours, such as those of <b>cm:auditable</b> and <b>cm:ownable</b>, and behaviours bound to
+ * all classes, such as event generation, still fire.
+ * <p>
+ * Directories, files with versions, files that already exist and files whose metadata adds aspects or
+ * makes them versionable are imported as they are by the {@link StreamingNodeImporterFactory}.
+ *
+ * @since 7.0
+ */
+public class BulkLoadNodeImporterFactory extends StreamingNodeImporterFactory
+{
+    private static final String KEY_CREATED_NODES = "BulkLoadNodeImporterFactory.createdNodes";
+    private static final String KEY_FOLDER_NAMES = "BulkLoadNodeImporterFactory.folderNames";
+    /** The most names that are checked in one query */
+    private static final int NAME_LOOKUP_SIZE = 256;
+
+    private ContentService contentService;
+    private MimetypeService mimetypeService;
+    private DictionaryService dictionaryService;
+    private ContentUsageImpl contentUsage;
+    private MimetypeDAO mimetypeDAO;
+    private final Reconciler reconciler = new Reconciler();
+
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    public void setMimetypeService(MimetypeService mimetypeService)
+    {
+        this.mimetypeService = mimetypeService;
+    }
+
+    public void setDictionaryService(DictionaryService dictionaryService)
+    {
+        this.dictionaryService = dictionaryService;
+    }
+
+    /**
+     * @param contentUsage          maintains the usages of loaded content (optional)
+     */
+    public void setContentUsage(ContentUsageImpl contentUsage)
+    {
+        this.contentUsage = contentUsage;
+    }
+
+    /**
+     * @param mimetypeDAO           resolves the mimetypes of a run of files together (optional)
+     */
+    public void setMimetypeDAO(MimetypeDAO mimetypeDAO)
+    {
+        this.mimetypeDAO = mimetypeDAO;
+    }
+
+    @Override
+    protected StreamingNodeImporter createNodeImporter()
+    {
+        return new BulkLoadNodeImporter();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordCreate(ChildAssociationRef childAssocRef)
+    {
+        List<ChildAssociationRef> createdNodes = (List<ChildAssociationRef>) AlfrescoTransactionSupport.getResource(KEY_CREATED_NODES);
+        if (createdNodes == null)
+        {
+            createdNodes = new ArrayList<ChildAssociationRef>(100);
+            AlfrescoTransactionSupport.bindResource(KEY_CREATED_NODES, createdNodes);
+            AlfrescoTransactionSupport.bindListener(reconciler);
+        }
+        createdNodes.add(childAssocRef);
+    }
+
+    /**
+     * The lower case names of a folder that have been checked in a transaction and those that are taken.
+     */
+    private static class FolderNames
+    {
+        private final Set<String> checked = new HashSet<String>(NAME_LOOKUP_SIZE * 2);
+        private final Set<String> existing = new HashSet<String>(NAME_LOOKUP_SIZE * 2);
+    }
+
+    /**
+     * Imports new plain files by creating their nodes directly.
+     */
+    private class BulkLoadNodeImporter extends StreamingNodeImporter
+    {
+        /** The sorted file names of the source directories */
+        private final Map<Path, List<String>> sourceNames = new ConcurrentHashMap<Path, List<String>>();
+
+        @Override
+        protected NodeRef importImportableItemImpl(ImportableItem importableItem, BulkImportParameters.ExistingFileMode existingFileMode)
+        {
+            NodeRef target = importableItem.getParent().getNodeRef();
+            ImportableItem.ContentAndMetadata headRevision = importableItem.getHeadRevision();
+            if (target == null || importableItem.hasVersionEntries() || !headRevision.contentFileExists() ||
+                    !ImportableItem.FileType.FILE.equals(headRevision.getContentFileType()))
+            {
+                return super.importImportableItemImpl(importableItem, existingFileMode);
+            }
+            MetadataLoader.Metadata metadata = loadMetadata(headRevision);
+            String nodeName = getImportableItemName(importableItem, metadata);
+            if (nodeName == null || !isLoadable(metadata))
+            {
+                return super.importImportableItemImpl(importableItem, existingFileMode);
+            }
+            FolderNames folderNames = getFolderNames(target, headRevision.getContentFile(), nodeName);
+            if (folderNames.existing.contains(nodeName.toLowerCase()))
+            {
+                // Existing files are skipped, replaced or versioned as usual
+                return super.importImportableItemImpl(importableItem, existingFileMode);
+            }
+
+            NodeRef nodeRef = createNode(target, nodeName, headRevision, metadata);
+            folderNames.existing.add(nodeName.toLowerCase());
+            importStatus.incrementImportableItemsRead(importableItem, false);
+            importStatus.incrementNodesWritten(importableItem, false, NodeState.CREATED, metadata.getProperties().size() + 4, 0);
+            importStatus.incrementContentBytesWritten(importableItem, false, NodeState.CREATED);
+            return nodeRef;
+        }
+
+        /**
+         * Version histories are created by behaviours, so versionable files can't be loaded directly.
+         */
+        private boolean isLoadable(MetadataLoader.Metadata metadata)
+        {
+            if (metadata.getType() == null || (metadata.getAspects() != null && !metadata.getAspects().isEmpty()))
+            {
+                return false;
+            }
+            for (QName propertyQName : metadata.getProperties().keySet())
+            {
+                PropertyDefinition propertyDef = dictionaryService.getProperty(propertyQName);
+                if (propertyDef != null && ContentModel.ASPECT_VERSIONABLE.equals(propertyDef.getContainerClass().getName()))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Gets the names of a folder that are known in this transaction, checking the given name and the
+         * names of the files that follow it in the source directory if it hasn't been checked yet.
+         */
+        private FolderNames getFolderNames(NodeRef target, Path contentFile, String nodeName)
+        {
+            Map<NodeRef, FolderNames> folderNamesByTarget = TransactionalResourceHelper.getMap(KEY_FOLDER_NAMES);
+            FolderNames folderNames = folderNamesByTarget.get(target);
+            if (folderNames == null)
+            {
+                folderNames = new FolderNames();
+                folderNamesByTarget.put(target, folderNames);
+            }
+            if (!folderNames.checked.contains(nodeName.toLowerCase()))
+            {
+                List<String> lookupNames = getLookupNames(contentFile.getParent(), nodeName);
+                for (ChildAssociationRef childAssocRef : nodeService.getChildrenByName(target, ContentModel.ASSOC_CONTAINS, lookupNames))
+                {
+                    String name = (String) nodeService.getProperty(childAssocRef.getChildRef(), ContentModel.PROP_NAME);
+                    if (name != null)
+                    {
+                        folderNames.existing.add(name.toLowerCase());
+                    }
+                }
+                for (String lookupName : lookupNames)
+                {
+                    folderNames.checked.add(lookupName.toLowerCase());
+                }
+                resolveMimetypes(lookupNames);
+            }
+            return folderNames;
+        }
+
+        /**
+         * Looks up the mimetypes of a run of files together, so that each file's content data finds its
+         * mimetype cached when the node is created.
+         */
+        private void resolveMimetypes(List<String> names)
+        {
+            if (mimetypeDAO == null)
+            {
+                return;
+            }
+            Set<String> mimetypes = new HashSet<String>();
+            for (String name : names)
+            {
+                mimetypes.add(mimetypeService.guessMimetype(name));
+            }
+            mimetypeDAO.getOrCreateMimetypes(new ArrayList<String>(mimetypes));
+        }
+
+        /**
+         * @return              the given name and the file names that follow it in the source directory, or
+         *                      just the given name if it was given by the metadata
+         */
+        private List<String> getLookupNames(Path sourceDirectory, String nodeName)
+        {
+            List<String> names = sourceNames.get(sourceDirectory);
+            if (names == null)
+            {
+                names = new ArrayList<String>();
+                try (DirectoryStream<Path> paths = Files.newDirectoryStream(sourceDirectory))
+                {
+                    for (Path path : paths)
+                    {
+                        names.add(path.getFileName().toString());
+                    }
+                }
+                catch (IOException e)
+                {
+                    if (logger.isWarnEnabled()) logger.warn("Unable to list source directory '" + sourceDirectory + "'.  Checking names one at a time.", e);
+                    names.clear();
+                }
+                Collections.sort(names);
+                sourceNames.put(sourceDirectory, names);
+            }
+            int index = Collections.binarySearch(names, nodeName);
+            if (index < 0)
+            {
+                return Collections.singletonList(nodeName);
+            }
+            return names.subList(index, Math.min(index + NAME_LOOKUP_SIZE, names.size()));
+        }
+
+        private NodeRef createNode(NodeRef target, String nodeName, ImportableItem.ContentAndMetadata contentAndMetadata, MetadataLoader.Metadata metadata)
+        {
+            // Write the content first, so that the node is created with it
+            ContentWriter writer = contentService.getWriter(null, ContentModel.PROP_CONTENT, false);
+            if (writer instanceof MimetypeServiceAware)
+            {
+                ((MimetypeServiceAware) writer).setMimetypeService(mimetypeService);
+            }
+            // Guessed from the content once it has been written
+            writer.guessMimetype(nodeName);
+            writer.guessEncoding();
+            try
+            {
+                writer.putContent(Files.newInputStream(contentAndMetadata.getContentFile()));
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Failed to copy content from file: \n" +
+                        "   writer: " + writer + "\n" +
+                        "   file: " + contentAndMetadata.getContentFile(),
+                        e);
+            }
+
+            Map<QName, Serializable> properties = new HashMap<QName, Serializable>(metadata.getProperties());
+            properties.put(ContentModel.PROP_NAME, nodeName);
+            properties.put(ContentModel.PROP_CONTENT, writer.getContentData());
+            QName assocQName = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, QName.createValidLocalName(nodeName));
+
+            ChildAssociationRef childAssocRef;
+            behaviourFilter.disableBehaviour(metadata.getType());
+            try
+            {
+                childAssocRef = nodeService.createNode(target, ContentModel.ASSOC_CONTAINS, assocQName, metadata.getType(), properties);
+            }
+            catch (DuplicateChildNodeNameException e)
+            {
+                // Created by someone else since the names were checked.  The retry checks them again.
+                throw new ConcurrencyFailureException("Node with name '" + nodeName + "' within node '" + target + "' was created concurrently to the bulk import", e);
+            }
+            finally
+            {
+                behaviourFilter.enableBehaviour(metadata.getType());
+            }
+            recordCreate(childAssocRef);
+            return childAssocRef.getChildRef();
+        }
+    }
+
+    /**
+     * Adds the usages of the files loaded in a transaction, which the disabled behaviours would have
+     * added one file at a time, for each owner.
+     */
+    private class Reconciler extends TransactionListenerAdapter
+    {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void beforeCommit(boolean readOnly)
+        {
+            List<ChildAssociationRef> createdNodes = (List<ChildAssociationRef>) AlfrescoTransactionSupport.getResource(KEY_CREATED_NODES);
+            if (createdNodes == null || contentUsage == null)
+            {
+                return;
+            }
+            Map<Triple<StoreRef, QName, String>, Long> usages = new HashMap<Triple<StoreRef, QName, String>, Long>();
+            for (ChildAssociationRef childAssocRef : createdNodes)
+            {
+                NodeRef nodeRef = childAssocRef.getChildRef();
+                Map<QName, Serializable> properties = nodeService.getProperties(nodeRef);
+                ContentData contentData = (ContentData) properties.get(ContentModel.PROP_CONTENT);
+                String owner = (String) properties.get(ContentModel.PROP_OWNER);
+                if (owner == null || owner.equals(OwnableService.NO_OWNER))
+                {
+                    owner = (String) properties.get(ContentModel.PROP_CREATOR);
+                }
+                if (contentData != null && owner != null)
+                {
+                    Triple<StoreRef, QName, String> usageKey = new Triple<StoreRef, QName, String>(
+                            nodeRef.getStoreRef(), nodeService.getType(nodeRef), owner);
+                    Long usage = usages.get(usageKey);
+                    usages.put(usageKey, (usage == null ? 0L : usage) + contentData.getSize());
+                }
+            }
+            for (Map.Entry<Triple<StoreRef, QName, String>, Long> entry : usages.entrySet())
+            {
+                Triple<StoreRef, QName, String> usageKey = entry.getKey();
+                contentUsage.addUserUsage(usageKey.getFirst(), usageKey.getSecond(), usageKey.getThird(), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.bulkimport.BulkImportParameters;
+import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.bulkimport.NodeImporter;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.util.TraceableThreadFactory;
+
+/**
+ * A multi threaded bulk importer that imports without waiting for each level of the filesystem to
+ * complete before starting the next.
+ * <p>
+ * Directories are analysed on a separate pool of threads by a {@link PipelinedFilesystemTracker}, and the
+ * contents of a folder are imported as soon as the transaction that created the folder has committed. If a
+ * checkpoint directory is configured, progress is journalled so that an interrupted import can be resumed by
+ * running it again with the same source and target.
+ * <p>
+ * As with the {@link BatchProcessor}, an item that fails is logged and the import carries on with the remaining
+ * items; the contents of a failed folder are skipped.  The failures are reported once everything else has been
+ * imported, and the checkpoint is kept so that running the import again retries only what did not succeed.
+ * 
+ * @since 7.0
+ */
+public class PipelinedBulkFilesystemImporter extends MultiThreadedBulkFilesystemImporter
+{
+    /** How long the dispatcher waits for work before checking whether the import has completed */
+    private static final long POLL_INTERVAL_MS = 100L;
+
+    protected int defaultAnalyserThreads = 2;
+    protected String checkpointDirectory;
+
+    public void setDefaultAnalyserThreads(int defaultAnalyserThreads)
+    {
+        this.defaultAnalyserThreads = defaultAnalyserThreads;
+    }
+
+    /**
+     * @param checkpointDirectory   the directory in which to journal progress, or empty to disable resuming
+     */
+    public void setCheckpointDirectory(String checkpointDirectory)
+    {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    public String getCheckpointDirectory()
+    {
+        return checkpointDirectory;
+    }
+
+    /**
+     * Method that does the work of importing a filesystem, dispatching batches of items as soon as they
+     * become ready.
+     * 
+     * @param bulkImportParameters  The bulk import parameters to apply to this bulk import.
+     * @param nodeImporter          The node importer implementation that will import each node.
+     * @param lockToken             The lock token to use during the bulk import.
+     */
+    @Override
+    protected void bulkImportImpl(final BulkImportParameters bulkImportParameters, final NodeImporter nodeImporter, final String lockToken)
+    {
+        super.bulkImportImpl(bulkImportParameters, nodeImporter, lockToken);
+
+        final File sourceFolder = nodeImporter.getSourceFolder();
+        final int batchSize = getBatchSize(bulkImportParameters);
+        final int numThreads = getNumThreads(bulkImportParameters);
+
+        BulkImportCheckpoint checkpoint = null;
+        if (checkpointDirectory != null && checkpointDirectory.trim().length() > 0)
+        {
+            checkpoint = new BulkImportCheckpoint(new File(checkpointDirectory.trim()), sourceFolder.toPath(), bulkImportParameters.getTarget());
+            checkpoint.open();
+        }
+
+        final PipelinedFilesystemTracker tracker = new PipelinedFilesystemTracker(directoryAnalyser, transactionHelper,
+                bulkImportParameters.getTarget(), sourceFolder, defaultAnalyserThreads, checkpoint);
+        final BatchProcessor.BatchProcessWorker<ImportableItem> worker = getWorker(bulkImportParameters, lockToken, nodeImporter, tracker);
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("Bulk Filesystem Import");
+        threadFactory.setThreadDaemon(true);
+        ExecutorService importPool = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        // Keep enough batches queued to keep the threads busy without draining the tracker into memory
+        final Semaphore dispatchPermits = new Semaphore(numThreads * 2);
+        final PipelineErrors errors = new PipelineErrors();
+
+        boolean finished = false;
+        try
+        {
+            tracker.start();
+            while (!tracker.isComplete() && tracker.getAnalysisError() == null)
+            {
+                List<ImportableItem> batch = tracker.getNextBatch(batchSize, POLL_INTERVAL_MS);
+                if (batch.isEmpty())
+                {
+                    continue;
+                }
+                dispatchPermits.acquire();
+                importPool.execute(new PipelineBatch(batch, worker, tracker, dispatchPermits, errors));
+            }
+            finished = errors.getTotalErrors() == 0 && tracker.getAnalysisError() == null;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Bulk import was interrupted", e);
+        }
+        finally
+        {
+            tracker.shutdown();
+            importPool.shutdown();
+            try
+            {
+                importPool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            if (checkpoint != null)
+            {
+                checkpoint.close(finished);
+            }
+        }
+
+        if (tracker.getAnalysisError() != null)
+        {
+            throw new AlfrescoRuntimeException("Bulk import failed to analyse the source folder", tracker.getAnalysisError());
+        }
+        if (errors.getTotalErrors() > 0)
+        {
+            throw new AlfrescoRuntimeException("Bulk import failed on " + errors.getTotalErrors() + " entries, the last being '" +
+                    errors.getLastErrorEntryId() + "'", errors.getLastError());
+        }
+    }
+
+    /**
+     * Imports a batch of items in a single transaction and reports each item to the tracker once the
+     * transaction has completed.
+     */
+    private class PipelineBatch extends TransactionListenerAdapter implements RetryingTransactionCallback<Void>, Runnable
+    {
+        private final List<ImportableItem> batch;
+        private final BatchProcessor.BatchProcessWorker<ImportableItem> worker;
+        private final PipelinedFilesystemTracker tracker;
+        private final Semaphore dispatchPermits;
+        private final PipelineErrors errors;
+
+        /** The items that failed in the current attempt of the transaction, with their errors */
+        private Map<ImportableItem, Throwable> failed;
+
+        PipelineBatch(List<ImportableItem> batch, BatchProcessor.BatchProcessWorker<ImportableItem> worker,
+                PipelinedFilesystemTracker tracker, Semaphore dispatchPermits, PipelineErrors errors)
+        {
+            this.batch = batch;
+            this.worker = worker;
+            this.tracker = tracker;
+            this.dispatchPermits = dispatchPermits;
+            this.errors = errors;
+        }
+
+        @Override
+        public Void execute() throws Throwable
+        {
+            failed = new IdentityHashMap<ImportableItem, Throwable>();
+            AlfrescoTransactionSupport.bindListener(this);
+            for (ImportableItem importableItem : batch)
+            {
+                try
+                {
+                    worker.process(importableItem);
+                }
+                catch (Throwable e)
+                {
+                    if (RetryingTransactionHelper.extractRetryCause(e) != null)
+                    {
+                        throw e;
+                    }
+                    logger.warn("Bulk Filesystem Import: Failed to process entry \"" + importableItem + "\".", e);
+                    failed.put(importableItem, e);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void afterCommit()
+        {
+            for (ImportableItem importableItem : batch)
+            {
+                Throwable error = failed.get(importableItem);
+                if (error != null)
+                {
+                    errors.error(worker.getIdentifier(importableItem), error);
+                    tracker.itemFailed(importableItem);
+                }
+                else
+                {
+                    tracker.itemCommitted(importableItem);
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            boolean prepared = false;
+            try
+            {
+                worker.beforeProcess();
+                prepared = true;
+                transactionHelper.doInTransaction(this, false, true);
+            }
+            catch (Throwable e)
+            {
+                // Out of retries, or never started: nothing in the batch was committed
+                logger.warn("Bulk Filesystem Import: Failed on batch starting with \"" + batch.get(0) + "\".", e);
+                for (ImportableItem importableItem : batch)
+                {
+                    errors.error(worker.getIdentifier(importableItem), e);
+                    tracker.itemFailed(importableItem);
+                }
+            }
+            finally
+            {
+                if (prepared)
+                {
+                    // The items have already been reported to the tracker, so a failure here must not report them again
+                    try
+                    {
+                        worker.afterProcess();
+                    }
+                    catch (Throwable e)
+                    {
+                        logger.warn("Bulk Filesystem Import: Failed to clean up after batch starting with \"" + batch.get(0) + "\".", e);
+                    }
+                }
+                dispatchPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Counts the entries that failed on any of the import threads and keeps the last error.
+     */
+    private static class PipelineErrors
+    {
+        private int totalErrors;
+        private Throwable lastError;
+        private String lastErrorEntryId;
+
+        synchronized void error(String entryId, Throwable e)
+        {
+            totalErrors++;
+            lastError = e;
+            lastErrorEntryId = entryId;
+        }
+
+        synchronized int getTotalErrors()
+        {
+            return totalErrors;
+        }
+
+        synchronized Throwable getLastError()
+        {
+            return lastError;
+        }
+
+        synchronized String getLastErrorEntryId()
+        {
+            return lastErrorEntryId;
+        }
+    }
+}
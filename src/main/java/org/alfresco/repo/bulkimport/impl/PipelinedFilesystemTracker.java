@@ -0,0 +1,403 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.bulkimport.AnalysedDirectory;
+import org.alfresco.repo.bulkimport.DirectoryAnalyser;
+import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.TraceableThreadFactory;
+
+/**
+ * A filesystem tracker that analyses directories on its own thread pool and feeds a dependency-aware
+ * queue of importable items, instead of striping the filesystem level by level.
+ * <p>
+ * The items of a directory become available for import as soon as that directory has been analysed, and a
+ * directory is analysed as soon as the transaction that created its folder has committed. There are therefore
+ * no barriers between levels of the filesystem: an uneven tree keeps all of the import threads busy.
+ * <p>
+ * The importer reports the outcome of each item through {@link #itemCommitted(ImportableItem)} and
+ * {@link #itemFailed(ImportableItem)}; the import is complete once {@link #isComplete()} returns <tt>true</tt>.
+ * If a {@link BulkImportCheckpoint} is supplied, committed files and folders and completed folders are journalled
+ * and, on resume, folders that were committed by a previous run are descended into without being imported again
+ * while files that were committed by a previous run are skipped.
+ * 
+ * @since 7.0
+ */
+public class PipelinedFilesystemTracker extends AbstractFilesystemTracker
+{
+    private final ImportableItem rootFolder;
+    private final RetryingTransactionHelper transactionHelper;
+    private final BulkImportCheckpoint checkpoint;
+    private final ExecutorService analyserPool;
+
+    /** Items whose parent folder has been committed, in the order they were discovered */
+    private final BlockingQueue<ImportableItem> readyQueue = new LinkedBlockingQueue<ImportableItem>();
+
+    /** Directories being analysed, plus items queued or being imported */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /** Per-folder count of the direct children that have still to be committed */
+    private final Map<Path, FolderProgress> folderProgress = new ConcurrentHashMap<Path, FolderProgress>();
+
+    private final AtomicInteger estimatedWorkSize = new AtomicInteger();
+
+    private volatile Throwable analysisError;
+
+    /**
+     * @param directoryAnalyser     the directory analyser
+     * @param transactionHelper     used to analyse each directory in a read-only transaction
+     * @param target                the target folder
+     * @param sourceFolder          the source folder
+     * @param analyserThreads       the number of threads that analyse directories
+     * @param checkpoint            an open checkpoint journal, or <tt>null</tt> if the import cannot be resumed
+     */
+    public PipelinedFilesystemTracker(DirectoryAnalyser directoryAnalyser, RetryingTransactionHelper transactionHelper,
+            NodeRef target, File sourceFolder, int analyserThreads, BulkImportCheckpoint checkpoint)
+    {
+        this.directoryAnalyser = directoryAnalyser;
+        this.transactionHelper = transactionHelper;
+        this.checkpoint = checkpoint;
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("BulkImportAnalyser");
+        threadFactory.setThreadDaemon(true);
+        this.analyserPool = new ThreadPoolExecutor(analyserThreads, analyserThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+
+        // not really an importable item but the analyser requires it to be in this form
+        rootFolder = new ImportableItem();
+        rootFolder.getHeadRevision().setContentFile(sourceFolder.toPath());
+        rootFolder.setNodeRef(target);
+    }
+
+    /**
+     * Starts analysing the source folder.
+     */
+    public void start()
+    {
+        analyse(rootFolder);
+    }
+
+    /**
+     * Stops the analyser threads, abandoning any outstanding analysis.
+     */
+    public void shutdown()
+    {
+        analyserPool.shutdownNow();
+    }
+
+    /**
+     * @return <tt>true</tt> once every discovered item has either been committed or has failed
+     */
+    public boolean isComplete()
+    {
+        return outstanding.get() == 0;
+    }
+
+    /**
+     * @return the first error thrown while analysing a directory, or <tt>null</tt>
+     */
+    public Throwable getAnalysisError()
+    {
+        return analysisError;
+    }
+
+    /**
+     * Takes the next batch of items that are ready for import, waiting up to the given time for the first
+     * one to become available.  The batch is returned as soon as no further items are immediately
+     * available, so that a partially filled batch never holds back the folders its siblings depend on.
+     * 
+     * @param batchSize     the maximum number of items to return
+     * @param timeout       the maximum time to wait, in milliseconds, for the first item
+     * @return the batch, which is empty if no item became ready in time
+     */
+    public List<ImportableItem> getNextBatch(int batchSize, long timeout) throws InterruptedException
+    {
+        List<ImportableItem> batch = new ArrayList<ImportableItem>(batchSize);
+        ImportableItem first = readyQueue.poll(timeout, TimeUnit.MILLISECONDS);
+        if (first != null)
+        {
+            batch.add(first);
+            readyQueue.drainTo(batch, batchSize - 1);
+        }
+        return batch;
+    }
+
+    /**
+     * Called once the transaction that imported the item has committed.
+     */
+    public void itemCommitted(ImportableItem importableItem)
+    {
+        try
+        {
+            if (isDirectory(importableItem))
+            {
+                if (importableItem.getNodeRef() != null)
+                {
+                    if (checkpoint != null)
+                    {
+                        checkpoint.folderCommitted(getPath(importableItem), importableItem.getNodeRef());
+                    }
+                    analyse(importableItem);
+                }
+                else
+                {
+                    // The folder was skipped, so there is nowhere to put its children
+                    logger.warn("Folder " + importableItem + " was not imported; skipping its contents.");
+                }
+            }
+            else if (checkpoint != null && getPath(importableItem) != null)
+            {
+                checkpoint.fileCommitted(getPath(importableItem));
+            }
+            childResolved(importableItem, true);
+        }
+        finally
+        {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Called if the item could not be imported.  The contents of a failed folder are not imported.
+     */
+    public void itemFailed(ImportableItem importableItem)
+    {
+        try
+        {
+            childResolved(importableItem, false);
+        }
+        finally
+        {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int count()
+    {
+        return estimatedWorkSize.get();
+    }
+
+    @Override
+    public void itemImported(NodeRef nodeRef, ImportableItem importableItem)
+    {
+        // Progress is only tracked once the importing transaction has committed
+    }
+
+    /**
+     * Returns a work provider that hands out the items that are currently ready without waiting for any
+     * more to become ready.  The pipelined importer does not use it, as the {@link org.alfresco.repo.batch.BatchProcessor}
+     * stops as soon as a work provider runs dry.
+     */
+    @Override
+    public BatchProcessWorkProvider<ImportableItem> getWorkProvider()
+    {
+        return new BatchProcessWorkProvider<ImportableItem>()
+        {
+            @Override
+            public int getTotalEstimatedWorkSize()
+            {
+                return count();
+            }
+
+            @Override
+            public Collection<ImportableItem> getNextWork()
+            {
+                List<ImportableItem> work = new ArrayList<ImportableItem>();
+                readyQueue.drainTo(work);
+                return work;
+            }
+        };
+    }
+
+    private void analyse(final ImportableItem directory)
+    {
+        outstanding.incrementAndGet();
+        analyserPool.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    analyseImpl(directory);
+                }
+                catch (Throwable e)
+                {
+                    logger.error("Failed to analyse directory " + directory, e);
+                    if (analysisError == null)
+                    {
+                        analysisError = e;
+                    }
+                }
+                finally
+                {
+                    outstanding.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private void analyseImpl(final ImportableItem directory)
+    {
+        AnalysedDirectory analysedDirectory = transactionHelper.doInTransaction(new RetryingTransactionCallback<AnalysedDirectory>()
+        {
+            @Override
+            public AnalysedDirectory execute() throws Throwable
+            {
+                return getImportableItemsInDirectory(directory);
+            }
+        }, true, true);
+
+        Path directoryPath = getPath(directory);
+        boolean completed = checkpoint != null && checkpoint.isFolderCompleted(directoryPath);
+
+        List<ImportableItem> toImport = new ArrayList<ImportableItem>();
+        List<ImportableItem> resumed = new ArrayList<ImportableItem>();
+        for (ImportableItem subDirectory : analysedDirectory.getImportableDirectories())
+        {
+            NodeRef committed = checkpoint == null ? null : checkpoint.getCommittedFolder(getPath(subDirectory));
+            if (committed != null)
+            {
+                subDirectory.setNodeRef(committed);
+                resumed.add(subDirectory);
+            }
+            else
+            {
+                toImport.add(subDirectory);
+            }
+        }
+        if (!completed)
+        {
+            for (ImportableItem importableItem : analysedDirectory.getImportableItems())
+            {
+                Path path = getPath(importableItem);
+                if (checkpoint == null || path == null || !checkpoint.isFileCommitted(path))
+                {
+                    toImport.add(importableItem);
+                }
+            }
+        }
+
+        if (!toImport.isEmpty())
+        {
+            folderProgress.put(directoryPath, new FolderProgress(toImport.size()));
+        }
+        else if (checkpoint != null)
+        {
+            checkpoint.folderCompleted(directoryPath);
+        }
+
+        estimatedWorkSize.addAndGet(toImport.size());
+        outstanding.addAndGet(toImport.size());
+        readyQueue.addAll(toImport);
+
+        for (ImportableItem subDirectory : resumed)
+        {
+            analyse(subDirectory);
+        }
+    }
+
+    private void childResolved(ImportableItem importableItem, boolean committed)
+    {
+        ImportableItem parent = importableItem.getParent();
+        if (parent == null)
+        {
+            return;
+        }
+        Path parentPath = getPath(parent);
+        FolderProgress progress = folderProgress.get(parentPath);
+        if (progress != null && progress.childResolved(committed))
+        {
+            folderProgress.remove(parentPath);
+            if (checkpoint != null && !progress.hasFailures())
+            {
+                checkpoint.folderCompleted(parentPath);
+            }
+        }
+    }
+
+    private static boolean isDirectory(ImportableItem importableItem)
+    {
+        return importableItem.getHeadRevision().contentFileExists() &&
+                ImportableItem.FileType.DIRECTORY.equals(importableItem.getHeadRevision().getContentFileType());
+    }
+
+    private static Path getPath(ImportableItem importableItem)
+    {
+        return importableItem.getHeadRevision().getContentFile();
+    }
+
+    /**
+     * Counts down the direct children of a folder that are still to be imported.
+     */
+    private static class FolderProgress
+    {
+        private final AtomicInteger remaining;
+        private volatile boolean failures;
+
+        FolderProgress(int children)
+        {
+            this.remaining = new AtomicInteger(children);
+        }
+
+        /**
+         * @return <tt>true</tt> when the last child has been resolved
+         */
+        boolean childResolved(boolean committed)
+        {
+            if (!committed)
+            {
+                failures = true;
+            }
+            return remaining.decrementAndGet() == 0;
+        }
+
+        boolean hasFailures()
+        {
+            return failures;
+        }
+    }
+}
@@ -49,7 +49,7 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 {
 	public NodeImporter getNodeImporter(File sourceFolder)
 	{
-		StreamingNodeImporter nodeImporter = new StreamingNodeImporter();
+		StreamingNodeImporter nodeImporter = createNodeImporter();
 		nodeImporter.setNodeService(nodeService);
 		nodeImporter.setBehaviourFilter(behaviourFilter);
 		nodeImporter.setFileFolderService(fileFolderService);
@@ -61,13 +61,18 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 
 		return nodeImporter;
 	}
+
+	protected StreamingNodeImporter createNodeImporter()
+	{
+		return new StreamingNodeImporter();
+	}
 	
 	/**
 	 * 
 	 * @since 4.0
 	 *
 	 */
-	private static class StreamingNodeImporter extends AbstractNodeImporter
+	static class StreamingNodeImporter extends AbstractNodeImporter
 	{
 	    private File sourceFolder;
 
@@ -27,6 +27,11 @@ package org.alfresco.repo.cache.lookup;
 
 import java.io.Serializable;
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.control.ControlDAO;
@@ -161,6 +166,27 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         int deleteByValue(V1 value);
     }
     
+    /**
+     * Interface for lookups that are able to find many entities by value in one go.  The
+     * {@link EntityLookupCache#getOrCreateByValues(List) bulk lookups} of the cache make use of it.
+     * 
+     * @since 7.0
+     */
+    public static interface BatchEntityLookupCallbackDAO<K1 extends Serializable, V1 extends Object, VK1 extends Serializable>
+            extends EntityLookupCallbackDAO<K1, V1, VK1>
+    {
+        /**
+         * Find the entities for the given values, ideally with a single query.  The values match
+         * entities in the same way as {@link #findByValue(Object)} does.
+         * 
+         * @param values        the values (never <tt>null</tt>), none of which is <tt>null</tt> and
+         *                      all of which have different value keys
+         * @return              Returns the entities in the order of the values given, with <tt>null</tt>
+         *                      wherever no entity matches the value
+         */
+        List<Pair<K1, V1>> findByValues(List<V1> values);
+    }
+    
     /**
      * Adaptor for implementations that support immutable entities.  The update and delete operations
      * throw {@link UnsupportedOperationException}.
@@ -234,6 +260,10 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
      * The cache region that will be used (see {@link CacheRegionKey}) in all the cache keys
      */
     private static final String CACHE_REGION_DEFAULT = "DEFAULT";
+    /**
+     * The most values that are looked up by a single {@link BatchEntityLookupCallbackDAO#findByValues(List) query}
+     */
+    private static final int BATCH_LOOKUP_SIZE = 256;
     
     private final SimpleCache<Serializable, Object> cache;
     private final EntityLookupCallbackDAO<K, V, VK> entityLookup;
@@ -529,6 +559,101 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         return entityPair;
     }
     
+    /**
+     * Find the entities associated with the given values and create those that don't exist.
+     * <p/>
+     * Cached values are resolved without going to the DAO.  If the DAO is a
+     * {@link BatchEntityLookupCallbackDAO}, the remaining values are found with as few queries as
+     * possible and only those that are still missing are created one at a time; otherwise each
+     * value is passed to {@link #getOrCreateByValue(Object)}.
+     * 
+     * @param values                The entity values (<tt>null</tt> entries are allowed)
+     * @return                      Returns the key-value pairs (new or existing and never <tt>null</tt>)
+     *                              in the order of the values given
+     */
+    @SuppressWarnings("unchecked")
+    public List<Pair<K, V>> getOrCreateByValues(List<V> values)
+    {
+        List<Pair<K, V>> entityPairs = new ArrayList<Pair<K, V>>(values.size());
+        // Handle missing cache or a DAO that can only look up one value at a time
+        if (cache == null || !(entityLookup instanceof BatchEntityLookupCallbackDAO))
+        {
+            for (V value : values)
+            {
+                entityPairs.add(getOrCreateByValue(value));
+            }
+            return entityPairs;
+        }
+        BatchEntityLookupCallbackDAO<K, V, VK> batchEntityLookup = (BatchEntityLookupCallbackDAO<K, V, VK>) entityLookup;
+        
+        // Resolve what we can from the cache and gather the rest by value key
+        List<VK> valueKeys = new ArrayList<VK>(values.size());
+        Map<VK, V> missingValues = new LinkedHashMap<VK, V>();
+        for (V value : values)
+        {
+            VK valueKey = (value == null) ? null : entityLookup.getValueKey(value);
+            Pair<K, V> entityPair = null;
+            if (valueKey == null)
+            {
+                // Null values and values without a good key can't be looked up in bulk
+                entityPair = getOrCreateByValue(value);
+            }
+            else
+            {
+                K key = (K) cache.get(new CacheRegionValueKey(cacheRegion, valueKey));
+                if (key != null && !key.equals(VALUE_NOT_FOUND))
+                {
+                    entityPair = getByKey(key);
+                }
+                if (entityPair == null && !missingValues.containsKey(valueKey))
+                {
+                    missingValues.put(valueKey, value);
+                }
+            }
+            valueKeys.add(valueKey);
+            entityPairs.add(entityPair);
+        }
+        if (missingValues.isEmpty())
+        {
+            return entityPairs;
+        }
+        
+        // Find the missing values in batches and create whatever doesn't exist
+        List<VK> missingValueKeys = new ArrayList<VK>(missingValues.keySet());
+        List<V> missingValueList = new ArrayList<V>(missingValues.values());
+        Map<VK, Pair<K, V>> resolvedPairs = new HashMap<VK, Pair<K, V>>(missingValueKeys.size() * 2);
+        for (int i = 0; i < missingValueList.size(); i += BATCH_LOOKUP_SIZE)
+        {
+            List<V> batch = missingValueList.subList(i, Math.min(i + BATCH_LOOKUP_SIZE, missingValueList.size()));
+            List<Pair<K, V>> foundPairs = batchEntityLookup.findByValues(batch);
+            for (int j = 0; j < batch.size(); j++)
+            {
+                V value = batch.get(j);
+                Pair<K, V> entityPair = foundPairs.get(j);
+                if (entityPair == null)
+                {
+                    // Create it
+                    entityPair = entityLookup.createValue(value);
+                }
+                K key = entityPair.getFirst();
+                VK valueKey = missingValueKeys.get(i + j);
+                // Cache the key and value
+                cache.put(new CacheRegionValueKey(cacheRegion, valueKey), key);
+                cache.put(new CacheRegionKey(cacheRegion, key), value);
+                resolvedPairs.put(valueKey, entityPair);
+            }
+        }
+        for (int i = 0; i < entityPairs.size(); i++)
+        {
+            if (entityPairs.get(i) == null)
+            {
+                entityPairs.set(i, resolvedPairs.get(valueKeys.get(i)));
+            }
+        }
+        // Done
+        return entityPairs;
+    }
+    
     /**
      * Update the entity associated with the given key.
      * The {@link EntityLookupCallbackDAO#updateValue(Serializable, Object)} callback
@@ -0,0 +1,375 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * A {@link FileContentStore} that keeps each distinct binary on disk only once.
+ * <p>
+ * Content is hashed while it streams into the writer.  When the stream is closed, the file behind the
+ * writer's content URL is turned into a hard link onto a blob named by the digest of the content:
+ * <pre>
+ *    dedup/ab/cd/abcd...ef.bin
+ * </pre>
+ * Content URLs therefore keep their usual form and never change once written, as the
+ * {@link org.alfresco.repo.content.ContentStore ContentStore} contract requires, while any number of
+ * them share the same bytes.  The reference counting is done by the filesystem's link count: deleting
+ * a content URL removes its link and the blob goes along with the last content URL that refers to it.
+ * The database tracks content URLs exactly as it does for a plain file store.
+ * <p>
+ * Deduplication needs a filesystem that supports hard links and exposes link counts (the
+ * <tt>unix</tt> file attribute view); elsewhere the store behaves as a plain file store.
+ * Content that cannot be deduplicated for any other reason is simply kept as a plain file.
+ *
+ * @since 7.0
+ */
+public class DeduplicatingFileContentStore extends FileContentStore
+{
+    public static final String DEDUP_DIRECTORY = "dedup";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String BLOB_EXTENSION = ".bin";
+    private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+    private static final int LOCK_STRIPES = 64;
+
+    private static final Log logger = LogFactory.getLog(DeduplicatingFileContentStore.class);
+
+    private final File blobDirectory;
+    private final boolean deduplicationSupported;
+    private final Object[] locks;
+
+    /**
+     * Public constructor for programmatic use.
+     *
+     * @param context
+     *            application context through which events can be published
+     * @param rootDirectory
+     *            the root under which files will be stored. The directory will be created if it does not exist.
+     */
+    public DeduplicatingFileContentStore(ApplicationContext context, File rootDirectory)
+    {
+        this(context, rootDirectory, Collections.<String, Serializable> emptyMap());
+    }
+
+    public DeduplicatingFileContentStore(ApplicationContext context, File rootDirectory, Map<String, Serializable> extendedEventParams)
+    {
+        super(context, rootDirectory, extendedEventParams);
+        File root = new File(getRootLocation());
+        blobDirectory = new File(root, DEDUP_DIRECTORY);
+        deduplicationSupported = supportsLinkCounts(root);
+        if (!deduplicationSupported)
+        {
+            logger.warn("The filesystem does not expose hard link counts; content will not be deduplicated: " + root);
+        }
+        locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    private static boolean supportsLinkCounts(File directory)
+    {
+        try
+        {
+            return Files.getFileStore(directory.toPath()).supportsFileAttributeView("unix");
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return              Returns <tt>true</tt> if content written to this store is deduplicated
+     */
+    public boolean isDeduplicationSupported()
+    {
+        return deduplicationSupported;
+    }
+
+    /**
+     * Writers hash what is written to them.  Random access is always faked, as the content has to be
+     * hashed in order.
+     */
+    @Override
+    public ContentWriter getWriterInternal(ContentReader existingContentReader, String newContentUrl)
+    {
+        if (!deduplicationSupported)
+        {
+            return super.getWriterInternal(existingContentReader, newContentUrl);
+        }
+        try
+        {
+            File file = (newContentUrl == null ? createNewFile() : createNewFile(newContentUrl));
+            String contentUrl = (newContentUrl == null ? makeContentUrl(file) : newContentUrl);
+            DeduplicatingFileContentWriter writer = new DeduplicatingFileContentWriter(file, contentUrl, existingContentReader);
+            if (contentLimitProvider != null)
+            {
+                writer.setContentLimitProvider(contentLimitProvider);
+            }
+            return writer;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to get writer", e);
+        }
+    }
+
+    /**
+     * Deletes the content URL and, if it was the last one sharing a blob, the blob as well.
+     */
+    @Override
+    public boolean delete(String contentUrl)
+    {
+        if (!deduplicationSupported || !isWriteSupported() || contentUrl.startsWith(SPOOF_PROTOCOL))
+        {
+            return super.delete(contentUrl);
+        }
+        File file = makeFile(contentUrl);
+        File blob = null;
+        try
+        {
+            if (file.exists() && getLinkCount(file) > 1)
+            {
+                blob = getBlob(file);
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to find the shared content for: " + contentUrl, e);
+        }
+        if (blob == null)
+        {
+            return super.delete(contentUrl);
+        }
+        synchronized (getLock(blob))
+        {
+            boolean deleted = super.delete(contentUrl);
+            try
+            {
+                if (deleted && blob.exists() && getLinkCount(blob) == 1)
+                {
+                    // The last content URL sharing the blob has gone
+                    Files.deleteIfExists(blob.toPath());
+                }
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to remove unshared content: " + blob, e);
+            }
+            return deleted;
+        }
+    }
+
+    /**
+     * Finds the blob that a file is linked to.  Only the digest of the content identifies the blob, so
+     * the file is read again; deletions are far less frequent than writes.
+     *
+     * @return              Returns the blob or <tt>null</tt> if the file is not linked to one
+     */
+    private File getBlob(File file) throws IOException
+    {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream is = Files.newInputStream(file.toPath()))
+        {
+            int read;
+            while ((read = is.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        File blob = getBlobFile(digest.digest());
+        return (blob.exists() && Files.isSameFile(blob.toPath(), file.toPath()) ? blob : null);
+    }
+
+    private File getBlobFile(byte[] digest)
+    {
+        String hash = new String(Hex.encodeHex(digest));
+        File dir = new File(new File(blobDirectory, hash.substring(0, 2)), hash.substring(2, 4));
+        return new File(dir, hash + BLOB_EXTENSION);
+    }
+
+    private static int getLinkCount(File file) throws IOException
+    {
+        return ((Number) Files.getAttribute(file.toPath(), LINK_COUNT_ATTRIBUTE)).intValue();
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new ContentIOException("Digest algorithm not available: " + DIGEST_ALGORITHM, e);
+        }
+    }
+
+    private Object getLock(File blob)
+    {
+        return locks[(blob.getName().hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    /**
+     * Links a completely written file with the blob for its content: the file becomes the blob if there
+     * is none yet, otherwise the file is replaced by a link onto the existing blob.
+     *
+     * @return              Returns <tt>true</tt> if an existing blob is now shared
+     */
+    private boolean linkBlob(File file, File blob) throws IOException
+    {
+        synchronized (getLock(blob))
+        {
+            File dir = blob.getParentFile();
+            if (!dir.exists() && !dir.mkdirs() && !dir.exists())
+            {
+                throw new IOException("Failed to create directory for file storage: " + dir);
+            }
+            if (blob.exists() && blob.length() == file.length())
+            {
+                // Link next to the file and swap the link in, so that the content URL never goes missing
+                Path link = new File(file.getParentFile(), file.getName() + "." + GUID.generate() + ".tmp").toPath();
+                try
+                {
+                    Files.createLink(link, blob.toPath());
+                    Files.move(link, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    return true;
+                }
+                catch (NoSuchFileException e)
+                {
+                    // The blob was removed by another server sharing the directory; the file becomes the blob
+                    Files.deleteIfExists(link);
+                }
+            }
+            try
+            {
+                Files.createLink(blob.toPath(), file.toPath());
+            }
+            catch (FileAlreadyExistsException e)
+            {
+                // Only a damaged blob has the right digest but the wrong size; leave the file unshared
+                logger.warn("Not sharing content with mismatched blob: " + blob);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Hashes the content as it is written and links it with the blob for its digest once the stream
+     * is closed.
+     */
+    private class DeduplicatingFileContentWriter extends FileContentWriter implements ContentStreamListener
+    {
+        private final MessageDigest digest;
+
+        private DeduplicatingFileContentWriter(File file, String url, ContentReader existingContentReader)
+        {
+            super(file, url, existingContentReader);
+            digest = newDigest();
+            addListener(this);
+        }
+
+        @Override
+        protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+        {
+            File file = getFile();
+            try
+            {
+                // we may not write to an existing file - EVER!!
+                if (file.exists() && file.length() > 0)
+                {
+                    throw new IOException("File exists - overwriting not allowed");
+                }
+                OutputStream os = new DigestOutputStream(new FileOutputStream(file), digest);
+                return Channels.newChannel(os);
+            }
+            catch (Throwable e)
+            {
+                throw new ContentIOException("Failed to open file channel: " + this, e);
+            }
+        }
+
+        /**
+         * Linked content would bypass the digest, so it is always copied.
+         */
+        @Override
+        public boolean linkContent(File source)
+        {
+            return false;
+        }
+
+        @Override
+        public void contentStreamClosed() throws ContentIOException
+        {
+            File blob = getBlobFile(digest.digest());
+            try
+            {
+                boolean shared = linkBlob(getFile(), blob);
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug((shared ? "Shared existing" : "Stored new") + " content: \n" +
+                            "   url:  " + getContentUrl() + "\n" +
+                            "   blob: " + blob);
+                }
+            }
+            catch (IOException | UnsupportedOperationException e)
+            {
+                // The content is complete and readable; it just isn't shared
+                logger.warn("Failed to deduplicate content: " + getContentUrl(), e);
+            }
+        }
+    }
+}
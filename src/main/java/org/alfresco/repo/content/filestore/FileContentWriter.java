@@ -31,13 +31,19 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 import org.alfresco.api.AlfrescoPublicApi;     
 import org.alfresco.repo.content.AbstractContentWriter;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.GUID;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -173,6 +179,102 @@ public class FileContentWriter extends AbstractContentWriter
         }
     }
 
+    /**
+     * Writes the content of a file that will not be modified again, such as a spooled upload, by
+     * linking it into place rather than copying it.  This is only possible when the file is on the
+     * same filesystem as this writer's file; where it is not, nothing is written.  If linking fails
+     * the content is copied instead.  Listeners are notified as for any other write.
+     * 
+     * @param source the file holding the content, which must not be changed afterwards
+     * @return Returns <tt>true</tt> if the content was written, or <tt>false</tt> if it has to
+     *      be written some other way
+     * @throws ContentIOException if the content was neither linked nor copied
+     * 
+     * @since 7.0
+     */
+    public boolean linkContent(File source) throws ContentIOException
+    {
+        if (isChannelOpen() || isClosed())
+        {
+            return false;
+        }
+        long sizeLimit = getContentLimitProvider().getSizeLimit();
+        if (sizeLimit >= 0 && source.length() > sizeLimit)
+        {
+            // Leave it to the copy to enforce the limit
+            return false;
+        }
+        try
+        {
+            if (!Files.getFileStore(source.toPath()).equals(Files.getFileStore(file.getParentFile().toPath())))
+            {
+                return false;
+            }
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        
+        // Open the channel as usual, so that the listeners are called when it is closed
+        WritableByteChannel channel = getWritableChannel();
+        try
+        {
+            try
+            {
+                // Link next to the file and swap the link in, so that the file never goes missing
+                Path link = new File(file.getParentFile(), file.getName() + "." + GUID.generate() + ".tmp").toPath();
+                Files.createLink(link, source.toPath());
+                try
+                {
+                    Files.move(link, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                finally
+                {
+                    Files.deleteIfExists(link);
+                }
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Linked content into place: \n" +
+                            "   file: " + file + "\n" +
+                            "   source: " + source);
+                }
+            }
+            catch (IOException | UnsupportedOperationException e)
+            {
+                // The channel is still open onto the empty file
+                try (FileChannel sourceChannel = FileChannel.open(source.toPath(), StandardOpenOption.READ))
+                {
+                    long size = sourceChannel.size();
+                    long position = 0L;
+                    while (position < size)
+                    {
+                        position += sourceChannel.transferTo(position, size - position, channel);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to write content from file: \n" +
+                    "   writer: " + this + "\n" +
+                    "   file: " + source,
+                    e);
+        }
+        finally
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Failed to close channel: " + this, e);
+            }
+        }
+        return true;
+    }
+
     /**
      * @return Returns true always
      */
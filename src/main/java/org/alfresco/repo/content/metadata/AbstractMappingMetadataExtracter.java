@@ -53,6 +53,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.alfresco.api.AlfrescoPublicApi;     
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.StreamAwareContentReaderProxy;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
@@ -149,6 +150,10 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
     private Properties properties;
     private Map<String, MetadataExtracterLimits> mimetypeLimits;
     private ExecutorService executorService;
+    private ExecutorService largeContentExecutorService;
+    private double largeContentThresholdMB = Double.MAX_VALUE;
+    private boolean sampledExtraction;
+    private SimpleCache<String, Map<String, Serializable>> extractionCache;
     
     private static final AtomicInteger CONCURRENT_EXTRACTIONS_COUNT = new AtomicInteger(0);
 
@@ -465,6 +470,54 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         this.executorService = executorService;
     }
 
+    /**
+     * Sets the <code>ExecutorService</code> used to extract content larger than the
+     * {@link #setLargeContentThresholdMB(double) large content threshold}, so that a few
+     * large documents can't hold up the extraction of the smaller ones.
+     * <p>
+     * If not set, all content is extracted by the {@link #getExecutorService() default executor}.
+     * 
+     * @param largeContentExecutorService the <code>ExecutorService</code> for large content
+     */
+    public void setLargeContentExecutorService(ExecutorService largeContentExecutorService)
+    {
+        this.largeContentExecutorService = largeContentExecutorService;
+    }
+
+    /**
+     * Sets the size (MB) above which content is extracted by the
+     * {@link #setLargeContentExecutorService(ExecutorService) large content executor}.
+     * 
+     * @param largeContentThresholdMB the size in MB
+     */
+    public void setLargeContentThresholdMB(double largeContentThresholdMB)
+    {
+        this.largeContentThresholdMB = largeContentThresholdMB;
+    }
+
+    /**
+     * Set to <tt>true</tt> to try {@link #extractRawSampled(ContentReader)} before the full
+     * {@link #extractRaw(ContentReader) extraction}.  The default is <tt>false</tt>.
+     * 
+     * @param sampledExtraction <tt>true</tt> to read only the parts of the content holding the properties
+     */
+    public void setSampledExtraction(boolean sampledExtraction)
+    {
+        this.sampledExtraction = sampledExtraction;
+    }
+
+    /**
+     * Sets the cache of raw extracted metadata, keyed by extracter, mimetype and content URL.
+     * Content URLs are never reused for different binaries, so copies and versions sharing
+     * the same content are not extracted again.
+     * 
+     * @param extractionCache the cache of raw metadata, or <tt>null</tt> to always extract
+     */
+    public void setExtractionCache(SimpleCache<String, Map<String, Serializable>> extractionCache)
+    {
+        this.extractionCache = extractionCache;
+    }
+
     /**
      * Set the mapping from document metadata to system metadata.  It is possible to direct
      * an extracted document property to several system properties.  The conversion between
@@ -1182,7 +1235,24 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
             // Check that the content has some meat
             if (reader.getSize() > 0 && reader.exists())
             {
-                rawMetadata = extractRaw(reader, getLimits(reader.getMimetype()));
+                String cacheKey = getExtractionCacheKey(reader);
+                rawMetadata = (cacheKey == null ? null : extractionCache.get(cacheKey));
+                if (rawMetadata != null)
+                {
+                    rawMetadata = new HashMap<String, Serializable>(rawMetadata);
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Using cached metadata extraction for " + reader.getContentUrl());
+                    }
+                }
+                else
+                {
+                    rawMetadata = extractRaw(reader, getLimits(reader.getMimetype()));
+                    if (cacheKey != null && rawMetadata != null)
+                    {
+                        extractionCache.put(cacheKey, new HashMap<String, Serializable>(rawMetadata));
+                    }
+                }
             }
             else
             {
@@ -1983,6 +2053,34 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         return limits;
     }
     
+    /**
+     * Gets the key of the content in the {@link #setExtractionCache(SimpleCache) extraction cache}.
+     * 
+     * @return the key or <tt>null</tt> if there is no cache or the content has no URL
+     */
+    private String getExtractionCacheKey(ContentReader reader)
+    {
+        String contentUrl = reader.getContentUrl();
+        if (extractionCache == null || contentUrl == null)
+        {
+            return null;
+        }
+        String extracterName = (beanName == null ? getClass().getName() : beanName);
+        return extracterName + "|" + reader.getMimetype() + "|" + contentUrl;
+    }
+
+    /**
+     * Gets the <code>ExecutorService</code> for content of the given size.
+     */
+    private ExecutorService getExecutorService(long contentSize)
+    {
+        if (largeContentExecutorService != null && contentSize > largeContentThresholdMB * MEGABYTE_SIZE)
+        {
+            return largeContentExecutorService;
+        }
+        return getExecutorService();
+    }
+
     /**
      * <code>Callable</code> wrapper for the 
      * {@link AbstractMappingMetadataExtracter#extractRaw(ContentReader)} method
@@ -2002,6 +2100,14 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         {
             try
             {
+                if (sampledExtraction)
+                {
+                    Map<String, Serializable> rawMetadata = extractSampled(contentReader);
+                    if (rawMetadata != null)
+                    {
+                        return rawMetadata;
+                    }
+                }
                 return extractRaw(contentReader);
             }
             catch (Throwable e)
@@ -2042,7 +2148,8 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
      * using the given limits.
      * <p>
      * Currently the only limit supported by {@link MetadataExtracterLimits} is a timeout
-     * so this method uses {@link AbstractMappingMetadataExtracter#getExecutorService()}
+     * so this method uses {@link AbstractMappingMetadataExtracter#getExecutorService()},
+     * or the large content executor for content over the threshold,
      * to execute a {@link FutureTask} with any timeout defined.
      * <p>
      * If no timeout limit is defined or is unlimited (-1),
@@ -2089,7 +2196,7 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         {
             proxiedReader = new StreamAwareContentReaderProxy(reader);
             task = new FutureTask<Map<String,Serializable>>(new ExtractRawCallable(proxiedReader));
-            getExecutorService().execute(task);
+            getExecutorService(reader.getSize()).execute(task);
             return task.get(limits.getTimeoutMs(), TimeUnit.MILLISECONDS);
         }
         catch (TimeoutException e)
@@ -2162,6 +2269,52 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
      */
     protected abstract Map<String, Serializable> extractRaw(ContentReader reader) throws Throwable;
 
+    /**
+     * Override to provide the raw metadata values by reading only the parts of the content
+     * that hold them, e.g. the document properties part of a package, when
+     * {@link #setSampledExtraction(boolean) sampled extraction} is enabled.
+     * <p>
+     * The values must use the same keys as {@link #extractRaw(ContentReader)}.  The default
+     * implementation returns <tt>null</tt>.
+     * 
+     * @param reader        the document to extract the values from.  This stream provided by
+     *                      the reader must be closed if accessed directly.
+     * @return              Returns a map of document property values keyed by property name
+     *                      or <tt>null</tt> if the content has to be fully extracted.
+     * @throws Throwable    All exception conditions can be handled.
+     */
+    protected Map<String, Serializable> extractRawSampled(ContentReader reader) throws Throwable
+    {
+        return null;
+    }
+
+    /**
+     * Calls {@link #extractRawSampled(ContentReader)}, treating failures and empty results
+     * as a request for a full extraction.
+     */
+    private Map<String, Serializable> extractSampled(ContentReader reader)
+    {
+        try
+        {
+            Map<String, Serializable> rawMetadata = extractRawSampled(reader);
+            if (rawMetadata != null && !rawMetadata.isEmpty())
+            {
+                return rawMetadata;
+            }
+        }
+        catch (Throwable e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Sampled metadata extraction failed, using full extraction: \n" +
+                        "   Extracter: " + this + "\n" +
+                        "   Content:   " + reader,
+                        e);
+            }
+        }
+        return null;
+    }
+
     /**
      * Override to embed metadata values.  An extracter should embed
      * as many of the available properties as is realistically possible.  Even if the
@@ -0,0 +1,294 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Reads document properties by sampling only the parts of a container that hold them,
+ * rather than parsing the whole document:
+ * <ul>
+ *    <li><b>OOXML:</b> the <i>docProps/core.xml</i> part of the zip package.  File based
+ *        content is opened through the zip central directory, so no other part is read.</li>
+ *    <li><b>PDF:</b> the <i>Info</i> dictionary, read through PDFBox without loading the
+ *        pages.  Only file based content is supported.</li>
+ * </ul>
+ * Both readers return <tt>null</tt> whenever the container can't be sampled (password
+ * protected or damaged documents, non-standard packages etc.) so that callers can fall back
+ * to a full extraction.
+ *
+ * @since 7.0
+ */
+public class ContainerMetadataSampler
+{
+    /** The standard location of the OOXML core properties part */
+    public static final String OOXML_CORE_PART = "docProps/core.xml";
+
+    public static final String OOXML_TITLE = "dc:title";
+    public static final String OOXML_CREATOR = "dc:creator";
+    public static final String OOXML_SUBJECT = "dc:subject";
+    public static final String OOXML_DESCRIPTION = "dc:description";
+    public static final String OOXML_CREATED = "dcterms:created";
+    public static final String OOXML_MODIFIED = "dcterms:modified";
+    public static final String OOXML_KEYWORDS = "cp:keywords";
+    public static final String OOXML_LAST_MODIFIED_BY = "cp:lastModifiedBy";
+
+    public static final String PDF_TITLE = "Title";
+    public static final String PDF_AUTHOR = "Author";
+    public static final String PDF_SUBJECT = "Subject";
+    public static final String PDF_KEYWORDS = "Keywords";
+    public static final String PDF_CREATION_DATE = "CreationDate";
+    public static final String PDF_MOD_DATE = "ModDate";
+
+    private static final int MAX_PART_SIZE = 1024 * 1024;
+
+    private static final Map<String, String> OOXML_PREFIXES = new HashMap<String, String>(5);
+    static
+    {
+        OOXML_PREFIXES.put("http://purl.org/dc/elements/1.1/", "dc");
+        OOXML_PREFIXES.put("http://purl.org/dc/terms/", "dcterms");
+        OOXML_PREFIXES.put("http://schemas.openxmlformats.org/package/2006/metadata/core-properties", "cp");
+    }
+
+    private static final Pattern PDF_DATE = Pattern.compile(
+            "(?:D:)?(\\d{4})(\\d{2})?(\\d{2})?(\\d{2})?(\\d{2})?(\\d{2})?(?:([Zz])|([+\\-])(\\d{2})'?(\\d{2})?'?)?.*");
+
+    private ContainerMetadataSampler()
+    {
+        // Utility class
+    }
+
+    /**
+     * Reads the OOXML core properties of a package.  The keys are the qualified element names,
+     * using the conventional <tt>dc</tt>, <tt>dcterms</tt> and <tt>cp</tt> prefixes.
+     *
+     * @param reader        the package content.  It is not read if a file can be opened directly.
+     * @return              the core properties or <tt>null</tt> if the part could not be found
+     */
+    public static Map<String, String> readOOXMLCoreProperties(ContentReader reader) throws IOException
+    {
+        ContentReader sourceReader = reader.getReader();
+        if (sourceReader instanceof FileContentReader)
+        {
+            File file = ((FileContentReader) sourceReader).getFile();
+            try (ZipFile zipFile = new ZipFile(file))
+            {
+                ZipEntry entry = zipFile.getEntry(OOXML_CORE_PART);
+                if (entry == null || entry.getSize() > MAX_PART_SIZE)
+                {
+                    return null;
+                }
+                try (InputStream is = zipFile.getInputStream(entry))
+                {
+                    return parseCoreProperties(is);
+                }
+            }
+        }
+
+        // The local headers have to be walked in order, but the other parts are only skipped
+        try (ZipInputStream zis = new ZipInputStream(sourceReader.getContentInputStream()))
+        {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null)
+            {
+                if (OOXML_CORE_PART.equals(entry.getName()))
+                {
+                    return parseCoreProperties(zis);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static Map<String, String> parseCoreProperties(InputStream is) throws IOException
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+        Map<String, String> properties = new HashMap<String, String>(17);
+        XMLStreamReader xml = null;
+        try
+        {
+            xml = factory.createXMLStreamReader(is);
+            int depth = 0;
+            String key = null;
+            StringBuilder text = new StringBuilder();
+            while (xml.hasNext())
+            {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT)
+                {
+                    depth++;
+                    if (depth == 2)
+                    {
+                        String prefix = OOXML_PREFIXES.get(xml.getNamespaceURI());
+                        key = (prefix == null ? xml.getLocalName() : prefix + ":" + xml.getLocalName());
+                        text.setLength(0);
+                    }
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT)
+                {
+                    if (depth == 2 && key != null)
+                    {
+                        String value = text.toString().trim();
+                        if (value.length() > 0)
+                        {
+                            properties.put(key, value);
+                        }
+                        key = null;
+                    }
+                    depth--;
+                }
+                else if (key != null && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA))
+                {
+                    text.append(xml.getText());
+                }
+            }
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException("Unable to parse the OOXML core properties", e);
+        }
+        finally
+        {
+            if (xml != null)
+            {
+                try { xml.close(); } catch (XMLStreamException e) {}
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Reads the document information dictionary of a PDF.  The keys are the dictionary keys
+     * without the leading slash.  Only string values are returned and the <i>CreationDate</i>
+     * and <i>ModDate</i> values are converted to ISO 8601.
+     * <p>
+     * The document is opened with PDFBox, which only parses the cross-reference data, trailer
+     * and the objects that are dereferenced, so cross-reference streams, object streams and
+     * documents encrypted without a user password are all supported.  Pages are not loaded.
+     *
+     * @param reader        the PDF content
+     * @return              the document information or <tt>null</tt> if it could not be sampled
+     */
+    public static Map<String, String> readPdfInfo(ContentReader reader)
+    {
+        ContentReader sourceReader = reader.getReader();
+        if (!(sourceReader instanceof FileContentReader))
+        {
+            return null;
+        }
+        File file = ((FileContentReader) sourceReader).getFile();
+        try (PDDocument document = PDDocument.load(file))
+        {
+            COSDictionary dictionary = document.getDocumentInformation().getCOSObject();
+            Map<String, String> info = new HashMap<String, String>(11);
+            for (COSName key : dictionary.keySet())
+            {
+                COSBase value = dictionary.getDictionaryObject(key);
+                if (!(value instanceof COSString))
+                {
+                    continue;
+                }
+                String name = key.getName();
+                String text = ((COSString) value).getString();
+                if (PDF_CREATION_DATE.equals(name) || PDF_MOD_DATE.equals(name))
+                {
+                    text = toISO8601(text);
+                }
+                if (text != null && text.length() > 0)
+                {
+                    info.put(name, text);
+                }
+            }
+            return info;
+        }
+        catch (IOException e)
+        {
+            // Includes documents that need a password: the full extraction reports the problem
+            return null;
+        }
+    }
+
+    /**
+     * Converts a PDF date (<tt>D:YYYYMMDDHHmmSSOHH'mm'</tt>) to ISO 8601.
+     *
+     * @return the ISO 8601 date or <tt>null</tt> if the value is not a PDF date
+     */
+    static String toISO8601(String pdfDate)
+    {
+        Matcher matcher = PDF_DATE.matcher(pdfDate.trim());
+        if (!matcher.matches())
+        {
+            return null;
+        }
+        StringBuilder iso = new StringBuilder(25);
+        iso.append(matcher.group(1))
+           .append('-').append(defaultPart(matcher.group(2), "01"))
+           .append('-').append(defaultPart(matcher.group(3), "01"))
+           .append('T').append(defaultPart(matcher.group(4), "00"))
+           .append(':').append(defaultPart(matcher.group(5), "00"))
+           .append(':').append(defaultPart(matcher.group(6), "00"));
+        if (matcher.group(7) != null)
+        {
+            iso.append('Z');
+        }
+        else if (matcher.group(8) != null)
+        {
+            iso.append(matcher.group(8)).append(matcher.group(9))
+               .append(':').append(defaultPart(matcher.group(10), "00"));
+        }
+        return iso.toString();
+    }
+
+    private static String defaultPart(String part, String defaultValue)
+    {
+        return part == null ? defaultValue : part;
+    }
+}
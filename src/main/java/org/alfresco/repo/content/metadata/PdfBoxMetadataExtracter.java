@@ -43,9 +43,12 @@
  */
 package org.alfresco.repo.content.metadata;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Map;
 
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.service.cmr.repository.ContentReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.tika.parser.Parser;
@@ -63,7 +66,9 @@ import org.apache.tika.parser.pdf.PDFParser;
  *   <b>(custom metadata):</b>      --
  * </pre>
  * 
- * Uses Apache Tika
+ * Uses Apache Tika.  When sampled extraction is enabled only the
+ *  document information dictionary is read, unless properties other
+ *  than those above have been mapped.
  * 
  * @author Jesper Steen Møller
  * @author Derek Hulley
@@ -88,4 +93,24 @@ public class PdfBoxMetadataExtracter extends TikaPoweredMetadataExtracter
     {
        return new PDFParser();
     }
+
+    @Override
+    protected Map<String, Serializable> extractRawSampled(ContentReader reader) throws Throwable
+    {
+        if (!isMappingSampled())
+        {
+            return null;
+        }
+        Map<String, String> info = ContainerMetadataSampler.readPdfInfo(reader);
+        if (info == null)
+        {
+            return null;
+        }
+        return buildSampledRawMap(
+                info.get(ContainerMetadataSampler.PDF_AUTHOR),
+                info.get(ContainerMetadataSampler.PDF_TITLE),
+                info.get(ContainerMetadataSampler.PDF_SUBJECT),
+                null,
+                info.get(ContainerMetadataSampler.PDF_CREATION_DATE));
+    }
 }
@@ -25,10 +25,13 @@
  */
 package org.alfresco.repo.content.metadata;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.service.cmr.repository.ContentReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.tika.parser.Parser;
@@ -48,7 +51,9 @@ import org.springframework.beans.factory.InitializingBean;
  *   <b>Any custom property:</b>    --      [not mapped]
  * </pre>
  * 
- * Uses Apache Tika
+ * Uses Apache Tika.  When sampled extraction is enabled only the
+ *  <i>docProps/core.xml</i> part of the package is read, unless
+ *  properties other than those above have been mapped.
  *
  * @author Nick Burch
  * @author Neil McErlean
@@ -76,4 +81,24 @@ public class PoiMetadataExtracter extends TikaPoweredMetadataExtracter
     {
         return new OOXMLParser();
     }
+
+    @Override
+    protected Map<String, Serializable> extractRawSampled(ContentReader reader) throws Throwable
+    {
+        if (!isMappingSampled())
+        {
+            return null;
+        }
+        Map<String, String> core = ContainerMetadataSampler.readOOXMLCoreProperties(reader);
+        if (core == null)
+        {
+            return null;
+        }
+        return buildSampledRawMap(
+                core.get(ContainerMetadataSampler.OOXML_CREATOR),
+                core.get(ContainerMetadataSampler.OOXML_TITLE),
+                core.get(ContainerMetadataSampler.OOXML_SUBJECT),
+                core.get(ContainerMetadataSampler.OOXML_DESCRIPTION),
+                core.get(ContainerMetadataSampler.OOXML_CREATED));
+    }
 }
@@ -109,6 +109,10 @@ public abstract class TikaPoweredMetadataExtracter
     protected static final String KEY_COMMENTS = "comments";
     protected static final String KEY_TAGS = "dc:subject";
 
+    /** The keys that {@link #buildSampledRawMap} can provide */
+    private static final Set<String> SAMPLED_KEYS = new HashSet<String>(Arrays.asList(
+          KEY_AUTHOR, KEY_TITLE, KEY_SUBJECT, KEY_DESCRIPTION, KEY_CREATED));
+
     private DateTimeFormatter tikaUTCDateFormater;
     private DateTimeFormatter tikaDateFormater;
     protected DocumentSelector documentSelector;
@@ -289,6 +293,55 @@ public abstract class TikaPoweredMetadataExtracter
        return properties;
     }
     
+    /**
+     * Builds the raw properties for a sampled extraction, mapping the
+     *  document properties onto the common Alfresco metadata keys
+     *  in the same way as a full extraction does.
+     */
+    protected Map<String, Serializable> buildSampledRawMap(String author, String title,
+          String subject, String description, String created)
+    {
+       Map<String, Serializable> rawProperties = newRawMap();
+       putRawValue(KEY_AUTHOR, author, rawProperties);
+       putRawValue(KEY_TITLE, title, rawProperties);
+       putSubjectAndDescription(subject, description, rawProperties);
+       putRawValue(KEY_CREATED, created, rawProperties);
+       return rawProperties;
+    }
+    
+    /**
+     * A sampled extraction only provides the common keys, so it can only
+     *  stand in for a full extraction if nothing else has been mapped.
+     */
+    protected boolean isMappingSampled()
+    {
+       return SAMPLED_KEYS.containsAll(getMapping().keySet());
+    }
+    
+    /**
+     * Subject and description are each used for the other if
+     *  only one of them is present
+     */
+    private void putSubjectAndDescription(String subject, String description,
+          Map<String, Serializable> rawProperties)
+    {
+       if(subject != null && description != null) 
+       {
+          putRawValue(KEY_DESCRIPTION, description, rawProperties);
+          putRawValue(KEY_SUBJECT, subject, rawProperties);
+       } 
+       else if(subject != null) 
+       {
+          putRawValue(KEY_DESCRIPTION, subject, rawProperties);
+          putRawValue(KEY_SUBJECT, subject, rawProperties);
+       } 
+       else if(description != null) 
+       {
+          putRawValue(KEY_DESCRIPTION, description, rawProperties);
+          putRawValue(KEY_SUBJECT, description, rawProperties);
+       }
+    }
+    
     /**
      * There seems to be some sort of issue with some downstream
      *  3rd party libraries, and input streams that come from
@@ -422,23 +475,10 @@ public abstract class TikaPoweredMetadataExtracter
 
             // Get the subject and description, despite things not
             //  being nearly as consistent as one might hope
-            String subject = getMetadataValue(metadata, Metadata.SUBJECT);
-            String description = getMetadataValue(metadata, Metadata.DESCRIPTION);
-            if(subject != null && description != null) 
-            {
-               putRawValue(KEY_DESCRIPTION, description, rawProperties);
-               putRawValue(KEY_SUBJECT, subject, rawProperties);
-            } 
-            else if(subject != null) 
-            {
-               putRawValue(KEY_DESCRIPTION, subject, rawProperties);
-               putRawValue(KEY_SUBJECT, subject, rawProperties);
-            } 
-            else if(description != null) 
-            {
-               putRawValue(KEY_DESCRIPTION, description, rawProperties);
-               putRawValue(KEY_SUBJECT, description, rawProperties);
-            }
+            putSubjectAndDescription(
+                  getMetadataValue(metadata, Metadata.SUBJECT),
+                  getMetadataValue(metadata, Metadata.DESCRIPTION),
+                  rawProperties);
             
             // Try for the dates two different ways too
             if(metadata.get(Metadata.CREATION_DATE) != null) 
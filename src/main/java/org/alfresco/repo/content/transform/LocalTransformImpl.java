@@ -59,12 +59,16 @@ public class LocalTransformImpl extends AbstractLocalTransform
                               boolean retryTransformOnDifferentMimeType,
                               Set<TransformOption> transformsTransformOptions,
                               LocalTransformServiceRegistry localTransformServiceRegistry, String baseUrl,
-                              int startupRetryPeriodSeconds)
+                              int startupRetryPeriodSeconds, RemoteTransformerConnectionPool connectionPool)
     {
         super(name, transformerDebug, mimetypeService, strictMimeTypeCheck, strictMimetypeExceptions,
                 retryTransformOnDifferentMimeType, transformsTransformOptions, localTransformServiceRegistry);
         remoteTransformerClient = new RemoteTransformerClient(name, baseUrl);
         remoteTransformerClient.setStartupRetryPeriodSeconds(startupRetryPeriodSeconds);
+        if (connectionPool != null)
+        {
+            remoteTransformerClient.setConnectionPool(connectionPool);
+        }
 
         checkAvailability();
     }
@@ -76,6 +76,7 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
     private boolean strictMimeTypeCheck;
     private Map<String, Set<String>> strictMimetypeExceptions;
     private boolean retryTransformOnDifferentMimeType;
+    private RemoteTransformerConnectionPool connectionPool;
 
     public void setPipelineConfigDir(String pipelineConfigDir)
     {
@@ -120,6 +121,14 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
         this.retryTransformOnDifferentMimeType = retryTransformOnDifferentMimeType;
     }
 
+    /**
+     * The connection pool shared by the local transformers' T-Engine clients. If not set, each client has its own.
+     */
+    public void setConnectionPool(RemoteTransformerConnectionPool connectionPool)
+    {
+        this.connectionPool = connectionPool;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception
     {
@@ -204,7 +213,7 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
                 int startupRetryPeriodSeconds = getStartupRetryPeriodSeconds(name);
                 localTransform = new LocalTransformImpl(name, transformerDebug, mimetypeService,
                          strictMimeTypeCheck, strictMimetypeExceptions, retryTransformOnDifferentMimeType,
-                        transformsTransformOptions, this, baseUrl, startupRetryPeriodSeconds);
+                        transformsTransformOptions, this, baseUrl, startupRetryPeriodSeconds, connectionPool);
             }
             else if (isPipeline)
             {
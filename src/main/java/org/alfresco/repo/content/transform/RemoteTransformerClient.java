@@ -41,7 +41,6 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
@@ -52,6 +51,11 @@ import java.util.StringJoiner;
  * request parameters that will be used to transform the content. The transformed content is then returned and
  * saved in a ContentWriter. In the event of an error an Exception is thrown.
  *
+ * Requests are sent through the {@link RemoteTransformerConnectionPool} the client is given, so connections are
+ * kept alive and reused, and the number of transforms in flight to an engine is limited. A client that is not
+ * given a pool creates its own with the default limits. The source and target content are streamed rather than
+ * buffered.
+ *
  * @since 6.0
  */
 public class RemoteTransformerClient
@@ -69,6 +73,11 @@ public class RemoteTransformerClient
     // Only changed once on success. This is stored so it can always be returned.
     private Pair<Boolean, String> checkResult = new Pair<>(null, null);
 
+    // The length of time to wait for an in-flight slot before giving up. 0 waits indefinitely.
+    private long inFlightTimeoutMs = 0L;
+
+    private volatile RemoteTransformerConnectionPool pool;
+
     public RemoteTransformerClient(String name, String baseUrl)
     {
         this.name = name;
@@ -80,6 +89,40 @@ public class RemoteTransformerClient
         startupRetryPeriod = startupRetryPeriodSeconds*1000;
     }
 
+    /**
+     * The connection pool through which requests are sent, which may be shared with other clients.
+     */
+    public void setConnectionPool(RemoteTransformerConnectionPool pool)
+    {
+        this.pool = pool;
+    }
+
+    public void setInFlightTimeoutMs(long inFlightTimeoutMs)
+    {
+        this.inFlightTimeoutMs = inFlightTimeoutMs;
+    }
+
+    /**
+     * @return the connection pool through which requests are sent
+     */
+    public RemoteTransformerConnectionPool getPool()
+    {
+        if (pool == null)
+        {
+            synchronized (this)
+            {
+                if (pool == null)
+                {
+                    RemoteTransformerConnectionPool ownPool = new RemoteTransformerConnectionPool();
+                    ownPool.setBeanName(name);
+                    ownPool.afterPropertiesSet();
+                    pool = ownPool;
+                }
+            }
+        }
+        return pool;
+    }
+
     public String getBaseUrl()
     {
         return baseUrl;
@@ -137,79 +180,84 @@ public class RemoteTransformerClient
             logger.debug(name+' '+sourceExtension+' '+targetExtension+' '+url+' '+args);
         }
 
+        RemoteTransformerConnectionPool pool = getPool();
         try
         {
-            try (CloseableHttpClient httpclient = HttpClients.createDefault())
+            acquire(pool, url, args);
+            long startTime = System.currentTimeMillis();
+            try (CloseableHttpResponse response = execute(pool.getHttpClient(), httppost))
             {
-                try (CloseableHttpResponse response = execute(httpclient, httppost))
+                StatusLine statusLine = response.getStatusLine();
+                if (statusLine == null)
                 {
-                    StatusLine statusLine = response.getStatusLine();
-                    if (statusLine == null)
-                    {
-                        throw new AlfrescoRuntimeException(name+" returned no status " + url + ' ' + args);
-                    }
-                    HttpEntity resEntity = response.getEntity();
-                    if (resEntity != null)
+                    throw new AlfrescoRuntimeException(name+" returned no status " + url + ' ' + args);
+                }
+                HttpEntity resEntity = response.getEntity();
+                if (resEntity != null)
+                {
+                    int statusCode = statusLine.getStatusCode();
+                    if (statusCode == 200)
                     {
-                        int statusCode = statusLine.getStatusCode();
-                        if (statusCode == 200)
+                        try
                         {
-                            try
-                            {
-                                if (logger.isDebugEnabled())
-                                {
-                                    long responseContentLength = resEntity.getContentLength();
-                                    Header responseContentEncoding = resEntity.getContentEncoding();
-                                    Header responseContentType = resEntity.getContentType();
-                                    logger.debug(name + ' ' + sourceExtension + ' ' + targetExtension +
-                                            " returned. length=" + responseContentLength +
-                                            " type=" + responseContentType +
-                                            " encoding=" + responseContentEncoding);
-                                }
-
-                                writer.putContent(resEntity.getContent());
-                                EntityUtils.consume(resEntity);
-                            }
-                            catch (IOException e)
+                            if (logger.isDebugEnabled())
                             {
-                                throw new AlfrescoRuntimeException(name + " failed to read the returned content", e);
+                                long responseContentLength = resEntity.getContentLength();
+                                Header responseContentEncoding = resEntity.getContentEncoding();
+                                Header responseContentType = resEntity.getContentType();
+                                logger.debug(name + ' ' + sourceExtension + ' ' + targetExtension +
+                                        " returned. length=" + responseContentLength +
+                                        " type=" + responseContentType +
+                                        " encoding=" + responseContentEncoding);
                             }
+
+                            writer.putContent(resEntity.getContent());
+                            EntityUtils.consume(resEntity);
                         }
-                        else
+                        catch (IOException e)
                         {
-                            String message = getErrorMessage(resEntity);
-                            String msg = (name + " returned a " + statusCode + " status " + message +
-                                    ' ' + url + ' ' + args).trim();
-                            if (statusCode == 401)
-                            {
-                                throw new UnsupportedTransformationException(msg);
-                            }
-                            else if (statusCode == 402)
-                            {
-                                throw new UnimportantTransformException(msg);
-                            }
-                            else
-                            {
-                                throw new AlfrescoRuntimeException(msg);
-                            }
+                            throw new AlfrescoRuntimeException(name + " failed to read the returned content", e);
                         }
                     }
                     else
                     {
-                        throw new AlfrescoRuntimeException(name + " did not return an entity " + url);
+                        String message = getErrorMessage(resEntity);
+                        String msg = (name + " returned a " + statusCode + " status " + message +
+                                ' ' + url + ' ' + args).trim();
+                        if (statusCode == 401)
+                        {
+                            throw new UnsupportedTransformationException(msg);
+                        }
+                        else if (statusCode == 402)
+                        {
+                            throw new UnimportantTransformException(msg);
+                        }
+                        else
+                        {
+                            throw new AlfrescoRuntimeException(msg);
+                        }
                     }
                 }
-                catch (IOException e)
+                else
                 {
-                    // In the case of transform requests, unlike version checks, it is only the failure to connect that
-                    // forces a wait before trying again.
-                    connectionFailed();
-                    throw new AlfrescoRuntimeException(name + " failed to connect or to read the response", e);
+                    throw new AlfrescoRuntimeException(name + " did not return an entity " + url);
                 }
             }
             catch (IOException e)
             {
-                throw new AlfrescoRuntimeException(name + " failed to create an HttpClient", e);
+                // In the case of transform requests, unlike version checks, it is only the failure to connect that
+                // forces a wait before trying again.
+                connectionFailed();
+                pool.failed();
+                throw new AlfrescoRuntimeException(name + " failed to connect or to read the response", e);
+            }
+            finally
+            {
+                pool.release(baseUrl, startTime);
+                if (logger.isTraceEnabled())
+                {
+                    logger.trace(name + ' ' + pool);
+                }
             }
         }
         catch (AlfrescoRuntimeException e)
@@ -222,6 +270,24 @@ public class RemoteTransformerClient
         }
     }
 
+    private void acquire(RemoteTransformerConnectionPool pool, String url, String args)
+    {
+        boolean acquired;
+        try
+        {
+            acquired = pool.acquire(baseUrl, inFlightTimeoutMs);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException(name + " was interrupted waiting to send a request " + url + ' ' + args, e);
+        }
+        if (!acquired)
+        {
+            throw new AlfrescoRuntimeException(name + " has too many requests in progress " + url + ' ' + args);
+        }
+    }
+
     /**
      *  Indicates if a remote transform:
      *  a) ready probe has ever indicated success {@code new Pair<>(true, <version string>)},
@@ -242,67 +308,61 @@ public class RemoteTransformerClient
 
         try
         {
-            try (CloseableHttpClient httpclient = HttpClients.createDefault())
+            // Availability checks do not take an in-flight slot so that they are not queued behind transforms
+            try (CloseableHttpResponse response = execute(getPool().getHttpClient(), httpGet))
             {
-                try (CloseableHttpResponse response = execute(httpclient, httpGet))
+                StatusLine statusLine = response.getStatusLine();
+                if (statusLine == null)
                 {
-                    StatusLine statusLine = response.getStatusLine();
-                    if (statusLine == null)
-                    {
-                        throw new AlfrescoRuntimeException(name+" check returned no status " + url);
-                    }
-                    HttpEntity resEntity = response.getEntity();
-                    if (resEntity != null)
+                    throw new AlfrescoRuntimeException(name+" check returned no status " + url);
+                }
+                HttpEntity resEntity = response.getEntity();
+                if (resEntity != null)
+                {
+                    int statusCode = statusLine.getStatusCode();
+                    if (statusCode == 200)
                     {
-                        int statusCode = statusLine.getStatusCode();
-                        if (statusCode == 200)
+                        try
                         {
-                            try
-                            {
-                                String version = getContent(resEntity);
-
-                                if (logger.isTraceEnabled())
-                                {
-                                    long responseContentLength = resEntity.getContentLength();
-                                    Header responseContentType = resEntity.getContentType();
-                                    Header responseContentEncoding = resEntity.getContentEncoding();
-                                    logger.trace(name +
-                                            " check returned. length=" + responseContentLength +
-                                            " type=" + responseContentType +
-                                            " encoding=" + responseContentEncoding+
-                                            " content="+version);
-                                }
-
-                                EntityUtils.consume(resEntity);
-                                connectionSuccess();
-                                Pair<Boolean, String> success = new Pair<>(true, version);
-                                setCheckResult(success);
-                                return success;
-                            }
-                            catch (IOException e)
+                            String version = getContent(resEntity);
+
+                            if (logger.isTraceEnabled())
                             {
-                                throw new AlfrescoRuntimeException(name + " check failed to read the returned content", e);
+                                long responseContentLength = resEntity.getContentLength();
+                                Header responseContentType = resEntity.getContentType();
+                                Header responseContentEncoding = resEntity.getContentEncoding();
+                                logger.trace(name +
+                                        " check returned. length=" + responseContentLength +
+                                        " type=" + responseContentType +
+                                        " encoding=" + responseContentEncoding+
+                                        " content="+version);
                             }
+
+                            EntityUtils.consume(resEntity);
+                            connectionSuccess();
+                            Pair<Boolean, String> success = new Pair<>(true, version);
+                            setCheckResult(success);
+                            return success;
                         }
-                        else
+                        catch (IOException e)
                         {
-                            String message = getErrorMessage(resEntity);
-                            throw new AlfrescoRuntimeException(name + " check returned a " + statusCode + " status " + message + ' ' + url);
+                            throw new AlfrescoRuntimeException(name + " check failed to read the returned content", e);
                         }
                     }
                     else
                     {
-                        throw new AlfrescoRuntimeException(name + " check did not return an entity " + url);
+                        String message = getErrorMessage(resEntity);
+                        throw new AlfrescoRuntimeException(name + " check returned a " + statusCode + " status " + message + ' ' + url);
                     }
                 }
-                catch (IOException e)
+                else
                 {
-                    throw new AlfrescoRuntimeException(name + " check failed to connect or to read the response", e);
+                    throw new AlfrescoRuntimeException(name + " check did not return an entity " + url);
                 }
             }
             catch (IOException e)
             {
-                throw new AlfrescoRuntimeException(name + " check failed to create an HttpClient", e);
+                throw new AlfrescoRuntimeException(name + " check failed to connect or to read the response", e);
             }
         }
         catch (AlfrescoRuntimeException e)
@@ -0,0 +1,394 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pooled, keep-alive HTTP client used by {@link RemoteTransformerClient}s, together with a limit on the
+ * number of requests that may be in flight to each T-Engine at once.
+ * <p>
+ * A pool is a Spring bean that is given to the clients that should share it. The limits apply to each T-Engine
+ * (base URL) separately, so one pool may serve several engines, as the local transformers do. The pool is
+ * closed when the application context shuts down and, if an exporter is set, its statistics are available
+ * over JMX.
+ *
+ * @since 7.0
+ */
+public class RemoteTransformerConnectionPool implements RemoteTransformerConnectionPoolMBean, BeanNameAware,
+        InitializingBean, DisposableBean
+{
+    private static final Log logger = LogFactory.getLog(RemoteTransformerConnectionPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 20;
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30000L;
+    public static final long DEFAULT_TIME_TO_LIVE_MS = -1L;
+
+    private String name = RemoteTransformerConnectionPool.class.getSimpleName();
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+    private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private long timeToLiveMs = DEFAULT_TIME_TO_LIVE_MS;
+    private DynamicMBeanExportOperations mbeanExporter;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private ObjectName objectName;
+    private boolean closed;
+
+    /** The in-flight slots of each T-Engine, by base URL */
+    private final Map<String, Semaphore> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+    private final AtomicLong totalWaitMs = new AtomicLong();
+
+    @Override
+    public void setBeanName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * The maximum number of pooled connections to each T-Engine.
+     */
+    public void setMaxConnections(int maxConnections)
+    {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * The maximum number of transforms in flight to each T-Engine.
+     */
+    public void setMaxInFlight(int maxInFlight)
+    {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * The maximum number of pooled connections over all T-Engines.
+     */
+    public void setMaxTotalConnections(int maxTotalConnections)
+    {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    /**
+     * How long an unused connection is kept open before the pool's evictor closes it.
+     */
+    public void setIdleTimeoutMs(long idleTimeoutMs)
+    {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * The maximum lifetime of a connection, however busy it is, or zero or less for no limit.
+     */
+    public void setTimeToLiveMs(long timeToLiveMs)
+    {
+        this.timeToLiveMs = timeToLiveMs;
+    }
+
+    /**
+     * The exporter used to make the pool's statistics available over JMX. Optional.
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    @Override
+    public synchronized void afterPropertiesSet()
+    {
+        if (httpClient != null)
+        {
+            return;
+        }
+        if (maxConnections < 1 || maxInFlight < 1 || maxTotalConnections < maxConnections)
+        {
+            throw new IllegalArgumentException("maxConnections and maxInFlight must be at least 1, and " +
+                    "maxTotalConnections at least maxConnections, for " + name);
+        }
+
+        connectionManager = new PoolingHttpClientConnectionManager(timeToLiveMs, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setDefaultRequestConfig(RequestConfig.custom().setContentCompressionEnabled(false).build())
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutMs, TimeUnit.MILLISECONDS)
+                .disableAutomaticRetries()
+                .build();
+
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                objectName = new ObjectName("Alfresco:Type=TransformerConnectionPool,Name=" + ObjectName.quote(name));
+                mbeanExporter.registerMBean(this, objectName);
+            }
+            catch (MalformedObjectNameException | RuntimeException e)
+            {
+                objectName = null;
+                logger.warn("Failed to export the statistics of " + name + " over JMX", e);
+            }
+        }
+    }
+
+    /**
+     * Closes the pooled connections.
+     */
+    @Override
+    public synchronized void destroy()
+    {
+        if (objectName != null)
+        {
+            mbeanExporter.unregisterMBean(objectName);
+            objectName = null;
+        }
+        if (httpClient != null)
+        {
+            try
+            {
+                httpClient.close();
+            }
+            catch (IOException ignore)
+            {
+                // Nothing more can be done
+            }
+            httpClient = null;
+        }
+        closed = true;
+    }
+
+    public synchronized CloseableHttpClient getHttpClient()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException(name + " has been closed");
+        }
+        if (httpClient == null)
+        {
+            // Not created by Spring
+            afterPropertiesSet();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Waits for one of a T-Engine's in-flight slots.
+     *
+     * @param baseUrl   the base URL of the T-Engine
+     * @param timeoutMs the maximum time to wait, or 0 or less to wait indefinitely
+     * @return <tt>true</tt> if a slot was acquired and must be released with {@link #release(String, long)}
+     */
+    public boolean acquire(String baseUrl, long timeoutMs) throws InterruptedException
+    {
+        Semaphore slots = getInFlightSlots(baseUrl);
+        long start = System.currentTimeMillis();
+        boolean acquired;
+        if (timeoutMs > 0)
+        {
+            acquired = slots.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            slots.acquire();
+            acquired = true;
+        }
+        totalWaitMs.addAndGet(System.currentTimeMillis() - start);
+        if (!acquired)
+        {
+            rejectedCount.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    /**
+     * Releases an in-flight slot and records the request.
+     *
+     * @param baseUrl   the base URL of the T-Engine
+     * @param startTime the time the request was sent
+     */
+    public void release(String baseUrl, long startTime)
+    {
+        getInFlightSlots(baseUrl).release();
+        long latency = System.currentTimeMillis() - startTime;
+        requestCount.incrementAndGet();
+        totalLatencyMs.addAndGet(latency);
+        maxLatencyMs.accumulateAndGet(latency, Math::max);
+    }
+
+    public void failed()
+    {
+        failureCount.incrementAndGet();
+    }
+
+    private Semaphore getInFlightSlots(String baseUrl)
+    {
+        return inFlight.computeIfAbsent(baseUrl, url -> new Semaphore(maxInFlight, true));
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    @Override
+    public int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+
+    @Override
+    public int getInFlight()
+    {
+        int count = 0;
+        for (Semaphore slots : inFlight.values())
+        {
+            count += maxInFlight - slots.availablePermits();
+        }
+        return count;
+    }
+
+    @Override
+    public int getQueuedRequests()
+    {
+        int count = 0;
+        for (Semaphore slots : inFlight.values())
+        {
+            count += slots.getQueueLength();
+        }
+        return count;
+    }
+
+    @Override
+    public int getLeasedConnections()
+    {
+        return getPoolStats().getLeased();
+    }
+
+    @Override
+    public int getAvailableConnections()
+    {
+        return getPoolStats().getAvailable();
+    }
+
+    @Override
+    public int getPendingConnections()
+    {
+        return getPoolStats().getPending();
+    }
+
+    private synchronized PoolStats getPoolStats()
+    {
+        return connectionManager == null ? new PoolStats(0, 0, 0, maxTotalConnections) : connectionManager.getTotalStats();
+    }
+
+    @Override
+    public long getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    @Override
+    public long getFailureCount()
+    {
+        return failureCount.get();
+    }
+
+    @Override
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public long getAverageLatencyMs()
+    {
+        long count = requestCount.get();
+        return count == 0 ? 0 : totalLatencyMs.get() / count;
+    }
+
+    @Override
+    public long getMaxLatencyMs()
+    {
+        return maxLatencyMs.get();
+    }
+
+    @Override
+    public long getTotalWaitMs()
+    {
+        return totalWaitMs.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + " inFlight=" + getInFlight() + " queued=" + getQueuedRequests() +
+                " connections(leased=" + getLeasedConnections() + " available=" + getAvailableConnections() +
+                " pending=" + getPendingConnections() + " max=" + maxConnections + ')' +
+                " requests=" + getRequestCount() + " failures=" + getFailureCount() +
+                " rejected=" + getRejectedCount() + " avgLatencyMs=" + getAverageLatencyMs() +
+                " maxLatencyMs=" + getMaxLatencyMs();
+    }
+}
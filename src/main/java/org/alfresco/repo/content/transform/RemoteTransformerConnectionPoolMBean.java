@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+/**
+ * Management interface of a {@link RemoteTransformerConnectionPool}, exported over JMX.
+ *
+ * @since 7.0
+ */
+public interface RemoteTransformerConnectionPoolMBean
+{
+    /**
+     * @return the maximum number of pooled connections to each T-Engine
+     */
+    public int getMaxConnections();
+
+    /**
+     * @return the maximum number of transforms in flight to each T-Engine
+     */
+    public int getMaxInFlight();
+
+    /**
+     * @return the number of transforms currently in flight, over all T-Engines
+     */
+    public int getInFlight();
+
+    /**
+     * @return the number of transforms waiting for an in-flight slot
+     */
+    public int getQueuedRequests();
+
+    public int getLeasedConnections();
+
+    public int getAvailableConnections();
+
+    public int getPendingConnections();
+
+    public long getRequestCount();
+
+    public long getFailureCount();
+
+    /**
+     * @return the number of transforms that gave up waiting for an in-flight slot
+     */
+    public long getRejectedCount();
+
+    public long getAverageLatencyMs();
+
+    public long getMaxLatencyMs();
+
+    /**
+     * @return the total time transforms have spent waiting for an in-flight slot
+     */
+    public long getTotalWaitMs();
+}
@@ -34,9 +34,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.EmptyContentReader;
 import org.alfresco.repo.dictionary.DynamicModelPolicies.OnLoadDynamicModel;
 import org.alfresco.repo.i18n.MessageDeployer;
@@ -50,6 +53,7 @@ import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.InvalidNodeRefException;
@@ -108,6 +112,12 @@ implements TenantDeployer, DictionaryListener, /*TenantDictionaryListener, */Mes
     /** The policy component */
     private PolicyComponent policyComponent;
     
+    /** Parsed repository models by content URL - content URLs change whenever a model does */
+    private int modelCacheSize = 256;
+    private SimpleCache<String, M2Model> modelCache = createModelCache(modelCacheSize);
+    private final AtomicLong modelCacheHits = new AtomicLong();
+    private final AtomicLong modelCacheMisses = new AtomicLong();
+    
       
     /**
      * Sets the Dictionary DAO
@@ -210,6 +220,38 @@ implements TenantDeployer, DictionaryListener, /*TenantDictionaryListener, */Mes
     {
         this.repositoryMessagesLocations = repositoryLocations;
     }
+    
+    /**
+     * @param modelCacheSize    the maximum number of parsed repository models to keep for dictionary reloads and
+     *                          tenant activations - set to zero to read and parse the models every time.
+     */
+    public void setModelCacheSize(int modelCacheSize)
+    {
+        this.modelCacheSize = modelCacheSize;
+        this.modelCache = createModelCache(modelCacheSize);
+    }
+    
+    /**
+     * @return the number of repository models that did not have to be read and parsed
+     */
+    public long getModelCacheHits()
+    {
+        return this.modelCacheHits.get();
+    }
+    
+    /**
+     * @return the number of repository models that were read and parsed
+     */
+    public long getModelCacheMisses()
+    {
+        return this.modelCacheMisses.get();
+    }
+    
+    private static SimpleCache<String, M2Model> createModelCache(int size)
+    {
+        // Nothing is put in the cache when its size is zero
+        return new DefaultSimpleCache<String, M2Model>(Math.max(size, 1), DictionaryRepositoryBootstrap.class.getName() + ".modelCache");
+    }
 
     private ClassPolicyDelegate<OnLoadDynamicModel> onLoadDynamicModelDelegate;
     
@@ -314,7 +356,7 @@ implements TenantDeployer, DictionaryListener, /*TenantDictionaryListener, */Mes
                                     
                                     if ((isActive != null) && (isActive.booleanValue() == true))
                                     {
-                                        M2Model model = createM2Model(dictionaryModel);
+                                        M2Model model = getM2Model(dictionaryModel);
                                         if (model != null)
                                         {
                                             if (logger.isTraceEnabled())
@@ -594,6 +636,36 @@ implements TenantDeployer, DictionaryListener, /*TenantDictionaryListener, */Mes
         }
     }
 
+    /**
+     * Get the M2Model of a dictionary model node, parsing its content only if it has not been parsed before.
+     * The models are shared by the dictionaries of every reload and tenant, so they are not handed out.
+     * 
+     * @param nodeRef   the dictionary model node reference
+     * @return          the M2Model
+     */
+    private M2Model getM2Model(NodeRef nodeRef)
+    {
+        ContentData contentData = (ContentData) nodeService.getProperty(nodeRef, ContentModel.PROP_CONTENT);
+        String contentUrl = (contentData == null ? null : contentData.getContentUrl());
+        if (contentUrl == null || modelCacheSize <= 0)
+        {
+            return createM2Model(nodeRef);
+        }
+        M2Model model = modelCache.get(contentUrl);
+        if (model != null)
+        {
+            modelCacheHits.incrementAndGet();
+            return model;
+        }
+        modelCacheMisses.incrementAndGet();
+        model = createM2Model(nodeRef);
+        if (model != null)
+        {
+            modelCache.put(contentUrl, model);
+        }
+        return model;
+    }
+
     /**
      * Create a M2Model from a dictionary model node
      * 
@@ -26,13 +26,17 @@
 package org.alfresco.repo.domain.contentdata;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.BatchEntityLookupCallbackDAO;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
 import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
 import org.alfresco.repo.domain.control.ControlDAO;
@@ -179,6 +183,66 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
         return entityPair;
     }
 
+    @Override
+    public List<Pair<Long, ContentData>> createContentData(List<ContentData> contentDatas)
+    {
+        // Resolve the content URLs and mimetypes of all the values together
+        List<ContentData> values = new ArrayList<ContentData>(contentDatas.size());
+        List<ContentUrlEntity> contentUrlEntities = new ArrayList<ContentUrlEntity>(contentDatas.size());
+        List<String> mimetypes = new ArrayList<String>(contentDatas.size());
+        for (ContentData contentData : contentDatas)
+        {
+            if (contentData == null)
+            {
+                throw new IllegalArgumentException("ContentData values cannot be null");
+            }
+            contentData = sanitizeMimetype(contentData);
+            values.add(contentData);
+            if (contentData.getContentUrl() != null)
+            {
+                ContentUrlEntity contentUrlEntity = new ContentUrlEntity();
+                contentUrlEntity.setContentUrl(contentData.getContentUrl());
+                contentUrlEntity.setSize(contentData.getSize());
+                contentUrlEntities.add(contentUrlEntity);
+            }
+            if (contentData.getMimetype() != null)
+            {
+                mimetypes.add(contentData.getMimetype());
+            }
+        }
+        Map<String, Long> contentUrlIds = new HashMap<String, Long>(contentUrlEntities.size() * 2);
+        if (!contentUrlEntities.isEmpty())
+        {
+            List<Pair<Long, ContentUrlEntity>> pairs = contentUrlCache.getOrCreateByValues(contentUrlEntities);
+            for (int i = 0; i < contentUrlEntities.size(); i++)
+            {
+                contentUrlIds.put(contentUrlEntities.get(i).getContentUrl(), pairs.get(i).getFirst());
+            }
+        }
+        Map<String, Long> mimetypeIds = new HashMap<String, Long>(mimetypes.size() * 2);
+        if (!mimetypes.isEmpty())
+        {
+            for (Pair<Long, String> pair : mimetypeDAO.getOrCreateMimetypes(mimetypes))
+            {
+                mimetypeIds.put(pair.getSecond(), pair.getFirst());
+            }
+        }
+
+        List<Pair<Long, ContentData>> entityPairs = new ArrayList<Pair<Long, ContentData>>(values.size());
+        for (ContentData contentData : values)
+        {
+            ContentDataEntity contentDataEntity = createContentDataEntity(
+                    contentData,
+                    contentUrlIds.get(contentData.getContentUrl()),
+                    mimetypeIds.get(contentData.getMimetype()));
+            Long id = contentDataEntity.getId();
+            contentDataCache.setValue(id, contentData);
+            entityPairs.add(new Pair<Long, ContentData>(id, contentData));
+        }
+        // Done
+        return entityPairs;
+    }
+
     @Override
     public Pair<Long, ContentData> getContentData(Long id)
     {
@@ -340,7 +404,9 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
     /**
      * Callback for <b>alf_content_url</b> DAO.
      */
-    private class ContentUrlCallbackDAO extends EntityLookupCallbackDAOAdaptor<Long, ContentUrlEntity, String>
+    private class ContentUrlCallbackDAO
+            extends EntityLookupCallbackDAOAdaptor<Long, ContentUrlEntity, String>
+            implements BatchEntityLookupCallbackDAO<Long, ContentUrlEntity, String>
     {
         /**
          * @return                  Returns the Node's NodeRef
@@ -362,6 +428,38 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
             return (ret != null ? new Pair<Long, ContentUrlEntity>(ret.getId(), ret) : null);
         }
 
+        /**
+         * Looks the content URLs up together, matching them on the same unique key as {@link #findByValue(ContentUrlEntity)}
+         */
+        public List<Pair<Long, ContentUrlEntity>> findByValues(List<ContentUrlEntity> entities)
+        {
+            List<String> contentUrls = new ArrayList<String>(entities.size());
+            for (ContentUrlEntity entity : entities)
+            {
+                contentUrls.add(entity.getContentUrl());
+            }
+            Map<Pair<String, Long>, ContentUrlEntity> found = new HashMap<Pair<String, Long>, ContentUrlEntity>(entities.size() * 2);
+            for (ContentUrlEntity ret : getContentUrlEntities(contentUrls))
+            {
+                found.put(getUniqueKey(ret), ret);
+            }
+            List<Pair<Long, ContentUrlEntity>> entityPairs = new ArrayList<Pair<Long, ContentUrlEntity>>(entities.size());
+            for (ContentUrlEntity entity : entities)
+            {
+                ContentUrlEntity ret = found.get(getUniqueKey(entity));
+                entityPairs.add(ret != null ? new Pair<Long, ContentUrlEntity>(ret.getId(), ret) : null);
+            }
+            return entityPairs;
+        }
+
+        private Pair<String, Long> getUniqueKey(ContentUrlEntity entity)
+        {
+            String contentUrlShort = entity.getContentUrlShort();
+            return new Pair<String, Long>(
+                    contentUrlShort == null ? null : contentUrlShort.toLowerCase(),
+                    entity.getContentUrlCrc());
+        }
+
         public Pair<Long, ContentUrlEntity> createValue(ContentUrlEntity value)
         {
             ContentUrlEntity contentUrlEntity = createContentUrlEntity(value.getContentUrl(), value.getSize(), value.getContentUrlKey());
@@ -474,6 +572,14 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
         {
             mimetypeId = mimetypeDAO.getOrCreateMimetype(mimetype).getFirst();
         }
+        return createContentDataEntity(contentData, contentUrlId, mimetypeId);
+    }
+
+    /**
+     * Translates the {@link ContentData} into persistable values, given its resolved content URL and mimetype
+     */
+    private ContentDataEntity createContentDataEntity(ContentData contentData, Long contentUrlId, Long mimetypeId)
+    {
         // Resolve the encoding
         Long encodingId = null;
         String encoding = contentData.getEncoding();
@@ -643,6 +749,12 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
 
     protected abstract ContentUrlEntity getContentUrlEntity(String contentUrl);
 
+    /**
+     * @param contentUrls   the URLs of the <b>content url</b> entities
+     * @return              Return the entities that exist, in no particular order
+     */
+    protected abstract List<ContentUrlEntity> getContentUrlEntities(List<String> contentUrls);
+
     
     /**
      * @param contentUrl    the URL of the <b>content url</b> entity
@@ -52,6 +52,16 @@ public interface ContentDataDAO
      * @return              the ContentData pair (id, ContentData) (never null)
      */
     Pair<Long, ContentData> createContentData(ContentData contentData);
+
+    /**
+     * Create new ContentData instances.  The content URLs and mimetypes of all of the values
+     * are looked up together, rather than once for each value.
+     * 
+     * @param contentDatas  the ContentData details
+     * @return              the ContentData pairs (id, ContentData) in the order of the values given
+     * @since 7.0
+     */
+    List<Pair<Long, ContentData>> createContentData(List<ContentData> contentDatas);
     
     /**
      * Update a content data instance
@@ -62,6 +62,7 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
 {
     private static final String SELECT_CONTENT_URL_BY_ID = "alfresco.content.select_ContentUrlById";
     private static final String SELECT_CONTENT_URL_BY_KEY = "alfresco.content.select_ContentUrlByKey";
+    private static final String SELECT_CONTENT_URLS_BY_KEYS = "alfresco.content.select_ContentUrlsByKeys";
     private static final String SELECT_CONTENT_URL_BY_KEY_UNREFERENCED = "alfresco.content.select_ContentUrlByKeyUnreferenced";
     private static final String SELECT_CONTENT_URLS_ORPHANED = "alfresco.content.select.select_ContentUrlsOrphaned";
     private static final String SELECT_CONTENT_URLS_KEEP_ORPHANED = "alfresco.content.select_ContentUrlsKeepOrphaned";
@@ -145,6 +146,23 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
         return contentUrlEntity;
     }
 
+    @Override
+    protected List<ContentUrlEntity> getContentUrlEntities(List<String> contentUrls)
+    {
+        List<ContentUrlEntity> keys = new ArrayList<ContentUrlEntity>(contentUrls.size());
+        for (String contentUrl : contentUrls)
+        {
+            ContentUrlEntity contentUrlEntity = new ContentUrlEntity();
+            contentUrlEntity.setContentUrl(contentUrl);
+            if (contentUrlEntity.getContentUrlShort() != null)
+            {
+                contentUrlEntity.setContentUrlShort(contentUrlEntity.getContentUrlShort().toLowerCase());
+            }
+            keys.add(contentUrlEntity);
+        }
+        return template.selectList(SELECT_CONTENT_URLS_BY_KEYS, keys);
+    }
+
     @Override
     public void getContentUrlsOrphaned(
             final ContentUrlHandler contentUrlHandler,
@@ -26,6 +26,12 @@
 package org.alfresco.repo.domain.mimetype;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.cache.SimpleCache;
@@ -135,6 +141,61 @@ public abstract class AbstractMimetypeDAOImpl implements MimetypeDAO
         return result;
     }
     
+    public List<Pair<Long, String>> getOrCreateMimetypes(List<String> mimetypes)
+    {
+        ParameterCheck.mandatory("mimetypes", mimetypes);
+        
+        // Check the cache
+        Map<String, Long> ids = new HashMap<String, Long>(mimetypes.size() * 2);
+        Set<String> missingMimetypes = new LinkedHashSet<String>(mimetypes.size() * 2);
+        for (String mimetype : mimetypes)
+        {
+            ParameterCheck.mandatory("mimetype", mimetype);
+            mimetype = sanitizeMimetype(mimetype);
+            Long id = (Long) mimetypeEntityCache.get(mimetype);
+            if (id != null && !id.equals(CACHE_NULL_LONG))
+            {
+                ids.put(mimetype, id);
+            }
+            else
+            {
+                missingMimetypes.add(mimetype);
+            }
+        }
+        if (!missingMimetypes.isEmpty())
+        {
+            // Query for the rest together and create what doesn't exist
+            for (MimetypeEntity mimetypeEntity : getMimetypeEntities(new ArrayList<String>(missingMimetypes)))
+            {
+                String mimetype = mimetypeEntity.getMimetype();
+                if (missingMimetypes.remove(mimetype))
+                {
+                    Long id = mimetypeEntity.getId();
+                    ids.put(mimetype, id);
+                    // Cache it
+                    mimetypeEntityCache.put(id, mimetype);
+                    mimetypeEntityCache.put(mimetype, id);
+                }
+            }
+            for (String mimetype : missingMimetypes)
+            {
+                MimetypeEntity mimetypeEntity = createMimetypeEntity(mimetype);
+                Long id = mimetypeEntity.getId();
+                ids.put(mimetype, id);
+                // Cache it
+                mimetypeEntityCache.put(id, mimetype);
+                mimetypeEntityCache.put(mimetype, id);
+            }
+        }
+        List<Pair<Long, String>> results = new ArrayList<Pair<Long, String>>(mimetypes.size());
+        for (String mimetype : mimetypes)
+        {
+            mimetype = sanitizeMimetype(mimetype);
+            results.add(new Pair<Long, String>(ids.get(mimetype), mimetype));
+        }
+        return results;
+    }
+    
     public int updateMimetype(String oldMimetype, String newMimetype)
     {
         ParameterCheck.mandatory("oldMimetype", oldMimetype);
@@ -180,6 +241,11 @@ public abstract class AbstractMimetypeDAOImpl implements MimetypeDAO
      */
     protected abstract MimetypeEntity getMimetypeEntity(Long id);
     protected abstract MimetypeEntity getMimetypeEntity(String mimetype);
+    /**
+     * @param mimetypes     the lowercase mimetypes
+     * @return              Return the entities that exist, in no particular order
+     */
+    protected abstract List<MimetypeEntity> getMimetypeEntities(List<String> mimetypes);
     protected abstract MimetypeEntity createMimetypeEntity(String mimetype);
     protected abstract int updateMimetypeEntity(Long id, String newMimetype);
 }
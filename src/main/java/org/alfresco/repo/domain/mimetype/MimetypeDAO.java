@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.domain.mimetype;
 
+import java.util.List;
+
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.util.Pair;
 
@@ -56,6 +58,16 @@ public interface MimetypeDAO
      * @return              the Mimetype pair (id, mimetype) (never null)
      */
     Pair<Long, String> getOrCreateMimetype(String mimetype);
+    
+    /**
+     * Retrieve existing mimetypes or create new ones where they don't exist.  Mimetypes that
+     * are not cached are looked up together.
+     * 
+     * @param mimetypes     the Mimetypes
+     * @return              the Mimetype pairs (id, mimetype) in the order of the mimetypes given (never null)
+     * @since 7.0
+     */
+    List<Pair<Long, String>> getOrCreateMimetypes(List<String> mimetypes);
     
     /**
      * Update a mimetype if it exists.  This method does not do any conflict resolution
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.domain.mimetype.ibatis;
 
+import java.util.List;
+
 import org.alfresco.repo.domain.mimetype.AbstractMimetypeDAOImpl;
 import org.alfresco.repo.domain.mimetype.MimetypeEntity;
 import org.mybatis.spring.SqlSessionTemplate;
@@ -40,6 +42,7 @@ public class MimetypeDAOImpl extends AbstractMimetypeDAOImpl
 {
     private static final String SELECT_MIMETYPE_BY_ID = "alfresco.content.select_MimetypeById";
     private static final String SELECT_MIMETYPE_BY_KEY = "alfresco.content.select_MimetypeByKey";
+    private static final String SELECT_MIMETYPES_BY_KEYS = "alfresco.content.select_MimetypesByKeys";
     private static final String INSERT_MIMETYPE = "alfresco.content.insert.insert_Mimetype";
     private static final String UPDATE_MIMETYPE = "alfresco.content.update_Mimetype";
     
@@ -72,6 +75,12 @@ public class MimetypeDAOImpl extends AbstractMimetypeDAOImpl
         return mimetypeEntity;
     }
 
+    @Override
+    protected List<MimetypeEntity> getMimetypeEntities(List<String> mimetypes)
+    {
+        return template.selectList(SELECT_MIMETYPES_BY_KEYS, mimetypes);
+    }
+
     @Override
     protected MimetypeEntity createMimetypeEntity(String mimetype)
     {
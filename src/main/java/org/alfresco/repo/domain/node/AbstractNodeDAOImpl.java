@@ -2218,6 +2218,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         Set<QName> propsToDelete = new HashSet<QName>(oldProps.size()*2);
         Map<QName, Serializable> propsToAdd = new HashMap<QName, Serializable>(newProps.size() * 2);
         Set<QName> contentQNamesToDelete = new HashSet<QName>(5);
+        List<QName> contentQNamesToAdd = new ArrayList<QName>(5);
+        List<ContentData> contentDataToAdd = new ArrayList<ContentData>(5);
         for (Map.Entry<QName, MapValueComparison> entry : diff.entrySet())
         {
             QName qname = entry.getKey();
@@ -2252,9 +2254,10 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
                     Serializable value = newProps.get(qname);
                     if (isContent && value != null)
                     {
-                        ContentData newContentData = (ContentData) value;
-                        Long newContentDataId = contentDataDAO.createContentData(newContentData).getFirst();
-                        value = new ContentDataWithId(newContentData, newContentDataId);
+                        // Created below
+                        contentQNamesToAdd.add(qname);
+                        contentDataToAdd.add((ContentData) value);
+                        break;
                     }
                     propsToAdd.put(qname, value);
                     break;
@@ -2262,6 +2265,22 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
                     throw new IllegalStateException("Unknown MapValueComparison: " + entry.getValue());
             }
         }
+        if (contentDataToAdd.size() == 1)
+        {
+            ContentData newContentData = contentDataToAdd.get(0);
+            Long newContentDataId = contentDataDAO.createContentData(newContentData).getFirst();
+            propsToAdd.put(contentQNamesToAdd.get(0), new ContentDataWithId(newContentData, newContentDataId));
+        }
+        else if (contentDataToAdd.size() > 1)
+        {
+            // Look up the content URLs and mimetypes of all the content properties together
+            List<Pair<Long, ContentData>> newContentDataPairs = contentDataDAO.createContentData(contentDataToAdd);
+            for (int i = 0; i < contentDataToAdd.size(); i++)
+            {
+                Long newContentDataId = newContentDataPairs.get(i).getFirst();
+                propsToAdd.put(contentQNamesToAdd.get(i), new ContentDataWithId(contentDataToAdd.get(i), newContentDataId));
+            }
+        }
         
         boolean modifyProps = propsToDelete.size() > 0 || propsToAdd.size() > 0;
         boolean updated = modifyProps || nodeUpdate.isUpdateAnything();
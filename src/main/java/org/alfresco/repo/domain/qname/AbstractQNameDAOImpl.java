@@ -25,13 +25,16 @@
  */
 package org.alfresco.repo.domain.qname;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.BatchEntityLookupCallbackDAO;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
 import org.alfresco.service.namespace.QName;
 import org.springframework.dao.ConcurrencyFailureException;
@@ -321,7 +324,9 @@ public abstract class AbstractQNameDAOImpl implements QNameDAO
     /**
      * Callback for <b>alf_qname</b> DAO.
      */
-    private class QNameCallbackDAO extends EntityLookupCallbackDAOAdaptor<Long, QName, QName>
+    private class QNameCallbackDAO
+            extends EntityLookupCallbackDAOAdaptor<Long, QName, QName>
+            implements BatchEntityLookupCallbackDAO<Long, QName, QName>
     {
         @Override
         public QName getValueKey(QName value)
@@ -369,6 +374,79 @@ public abstract class AbstractQNameDAOImpl implements QNameDAO
             }
         }
         
+        /**
+         * Looks up the local names of each namespace with a single query
+         */
+        public List<Pair<Long, QName>> findByValues(List<QName> qnames)
+        {
+            Map<String, List<String>> localNamesByUri = new HashMap<String, List<String>>(7);
+            for (QName qname : qnames)
+            {
+                List<String> localNames = localNamesByUri.get(qname.getNamespaceURI());
+                if (localNames == null)
+                {
+                    localNames = new ArrayList<String>(qnames.size());
+                    localNamesByUri.put(qname.getNamespaceURI(), localNames);
+                }
+                localNames.add(qname.getLocalName());
+            }
+            Map<QName, Long> ids = new HashMap<QName, Long>(qnames.size() * 2);
+            // Rows that can only have been returned because the database matched them regardless of case
+            Map<QName, Long> idsIgnoringCase = new HashMap<QName, Long>(7);
+            // Rows that may or may not match other names regardless of case, depending on the database
+            Set<QName> lowerCaseQNames = new HashSet<QName>(qnames.size() * 2);
+            for (Map.Entry<String, List<String>> entry : localNamesByUri.entrySet())
+            {
+                String uri = entry.getKey();
+                Pair<Long, String> namespaceEntity = getNamespace(uri);
+                if (namespaceEntity == null)
+                {
+                    // There is no match on NS, so there are no QNames like these
+                    continue;
+                }
+                Long nsId = namespaceEntity.getFirst();
+                Set<String> requestedLocalNames = new HashSet<String>(entry.getValue());
+                for (QNameEntity entity : findQNameEntitiesByNamespaceAndLocalNames(nsId, entry.getValue()))
+                {
+                    String localName = entity.getLocalNameSafe();
+                    ids.put(QName.createQName(uri, localName), entity.getId());
+                    QName lowerCaseQName = QName.createQName(uri, localName.toLowerCase());
+                    if (!requestedLocalNames.contains(localName))
+                    {
+                        idsIgnoringCase.put(lowerCaseQName, entity.getId());
+                    }
+                    lowerCaseQNames.add(lowerCaseQName);
+                }
+            }
+            List<Pair<Long, QName>> entityPairs = new ArrayList<Pair<Long, QName>>(qnames.size());
+            for (QName qname : qnames)
+            {
+                Long id = ids.get(qname);
+                if (id != null)
+                {
+                    entityPairs.add(new Pair<Long, QName>(id, qname));
+                    continue;
+                }
+                QName lowerCaseQName = QName.createQName(qname.getNamespaceURI(), qname.getLocalName().toLowerCase());
+                id = idsIgnoringCase.get(lowerCaseQName);
+                if (id != null)
+                {
+                    // The database is case-insensitive, so a single lookup would have found this row too
+                    entityPairs.add(new Pair<Long, QName>(id, qname));
+                }
+                else if (lowerCaseQNames.contains(lowerCaseQName))
+                {
+                    // The row was requested under its own name, so only a single lookup can tell whether it matches
+                    entityPairs.add(findByValue(qname));
+                }
+                else
+                {
+                    entityPairs.add(null);
+                }
+            }
+            return entityPairs;
+        }
+        
         public Pair<Long, QName> createValue(QName qname)
         {
             String uri = qname.getNamespaceURI();
@@ -415,6 +493,7 @@ public abstract class AbstractQNameDAOImpl implements QNameDAO
     
     protected abstract QNameEntity findQNameEntityById(Long id);
     protected abstract QNameEntity findQNameEntityByNamespaceAndLocalName(Long nsId, String localName);
+    protected abstract List<QNameEntity> findQNameEntitiesByNamespaceAndLocalNames(Long nsId, List<String> localNames);
     protected abstract QNameEntity createQNameEntity(Long nsId, String localName);
     protected abstract int updateQNameEntity(QNameEntity entity, Long nsId, String localName);
     protected abstract int deleteQNameEntity(QNameEntity entity);
@@ -455,6 +534,15 @@ public abstract class AbstractQNameDAOImpl implements QNameDAO
     public Set<Long> convertQNamesToIds(Set<QName> qnames, boolean create)
     {
         Set<Long> qnameIds = new HashSet<Long>(qnames.size(), 1.0F);
+        if (create && qnames.size() > 1)
+        {
+            // Resolve them all together
+            for (Pair<Long, QName> qnamePair : qnameCache.getOrCreateByValues(new ArrayList<QName>(qnames)))
+            {
+                qnameIds.add(qnamePair.getFirst());
+            }
+            return qnameIds;
+        }
         for (QName qname : qnames)
         {
             Long qnameEntityId = null;
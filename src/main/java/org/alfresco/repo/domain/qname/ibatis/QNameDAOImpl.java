@@ -25,6 +25,11 @@
  */
 package org.alfresco.repo.domain.qname.ibatis;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.alfresco.repo.domain.qname.AbstractQNameDAOImpl;
 import org.alfresco.repo.domain.qname.NamespaceEntity;
 import org.alfresco.repo.domain.qname.QNameEntity;
@@ -44,6 +49,7 @@ public class QNameDAOImpl extends AbstractQNameDAOImpl
     private static final String UPDATE_NS = "alfresco.qname.update_Namespace";
     private static final String SELECT_QNAME_BY_ID = "alfresco.qname.select_QNameById";
     private static final String SELECT_QNAME_BY_NS_AND_LOCALNAME = "alfresco.qname.select_QNameByNsAndLocalName";
+    private static final String SELECT_QNAMES_BY_NS_AND_LOCALNAMES = "alfresco.qname.select_QNamesByNsAndLocalNames";
     private static final String INSERT_QNAME = "alfresco.qname.insert.insert_QName";
     private static final String UPDATE_QNAME = "alfresco.qname.update_QName";
     private static final String DELETE_QNAME = "alfresco.qname.delete_QName";
@@ -110,6 +116,20 @@ public class QNameDAOImpl extends AbstractQNameDAOImpl
         return entity;
     }
 
+    @Override
+    protected List<QNameEntity> findQNameEntitiesByNamespaceAndLocalNames(Long nsId, List<String> localNames)
+    {
+        List<String> safeLocalNames = new ArrayList<String>(localNames.size());
+        for (String localName : localNames)
+        {
+            safeLocalNames.add(localName.length() == 0 ? QNameEntity.EMPTY_LOCALNAME_SUBSTITUTE : localName);
+        }
+        Map<String, Object> params = new HashMap<String, Object>(5);
+        params.put("namespaceId", nsId);
+        params.put("localNames", safeLocalNames);
+        return template.selectList(SELECT_QNAMES_BY_NS_AND_LOCALNAMES, params);
+    }
+
     @Override
     protected QNameEntity createQNameEntity(Long nsId, String localName)
     {
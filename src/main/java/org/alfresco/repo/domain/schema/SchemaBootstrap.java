@@ -27,6 +27,7 @@ package org.alfresco.repo.domain.schema;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -36,6 +37,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -60,6 +62,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.sql.DataSource;
 
@@ -78,13 +82,17 @@ import org.alfresco.repo.domain.dialect.Dialect;
 import org.alfresco.repo.domain.dialect.MySQLInnoDBDialect;
 import org.alfresco.repo.domain.dialect.PostgreSQLDialect;
 import org.alfresco.repo.domain.patch.AppliedPatchDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.descriptor.DescriptorService;
+import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.DatabaseMetaDataHelper;
 import org.alfresco.util.DialectUtil;
 import org.alfresco.util.LogUtil;
 import org.alfresco.util.PropertyCheck;
 import org.alfresco.util.TempFileProvider;
+import org.alfresco.util.TraceableThreadFactory;
 import org.alfresco.util.schemacomp.ExportDb;
 import org.alfresco.util.schemacomp.MultiFileDumper;
 import org.alfresco.util.schemacomp.MultiFileDumper.DbToXMLFactory;
@@ -93,6 +101,8 @@ import org.alfresco.util.schemacomp.Results;
 import org.alfresco.util.schemacomp.SchemaComparator;
 import org.alfresco.util.schemacomp.XMLToSchema;
 import org.alfresco.util.schemacomp.model.Schema;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.ApplicationContext;
@@ -141,6 +151,7 @@ public class SchemaBootstrap extends AbstractLifecycleBean
     private static final String ERR_DELIMITER_INVALID = "schema.update.err.delimiter_invalid";
     private static final String DEBUG_SCHEMA_COMP_NO_REF_FILE = "system.schema_comp.debug.no_ref_file";
     private static final String INFO_SCHEMA_COMP_ALL_OK = "system.schema_comp.info.all_ok";
+    private static final String INFO_SCHEMA_COMP_UNCHANGED = "system.schema_comp.info.unchanged";
     private static final String WARN_SCHEMA_COMP_PROBLEMS_FOUND = "system.schema_comp.warn.problems_found";
     private static final String WARN_SCHEMA_COMP_PROBLEMS_FOUND_NO_FILE = "system.schema_comp.warn.problems_found_no_file";
     private static final String DEBUG_SCHEMA_COMP_TIME_TAKEN = "system.schema_comp.debug.time_taken";
@@ -150,6 +161,21 @@ public class SchemaBootstrap extends AbstractLifecycleBean
     
     public static final int DEFAULT_MAX_STRING_LENGTH = 1024;
     public static final int DEFAULT_MAX_STRING_LENGTH_NDB = 400;
+    
+    /** No validation has been done in the background */
+    public static final String VALIDATION_NOT_RUN = "NOT_RUN";
+    /** Background validation is running */
+    public static final String VALIDATION_RUNNING = "RUNNING";
+    /** The schema was unchanged since it was last validated without problems, so it was not validated again */
+    public static final String VALIDATION_UNCHANGED = "UNCHANGED";
+    /** Background validation completed */
+    public static final String VALIDATION_COMPLETED = "COMPLETED";
+    /** Background validation could not be completed */
+    public static final String VALIDATION_FAILED = "FAILED";
+    
+    private static final String VALIDATION_DIGEST_ALGORITHM = "SHA-1";
+    static final String KEY_SCHEMA_BOOTSTRAP = ".SchemaBootstrap";
+    static final String KEY_VALIDATED_DIGEST = "validatedDigest";
 
     private static volatile int maxStringLength = DEFAULT_MAX_STRING_LENGTH;
     private Dialect dialect;
@@ -253,6 +279,14 @@ public class SchemaBootstrap extends AbstractLifecycleBean
     private Properties globalProperties;
     private String dbSchemaName;
     private DatabaseMetaDataHelper databaseMetaDataHelper;
+    private boolean validateSchemaInBackground;
+    private AttributeService attributeService;
+    private TransactionService transactionService;
+    private ExecutorService validationExecutor;
+    private boolean backgroundValidationPending;
+    private boolean backgroundValidationUpgraded;
+    private volatile String validationStatus = VALIDATION_NOT_RUN;
+    private volatile int validationProblems = -1;
 
     private ThreadLocal<StringBuilder> executedStatementsThreadLocal = new ThreadLocal<StringBuilder>();
 
@@ -394,6 +428,41 @@ public class SchemaBootstrap extends AbstractLifecycleBean
     {
         this.globalProperties = globalProperties;
     }
+
+    /**
+     * Set whether the schema is validated in the background once the repository has started, rather
+     * than on the startup thread.  The schema is then validated on every startup, but the validation
+     * against a reference file is skipped if neither the reference file nor the tables, columns,
+     * indexes and keys it covers have changed since the schema was last validated without problems.
+     * The validation is started by the {@link SchemaValidationBootstrap}, which also exports the outcome
+     * of {@link #getValidationStatus()} and {@link #getValidationProblems()} over JMX.
+     * <p>
+     * The pre-upgrade validation and dump are still done before any upgrade scripts are run.
+     * 
+     * @param validateSchemaInBackground    <tt>true</tt> to validate in the background.  Default is <b>false</b>.
+     */
+    public void setValidateSchemaInBackground(boolean validateSchemaInBackground)
+    {
+        this.validateSchemaInBackground = validateSchemaInBackground;
+    }
+
+    /**
+     * @param attributeService      used to record the digests of the schema last validated without problems.
+     *                              Defaults to the <b>attributeService</b> bean, looked up once validation starts.
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param transactionService    provides the transactions for reading and recording validated digests.
+     *                              Defaults to the <b>transactionService</b> bean, looked up once validation starts.
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
     
     /**
      * Register a new script for execution when creating a clean schema.  The order of registration
@@ -1644,6 +1713,10 @@ public class SchemaBootstrap extends AbstractLifecycleBean
             // Check and dump the dialect being used
             checkDialect(this.dialect);
             
+            // The final schema dump is needed before a forced stop
+            boolean backgroundValidation = validateSchemaInBackground && !stopAfterSchemaBootstrap;
+            backgroundValidationUpgraded = false;
+            
             // Update the schema, if required.
             if (updateSchema)
             {
@@ -1693,10 +1766,14 @@ public class SchemaBootstrap extends AbstractLifecycleBean
                     // Remove the flag indicating a running bootstrap
                     setBootstrapCompleted(connection);
 
-                    // Validate the schema, post-upgrade
-                    validateSchema("Alfresco-{0}-Validation-Post-Upgrade-{1}-", null);
-                    // 4.0+ schema dump
-                    dumpSchema("post-upgrade");
+                    backgroundValidationUpgraded = true;
+                    if (!backgroundValidation)
+                    {
+                        // Validate the schema, post-upgrade
+                        validateSchema("Alfresco-{0}-Validation-Post-Upgrade-{1}-", null);
+                        // 4.0+ schema dump
+                        dumpSchema("post-upgrade");
+                    }
                 }
             }
             else
@@ -1717,6 +1794,9 @@ public class SchemaBootstrap extends AbstractLifecycleBean
                 // all done successfully
                 ((ApplicationContext) event.getSource()).publishEvent(new SchemaAvailableEvent(this));
             }
+            
+            // The validation waits for the rest of the repository to start
+            backgroundValidationPending = backgroundValidation;
         }
         catch (BootstrapStopException e)
         {
@@ -1956,6 +2036,286 @@ public class SchemaBootstrap extends AbstractLifecycleBean
         return results.size();
     }
 
+    /**
+     * @return the outcome of the background validation, e.g. {@link #VALIDATION_COMPLETED}
+     * @see #setValidateSchemaInBackground(boolean)
+     */
+    public String getValidationStatus()
+    {
+        return validationStatus;
+    }
+
+    /**
+     * @return the number of potential problems found by the background validation or <tt>-1</tt>
+     *         if it has not completed
+     */
+    public int getValidationProblems()
+    {
+        return validationProblems;
+    }
+
+    /**
+     * Starts the background validation, if it was deferred by the last bootstrap.
+     * 
+     * @return <tt>true</tt> if the validation was started
+     * @see #setValidateSchemaInBackground(boolean)
+     */
+    public boolean startBackgroundValidation()
+    {
+        boolean upgradedSchema;
+        synchronized (this)
+        {
+            if (!backgroundValidationPending)
+            {
+                return false;
+            }
+            backgroundValidationPending = false;
+            upgradedSchema = backgroundValidationUpgraded;
+        }
+        startBackgroundValidation(upgradedSchema);
+        return true;
+    }
+
+    void startBackgroundValidation(final boolean upgradedSchema)
+    {
+        validationStatus = VALIDATION_RUNNING;
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("SchemaValidation");
+        validationExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        validationExecutor.execute(new Runnable()
+        {
+            public void run()
+            {
+                validateSchemaInBackground(upgradedSchema);
+            }
+        });
+        validationExecutor.shutdown();
+    }
+
+    /**
+     * Validates the schema against each reference file whose digest has changed since the schema was
+     * last validated against it without problems.
+     * 
+     * @param upgradedSchema    <tt>true</tt> if upgrade scripts were run, in which case the schema is dumped as well
+     */
+    synchronized void validateSchemaInBackground(boolean upgradedSchema)
+    {
+        validationStatus = VALIDATION_RUNNING;
+        // The services are not injected as that would start them before the schema is bootstrapped
+        if (attributeService == null)
+        {
+            attributeService = (AttributeService) getApplicationContext().getBean("attributeService");
+        }
+        if (transactionService == null)
+        {
+            transactionService = (TransactionService) getApplicationContext().getBean("transactionService");
+        }
+        String outputFileNameTemplate = (upgradedSchema ? "Alfresco-{0}-Validation-Post-Upgrade-{1}-" : "Alfresco-{0}-Validation-{1}-");
+        try
+        {
+            int totalProblems = 0;
+            boolean validated = false;
+            for (String schemaReferenceUrl : schemaReferenceUrls)
+            {
+                Resource referenceResource = DialectUtil.getDialectResource(rpr, dialect.getClass(), schemaReferenceUrl);
+                if (referenceResource == null || !referenceResource.exists())
+                {
+                    String resourceUrl = DialectUtil.resolveDialectUrl(dialect.getClass(), schemaReferenceUrl);
+                    LogUtil.debug(logger, DEBUG_SCHEMA_COMP_NO_REF_FILE, resourceUrl);
+                    continue;
+                }
+                
+                String digest = getSchemaDigest(referenceResource);
+                if (digest.equals(getValidatedDigest(schemaReferenceUrl)))
+                {
+                    LogUtil.info(logger, INFO_SCHEMA_COMP_UNCHANGED, referenceResource);
+                    continue;
+                }
+                int problems = attemptValidateSchema(referenceResource, outputFileNameTemplate, null);
+                if (problems == 0)
+                {
+                    setValidatedDigest(schemaReferenceUrl, digest);
+                }
+                totalProblems += problems;
+                validated = true;
+            }
+            
+            if (upgradedSchema)
+            {
+                // 4.0+ schema dump
+                dumpSchema("post-upgrade");
+            }
+            
+            validationProblems = totalProblems;
+            validationStatus = (validated ? VALIDATION_COMPLETED : VALIDATION_UNCHANGED);
+        }
+        catch (Throwable e)
+        {
+            logger.error("Unable to validate database schema.", e);
+            validationStatus = VALIDATION_FAILED;
+        }
+    }
+
+    /**
+     * Computes a digest of a reference file and of the metadata of the database objects it covers: the
+     * tables, views and sequences listed by the driver, and the columns, primary key, indexes and foreign
+     * keys of each table.  This reads the same metadata as a full validation does, but none of it is
+     * compared or written out.
+     */
+    private String getSchemaDigest(Resource referenceResource) throws Exception
+    {
+        MessageDigest digest = MessageDigest.getInstance(VALIDATION_DIGEST_ALGORITHM);
+        
+        byte[] reference;
+        InputStream is = referenceResource.getInputStream();
+        try
+        {
+            reference = IOUtils.toByteArray(is);
+        }
+        finally
+        {
+            is.close();
+        }
+        digest.update(reference);
+        
+        XMLToSchema xmlToSchema = new XMLToSchema(new ByteArrayInputStream(reference));
+        xmlToSchema.parse();
+        String prefixFilter = xmlToSchema.getSchema().getDbPrefix() + "%";
+        
+        Connection connection = dataSource.getConnection();
+        try
+        {
+            DatabaseMetaData dbmd = connection.getMetaData();
+            String schemaName = databaseMetaDataHelper.getSchema(connection);
+            // As for the export, the prefixes are either PREFIX_ or prefix_
+            for (String filter : new String[] {prefixFilter.toLowerCase(), prefixFilter.toUpperCase()})
+            {
+                List<String[]> tables = new ArrayList<String[]>(128);
+                ResultSet rs = dbmd.getTables(null, schemaName, filter, new String[] {"TABLE", "VIEW", "SEQUENCE"});
+                try
+                {
+                    while (rs.next())
+                    {
+                        // Oracle hack: ignore tables in the recycle bin
+                        if (rs.getString("TABLE_NAME").startsWith("BIN$"))
+                        {
+                            continue;
+                        }
+                        tables.add(new String[] {rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"), rs.getString("TABLE_TYPE")});
+                    }
+                }
+                finally
+                {
+                    rs.close();
+                }
+                
+                for (String[] table : tables)
+                {
+                    updateDigest(digest, "table", table[1], table[2]);
+                    if ("SEQUENCE".equals(table[2]))
+                    {
+                        continue;
+                    }
+                    
+                    rs = dbmd.getColumns(null, table[0], table[1], "%");
+                    try
+                    {
+                        while (rs.next())
+                        {
+                            updateDigest(digest, "column", rs.getString("COLUMN_NAME"), rs.getString("TYPE_NAME"),
+                                        rs.getString("COLUMN_SIZE"), rs.getString("DECIMAL_DIGITS"), rs.getString("IS_NULLABLE"));
+                        }
+                    }
+                    finally
+                    {
+                        rs.close();
+                    }
+                    
+                    rs = dbmd.getPrimaryKeys(null, table[0], table[1]);
+                    try
+                    {
+                        while (rs.next())
+                        {
+                            updateDigest(digest, "pk", rs.getString("PK_NAME"), rs.getString("COLUMN_NAME"), rs.getString("KEY_SEQ"));
+                        }
+                    }
+                    finally
+                    {
+                        rs.close();
+                    }
+                    
+                    rs = dbmd.getIndexInfo(null, table[0], table[1], false, true);
+                    try
+                    {
+                        while (rs.next())
+                        {
+                            updateDigest(digest, "index", rs.getString("INDEX_NAME"), rs.getString("NON_UNIQUE"),
+                                        rs.getString("ORDINAL_POSITION"), rs.getString("COLUMN_NAME"));
+                        }
+                    }
+                    finally
+                    {
+                        rs.close();
+                    }
+                    
+                    rs = dbmd.getImportedKeys(null, table[0], table[1]);
+                    try
+                    {
+                        while (rs.next())
+                        {
+                            updateDigest(digest, "fk", rs.getString("FK_NAME"), rs.getString("FKCOLUMN_NAME"),
+                                        rs.getString("PKTABLE_NAME"), rs.getString("PKCOLUMN_NAME"));
+                        }
+                    }
+                    finally
+                    {
+                        rs.close();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            connection.close();
+        }
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+    private static void updateDigest(MessageDigest digest, String... values) throws UnsupportedEncodingException
+    {
+        StringBuilder sb = new StringBuilder(128);
+        for (String value : values)
+        {
+            sb.append(value).append('\t');
+        }
+        sb.append('\n');
+        digest.update(sb.toString().getBytes(SchemaComparator.CHAR_SET));
+    }
+
+    private String getValidatedDigest(final String schemaReferenceUrl)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<String>()
+        {
+            public String execute() throws Throwable
+            {
+                return (String) attributeService.getAttribute(KEY_SCHEMA_BOOTSTRAP, KEY_VALIDATED_DIGEST, schemaReferenceUrl);
+            }
+        }, true, true);
+    }
+
+    private void setValidatedDigest(final String schemaReferenceUrl, final String digest)
+    {
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                attributeService.setAttribute(digest, KEY_SCHEMA_BOOTSTRAP, KEY_VALIDATED_DIGEST, schemaReferenceUrl);
+                return null;
+            }
+        }, false, true);
+    }
+
     /**
      * Produces schema dump in XML format: this is performed pre- and post-upgrade (i.e. if
      * changes are made to the schema) and can made upon demand via JMX.
@@ -2074,6 +2434,10 @@ public class SchemaBootstrap extends AbstractLifecycleBean
     @Override
     protected void onShutdown(ApplicationEvent event)
     {
+        if (validationExecutor != null)
+        {
+            validationExecutor.shutdownNow();
+        }
     }
     
     /**
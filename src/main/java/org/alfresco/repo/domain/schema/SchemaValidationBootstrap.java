@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.schema;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Starts the background validation of the database schema once the rest of the repository has started,
+ * so that the validation does not compete with the bootstrap for the database.  It is declared after the
+ * other bootstrap beans and so receives the bootstrap event last.  If an exporter is set, the outcome of
+ * the validation is available over JMX.
+ *
+ * @see SchemaBootstrap#setValidateSchemaInBackground(boolean)
+ * @since 7.0
+ */
+public class SchemaValidationBootstrap extends AbstractLifecycleBean implements SchemaValidationBootstrapMBean
+{
+    private static final Log logger = LogFactory.getLog(SchemaValidationBootstrap.class);
+
+    private SchemaBootstrap schemaBootstrap;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private ObjectName objectName;
+
+    public void setSchemaBootstrap(SchemaBootstrap schemaBootstrap)
+    {
+        this.schemaBootstrap = schemaBootstrap;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter with which the validation outcome is registered over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    @Override
+    public String getValidationStatus()
+    {
+        return schemaBootstrap.getValidationStatus();
+    }
+
+    @Override
+    public int getValidationProblems()
+    {
+        return schemaBootstrap.getValidationProblems();
+    }
+
+    @Override
+    protected synchronized void onBootstrap(ApplicationEvent event)
+    {
+        if (mbeanExporter != null && objectName == null)
+        {
+            try
+            {
+                objectName = new ObjectName("Alfresco:Name=SchemaValidation");
+                mbeanExporter.registerMBean(this, objectName);
+            }
+            catch (MalformedObjectNameException | RuntimeException e)
+            {
+                objectName = null;
+                logger.warn("Failed to export the schema validation status over JMX", e);
+            }
+        }
+        schemaBootstrap.startBackgroundValidation();
+    }
+
+    @Override
+    protected synchronized void onShutdown(ApplicationEvent event)
+    {
+        if (objectName != null)
+        {
+            mbeanExporter.unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+}
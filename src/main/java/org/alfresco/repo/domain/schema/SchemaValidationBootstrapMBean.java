@@ -0,0 +1,46 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.schema;
+
+/**
+ * Management interface of the {@link SchemaValidationBootstrap}, exported over JMX.
+ *
+ * @since 7.0
+ */
+public interface SchemaValidationBootstrapMBean
+{
+    /**
+     * @return the outcome of the background schema validation
+     * @see SchemaBootstrap#getValidationStatus()
+     */
+    public String getValidationStatus();
+
+    /**
+     * @return the number of potential problems found by the background schema validation or <tt>-1</tt>
+     *         if it has not completed
+     */
+    public int getValidationProblems();
+}
@@ -29,7 +29,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.model.ForumModel;
@@ -49,6 +52,7 @@ import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterCrawlerParameters;
@@ -56,6 +60,7 @@ import org.alfresco.service.cmr.view.ExporterService;
 import org.alfresco.service.cmr.view.Location;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.TempFileProvider;
+import org.springframework.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,6 +70,9 @@ import org.slf4j.LoggerFactory;
  * 
  * The maximum total size of the content which can be downloaded is controlled
  * by the maximumContentSie property. -1 indicates no limit.
+ * 
+ * Content is compressed in parallel by the archive executor, if there is one, and content
+ * with one of the stored mimetypes is added to the archive without being compressed again.
  *
  * @author Alex Miller
  */
@@ -86,8 +94,11 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     private RetryingTransactionHelper transactionHelper;
     private DownloadStatusUpdateService updateService;
     private DictionaryService dictionaryService;
+    private ContentService contentService;
+    private ExecutorService archiveExecutor;
 
     private long maximumContentSize = -1l;
+    private Set<String> storedMimetypes = Collections.emptySet();
     
     private static class SizeEstimator extends BaseExporter 
     {
@@ -174,6 +185,29 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         this.dictionaryService = dictionaryService;
     }
 
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    /**
+     * Set the executor used to compress content in parallel.  Without one, content is
+     * compressed by the thread creating the archive.
+     */
+    public void setArchiveExecutor(ExecutorService archiveExecutor)
+    {
+        this.archiveExecutor = archiveExecutor;
+    }
+
+    /**
+     * Set a comma separated list of mimetypes whose content is already compressed and
+     * is stored in the archive as it is.
+     */
+    public void setStoredMimetypes(String storedMimetypes)
+    {
+        this.storedMimetypes = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(storedMimetypes));
+    }
+
     /**
      * Create an archive file containing content from the repository.
      * 
@@ -254,6 +288,9 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         // perform the actual export
         final File tempFile = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
         final ZipDownloadExporter handler = new ZipDownloadExporter(tempFile, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, dictionaryService, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        handler.setContentService(contentService);
+        handler.setExecutorService(archiveExecutor);
+        handler.setStoredMimetypes(storedMimetypes);
         
         try {
             exporterService.exportView(handler, crawlerParameters, null);
@@ -265,6 +302,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         }
         finally
         {
+            handler.discardPending();
             tempFile.delete();
         }
     }
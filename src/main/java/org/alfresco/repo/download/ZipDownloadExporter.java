@@ -25,17 +25,36 @@
  */
 package org.alfresco.repo.download;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.coci.CheckOutCheckInService;
@@ -43,12 +62,15 @@ import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterContext;
 import org.alfresco.service.cmr.view.ExporterException;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
+import org.alfresco.util.TempFileProvider;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream.UnicodeExtraFieldPolicy;
@@ -58,6 +80,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Handler for exporting node content to a ZIP file
+ * <p>
+ * Content with one of the {@link #setStoredMimetypes(Set) stored mimetypes}, which is already compressed,
+ * is added without compressing it again.  When given an {@link #setExecutorService(ExecutorService) executor}
+ * the remaining content is compressed in parallel; the compressed entries are added to the archive as they
+ * complete, in the order in which the nodes were exported.
  * 
  * @author Alex Miller
  */
@@ -66,25 +93,35 @@ public class ZipDownloadExporter extends BaseExporter
     private static Logger log = LoggerFactory.getLogger(ZipDownloadExporter.class);
     
     private static final String PATH_SEPARATOR = "/";
+    private static final int BUFFER_SIZE = 2048 * 10;
+    private static final int IN_MEMORY_ENTRY_LIMIT = 1024 * 1024;
+    private static final long STATUS_UPDATE_BYTES = 10L * 1024 * 1024;
+    private static final long WAIT_SECONDS = 5L;
 
     protected ZipArchiveOutputStream zipStream;
 
     private NodeRef downloadNodeRef;
     private int sequenceNumber = 1;
     private long total;
-    private long done;
+    private final AtomicLong done = new AtomicLong();
     private long totalFileCount;
     private long filesAddedCount;
+    private long statusUpdatedAt;
     
     private RetryingTransactionHelper transactionHelper;
     private DownloadStorage downloadStorage;
     private DictionaryService dictionaryService;
     private DownloadStatusUpdateService updateService;
+    private ContentService contentService;
+    private ExecutorService executorService;
+    private Set<String> storedMimetypes = Collections.emptySet();
+    private int maxPendingEntries = 16;
 
     private Deque<Pair<String, NodeRef>> path = new LinkedList<Pair<String, NodeRef>>();
     private String currentName;
 
-    private OutputStream outputStream;
+    private File zipFile;
+    private Deque<Future<PendingEntry>> pending = new LinkedList<Future<PendingEntry>>();
 
     /**
      * Construct
@@ -103,28 +140,64 @@ public class ZipDownloadExporter extends BaseExporter
     public ZipDownloadExporter(File zipFile, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, DictionaryService dictionaryService, NodeRef downloadNodeRef, long total, long totalFileCount)
     {
         super(checkOutCheckInService, nodeService);
+        this.zipFile = zipFile;
+        this.updateService = updateService;
+        this.transactionHelper = transactionHelper;
+        this.downloadStorage = downloadStorage;
+        this.dictionaryService = dictionaryService;
+        
+        this.downloadNodeRef = downloadNodeRef;
+        this.total = total;
+        this.totalFileCount = totalFileCount;
+    }
+
+    /**
+     * Set the content service used by the compressing threads to read content.
+     */
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    /**
+     * Set the executor that compresses content in parallel.  Without one, and a
+     * {@link #setContentService(ContentService) content service}, content is compressed
+     * by the exporting thread.
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Set the mimetypes of content that is already compressed and is therefore stored as it is.
+     */
+    public void setStoredMimetypes(Set<String> storedMimetypes)
+    {
+        this.storedMimetypes = storedMimetypes;
+    }
+
+    /**
+     * Set the number of entries that may be waiting to be added to the archive before the export
+     * waits for them.  This bounds the memory and temporary files used for compressed entries.
+     */
+    public void setMaxPendingEntries(int maxPendingEntries)
+    {
+        this.maxPendingEntries = maxPendingEntries;
+    }
+
+    @Override
+    public void start(final ExporterContext context)
+    {
         try
         {
-            this.outputStream = new FileOutputStream(zipFile);
-            this.updateService = updateService;
-            this.transactionHelper = transactionHelper;
-            this.downloadStorage = downloadStorage;
-            this.dictionaryService = dictionaryService;
-            
-            this.downloadNodeRef = downloadNodeRef;
-            this.total = total;
-            this.totalFileCount = totalFileCount;
+            // A seekable archive allows stored entries to be written without knowing their size up front
+            zipStream = new ZipArchiveOutputStream(zipFile);
         }
-        catch (FileNotFoundException e)
+        catch (IOException e)
         {
             throw new ExporterException("Failed to create zip file", e);
         }
-    }
-
-    @Override
-    public void start(final ExporterContext context)
-    {
-        zipStream = new ZipArchiveOutputStream(outputStream);
         // NOTE: This encoding allows us to workaround bug...
         //       http://bugs.sun.com/bugdatabase/view_bug.do;:WuuT?bug_id=4820807
         zipStream.setEncoding("UTF-8");
@@ -144,8 +217,7 @@ public class ZipDownloadExporter extends BaseExporter
             ZipArchiveEntry archiveEntry = new ZipArchiveEntry(path);
             try
             {
-                zipStream.putArchiveEntry(archiveEntry);
-                zipStream.closeArchiveEntry();
+                addPending(CompletableFuture.completedFuture(new PendingEntry(archiveEntry)));
             }
             catch (IOException e)
             {
@@ -167,13 +239,29 @@ public class ZipDownloadExporter extends BaseExporter
         {
             // ALF-2016
             ZipArchiveEntry zipEntry=new ZipArchiveEntry(getPath());
-            zipStream.putArchiveEntry(zipEntry);
-            
-            // copy export stream to zip
-            copyStream(zipStream, content);
+            boolean stored = storedMimetypes.contains(contentData.getMimetype());
+            zipEntry.setMethod(stored ? ZipEntry.STORED : ZipEntry.DEFLATED);
             
-            zipStream.closeArchiveEntry();
-            filesAddedCount = filesAddedCount + 1;
+            if (executorService == null || contentService == null)
+            {
+                zipStream.putArchiveEntry(zipEntry);
+                
+                // copy export stream to zip
+                copyStream(zipStream, content);
+                
+                zipStream.closeArchiveEntry();
+                filesAddedCount = filesAddedCount + 1;
+            }
+            else if (stored)
+            {
+                // Nothing to compress, so the content is copied when its turn comes
+                addPending(CompletableFuture.completedFuture(new PendingEntry(zipEntry, contentData.getContentUrl())));
+            }
+            else
+            {
+                String runAsUser = AuthenticationUtil.getRunAsUser();
+                addPending(executorService.submit(new CompressTask(zipEntry, contentData.getContentUrl(), runAsUser)));
+            }
         }
         catch (IOException e)
         {
@@ -192,6 +280,7 @@ public class ZipDownloadExporter extends BaseExporter
     {
         try
         {
+            writePending(0);
             zipStream.close();
         }
         catch (IOException error)
@@ -200,6 +289,131 @@ public class ZipDownloadExporter extends BaseExporter
         }
     }
 
+    /**
+     * Abandon the entries that have not been added to the archive, e.g. when the export fails or is cancelled.
+     */
+    public void discardPending()
+    {
+        for (Future<PendingEntry> future : pending)
+        {
+            future.cancel(true);
+            if (future.isDone() && !future.isCancelled())
+            {
+                try
+                {
+                    future.get().release();
+                }
+                catch (InterruptedException | ExecutionException e)
+                {
+                    // Nothing was kept
+                }
+            }
+        }
+        pending.clear();
+    }
+
+    private void addPending(Future<PendingEntry> entry) throws IOException
+    {
+        if (pending.isEmpty() && entry.isDone())
+        {
+            // Nothing to wait for
+            writeEntry(waitFor(entry));
+            return;
+        }
+        pending.add(entry);
+        writePending(maxPendingEntries);
+    }
+
+    /**
+     * Add the entries that are complete to the archive, in order, waiting for the oldest while
+     * more than <tt>maxPending</tt> entries are outstanding.
+     */
+    private void writePending(int maxPending) throws IOException
+    {
+        while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() > maxPending))
+        {
+            PendingEntry entry = waitFor(pending.peek());
+            pending.poll();
+            writeEntry(entry);
+        }
+        if (done.get() - statusUpdatedAt >= STATUS_UPDATE_BYTES)
+        {
+            statusUpdatedAt = done.get();
+            updateStatus();
+            checkCancelled();
+        }
+    }
+
+    private PendingEntry waitFor(Future<PendingEntry> future) throws IOException
+    {
+        while (true)
+        {
+            try
+            {
+                return future.get(WAIT_SECONDS, TimeUnit.SECONDS);
+            }
+            catch (TimeoutException e)
+            {
+                // Keep the status up to date and respond to cancellation while compressing large entries
+                updateStatus();
+                checkCancelled();
+            }
+            catch (ExecutionException e)
+            {
+                throw new ExporterException("Failed to zip export stream", e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new ExporterException("Interrupted while waiting for zip entry", e);
+            }
+        }
+    }
+
+    private void writeEntry(PendingEntry entry) throws IOException
+    {
+        try
+        {
+            if (entry.data != null)
+            {
+                InputStream compressed = entry.data.getInputStream();
+                try
+                {
+                    zipStream.addRawArchiveEntry(entry.zipEntry, compressed);
+                }
+                finally
+                {
+                    compressed.close();
+                }
+                filesAddedCount = filesAddedCount + 1;
+            }
+            else if (entry.contentUrl != null)
+            {
+                zipStream.putArchiveEntry(entry.zipEntry);
+                InputStream content = contentService.getRawReader(entry.contentUrl).getContentInputStream();
+                try
+                {
+                    copyStream(zipStream, content);
+                }
+                finally
+                {
+                    content.close();
+                }
+                zipStream.closeArchiveEntry();
+                filesAddedCount = filesAddedCount + 1;
+            }
+            else
+            {
+                zipStream.putArchiveEntry(entry.zipEntry);
+                zipStream.closeArchiveEntry();
+            }
+        }
+        finally
+        {
+            entry.release();
+        }
+    }
+
     private String getPath()
     {
         if (path.size() < 1) 
@@ -234,13 +448,13 @@ public class ZipDownloadExporter extends BaseExporter
     private void copyStream(OutputStream output, InputStream in)
         throws IOException
     {
-        byte[] buffer = new byte[2048 * 10];
-        int read = in.read(buffer, 0, 2048 *10);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read = in.read(buffer, 0, BUFFER_SIZE);
         int i = 0;
         while (read != -1)
         {
             output.write(buffer, 0, read);
-            done = done + read;
+            done.addAndGet(read);
             
             // ALF-16289 - only update the status every 10MB
             if (i++%500 == 0)
@@ -249,7 +463,7 @@ public class ZipDownloadExporter extends BaseExporter
                 checkCancelled();
             }
             
-            read = in.read(buffer, 0, 2048 *10);
+            read = in.read(buffer, 0, BUFFER_SIZE);
         }
     }
     
@@ -278,7 +492,7 @@ public class ZipDownloadExporter extends BaseExporter
             @Override
             public Object execute() throws Throwable
             {
-                DownloadStatus status = new DownloadStatus(Status.IN_PROGRESS, done, total, filesAddedCount, totalFileCount);
+                DownloadStatus status = new DownloadStatus(Status.IN_PROGRESS, done.get(), total, filesAddedCount, totalFileCount);
                 
                 updateService.update(downloadNodeRef, status, getNextSequenceNumber());
                 return null;
@@ -293,7 +507,7 @@ public class ZipDownloadExporter extends BaseExporter
 
     public long getDone()
     {
-        return done;
+        return done.get();
     }
 
     public long getTotal()
@@ -310,4 +524,158 @@ public class ZipDownloadExporter extends BaseExporter
     {
         return totalFileCount;
     }
+
+    /**
+     * An entry waiting to be added to the archive: a folder, content to be copied as it is, or
+     * content that has already been compressed.
+     */
+    private static class PendingEntry
+    {
+        private final ZipArchiveEntry zipEntry;
+        private final String contentUrl;
+        private final CompressedData data;
+
+        private PendingEntry(ZipArchiveEntry zipEntry)
+        {
+            this(zipEntry, null, null);
+        }
+
+        private PendingEntry(ZipArchiveEntry zipEntry, String contentUrl)
+        {
+            this(zipEntry, contentUrl, null);
+        }
+
+        private PendingEntry(ZipArchiveEntry zipEntry, String contentUrl, CompressedData data)
+        {
+            this.zipEntry = zipEntry;
+            this.contentUrl = contentUrl;
+            this.data = data;
+        }
+
+        private void release()
+        {
+            if (data != null)
+            {
+                data.release();
+            }
+        }
+    }
+
+    /**
+     * Compressed content, held in memory when small and in a temporary file otherwise.
+     */
+    private static class CompressedData
+    {
+        private final byte[] bytes;
+        private final File file;
+
+        private CompressedData(byte[] bytes, File file)
+        {
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        private InputStream getInputStream() throws IOException
+        {
+            return (bytes != null ? new ByteArrayInputStream(bytes) : new FileInputStream(file));
+        }
+
+        private void release()
+        {
+            if (file != null)
+            {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Compresses content ahead of its entry being added to the archive.  The content is read again
+     * by URL, as the exporter's stream is closed once the node has been exported.
+     */
+    private class CompressTask implements Callable<PendingEntry>
+    {
+        private final ZipArchiveEntry zipEntry;
+        private final String contentUrl;
+        private final String runAsUser;
+
+        private CompressTask(ZipArchiveEntry zipEntry, String contentUrl, String runAsUser)
+        {
+            this.zipEntry = zipEntry;
+            this.contentUrl = contentUrl;
+            this.runAsUser = runAsUser;
+        }
+
+        @Override
+        public PendingEntry call() throws Exception
+        {
+            // Run as the exporting user so that content is read from the right tenant
+            return AuthenticationUtil.runAs(new RunAsWork<PendingEntry>()
+            {
+                @Override
+                public PendingEntry doWork() throws Exception
+                {
+                    return compress();
+                }
+            }, runAsUser);
+        }
+
+        private PendingEntry compress() throws IOException
+        {
+            ContentReader reader = contentService.getRawReader(contentUrl);
+            boolean inMemory = reader.getSize() <= IN_MEMORY_ENTRY_LIMIT;
+            ByteArrayOutputStream bytes = null;
+            File file = null;
+            OutputStream target;
+            if (inMemory)
+            {
+                bytes = new ByteArrayOutputStream((int) Math.max(reader.getSize() / 2, 32));
+                target = bytes;
+            }
+            else
+            {
+                file = TempFileProvider.createTempFile("download", ".deflated");
+                target = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            }
+
+            CRC32 crc = new CRC32();
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            long size = 0L;
+            boolean compressed = false;
+            try
+            {
+                InputStream in = reader.getContentInputStream();
+                try (OutputStream out = new DeflaterOutputStream(target, deflater, BUFFER_SIZE))
+                {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1)
+                    {
+                        crc.update(buffer, 0, read);
+                        out.write(buffer, 0, read);
+                        size += read;
+                        done.addAndGet(read);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+                zipEntry.setSize(size);
+                zipEntry.setCrc(crc.getValue());
+                zipEntry.setCompressedSize(deflater.getBytesWritten());
+                compressed = true;
+            }
+            finally
+            {
+                deflater.end();
+                if (!compressed && file != null)
+                {
+                    file.delete();
+                }
+            }
+            CompressedData data = new CompressedData(inMemory ? bytes.toByteArray() : null, file);
+            return new PendingEntry(zipEntry, contentUrl, data);
+        }
+    }
 }
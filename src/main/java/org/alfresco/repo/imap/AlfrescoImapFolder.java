@@ -697,12 +697,12 @@ public class AlfrescoImapFolder extends AbstractImapFolder implements Serializab
     @Override
     public int getMsn(long uid) throws FolderException
     {
-        NavigableMap<Long, FileInfo> messages = searchMails();
-        if (!messages.containsKey(uid))
+        int msn = getFolderStatus().getMsn(uid);
+        if (msn == 0)
         {
             throw new FolderException("No such message.");            
         }
-        return messages.headMap(uid, true).size();
+        return msn;
     }
 
     /**
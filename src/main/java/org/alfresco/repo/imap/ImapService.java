@@ -26,7 +26,10 @@
 package org.alfresco.repo.imap;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 
 import javax.mail.Flags;
@@ -327,18 +330,26 @@ public interface ImapService
     
     public void persistMessageHeaders(NodeRef nodeRef, MimeMessage message);
 
-    static class FolderStatus
-    {        
+    /**
+     * The status of a folder as seen by a user.  Instances are immutable, so that they can be shared across
+     * the cluster and derived from one another as the folder changes.
+     */
+    static class FolderStatus implements Serializable
+    {
+        private static final long serialVersionUID = -3236502640283512907L;
+
         public final int messageCount;
         public final int recentCount;
         public final int firstUnseen;
         public final int unseenCount;
         public final long uidValidity;
         public final String changeToken;
+        public final ImapViewMode viewMode;
         public final NavigableMap<Long, FileInfo> search;
+        private final Map<Long, Integer> msns;
 
         public FolderStatus(int messageCount, int recentCount, int firstUnseen, int unseenCount, long uidValidity,
-                String changeToken, NavigableMap<Long, FileInfo> search)
+                String changeToken, ImapViewMode viewMode, NavigableMap<Long, FileInfo> search)
         {
             this.messageCount = messageCount;
             this.recentCount = recentCount;
@@ -346,7 +357,24 @@ public interface ImapService
             this.unseenCount = unseenCount;
             this.uidValidity = uidValidity;
             this.changeToken = changeToken;
+            this.viewMode = viewMode;
             this.search = search;
+            this.msns = new HashMap<Long, Integer>(search.size() * 2);
+            int msn = 1;
+            for (Long uid : search.keySet())
+            {
+                this.msns.put(uid, msn++);
+            }
+        }
+
+        /**
+         * @param uid the message UID
+         * @return the message sequence number of the message or <tt>0</tt> if the folder does not contain it
+         */
+        public int getMsn(long uid)
+        {
+            Integer msn = this.msns.get(uid);
+            return msn == null ? 0 : msn;
         }
     }
 
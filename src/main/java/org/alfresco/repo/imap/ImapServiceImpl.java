@@ -46,7 +46,6 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.mail.Flags;
 import javax.mail.Header;
@@ -108,7 +107,6 @@ import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.FileFilterMode;
 import org.alfresco.util.FileFilterMode.Client;
 import org.alfresco.util.GUID;
-import org.alfresco.util.MaxSizeMap;
 import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
 import org.alfresco.util.config.RepositoryFolderConfigBean;
@@ -139,6 +137,8 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
     private static final String CHECKED_NODES = "imap.flaggable.aspect.checked.list";
     private static final String FAVORITE_SITES = "imap.favorite.sites.list";
     private static final String UIDVALIDITY_TRANSACTION_LISTENER = "imap.uidvalidity.txn.listener";
+    // The number of folder changes followed back to derive a folder status rather than listing the folder
+    private static final int MAX_DERIVED_CHANGES = 16;
     
     private SysAdminParams sysAdminParams;
     private FileFolderService fileFolderService;
@@ -150,11 +150,10 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
     private SearchService searchService;
     private AttachmentsExtractor attachmentsExtractor;
 
-    // Note that this cache need not be cluster synchronized, as it is keyed by the cluster-safe 
-    // change token.  Key is username, changeToken
-    private Map<Pair<String, String>, FolderStatus> folderCache;
-    private int folderCacheSize = 1000;
-    private ReentrantReadWriteLock folderCacheLock = new ReentrantReadWriteLock();
+    // Keyed by the cluster-safe change token and user name, the status of the folder as seen by the user
+    private SimpleCache<Pair<String, String>, FolderStatus> folderStatusCache;
+    // Keyed by change token, the previous change token of the folder and the messages changed since then
+    private SimpleCache<String, FolderChange> folderChangeCache;
     private SimpleCache<NodeRef, CacheItem> messageCache;
     private Map<String, ImapConfigMountPointsBean> imapConfigMountPoints;
     private Map<String, Integer> mountPointIds;
@@ -249,6 +248,16 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         this.messageCache = messageCache;
     }
 
+    public void setFolderStatusCache(SimpleCache<Pair<String, String>, FolderStatus> folderStatusCache)
+    {
+        this.folderStatusCache = folderStatusCache;
+    }
+
+    public void setFolderChangeCache(SimpleCache<String, FolderChange> folderChangeCache)
+    {
+        this.folderChangeCache = folderChangeCache;
+    }
+
     public void setFileFolderService(FileFolderService fileFolderService)
     {
         this.fileFolderService = fileFolderService;
@@ -285,11 +294,6 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         this.imapHomeConfigBean = imapHomeConfigBean;
     }
     
-    public void setFolderCacheSize(int folderCacheSize)
-    {
-        this.folderCacheSize = folderCacheSize;
-    }
-
     public String getDefaultFromAddress()
     {
         return defaultFromAddress;
@@ -391,7 +395,9 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         PropertyCheck.mandatory(this, "policyBehaviourFilter", policyBehaviourFilter);
         PropertyCheck.mandatory(this, "namespaceService", namespaceService);
         PropertyCheck.mandatory(this, "searchService", getSearchService());
-        this.folderCache = new MaxSizeMap<Pair<String,String>, FolderStatus>(folderCacheSize, false);
+        PropertyCheck.mandatory(this, "messageCache", messageCache);
+        PropertyCheck.mandatory(this, "folderStatusCache", folderStatusCache);
+        PropertyCheck.mandatory(this, "folderChangeCache", folderChangeCache);
         
         // be sure that a default e-mail is correct
         try
@@ -853,22 +859,18 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             }
         }, AuthenticationUtil.getSystemUserName());
 
-        Pair<String, String> cacheKey = null;
         if (changeToken != null)
         {
-            cacheKey = new Pair<String, String>(userName, changeToken);
-            this.folderCacheLock.readLock().lock();
-            try
+            FolderStatus result = this.folderStatusCache.get(getFolderStatusKey(changeToken, userName));
+            if (result != null)
             {
-                FolderStatus result = this.folderCache.get(cacheKey);
-                if (result != null)
-                {
-                    return result;
-                }
+                return result;
             }
-            finally
+            result = deriveFolderStatus(userName, contextNodeRef, changeToken);
+            if (result != null)
             {
-                this.folderCacheLock.readLock().unlock();
+                this.folderStatusCache.put(getFolderStatusKey(changeToken, userName), result);
+                return result;
             }
         }
         
@@ -913,30 +915,10 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             break;
         }
 
-        int messageCount = currentSearch.size(), recentCount = 0, unseenCount = 0, firstUnseen = 0;
-        int i = 1;
-        for (FileInfo fileInfo : currentSearch.values())
-        {
-            Flags flags = getFlags(fileInfo);
-            if (flags.contains(Flags.Flag.RECENT))
-            {
-                recentCount++;
-            }
-            if (!flags.contains(Flags.Flag.SEEN))
-            {
-                if (firstUnseen == 0)
-                {
-                    firstUnseen = i;
-                }
-                unseenCount++;
-            }
-            i++;
-        }
         // Add the IMAP folder aspect with appropriate initial values if it is not already there
         if (changeToken == null)
         {
             changeToken = GUID.generate();
-            cacheKey = new Pair<String, String>(userName, changeToken);
             final String finalToken = changeToken;
             doAsSystem(new RunAsWork<Void>()
             {
@@ -951,33 +933,191 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             });
         }
         Long uidValidity = (Long) nodeService.getProperty(contextNodeRef, ImapModel.PROP_UIDVALIDITY);
-        FolderStatus result = new FolderStatus(messageCount, recentCount, firstUnseen, unseenCount,
-                uidValidity == null ? 0 : uidValidity, changeToken, currentSearch);
-        this.folderCacheLock.writeLock().lock();
-        try
+        FolderStatus result = newFolderStatus(currentSearch, uidValidity, changeToken, viewMode);
+        this.folderStatusCache.put(getFolderStatusKey(changeToken, userName), result);
+
+        if(logger.isDebugEnabled())
         {
-            FolderStatus oldResult = this.folderCache.get(cacheKey);
-            if (oldResult != null)
+            logger.debug("At end of getFolderStatus. Found files:" + currentSearch.size() + ", changeToken:" + changeToken);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the messages of a folder.  The flags are those the messages had when they were listed, which
+     * are current for as long as the change token of the folder is.
+     */
+    private FolderStatus newFolderStatus(NavigableMap<Long, FileInfo> search, Long uidValidity, String changeToken,
+            ImapViewMode viewMode)
+    {
+        int messageCount = search.size(), recentCount = 0, unseenCount = 0, firstUnseen = 0;
+        int i = 1;
+        for (FileInfo fileInfo : search.values())
+        {
+            Flags flags = getFlags(fileInfo.getProperties());
+            if (flags.contains(Flags.Flag.RECENT))
             {
-                if(logger.isDebugEnabled())
+                recentCount++;
+            }
+            if (!flags.contains(Flags.Flag.SEEN))
+            {
+                if (firstUnseen == 0)
                 {
-                    logger.debug("At end of getFolderStatus. Found info in cache, changeToken:" + changeToken);
+                    firstUnseen = i;
                 }
-         
-                return oldResult;
+                unseenCount++;
             }
-            this.folderCache.put(cacheKey, result);
+            i++;
+        }
+        return new FolderStatus(messageCount, recentCount, firstUnseen, unseenCount,
+                uidValidity == null ? 0 : uidValidity, changeToken, viewMode, search);
+    }
 
-            if(logger.isDebugEnabled())
+    private Pair<String, String> getFolderStatusKey(String changeToken, String userName)
+    {
+        return new Pair<String, String>(changeToken, userName);
+    }
+
+    /**
+     * Derives the status of a folder from the last status cached for the user, following the changes made to the
+     * folder since then so that the folder need not be listed again.  Only the changed messages are looked up.
+     * 
+     * @param userName the user
+     * @param folderNodeRef the folder
+     * @param changeToken the current change token of the folder
+     * @return the status or <tt>null</tt> if the folder has to be listed
+     */
+    private FolderStatus deriveFolderStatus(final String userName, final NodeRef folderNodeRef, String changeToken)
+    {
+        // Walk back through the changes of the folder to a status cached for the user
+        final Map<Long, NodeRef> changedMessages = new HashMap<Long, NodeRef>();
+        FolderStatus oldStatus = null;
+        String token = changeToken;
+        for (int i = 0; i < MAX_DERIVED_CHANGES && oldStatus == null; i++)
+        {
+            FolderChange change = this.folderChangeCache.get(token);
+            if (change == null)
+            {
+                return null;
+            }
+            changedMessages.putAll(change.changedMessages);
+            token = change.previousChangeToken;
+            oldStatus = this.folderStatusCache.get(getFolderStatusKey(token, userName));
+        }
+        if (oldStatus == null)
+        {
+            return null;
+        }
+
+        // The messages as they now are, or missing if they have left the folder
+        final Map<Long, FileInfo> changedInfos = new HashMap<Long, FileInfo>(changedMessages.size() * 2);
+        Long uidValidity = doAsSystem(new RunAsWork<Long>()
+        {
+            @Override
+            public Long doWork() throws Exception
+            {
+                FileFilterMode.setClient(Client.imap);
+                try
+                {
+                    for (Map.Entry<Long, NodeRef> entry : changedMessages.entrySet())
+                    {
+                        NodeRef nodeRef = entry.getValue();
+                        if (nodeService.exists(nodeRef) && isChild(folderNodeRef, nodeRef))
+                        {
+                            changedInfos.put(entry.getKey(), fileFolderService.getFileInfo(nodeRef));
+                        }
+                    }
+                }
+                finally
+                {
+                    FileFilterMode.clearClient();
+                }
+                return (Long) nodeService.getProperty(folderNodeRef, ImapModel.PROP_UIDVALIDITY);
+            }
+        });
+
+        NavigableMap<Long, FileInfo> search = new TreeMap<Long, FileInfo>(oldStatus.search);
+        for (Long uid : changedMessages.keySet())
+        {
+            FileInfo fileInfo = changedInfos.get(uid);
+            Boolean visible = fileInfo == null ? Boolean.FALSE
+                    : isVisible(userName, fileInfo, oldStatus.viewMode, search.containsKey(uid));
+            if (visible == null)
+            {
+                return null;
+            }
+            if (visible)
+            {
+                search.put(uid, fileInfo);
+            }
+            else
+            {
+                search.remove(uid);
+            }
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Derived folder status from " + changedMessages.size() + " changed messages, nodeRef:"
+                    + folderNodeRef + ", changeToken:" + changeToken);
+        }
+        return newFolderStatus(search, uidValidity, changeToken, oldStatus.viewMode);
+    }
+
+    private boolean isChild(NodeRef folderNodeRef, NodeRef nodeRef)
+    {
+        for (ChildAssociationRef parentAssoc : nodeService.getParentAssocs(nodeRef))
+        {
+            if (parentAssoc.getParentRef().equals(folderNodeRef))
             {
-                logger.debug("At end of getFolderStatus. Found files:" + currentSearch.size() + ", changeToken:" + changeToken);
+                return true;
             }
-            return result;
         }
-        finally
+        return false;
+    }
+
+    /**
+     * Works out whether a message in a folder would be listed for a user.
+     * 
+     * @param listed whether the message was listed for the user before it changed
+     * @return whether the message is listed or <tt>null</tt> if only listing the folder can tell
+     */
+    private Boolean isVisible(String userName, final FileInfo fileInfo, ImapViewMode viewMode, boolean listed)
+    {
+        if (nodeService.hasAspect(fileInfo.getNodeRef(), ContentModel.ASPECT_HIDDEN))
+        {
+            // Whether hidden nodes are listed depends on how they are hidden
+            return null;
+        }
+        switch (viewMode)
+        {
+        case ARCHIVE:
+            if (!nodeService.hasAspect(fileInfo.getNodeRef(), ImapModel.ASPECT_IMAP_CONTENT))
+            {
+                return false;
+            }
+            break;
+        case VIRTUAL:
+            if (nodeService.hasAspect(fileInfo.getNodeRef(), ImapModel.ASPECT_IMAP_CONTENT))
+            {
+                return false;
+            }
+            break;
+        default:
+            break;
+        }
+        if (listed)
         {
-            this.folderCacheLock.writeLock().unlock();
+            // Permission changes leave the change token alone, so a listed message stays listed
+            return true;
         }
+        return AuthenticationUtil.runAs(new RunAsWork<Boolean>()
+        {
+            @Override
+            public Boolean doWork() throws Exception
+            {
+                return permissionService.hasPermission(fileInfo.getNodeRef(), PermissionService.READ) == AccessStatus.ALLOWED;
+            }
+        }, userName);
     }
 
     public void subscribe(AlfrescoImapUser user, String mailbox)
@@ -1021,9 +1161,12 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
      */
     public Flags getFlags(FileInfo messageInfo)
     {
-        Flags flags = new Flags();
-        Map<QName, Serializable> props = nodeService.getProperties(messageInfo.getNodeRef());
+        return getFlags(nodeService.getProperties(messageInfo.getNodeRef()));
+    }
 
+    private static Flags getFlags(Map<QName, Serializable> props)
+    {
+        Flags flags = new Flags();
         for (QName key : qNameToFlag.keySet())
         {
             Boolean value = (Boolean) props.get(key);
@@ -1780,7 +1923,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                     long newId = (Long) nodeService.getProperty(childNodeRef, ContentModel.PROP_NODE_DBID);
                     // Keep a record of minimum and maximum node IDs in this folder in this transaction and add a listener that will
                     // update the UIDVALIDITY and MAXUID properties appropriately. Also force generation of a new change token
-                    getUidValidityTransactionListener(childAssocRef.getParentRef()).recordNewUid(newId);
+                    getUidValidityTransactionListener(childAssocRef.getParentRef()).recordNewUid(newId, childNodeRef);
                     // Flag new content as recent
                     setFlag(childNodeRef, Flags.Flag.RECENT, true);
                 }
@@ -1807,7 +1950,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                         ContentModel.TYPE_CONTENT))
                 {
                     // Force generation of a new change token
-                    getUidValidityTransactionListener(childAssocRef.getParentRef());
+                    getUidValidityTransactionListener(childAssocRef.getParentRef()).recordChange(childNodeRef);
 
                     // Remove the message from the cache
                     messageCache.remove(childNodeRef);
@@ -1879,6 +2022,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
 
                         // Force generation of a new change token for the parent folders
                         UidValidityTransactionListener listener = getUidValidityTransactionListener(folderRef);
+                        listener.recordChange(nodeRef);
                 
                         // if we have a significant change then we need to force a new uidvalidity.
                         if(hasChanged)
@@ -1913,7 +2057,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                 if (nodeService.hasAspect(folderRef, ImapModel.ASPECT_IMAP_FOLDER))
                 {
                     // Force generation of a new change token and updating the UIDVALIDITY 
-                    getUidValidityTransactionListener(folderRef).recordNewUid(newId);
+                    getUidValidityTransactionListener(folderRef).recordNewUid(newId, childNodeRef);
                 }
                 return null;
             }
@@ -1936,7 +2080,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                         messageCache.remove(nodeRef);
 
                         // Force generation of a new change token
-                        getUidValidityTransactionListener(folderRef);
+                        getUidValidityTransactionListener(folderRef).recordChange(nodeRef);
                     }
                 }
                 return null;
@@ -1967,6 +2111,8 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         private Long minUid;
         private Long maxUid;
         private boolean forceNewUidValidity = false;
+        // The messages created, changed or removed, by UID
+        private Map<Long, NodeRef> changedMessages = new HashMap<Long, NodeRef>();
         
         public UidValidityTransactionListener(NodeRef folderNodeRef)
         {
@@ -1978,8 +2124,18 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             this.forceNewUidValidity = true;
         }
         
-        public void recordNewUid(long newUid)
+        public void recordChange(NodeRef nodeRef)
         {
+            // Only content is listed as messages
+            if (serviceRegistry.getDictionaryService().isSubClass(nodeService.getType(nodeRef), ContentModel.TYPE_CONTENT))
+            {
+                this.changedMessages.put((Long) nodeService.getProperty(nodeRef, ContentModel.PROP_NODE_DBID), nodeRef);
+            }
+        }
+
+        public void recordNewUid(long newUid, NodeRef nodeRef)
+        {
+            this.changedMessages.put(newUid, nodeRef);
             if (this.minUid == null)
             {
                 this.minUid = this.maxUid = newUid;
@@ -2035,7 +2191,13 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
                             }
                         }
                     }
+                    String oldChangeToken = (String) nodeService.getProperty(folderNodeRef, ImapModel.PROP_CHANGE_TOKEN);
                     nodeService.setProperty(folderNodeRef, ImapModel.PROP_CHANGE_TOKEN, changeToken);                            
+                    if (oldChangeToken != null)
+                    {
+                        // Lets the statuses for the new change token be derived from those for the old one
+                        folderChangeCache.put(changeToken, new FolderChange(oldChangeToken, changedMessages));
+                    }
                     return null;
                 }                        
             });
@@ -2290,6 +2452,24 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         }
     }    
 
+    /**
+     * A change to a folder: the change token it replaced and the UIDs and nodes of the messages created, changed
+     * or removed by it.
+     */
+    static class FolderChange implements Serializable
+    {
+        private static final long serialVersionUID = 4826113370395812464L;
+
+        final String previousChangeToken;
+        final Map<Long, NodeRef> changedMessages;
+
+        FolderChange(String previousChangeToken, Map<Long, NodeRef> changedMessages)
+        {
+            this.previousChangeToken = previousChangeToken;
+            this.changedMessages = new HashMap<Long, NodeRef>(changedMessages);
+        }
+    }
+
     @Override
     public String getPathFromSites(final NodeRef ref)
     {
@@ -29,18 +29,24 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.acegisecurity.AuthenticationException;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.processor.ProcessorExtension;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.processor.BaseProcessor;
 import org.alfresco.scripts.ScriptException;
 import org.alfresco.scripts.ScriptResourceHelper;
@@ -54,6 +60,7 @@ import org.alfresco.service.cmr.repository.ScriptLocation;
 import org.alfresco.service.cmr.repository.ScriptProcessor;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.namespace.QName;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.mozilla.javascript.Context;
@@ -77,6 +84,7 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     private static final Log callLogger = LogFactory.getLog(RhinoScriptProcessor.class.getName()+".calls");
     
     private static final String PATH_CLASSPATH = "classpath:";
+    private static final String DIGEST_ALGORITHM = "SHA-1";
     
     /** Wrap Factory */
     private static final WrapFactory wrapFactory = new RhinoWrapFactory();
@@ -108,6 +116,20 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     /** Cache of runtime compiled script instances */
     private final Map<String, Script> scriptCache = new ConcurrentHashMap<String, Script>(256);
     
+    /** Maximum number of compiled repository scripts to cache */
+    private int nodeScriptCacheSize = 256;
+    
+    /** Cache of runtime compiled repository scripts, by the content URL of the script */
+    private SimpleCache<String, NodeScript> nodeScriptCache = createNodeScriptCache(nodeScriptCacheSize);
+    
+    /** The imports resolved by the current thread while it compiles a repository script */
+    private final ThreadLocal<List<String>> resolvedImports = new ThreadLocal<List<String>>();
+    
+    /** Repository script cache statistics */
+    private final AtomicLong nodeScriptCacheHits = new AtomicLong();
+    private final AtomicLong nodeScriptCacheMisses = new AtomicLong();
+    private final AtomicLong nodeScriptCompileTime = new AtomicLong();
+    
     
     /**
      * Set the default store reference
@@ -143,6 +165,46 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     {
         this.shareSealedScopes = shareSealedScopes;
     }
+    
+    /**
+     * @param nodeScriptCacheSize   the maximum number of compiled repository scripts to cache - set to
+     * zero to compile repository scripts every time they are executed.
+     */
+    public void setNodeScriptCacheSize(int nodeScriptCacheSize)
+    {
+        this.nodeScriptCacheSize = nodeScriptCacheSize;
+        this.nodeScriptCache = createNodeScriptCache(nodeScriptCacheSize);
+    }
+    
+    /**
+     * @return the number of repository script executions that used a cached compiled script
+     */
+    public long getNodeScriptCacheHits()
+    {
+        return this.nodeScriptCacheHits.get();
+    }
+    
+    /**
+     * @return the number of repository script executions that had to compile the script
+     */
+    public long getNodeScriptCacheMisses()
+    {
+        return this.nodeScriptCacheMisses.get();
+    }
+    
+    /**
+     * @return the total time in milliseconds spent resolving imports and compiling repository scripts
+     */
+    public long getNodeScriptCompileTime()
+    {
+        return this.nodeScriptCompileTime.get() / 1000000L;
+    }
+    
+    private static SimpleCache<String, NodeScript> createNodeScriptCache(int size)
+    {
+        // Nothing is put in the cache when its size is zero
+        return new DefaultSimpleCache<String, NodeScript>(Math.max(size, 1), RhinoScriptProcessor.class.getName() + ".nodeScriptCache");
+    }
 
     /**
      * @see org.alfresco.service.cmr.repository.ScriptProcessor#reset()
@@ -150,6 +212,7 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     public void reset()
     {
         this.scriptCache.clear();
+        this.nodeScriptCache.clear();
     }
     
     /**
@@ -245,16 +308,51 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
                 throw new AlfrescoRuntimeException("Script Node content not found: " + nodeRef);
             }
             
-            // compile the script based on the node content
-            Script script;
-            Context cx = Context.enter();
-            try
+            // compile the script based on the node content - or reuse the compiled script if neither
+            // the content nor any of the scripts it imports have changed since it was compiled
+            Script script = null;
+            String contentUrl = cr.getContentUrl();
+            boolean cachable = (this.compile && this.nodeScriptCacheSize > 0 && contentUrl != null);
+            if (cachable)
             {
-                script = cx.compileString(resolveScriptImports(cr.getContentString()), nodeRef.toString(), 1, null);
+                NodeScript nodeScript = this.nodeScriptCache.get(contentUrl);
+                if (nodeScript != null && nodeScript.importDigest.equals(getImportDigest(nodeScript.imports)))
+                {
+                    this.nodeScriptCacheHits.incrementAndGet();
+                    script = nodeScript.script;
+                }
             }
-            finally
+            if (script == null)
             {
-                Context.exit();
+                long start = System.nanoTime();
+                List<String> imports = new ArrayList<String>(4);
+                this.resolvedImports.set(imports);
+                Context cx = Context.enter();
+                try
+                {
+                    script = cx.compileString(resolveScriptImports(cr.getContentString()), nodeRef.toString(), 1, null);
+                }
+                finally
+                {
+                    Context.exit();
+                    this.resolvedImports.remove();
+                }
+                
+                String importDigest = (cachable ? getImportDigest(imports) : null);
+                if (importDigest != null)
+                {
+                    // We do not worry about more than one thread compiling the same script, see above
+                    this.nodeScriptCache.put(contentUrl, new NodeScript(script, imports, importDigest));
+                    long elapsed = System.nanoTime() - start;
+                    long misses = this.nodeScriptCacheMisses.incrementAndGet();
+                    long time = this.nodeScriptCompileTime.addAndGet(elapsed);
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Compiled repository script " + nodeRef + " with " + imports.size() + " imports in " +
+                                elapsed / 1000000L + "ms; cache hits: " + this.nodeScriptCacheHits.get() +
+                                ", misses: " + misses + ", total compile time: " + time / 1000000L + "ms");
+                    }
+                }
             }
             
             return executeScriptImpl(script, model, false, nodeRef.toString());
@@ -335,6 +433,12 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     {
         String result = null;
         
+        List<String> imports = this.resolvedImports.get();
+        if (imports != null)
+        {
+            imports.add(resource);
+        }
+        
         if (resource.startsWith(PATH_CLASSPATH))
         {
             try
@@ -369,42 +473,7 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
         }
         else
         {
-            NodeRef scriptRef;
-            if (resource.startsWith("/"))
-            {
-                // resolve from default SpacesStore as cm:name based path
-                // TODO: remove this once FFS correctly allows name path resolving from store root!
-                NodeRef rootNodeRef = this.services.getNodeService().getRootNode(this.storeRef);
-                List<NodeRef> nodes = this.services.getSearchService().selectNodes(
-                        rootNodeRef, this.storePath, null, this.services.getNamespaceService(), false);
-                if (nodes.size() == 0)
-                {
-                    throw new AlfrescoRuntimeException("Unable to find store path: " + this.storePath);
-                }
-                StringTokenizer tokenizer = new StringTokenizer(resource, "/");
-                List<String> elements = new ArrayList<String>(6);
-                if (tokenizer.hasMoreTokens())
-                {
-                    tokenizer.nextToken();
-                }
-                while (tokenizer.hasMoreTokens())
-                {
-                    elements.add(tokenizer.nextToken());
-                }
-                try
-                {
-                    FileInfo fileInfo = this.services.getFileFolderService().resolveNamePath(nodes.get(0), elements);
-                    scriptRef = fileInfo.getNodeRef();
-                }
-                catch (FileNotFoundException err)
-                {
-                    throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
-                }
-            }
-            else
-            {
-                scriptRef = new NodeRef(resource);
-            }
+            NodeRef scriptRef = resolveScriptNode(resource);
             
             // load from NodeRef default content property
             try
@@ -425,6 +494,99 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
         return result;
     }
     
+    /**
+     * Resolve a repository script resource to its node.
+     * 
+     * @param resource      NodeRef or cm:name path based script resource
+     * 
+     * @return the script node
+     * 
+     * @throws AlfrescoRuntimeException if the path cannot be resolved
+     */
+    private NodeRef resolveScriptNode(String resource)
+    {
+        NodeRef scriptRef;
+        if (resource.startsWith("/"))
+        {
+            // resolve from default SpacesStore as cm:name based path
+            // TODO: remove this once FFS correctly allows name path resolving from store root!
+            NodeRef rootNodeRef = this.services.getNodeService().getRootNode(this.storeRef);
+            List<NodeRef> nodes = this.services.getSearchService().selectNodes(
+                    rootNodeRef, this.storePath, null, this.services.getNamespaceService(), false);
+            if (nodes.size() == 0)
+            {
+                throw new AlfrescoRuntimeException("Unable to find store path: " + this.storePath);
+            }
+            StringTokenizer tokenizer = new StringTokenizer(resource, "/");
+            List<String> elements = new ArrayList<String>(6);
+            if (tokenizer.hasMoreTokens())
+            {
+                tokenizer.nextToken();
+            }
+            while (tokenizer.hasMoreTokens())
+            {
+                elements.add(tokenizer.nextToken());
+            }
+            try
+            {
+                FileInfo fileInfo = this.services.getFileFolderService().resolveNamePath(nodes.get(0), elements);
+                scriptRef = fileInfo.getNodeRef();
+            }
+            catch (FileNotFoundException err)
+            {
+                throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
+            }
+        }
+        else
+        {
+            scriptRef = new NodeRef(resource);
+        }
+        return scriptRef;
+    }
+
+    /**
+     * Compute the digest of the imports of a repository script, from the current content of each imported
+     * repository script.  Classpath imports are assumed not to change.
+     * 
+     * @param imports       The resources imported by the script
+     * 
+     * @return the digest, or null if an imported script is no longer available
+     */
+    private String getImportDigest(List<String> imports)
+    {
+        StringBuilder text = new StringBuilder(128);
+        for (String resource : imports)
+        {
+            text.append(resource);
+            if (!resource.startsWith(PATH_CLASSPATH))
+            {
+                try
+                {
+                    ContentReader cr = this.services.getContentService().getReader(resolveScriptNode(resource), ContentModel.PROP_CONTENT);
+                    if (cr == null || cr.getContentUrl() == null)
+                    {
+                        return null;
+                    }
+                    text.append('=').append(cr.getContentUrl());
+                }
+                catch (RuntimeException err)
+                {
+                    return null;
+                }
+            }
+            text.append('\n');
+        }
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            return new String(Hex.encodeHex(digest.digest(text.toString().getBytes(StandardCharsets.UTF_8))));
+        }
+        catch (NoSuchAlgorithmException err)
+        {
+            throw new AlfrescoRuntimeException("Digest algorithm not available: " + DIGEST_ALGORITHM, err);
+        }
+    }
+    
     /**
      * Execute the supplied script content. Adds the default data model and custom configured root
      * objects into the root scope for access by the script.
@@ -687,4 +849,21 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
         }
         return scope;
     }
+    
+    /**
+     * A compiled repository script along with the imports it was compiled with.
+     */
+    private static class NodeScript
+    {
+        private final Script script;
+        private final List<String> imports;
+        private final String importDigest;
+        
+        private NodeScript(Script script, List<String> imports, String importDigest)
+        {
+            this.script = script;
+            this.imports = imports;
+            this.importDigest = importDigest;
+        }
+    }
 }
\ No newline at end of file
@@ -2258,6 +2258,7 @@ public class DbNodeServiceImpl extends AbstractNodeServiceImpl implements Extens
         }
         Collection<Pair<Long, AssociationRef>> assocPairs = nodeDAO.getTargetNodeAssocs(sourceNodeId, qnameFilter);
         List<AssociationRef> nodeAssocRefs = new ArrayList<AssociationRef>(assocPairs.size());
+        List<NodeRef> targetNodeRefs = new ArrayList<NodeRef>(assocPairs.size());
         for (Pair<Long, AssociationRef> assocPair : assocPairs)
         {
             AssociationRef assocRef = assocPair.getSecond();
@@ -2267,7 +2268,10 @@ public class DbNodeServiceImpl extends AbstractNodeServiceImpl implements Extens
                 continue;   // the assoc name doesn't match the pattern given 
             }
             nodeAssocRefs.add(assocRef);
+            targetNodeRefs.add(assocRef.getTargetRef());
         }
+        // Cache the target nodes in one go; the results are permission checked node by node
+        nodeDAO.cacheNodes(targetNodeRefs);
         // done
         return nodeAssocRefs;
     }
@@ -2320,6 +2324,7 @@ public class DbNodeServiceImpl extends AbstractNodeServiceImpl implements Extens
         }
         Collection<Pair<Long, AssociationRef>> assocPairs = nodeDAO.getSourceNodeAssocs(targetNodeId, qnameFilter);
         List<AssociationRef> nodeAssocRefs = new ArrayList<AssociationRef>(assocPairs.size());
+        List<NodeRef> sourceNodeRefs = new ArrayList<NodeRef>(assocPairs.size());
         for (Pair<Long, AssociationRef> assocPair : assocPairs)
         {
             AssociationRef assocRef = assocPair.getSecond();
@@ -2329,7 +2334,10 @@ public class DbNodeServiceImpl extends AbstractNodeServiceImpl implements Extens
                 continue;   // the assoc name doesn't match the pattern given 
             }
             nodeAssocRefs.add(assocRef);
+            sourceNodeRefs.add(assocRef.getSourceRef());
         }
+        // Cache the source nodes in one go; the results are permission checked node by node
+        nodeDAO.cacheNodes(sourceNodeRefs);
         // done
         return nodeAssocRefs;
     }
@@ -33,6 +33,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.ActionImpl;
@@ -68,6 +69,7 @@ import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
 import org.alfresco.util.GUID;
+import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.extensions.surf.util.ParameterCheck;
@@ -86,7 +88,11 @@ public class RuleServiceImpl
                 NodeServicePolicies.OnCreateChildAssociationPolicy,
                 NodeServicePolicies.OnCreateNodePolicy,
                 NodeServicePolicies.OnUpdateNodePolicy,
-                NodeServicePolicies.OnAddAspectPolicy
+                NodeServicePolicies.OnAddAspectPolicy,
+                NodeServicePolicies.OnRemoveAspectPolicy,
+                NodeServicePolicies.BeforeDeleteNodePolicy,
+                NodeServicePolicies.OnRestoreNodePolicy,
+                NodeServicePolicies.OnMoveNodePolicy
 {
     /** key against which to store disabled rule types in the current txn */
     private static final String KEY_DISABLED_RULE_TYPES = "RuleServiceImpl.disabledRuleTypes";
@@ -100,6 +106,12 @@ public class RuleServiceImpl
     /** key against which to store executed rules on the current transaction */
     private static final String KEY_RULES_EXECUTED = "RuleServiceImpl.ExecutedRules";
     
+    /** key against which to store the rules read through the rule index in the current txn */
+    private static final String KEY_INDEXED_RULES = "RuleServiceImpl.IndexedRules";
+    
+    /** key of the generation token that scopes the rule index entries */
+    static final String RULE_INDEX_GENERATION = "RuleServiceImpl.RuleIndexGeneration";
+    
     /** qname of assoc to rules */
     private String ASSOC_NAME_RULES_PREFIX = "rules";
     private RegexQNamePattern ASSOC_NAME_RULES_REGEX = new RegexQNamePattern(RuleModel.RULE_MODEL_URI, "^" + ASSOC_NAME_RULES_PREFIX + ".*");
@@ -130,6 +142,11 @@ public class RuleServiceImpl
      * Cache of raw rules (not inherited or interpreted) for a given node
      */
     private SimpleCache<NodeRef, List<Rule>> nodeRulesCache;
+    
+    /**
+     * Cache of the effective rules of a node, with inheritance resolved, keyed by the node and the rule index generation
+     */
+    private SimpleCache<Serializable, Serializable> ruleIndexCache;
        
     /**
      * List of disabled rules.  Any rules that appear in this list will not be added to the pending list and therefore
@@ -234,6 +251,19 @@ public class RuleServiceImpl
         this.nodeRulesCache = nodeRulesCache;
     }
 
+    /**
+     * Set the cache that holds the effective rules of each node, with inherited rules already resolved,
+     * as lists of rule node references.  The entries are scoped by a generation token that is replaced
+     * whenever a rule or a parent association changes, so this cache can be shared across transactions
+     * and servers.  When it is not set, the parents of a node are walked whenever its rules are needed.
+     * 
+     * @param ruleIndexCache        a transactionally safe cache
+     */
+    public void setRuleIndexCache(SimpleCache<Serializable, Serializable> ruleIndexCache)
+    {
+        this.ruleIndexCache = ruleIndexCache;
+    }
+
     /**
      * Set the global rules disabled flag
      * 
@@ -287,6 +317,48 @@ public class RuleServiceImpl
                 NodeServicePolicies.OnUpdateNodePolicy.QNAME,
                 ActionModel.TYPE_ACTION_PARAMETER,
                 new JavaBehaviour(this, "onUpdateNode"));
+        
+        // Rule index invalidation
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.OnRemoveAspectPolicy.QNAME,
+                RuleModel.ASPECT_RULES,
+                new JavaBehaviour(this, "onRemoveAspect"));
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.OnAddAspectPolicy.QNAME,
+                RuleModel.ASPECT_IGNORE_INHERITED_RULES,
+                new JavaBehaviour(this, "onAddAspect"));
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.OnRemoveAspectPolicy.QNAME,
+                RuleModel.ASPECT_IGNORE_INHERITED_RULES,
+                new JavaBehaviour(this, "onRemoveAspect"));
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.BeforeDeleteNodePolicy.QNAME,
+                RuleModel.TYPE_RULE,
+                new JavaBehaviour(this, "beforeDeleteNode"));
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.BeforeDeleteNodePolicy.QNAME,
+                ActionModel.TYPE_ACTION_BASE,
+                new JavaBehaviour(this, "beforeDeleteNode"));
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.BeforeDeleteNodePolicy.QNAME,
+                ActionModel.TYPE_ACTION_PARAMETER,
+                new JavaBehaviour(this, "beforeDeleteNode"));
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.OnRestoreNodePolicy.QNAME,
+                ContentModel.TYPE_BASE,
+                new JavaBehaviour(this, "onRestoreNode"));
+        policyComponent.bindClassBehaviour(
+                NodeServicePolicies.OnMoveNodePolicy.QNAME,
+                ContentModel.TYPE_BASE,
+                new JavaBehaviour(this, "onMoveNode"));
+        policyComponent.bindAssociationBehaviour(
+                NodeServicePolicies.OnCreateChildAssociationPolicy.QNAME,
+                ContentModel.TYPE_BASE,
+                new JavaBehaviour(this, "onCreateParentAssociation"));
+        policyComponent.bindAssociationBehaviour(
+                NodeServicePolicies.BeforeDeleteChildAssociationPolicy.QNAME,
+                ContentModel.TYPE_BASE,
+                new JavaBehaviour(this, "beforeDeleteParentAssociation"));
     }
 
     /**
@@ -296,6 +368,7 @@ public class RuleServiceImpl
     public void onCreateChildAssociation(ChildAssociationRef childAssocRef, boolean isNewNode)
     {
         nodeRulesCache.clear();
+        invalidateRuleIndex();
     }
 
     /**
@@ -304,6 +377,7 @@ public class RuleServiceImpl
     public void onUpdateNode(NodeRef nodeRef)
     {
         nodeRulesCache.clear();
+        invalidateRuleIndex();
     }
 
     /**
@@ -312,6 +386,7 @@ public class RuleServiceImpl
     public void onCreateNode(ChildAssociationRef childAssocRef)
     {
         nodeRulesCache.clear();
+        invalidateRuleIndex();
     }
 
     /**
@@ -320,6 +395,146 @@ public class RuleServiceImpl
     public void onAddAspect(NodeRef nodeRef, QName aspectTypeQName)
     {
         nodeRulesCache.clear();
+        invalidateRuleIndex();
+    }
+
+    /**
+     * Cache invalidation
+     */
+    public void onRemoveAspect(NodeRef nodeRef, QName aspectTypeQName)
+    {
+        nodeRulesCache.clear();
+        invalidateRuleIndex();
+    }
+
+    /**
+     * Cache invalidation
+     */
+    public void beforeDeleteNode(NodeRef nodeRef)
+    {
+        nodeRulesCache.clear();
+        invalidateRuleIndex();
+    }
+
+    /**
+     * Rule index invalidation: restored nodes may have been indexed before they were deleted
+     */
+    public void onRestoreNode(ChildAssociationRef childAssocRef)
+    {
+        invalidateRuleIndex();
+    }
+
+    /**
+     * Rule index invalidation when a node gains a secondary parent that inherits rules, as that changes the
+     * rules inherited by the node and everything below it.  New nodes are ignored and moves are handled by
+     * {@link #onMoveNode(ChildAssociationRef, ChildAssociationRef)}.
+     */
+    public void onCreateParentAssociation(ChildAssociationRef childAssocRef, boolean isNewNode)
+    {
+        if (!isNewNode && !childAssocRef.isPrimary() && !IGNORE_PARENT_ASSOC_TYPES.contains(childAssocRef.getTypeQName()) &&
+                    hasRulesAbove(childAssocRef.getParentRef()))
+        {
+            invalidateRuleIndex();
+        }
+    }
+
+    /**
+     * Rule index invalidation when a node loses a secondary parent that inherits rules.  Removing a primary
+     * parent either deletes the node and everything below it or is part of a move.
+     */
+    public void beforeDeleteParentAssociation(ChildAssociationRef childAssocRef)
+    {
+        if (!childAssocRef.isPrimary() && !IGNORE_PARENT_ASSOC_TYPES.contains(childAssocRef.getTypeQName()) &&
+                    hasRulesAbove(childAssocRef.getParentRef()))
+        {
+            invalidateRuleIndex();
+        }
+    }
+
+    /**
+     * Rule index invalidation when a node is moved to another parent and either the old or the new parent
+     * inherits rules.  Renames within the same parent do not change the rules a node inherits.
+     */
+    public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
+    {
+        NodeRef oldParentRef = oldChildAssocRef.getParentRef();
+        NodeRef newParentRef = newChildAssocRef.getParentRef();
+        if (!oldParentRef.equals(newParentRef) && (hasRulesAbove(oldParentRef) || hasRulesAbove(newParentRef)))
+        {
+            invalidateRuleIndex();
+        }
+    }
+
+    /**
+     * Checks whether a node or any node it inherits rules from has rules, following the parents the same way
+     * as {@link #getInheritedRules(NodeRef, String, Set)}.  Nodes below it can only inherit rules if it does.
+     * 
+     * @return <tt>true</tt> if the rule index is in use and rules may be inherited through the node
+     */
+    private boolean hasRulesAbove(NodeRef nodeRef)
+    {
+        if (ruleIndexCache == null)
+        {
+            return false;
+        }
+        Set<NodeRef> visitedNodeRefs = new HashSet<NodeRef>();
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+        nodeRefs.add(nodeRef);
+        while (!nodeRefs.isEmpty())
+        {
+            NodeRef currentNodeRef = nodeRefs.remove(nodeRefs.size() - 1);
+            // This check prevents an endless walk when we have a cyclic node graph
+            if (!visitedNodeRefs.add(currentNodeRef) || !runtimeNodeService.exists(currentNodeRef))
+            {
+                continue;
+            }
+            if (runtimeNodeService.hasAspect(currentNodeRef, RuleModel.ASPECT_RULES))
+            {
+                return true;
+            }
+            if (runtimeNodeService.hasAspect(currentNodeRef, RuleModel.ASPECT_IGNORE_INHERITED_RULES))
+            {
+                continue;
+            }
+            for (ChildAssociationRef parent : runtimeNodeService.getParentAssocs(currentNodeRef))
+            {
+                if (!IGNORE_PARENT_ASSOC_TYPES.contains(parent.getTypeQName()))
+                {
+                    nodeRefs.add(parent.getParentRef());
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops all the entries of the rule index, along with the rules read through it in the current transaction
+     */
+    private void invalidateRuleIndex()
+    {
+        if (ruleIndexCache != null)
+        {
+            ruleIndexCache.remove(RULE_INDEX_GENERATION);
+            if (AlfrescoTransactionSupport.getTransactionId() != null)
+            {
+                TransactionalResourceHelper.getMap(KEY_INDEXED_RULES).clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the generation token for the rule index entries, starting a new generation if the index has been
+     * invalidated (or the token evicted).
+     */
+    private Long getRuleIndexGeneration()
+    {
+        Long generation = (Long) ruleIndexCache.get(RULE_INDEX_GENERATION);
+        if (generation == null)
+        {
+            generation = ThreadLocalRandom.current().nextLong();
+            ruleIndexCache.put(RULE_INDEX_GENERATION, generation);
+        }
+        return generation;
     }
     
     protected NodeRef getSavedRuleFolderRef(NodeRef nodeRef)
@@ -470,39 +685,107 @@ public class RuleServiceImpl
 
             public List<Rule> doWork() throws Exception
             {
-                List<Rule> rules = new ArrayList<Rule>();
-
                 if (!runtimeNodeService.exists(nodeRef) || !checkNodeType(nodeRef))
                 {
                     // Node has gone or is not the correct type
-                    return rules;
+                    return new ArrayList<Rule>();
                 }
-                if (includeInherited == true && runtimeNodeService.hasAspect(nodeRef, RuleModel.ASPECT_IGNORE_INHERITED_RULES) == false)
+                if (includeInherited == true && ruleIndexCache != null)
                 {
-                    // Get any inherited rules
-                    for (Rule rule : getInheritedRules(nodeRef, ruleTypeName, null))
-                    {
-                        // Ensure rules are not duplicated in the list
-                        if (rules.contains(rule) == false)
-                        {
-                            rules.add(rule);
-                        }
-                    }
+                    return getIndexedRules(nodeRef, ruleTypeName);
                 }
-            
-                // Get the node's own rules and add them to the list
-                List<Rule> nodeRules = getRulesForNode(nodeRef);
-                for (Rule rule : nodeRules)
-                {                   
-                    if ((rules.contains(rule) == false) && (ruleTypeName == null || rule.getRuleTypes().contains(ruleTypeName) == true))
+                return resolveRules(nodeRef, includeInherited, ruleTypeName);
+            }
+        }, AuthenticationUtil.getSystemUserName());
+    }
+    
+    /**
+     * Gets the rules of a node from the rule index, resolving and indexing them if need be
+     */
+    @SuppressWarnings("unchecked")
+    private List<Rule> getIndexedRules(NodeRef nodeRef, String ruleTypeName)
+    {
+        Serializable key = new Pair<NodeRef, Long>(nodeRef, getRuleIndexGeneration());
+        List<NodeRef> ruleNodeRefs = (List<NodeRef>) ruleIndexCache.get(key);
+        List<Rule> rules = null;
+        if (ruleNodeRefs != null)
+        {
+            // The same rules are typically needed for many nodes in a transaction
+            Map<NodeRef, Rule> indexedRules = TransactionalResourceHelper.getMap(KEY_INDEXED_RULES);
+            rules = new ArrayList<Rule>(ruleNodeRefs.size());
+            for (NodeRef ruleNodeRef : ruleNodeRefs)
+            {
+                Rule rule = indexedRules.get(ruleNodeRef);
+                if (rule == null)
+                {
+                    if (!runtimeNodeService.exists(ruleNodeRef))
                     {
-                        rules.add(rule);                        
+                        // The entry was indexed concurrently with the removal of the rule
+                        rules = null;
+                        break;
                     }
+                    rule = getRule(ruleNodeRef);
+                    indexedRules.put(ruleNodeRef, rule);
                 }
-        
-                return rules;
+                rules.add(rule);
             }
-        }, AuthenticationUtil.getSystemUserName());
+        }
+        if (rules == null)
+        {
+            rules = resolveRules(nodeRef, true, null);
+            ArrayList<NodeRef> indexedNodeRefs = new ArrayList<NodeRef>(rules.size());
+            for (Rule rule : rules)
+            {
+                indexedNodeRefs.add(rule.getNodeRef());
+            }
+            ruleIndexCache.put(key, indexedNodeRefs);
+        }
+        if (ruleTypeName != null)
+        {
+            List<Rule> typedRules = new ArrayList<Rule>(rules.size());
+            for (Rule rule : rules)
+            {
+                if (rule.getRuleTypes().contains(ruleTypeName) == true)
+                {
+                    typedRules.add(rule);
+                }
+            }
+            rules = typedRules;
+        }
+        return rules;
+    }
+    
+    /**
+     * Gets the rules of a node, walking up its parents for the inherited rules
+     */
+    private List<Rule> resolveRules(NodeRef nodeRef, boolean includeInherited, String ruleTypeName)
+    {
+        List<Rule> rules = new ArrayList<Rule>();
+
+        if (includeInherited == true && runtimeNodeService.hasAspect(nodeRef, RuleModel.ASPECT_IGNORE_INHERITED_RULES) == false)
+        {
+            // Get any inherited rules
+            for (Rule rule : getInheritedRules(nodeRef, ruleTypeName, null))
+            {
+                // Ensure rules are not duplicated in the list
+                if (rules.contains(rule) == false)
+                {
+                    rules.add(rule);
+                }
+            }
+        }
+    
+        // Get the node's own rules and add them to the list
+        List<Rule> nodeRules = getRulesForNode(nodeRef);
+        for (Rule rule : nodeRules)
+        {                   
+            if ((rules.contains(rule) == false) && (ruleTypeName == null || rule.getRuleTypes().contains(ruleTypeName) == true))
+            {
+                rules.add(rule);                        
+            }
+        }
+
+        return rules;
     }
     
     private List<Rule> getRulesForNode(NodeRef nodeRef)
@@ -793,6 +1076,7 @@ public class RuleServiceImpl
                 enableRules();
                 // Drop the rules from the cache
                 nodeRulesCache.remove(nodeRef);
+                invalidateRuleIndex();
             }
         }
         else
@@ -938,6 +1222,7 @@ public class RuleServiceImpl
             }
             // Drop the rules from the cache
             nodeRulesCache.remove(nodeRef);
+            invalidateRuleIndex();
         }
         else
         {
@@ -985,6 +1270,7 @@ public class RuleServiceImpl
             }
             // Drop the rules from the cache
             nodeRulesCache.remove(nodeRef);
+            invalidateRuleIndex();
         }
         else
         {
@@ -28,12 +28,16 @@ package org.alfresco.repo.security.permissions.impl;
 import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import net.sf.acegisecurity.Authentication;
 import net.sf.acegisecurity.GrantedAuthority;
@@ -78,6 +82,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.security.AccessPermission;
 import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.OwnableService;
 import org.alfresco.service.cmr.security.PermissionContext;
 import org.alfresco.service.cmr.security.PermissionService;
@@ -111,9 +116,17 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
     private static Log log = LogFactory.getLog(PermissionServiceImpl.class);
 
+    private static final Serializable GLOBAL_ACCESS_GENERATION = "global";
+    private static final String USER_ACCESS_GENERATION = "user";
+
     /** a transactionally-safe cache to be injected */
     protected SimpleCache<Serializable, AccessStatus> accessCache;
     
+    /** generation tokens that scope the access cache entries, or null to clear the whole access cache */
+    protected SimpleCache<Serializable, Long> accessGenerationCache;
+    
+    protected int maxTargetedInvalidations = 1000;
+    
     protected SimpleCache<Serializable, Set<String>> readersCache;
     
     protected SimpleCache<Serializable, Set<String>> readersDeniedCache;
@@ -311,6 +324,30 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         this.accessCache = accessCache;
     }
 
+    /**
+     * Set the cache of generation tokens that scope the access cache entries.  When set, moves and
+     * authority membership changes only invalidate the entries they affect by replacing the tokens
+     * of the affected users, rather than clearing the whole access cache.
+     * 
+     * @param accessGenerationCache
+     *            a transactionally safe cache
+     */
+    public void setAccessGenerationCache(SimpleCache<Serializable, Long> accessGenerationCache)
+    {
+        this.accessGenerationCache = accessGenerationCache;
+    }
+
+    /**
+     * Set the number of users above which a membership change invalidates the access cache entries
+     * of all users rather than those of each affected user.
+     * 
+     * @param maxTargetedInvalidations int
+     */
+    public void setMaxTargetedInvalidations(int maxTargetedInvalidations)
+    {
+        this.maxTargetedInvalidations = maxTargetedInvalidations;
+    }
+
     /**
      * @param readersCache the readersCache to set
      */
@@ -344,34 +381,129 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     }
 
     /**
-     * Cache clear on move node
+     * Cache invalidation on move node.
+     * <p>
+     * Nodes evaluated against ACLs need no invalidation: ACL evaluations are keyed by the ACL properties,
+     * which change as the ACLs of the moved subtree are re-inherited.  Old style evaluations walk the
+     * parent chain, so all of them are invalidated.
      * 
      * @param oldChildAssocRef ChildAssociationRef
      * @param newChildAssocRef ChildAssociationRef
      */
     public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
     {
-        accessCache.clear();
+        if (accessGenerationCache == null)
+        {
+            accessCache.clear();
+            return;
+        }
+        NodeRef nodeRef = tenantService.getName(newChildAssocRef.getChildRef());
+        AccessControlListProperties properties = permissionsDaoComponent.getAccessControlListProperties(nodeRef);
+        QName typeQName = nodeService.getType(nodeRef);
+        if ((properties == null) || (properties.getAclType() == null) || (properties.getAclType() == ACLType.OLD)
+                || dictionaryService.isSubClass(typeQName, ContentModel.TYPE_AUTHORITY_CONTAINER)
+                || dictionaryService.isSubClass(typeQName, ContentModel.TYPE_PERSON))
+        {
+            accessGenerationCache.remove(GLOBAL_ACCESS_GENERATION);
+        }
     }
 
     /**
-     * Cache clear on create of a child association from an authority container.
+     * Cache invalidation on create of a child association from an authority container.
      * 
      * @param childAssocRef ChildAssociationRef
      */
     public void onCreateChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        invalidateMembership(childAssocRef.getChildRef());
     }
 
     /**
-     * Cache clear on delete of a child association from an authority container.
+     * Cache invalidation on delete of a child association from an authority container.
      * 
      * @param childAssocRef ChildAssociationRef
      */
     public void beforeDeleteChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        invalidateMembership(childAssocRef.getChildRef());
+    }
+
+    /**
+     * Invalidates the access cache entries of the users whose authorities change when the given
+     * authority is added to, or removed from, a container.
+     */
+    private void invalidateMembership(NodeRef authorityRef)
+    {
+        if (accessGenerationCache == null)
+        {
+            accessCache.clear();
+            return;
+        }
+        String authority = (String) nodeService.getProperty(authorityRef, ContentModel.PROP_AUTHORITY_NAME);
+        if (authority == null)
+        {
+            authority = (String) nodeService.getProperty(authorityRef, ContentModel.PROP_USERNAME);
+        }
+        if (authority == null)
+        {
+            accessGenerationCache.remove(GLOBAL_ACCESS_GENERATION);
+            return;
+        }
+        Set<String> users;
+        if (AuthorityType.getAuthorityType(authority) == AuthorityType.USER)
+        {
+            users = Collections.singleton(authority);
+        }
+        else
+        {
+            users = authorityService.getContainedAuthorities(AuthorityType.USER, authority, false);
+        }
+        if (users.size() > maxTargetedInvalidations)
+        {
+            accessGenerationCache.remove(GLOBAL_ACCESS_GENERATION);
+            return;
+        }
+        for (String user : users)
+        {
+            accessGenerationCache.remove(getUserAccessGenerationKey(user));
+        }
+    }
+
+    private Serializable getUserAccessGenerationKey(String username)
+    {
+        // User names are matched case insensitively, so at worst a change invalidates another user's entries too
+        return new Pair<String, String>(USER_ACCESS_GENERATION, username.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Gets the generation token for a scope of access cache entries, starting a new generation
+     * if the scope has been invalidated (or evicted).
+     */
+    private Long getAccessGeneration(Serializable scope)
+    {
+        Long generation = accessGenerationCache.get(scope);
+        if (generation == null)
+        {
+            generation = ThreadLocalRandom.current().nextLong();
+            accessGenerationCache.put(scope, generation);
+        }
+        return generation;
+    }
+
+    /**
+     * Gets the generation tokens for access cache entries computed for the given authorisations.
+     * Dynamic authority sets are keyed by user name, so the user's generation is included too.
+     */
+    private Serializable getAccessGenerations(Set<String> auths)
+    {
+        Long globalGeneration = getAccessGeneration(GLOBAL_ACCESS_GENERATION);
+        Long userGeneration = null;
+        if (auths instanceof AuthorityServiceImpl.UserAuthoritySet)
+        {
+            String username = (String) ((AuthorityServiceImpl.UserAuthoritySet) auths).getUsername();
+            userGeneration = getAccessGeneration(getUserAccessGenerationKey(username));
+        }
+        return new Pair<Long, Long>(globalGeneration, userGeneration);
     }
 
     @Override
@@ -781,6 +913,16 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             permission = getAllPermissionReference();
         }
 
+        final Serializable key = generateAclKey(authorisations, aclId, context, permission);
+        if (key != null)
+        {
+            AccessStatus status = accessCache.get(key);
+            if (status != null)
+            {
+                return status;
+            }
+        }
+
         boolean result;
         if (context.getStoreAcl() == null)
         {
@@ -794,6 +936,10 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             result = aclTest.evaluate(authorisations, aclId, context) && aclTest.evaluate(storeAuthorisations, context.getStoreAcl(), context);
         }
         AccessStatus status = result ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+        if (key != null)
+        {
+            accessCache.put(key, status);
+        }
         return status;
 
     }
@@ -818,7 +964,11 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         /**
          * Cache single permission check for global permission checks
          */
-        SINGLE_PERMISSION_GLOBAL;
+        SINGLE_PERMISSION_GLOBAL,
+        /**
+         * Cache ACL permission check
+         */
+        ACL_PERMISSION;
     }
 
     /**
@@ -842,10 +992,60 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         // Ensure some concept of node version or transaction is included in the key so we can track without cache replication 
         NodeRef.Status nodeStatus = nodeService.getNodeStatus(nodeRef);
         key.add(nodeStatus == null ? "null" : nodeStatus.getChangeTxnId());
+        if (accessGenerationCache != null)
+        {
+            key.add(getAccessGenerations(auths));
+        }
         key.add(type);
         return key;
     }
 
+    /**
+     * Key for an ACL permission check.  The ACL properties (which carry the ACL version) stand in for the
+     * ACL entries, so the key changes whenever the ACL does.  Membership changes are tracked by the access
+     * generations, so ACL checks are only cached when an access generation cache is available.
+     * 
+     * @return the key or <tt>null</tt> if the check should not be cached
+     */
+    private Serializable generateAclKey(Set<String> auths, Long aclId, PermissionContext context, PermissionReference perm)
+    {
+        if (accessGenerationCache == null)
+        {
+            return null;
+        }
+        AccessControlListProperties properties = aclDaoComponent.getAccessControlListProperties(aclId);
+        if (!(properties instanceof Serializable))
+        {
+            return null;
+        }
+        ArrayList<Serializable> key = new ArrayList<Serializable>(9);
+        key.add(perm.toString());
+        if (auths instanceof AuthorityServiceImpl.UserAuthoritySet)
+        {
+            key.add((Serializable)Collections.singleton(((AuthorityServiceImpl.UserAuthoritySet)auths).getUsername()));
+        }
+        else
+        {
+            key.add(new HashSet<String>(auths));
+        }
+        key.add(new HashMap<String, Set<String>>(context.getDynamicAuthorityAssignment()));
+        key.add((Serializable) properties);
+        key.add(context.getType());
+        key.add(new HashSet<QName>(context.getAspects()));
+        if (context.getStoreAcl() != null)
+        {
+            AccessControlListProperties storeProperties = aclDaoComponent.getAccessControlListProperties(context.getStoreAcl());
+            if (!(storeProperties instanceof Serializable))
+            {
+                return null;
+            }
+            key.add((Serializable) storeProperties);
+        }
+        key.add(getAccessGenerations(auths));
+        key.add(CacheType.ACL_PERMISSION);
+        return key;
+    }
+
     /**
      * Get the core authorisations for this {@code auth}. If {@code null} this
      * will be an empty set. Otherwise it will be a Lazy loaded Set of authorities
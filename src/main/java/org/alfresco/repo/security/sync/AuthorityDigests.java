@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.sync;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.security.AuthorityType;
+import org.alfresco.service.namespace.QName;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * The digests of the directory entries that were last synchronized for a zone, along with the authorities that
+ * currently exist in the zone.
+ * <p>
+ * An authority whose digest is unchanged and that still exists in the zone was left exactly as the directory
+ * describes it by the last synchronization, so it need not be compared with the repository again.  This assumes
+ * that synchronized authorities are only changed through synchronization.
+ *
+ * @since 7.0
+ */
+class AuthorityDigests
+{
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private final Map<String, String> digests;
+    private final Set<String> zonePersons;
+    private final Set<String> zoneGroups;
+
+    /**
+     * @param digests           the digests recorded by the last synchronization, by authority name
+     * @param zonePersons       the persons in the zone
+     * @param zoneGroups        the groups in the zone
+     */
+    AuthorityDigests(Map<String, String> digests, Set<String> zonePersons, Set<String> zoneGroups)
+    {
+        this.digests = digests;
+        this.zonePersons = zonePersons;
+        this.zoneGroups = zoneGroups;
+    }
+
+    /**
+     * @return                  <tt>true</tt> if the authority exists in the zone as it was last synchronized
+     */
+    boolean isUnchanged(String authorityName, String digest)
+    {
+        return digest.equals(digests.get(authorityName)) && exists(authorityName);
+    }
+
+    /**
+     * @return                  <tt>true</tt> if the authorities all exist in the zone.  Members that do not are
+     *                          to be created or come from another zone, so their memberships need maintaining.
+     */
+    boolean existAll(Collection<String> authorityNames)
+    {
+        for (String authorityName : authorityNames)
+        {
+            if (!exists(authorityName))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean exists(String authorityName)
+    {
+        return AuthorityType.getAuthorityType(authorityName) == AuthorityType.USER ? zonePersons.contains(authorityName)
+                : zoneGroups.contains(authorityName);
+    }
+
+    /**
+     * Computes the digest of a directory entry, independent of the order of its properties and members.
+     *
+     * @param properties        the properties of the entry
+     * @param members           the members of a group or <tt>null</tt> for a person
+     * @return                  the digest
+     */
+    static String getDigest(Map<QName, Serializable> properties, Collection<String> members)
+    {
+        Map<String, Serializable> sortedProperties = new TreeMap<String, Serializable>();
+        for (Map.Entry<QName, Serializable> entry : properties.entrySet())
+        {
+            sortedProperties.put(entry.getKey().toString(), entry.getValue());
+        }
+        StringBuilder text = new StringBuilder(256);
+        for (Map.Entry<String, Serializable> entry : sortedProperties.entrySet())
+        {
+            text.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        if (members != null)
+        {
+            for (String member : new TreeSet<String>(members))
+            {
+                text.append('>').append(member).append('\n');
+            }
+        }
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            return new String(Hex.encodeHex(digest.digest(text.toString().getBytes(StandardCharsets.UTF_8))));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AlfrescoRuntimeException("Digest algorithm not available: " + DIGEST_ALGORITHM, e);
+        }
+    }
+}
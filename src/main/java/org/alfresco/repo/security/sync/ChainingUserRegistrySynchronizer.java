@@ -45,6 +45,7 @@ import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.AttributeService.AttributeQueryCallback;
 import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.security.AuthorityService;
 import org.alfresco.service.cmr.security.AuthorityType;
@@ -122,6 +123,9 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
     /** The path in the attribute service below which we persist attributes. */
     public static final String ROOT_ATTRIBUTE_PATH = ".ChainingUserRegistrySynchronizer";
 
+    /** The path in the attribute service below which we persist the digests of synchronized authorities for each zone. */
+    private static final String DIGEST_ATTRIBUTE_PATH = ROOT_ATTRIBUTE_PATH + ".DIGEST";
+
     /** The label under which the last group modification timestamp is stored for each zone. */
     private static final String GROUP_LAST_MODIFIED_ATTRIBUTE = "GROUP";
 
@@ -193,6 +197,9 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
     /** Controls whether to query for users and groups that have been deleted in LDAP */
     private boolean syncDelete = true;
 
+    /** Skip users and groups that are unchanged since they were last synchronized? */
+    private boolean skipUnchangedAuthorities = true;
+
     /** Validates person names over cm:filename constraint **/
     private NameChecker nameChecker;
 
@@ -400,6 +407,19 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
     {
         this.syncDelete = syncDelete;
     }
+
+    /**
+     * Controls whether users and groups whose directory entries are unchanged since they were last synchronized are
+     * skipped. A digest of each synchronized entry is recorded for comparison. This assumes that synchronized users
+     * and groups are only changed through synchronization. By default is set to true.
+     * 
+     * @param skipUnchangedAuthorities
+     *            If <b>false</b> then every entry retrieved from the directory is compared with the repository.
+     */
+    public void setSkipUnchangedAuthorities(boolean skipUnchangedAuthorities)
+    {
+        this.skipUnchangedAuthorities = skipUnchangedAuthorities;
+    }
     
     @Override
     public SynchronizeDiagnostic testSynchronize(String authenticatorName)
@@ -968,6 +988,10 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
         // The set of zones we associate with new objects (default plus registry specific)
         final Set<String> zoneSet = getZones(zoneId);
 
+        // The digests of the entries synchronized last time, allowing unchanged entries to be skipped
+        final AuthorityDigests authorityDigests = this.skipUnchangedAuthorities ? getAuthorityDigests(zoneId, splitTxns)
+                : null;
+
         long lastModifiedMillis = forceUpdate ? -1 : getMostRecentUpdateTime(
                 ChainingUserRegistrySynchronizer.GROUP_LAST_MODIFIED_ATTRIBUTE, zoneId, splitTxns);
         Date lastModified = lastModifiedMillis == -1 ? null : new Date(lastModifiedMillis);
@@ -1007,6 +1031,9 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
             private List<String> personsProcessed = new LinkedList<String>();
             private Set<String> allZonePersons = Collections.emptySet();
             private Set<String> deletionCandidates;
+            private final Map<String, String> groupDigests = new TreeMap<String, String>();
+            private final Set<String> unchangedGroups = new TreeSet<String>();
+            private int errors;
 
             private long latestTime;
 
@@ -1035,10 +1062,22 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                 PropertyMap groupProperties = group.getProperties();
                 String groupName = (String) groupProperties.get(ContentModel.PROP_AUTHORITY_NAME);
                 String groupShortName = ChainingUserRegistrySynchronizer.this.authorityService.getShortName(groupName);
-                Set<String> groupZones = ChainingUserRegistrySynchronizer.this.authorityService
+                String groupDigest = authorityDigests == null ? null : AuthorityDigests.getDigest(groupProperties,
+                        group.getChildAssociations());
+                boolean unchanged = groupDigest != null && authorityDigests.isUnchanged(groupName, groupDigest)
+                        && authorityDigests.existAll(group.getChildAssociations());
+                Set<String> groupZones = unchanged ? null : ChainingUserRegistrySynchronizer.this.authorityService
                         .getAuthorityZones(groupName);
 
-                if (groupZones == null)
+                if (unchanged)
+                {
+                    // The group and its members are as they were last synchronized
+                    synchronized (this)
+                    {
+                        this.unchangedGroups.add(groupName);
+                    }
+                }
+                else if (groupZones == null)
                 {
                     // The group did not exist at all
                     updateGroup(group, false);
@@ -1096,6 +1135,12 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
 
                 synchronized (this)
                 {
+                    if (groupDigest != null && !unchanged)
+                    {
+                        // Recorded once all the changes to the group have been made
+                        this.groupDigests.put(groupName, groupDigest);
+                    }
+
                     // Maintain the last modified date
                     Date groupLastModified = group.getLastModified();
                     if (groupLastModified != null)
@@ -1603,12 +1648,30 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                                 }
                             }
                         }, splitTxns);
+                        this.errors += groupCreator.getTotalErrors();
                     }
                 }
             }
 
             private void finalizeAssociations(UserRegistry userRegistry, boolean splitTxns)
             {
+                // Load the members of unchanged groups so that cycles through them are detected
+                if (!this.groupParentAssocsToCreate.isEmpty() && !this.unchangedGroups.isEmpty())
+                {
+                    ChainingUserRegistrySynchronizer.this.transactionService.getRetryingTransactionHelper()
+                            .doInTransaction(new RetryingTransactionCallback<Void>()
+                            {
+                                public Void execute() throws Throwable
+                                {
+                                    for (String group : Analyzer.this.unchangedGroups)
+                                    {
+                                        cacheContainedAuthorities(group);
+                                    }
+                                    return null;
+                                }
+                            }, true, splitTxns);
+                }
+
                 // First validate the group associations to be created for potential cycles. Remove any offending association
                 validateGroupParentAssocsToCreate();
                 
@@ -1636,6 +1699,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                             maintainAssociationCreations(entry.getKey());
                         }
                     }, splitTxns);
+                    this.errors += groupCreator.getTotalErrors();
                 }
 
                 // Remove all the associations we have already dealt with
@@ -1669,9 +1733,49 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                             maintainAssociationCreations(entry.getKey());
                         }
                     }, splitTxns);
+                    this.errors += groupCreator.getTotalErrors();
                 }
             }
 
+            private void recordGroupDigests(int personErrors, boolean splitTxns)
+            {
+                if (this.groupDigests.isEmpty())
+                {
+                    return;
+                }
+                if (this.errors > 0 || personErrors > 0)
+                {
+                    // Some memberships may not have been maintained, so compare the groups again next time
+                    if (ChainingUserRegistrySynchronizer.logger.isWarnEnabled())
+                    {
+                        ChainingUserRegistrySynchronizer.logger.warn("Not recording the digests of the groups synchronized with user registry '"
+                                + zone + "' as errors occurred");
+                    }
+                    return;
+                }
+                BatchProcessor<Map.Entry<String, String>> digestRecorder = new BatchProcessor<Map.Entry<String, String>>(
+                        zone + " Group Digest Recording",
+                        ChainingUserRegistrySynchronizer.this.transactionService.getRetryingTransactionHelper(),
+                        this.groupDigests.entrySet(),
+                        ChainingUserRegistrySynchronizer.this.workerThreads, 100,
+                        ChainingUserRegistrySynchronizer.this.applicationEventPublisher,
+                        ChainingUserRegistrySynchronizer.logger,
+                        ChainingUserRegistrySynchronizer.this.loggingInterval);
+                digestRecorder.process(new BaseBatchProcessWorker<Map.Entry<String, String>>()
+                {
+                    public String getIdentifier(Map.Entry<String, String> entry)
+                    {
+                        return entry.getKey();
+                    }
+
+                    public void process(Map.Entry<String, String> entry) throws Throwable
+                    {
+                        ChainingUserRegistrySynchronizer.this.attributeService.setAttribute(entry.getValue(),
+                                ChainingUserRegistrySynchronizer.DIGEST_ATTRIBUTE_PATH, zoneId, entry.getKey());
+                    }
+                }, splitTxns);
+            }
+
             private void maintainAssociationDeletions(String authorityName)
             {
                 boolean isPerson = AuthorityType.getAuthorityType(authorityName) == AuthorityType.USER;
@@ -1838,9 +1942,19 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
 
                 // for invalid names will throw ConstraintException that will be catched by BatchProcessor$TxnCallback
                 nameChecker.evaluate(personName);
-                Set<String> zones = ChainingUserRegistrySynchronizer.this.authorityService
+                String personDigest = authorityDigests == null ? null : AuthorityDigests.getDigest(personProperties, null);
+                boolean unchanged = personDigest != null && authorityDigests.isUnchanged(personName, personDigest);
+                Set<String> zones = unchanged ? null : ChainingUserRegistrySynchronizer.this.authorityService
                         .getAuthorityZones(personName);
-                if (zones == null)
+                if (unchanged)
+                {
+                    // The person is as it was last synchronized
+                    if (ChainingUserRegistrySynchronizer.logger.isDebugEnabled())
+                    {
+                        ChainingUserRegistrySynchronizer.logger.debug("Skipping unchanged user '" + personName + "'");
+                    }
+                }
+                else if (zones == null)
                 {
                     // The person did not exist at all
                     if (ChainingUserRegistrySynchronizer.logger.isDebugEnabled())
@@ -1901,6 +2015,11 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                         ChainingUserRegistrySynchronizer.this.personService.createPerson(personProperties, zoneSet);
                     }
                 }
+                if (personDigest != null && !unchanged)
+                {
+                    ChainingUserRegistrySynchronizer.this.attributeService.setAttribute(personDigest,
+                            ChainingUserRegistrySynchronizer.DIGEST_ATTRIBUTE_PATH, zoneId, personName);
+                }
 
                 // Maintain association deletions and creations in one shot (safe to do this with persons as we can't
                 // create cycles)
@@ -1925,6 +2044,9 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
         // Process those associations to persons who themselves have not been updated
         groupAnalyzer.finalizeAssociations(userRegistry, splitTxns);
 
+        // Only now that all the memberships have been maintained is it safe to persist the group digests
+        groupAnalyzer.recordGroupDigests(personProcessor.getTotalErrors(), splitTxns);
+
         // Only now that the whole tree has been processed is it safe to persist the last modified dates
         long latestTime = groupAnalyzer.getLatestTime();
         if (latestTime != -1)
@@ -1982,6 +2104,8 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                             ChainingUserRegistrySynchronizer.logger.debug("Deleting user '" + authority + "'");
                         }
                         ChainingUserRegistrySynchronizer.this.personService.deletePerson(authority);
+                        ChainingUserRegistrySynchronizer.this.attributeService.removeAttribute(
+                                ChainingUserRegistrySynchronizer.DIGEST_ATTRIBUTE_PATH, zoneId, authority);
                         synchronized (this)
                         {
                             this.personProcessedCount++;
@@ -1996,6 +2120,8 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                                     + "'");
                         }
                         ChainingUserRegistrySynchronizer.this.authorityService.deleteAuthority(authority);
+                        ChainingUserRegistrySynchronizer.this.attributeService.removeAttribute(
+                                ChainingUserRegistrySynchronizer.DIGEST_ATTRIBUTE_PATH, zoneId, authority);
                         synchronized (this)
                         {
                             this.groupProcessedCount++;
@@ -2052,6 +2178,48 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                 }, true, splitTxns);
     }
 
+    /**
+     * Gets the digests of the authorities last synchronized with a zone, along with the authorities in the zone.
+     * 
+     * @param zoneId
+     *            the zone id
+     * @param splitTxns
+     *            split transactions, if true run this in a separate transaction
+     * @return the digests
+     */
+    private AuthorityDigests getAuthorityDigests(final String zoneId, boolean splitTxns)
+    {
+        return this.transactionService.getRetryingTransactionHelper().doInTransaction(
+                new RetryingTransactionCallback<AuthorityDigests>()
+                {
+                    public AuthorityDigests execute() throws Throwable
+                    {
+                        final Map<String, String> digests = new HashMap<String, String>();
+                        ChainingUserRegistrySynchronizer.this.attributeService.getAttributes(new AttributeQueryCallback()
+                        {
+                            public boolean handleAttribute(Long id, Serializable value, Serializable[] keys)
+                            {
+                                digests.put((String) keys[2], (String) value);
+                                return true;
+                            }
+                        }, ChainingUserRegistrySynchronizer.DIGEST_ATTRIBUTE_PATH, zoneId);
+
+                        Set<String> zonePersons = ChainingUserRegistrySynchronizer.this.personService
+                                .getUserNamesAreCaseSensitive() ? new TreeSet<String>()
+                                : new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+                        Set<String> zoneGroups = new TreeSet<String>();
+                        if (!digests.isEmpty())
+                        {
+                            zonePersons.addAll(ChainingUserRegistrySynchronizer.this.authorityService
+                                    .getAllAuthoritiesInZone(zoneId, AuthorityType.USER));
+                            zoneGroups.addAll(ChainingUserRegistrySynchronizer.this.authorityService
+                                    .getAllAuthoritiesInZone(zoneId, AuthorityType.GROUP));
+                        }
+                        return new AuthorityDigests(digests, zonePersons, zoneGroups);
+                    }
+                }, true, splitTxns);
+    }
+
     /**
      * Persists the most recent update time for a label and zone.
      * 
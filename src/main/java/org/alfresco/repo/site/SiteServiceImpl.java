@@ -1278,6 +1278,21 @@ public class SiteServiceImpl extends AbstractLifecycleBean implements SiteServic
         return siteInfo;
     }
 
+    /**
+     * Creates a site information object holding just what is needed to sort sites: the short name
+     * and the title.
+     * 
+     * @param siteNodeRef
+     *            site node reference
+     * @return SiteInfo partial site information object
+     */
+    private SiteInfo createSiteSortInfo(NodeRef siteNodeRef)
+    {
+        String shortName = (String) this.directNodeService.getProperty(siteNodeRef, ContentModel.PROP_NAME);
+        String title = DefaultTypeConverter.INSTANCE.convert(String.class, this.directNodeService.getProperty(siteNodeRef, ContentModel.PROP_TITLE));
+        return new SiteInfoImpl(null, shortName, title, null, null, null, siteNodeRef);
+    }
+
     /**
      * Helper method to get the visibility of the site.  If no value is present in the repository then it is calculated from the 
      * set permissions.  This will maintain backwards compatibility with earlier versions of the service implementation.
@@ -3088,6 +3103,21 @@ public class SiteServiceImpl extends AbstractLifecycleBean implements SiteServic
     
     @Override
     public List<SiteMembership> listSiteMemberships(String userName, int size)
+    {
+        return listSiteMemberships(userName, size, true);
+    }
+    
+    /**
+     * Lists the sites a user is a member of, directly or through groups, using the authority bridge
+     * table that maps each user to all the groups containing it.
+     * 
+     * @param userName the user name
+     * @param size the maximum number of sites, 0 for all
+     * @param fullSiteInfo <tt>false</tt> to only fill in the short name, title and node of each site,
+     *            which is enough to sort the memberships
+     * @return the memberships
+     */
+    private List<SiteMembership> listSiteMemberships(String userName, int size, boolean fullSiteInfo)
     {
         final List<String> siteNames = new LinkedList<String>();
         Map<String, String> roleSitePairs = new HashMap<String, String>();
@@ -3175,7 +3205,7 @@ public class SiteServiceImpl extends AbstractLifecycleBean implements SiteServic
                         continue;
                     }
                 }
-                SiteInfo siteInfo = createSiteInfo(site);
+                SiteInfo siteInfo = (fullSiteInfo ? createSiteInfo(site) : createSiteSortInfo(site));
                 String role = roleSitePairs.get(siteInfo.getShortName());
 
                 /* Fix for ALF-21924. Role will be null in case the site id doesn't match the site added in roleSitePairs.
@@ -3230,53 +3260,69 @@ public class SiteServiceImpl extends AbstractLifecycleBean implements SiteServic
         return assocs;
     }
         
-	public PagingResults<SiteMembership> listSitesPaged(final String userName, List<Pair<SiteService.SortFields, Boolean>> sortProps, final PagingRequest pagingRequest)
-	{
-		List<SiteMembership> siteMembers = listSiteMemberships (userName, 0);
-	    final int totalSize = siteMembers.size();
-	 	final PageDetails pageDetails = PageDetails.getPageDetails(pagingRequest, totalSize);
-	 	final List<SiteMembership> resultList;
-	 	if (sortProps == null)
-	 	{
-	 		resultList = siteMembers;
-	 	}
-	 	else
-	 	{
-	 		List<Pair<? extends Object, SortOrder>> sortPairs = new ArrayList<Pair<? extends Object, SortOrder>>(sortProps.size());
+    /**
+     * Sorts and pages the memberships of a user.  The memberships are resolved and sorted on the short
+     * name, title and role of each site; the full site information is only loaded for the sites on the
+     * requested page.
+     */
+    public PagingResults<SiteMembership> listSitesPaged(final String userName, List<Pair<SiteService.SortFields, Boolean>> sortProps, final PagingRequest pagingRequest)
+    {
+        List<SiteMembership> siteMembers = listSiteMemberships(userName, 0, false);
+        if (sortProps != null)
+        {
+            List<Pair<? extends Object, SortOrder>> sortPairs = new ArrayList<Pair<? extends Object, SortOrder>>(sortProps.size());
             for (Pair<SiteService.SortFields, Boolean> sortProp : sortProps)
             {
                 sortPairs.add(new Pair<SiteService.SortFields, SortOrder>(sortProp.getFirst(), (sortProp.getSecond() ? SortOrder.ASCENDING : SortOrder.DESCENDING)));
             }
-	 		TreeSet<SiteMembership> sortedSet = new TreeSet<SiteMembership>(new SiteMembershipComparator(sortPairs, SiteMembershipComparator.Type.SITES));
-	 		sortedSet.addAll(siteMembers);
-	 		resultList = new ArrayList<SiteMembership>(sortedSet);
-	 	}
-		
-	 	PagingResults<SiteMembership> res = new PagingResults<SiteMembership>() {
-			
-			@Override
-			public boolean hasMoreItems() {
-				return pageDetails.hasMoreItems();
-			}
-			
-			@Override
-			public Pair<Integer, Integer> getTotalResultCount() {
-				Integer size = totalSize;
-				return new Pair<Integer, Integer>(size, size);
-			}
-			
-			@Override
-			public String getQueryExecutionId() {
-				return GUID.generate();
-			}
-			
-			@Override
-			public List<SiteMembership> getPage() {
-				return resultList;
-			}
-		};
-
-	    return res;
+            TreeSet<SiteMembership> sortedSet = new TreeSet<SiteMembership>(new SiteMembershipComparator(sortPairs, SiteMembershipComparator.Type.SITES));
+            sortedSet.addAll(siteMembers);
+            siteMembers = new ArrayList<SiteMembership>(sortedSet);
+        }
+        
+        final int totalSize = siteMembers.size();
+        final PageDetails pageDetails = PageDetails.getPageDetails(pagingRequest, totalSize);
+        
+        final List<SiteMembership> page = new ArrayList<SiteMembership>(pageDetails.getPageSize());
+        Iterator<SiteMembership> it = siteMembers.iterator();
+        for (int counter = 0; counter < pageDetails.getEnd() && it.hasNext(); counter++)
+        {
+            SiteMembership siteMember = it.next();
+            if (counter < pageDetails.getSkipCount())
+            {
+                continue;
+            }
+            SiteInfo siteInfo = createSiteInfo(siteMember.getSiteInfo().getNodeRef());
+            page.add(new SiteMembership(siteInfo, siteMember.getId(), siteMember.getRole()));
+        }
+        
+        return new PagingResults<SiteMembership>()
+        {
+            @Override
+            public boolean hasMoreItems()
+            {
+                return pageDetails.hasMoreItems();
+            }
+            
+            @Override
+            public Pair<Integer, Integer> getTotalResultCount()
+            {
+                Integer size = totalSize;
+                return new Pair<Integer, Integer>(size, size);
+            }
+            
+            @Override
+            public String getQueryExecutionId()
+            {
+                return GUID.generate();
+            }
+            
+            @Override
+            public List<SiteMembership> getPage()
+            {
+                return page;
+            }
+        };
     }
 
     private <T extends Object> PagingResults<T> getPagingResults(PagingRequest pagingRequest, final CannedQueryResults<T> results)
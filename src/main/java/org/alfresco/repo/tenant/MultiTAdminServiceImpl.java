@@ -32,6 +32,15 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.transaction.UserTransaction;
@@ -69,6 +78,7 @@ import org.alfresco.service.cmr.workflow.WorkflowService;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.GUID;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.BeansException;
@@ -112,6 +122,17 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
     private List<WorkflowDeployer> workflowDeployers = new ArrayList<WorkflowDeployer>();
     
     private String baseAdminUsername = null; 
+    
+    public static final String ACTIVATION_SEQUENTIAL = "sequential";
+    public static final String ACTIVATION_PARALLEL = "parallel";
+    public static final String ACTIVATION_LAZY = "lazy";
+    
+    private String tenantActivationMode = ACTIVATION_SEQUENTIAL;
+    private int tenantActivationThreads = 4;
+    private static final long TENANT_ACTIVATION_SHUTDOWN_SECONDS = 30L;
+    private ThreadPoolExecutor tenantActivationExecutor;
+    private final ConcurrentMap<String, TenantActivation> pendingTenantActivations = new ConcurrentHashMap<String, TenantActivation>();
+    private final ThreadLocal<Boolean> activatingTenant = new ThreadLocal<Boolean>();
 
     // Experimental: Thor
     private TenantRoutingDataSource trds;
@@ -242,6 +263,34 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
         this.contentRootContainerPath = contentRootContainerPath;
     }
     
+    /**
+     * Sets how the enabled tenants are activated at startup:
+     * <ul>
+     *   <li><b>sequential</b> (default): one after the other, in the startup transaction</li>
+     *   <li><b>parallel</b>: on a pool of {@link #setTenantActivationThreads(int) threads}, each tenant in its own transaction.
+     *       Startup waits for all tenants.</li>
+     *   <li><b>lazy</b>: a tenant is activated when it is first used, while the pool activates the remaining tenants in
+     *       the background.  Startup does not wait.</li>
+     * </ul>
+     */
+    public void setTenantActivationMode(String tenantActivationMode)
+    {
+        if (!ACTIVATION_SEQUENTIAL.equals(tenantActivationMode) && !ACTIVATION_PARALLEL.equals(tenantActivationMode) &&
+                !ACTIVATION_LAZY.equals(tenantActivationMode))
+        {
+            throw new AlfrescoRuntimeException("Unknown tenant activation mode: " + tenantActivationMode);
+        }
+        this.tenantActivationMode = tenantActivationMode;
+    }
+    
+    /**
+     * @param tenantActivationThreads   the number of threads activating tenants in <b>parallel</b> or <b>lazy</b> mode
+     */
+    public void setTenantActivationThreads(int tenantActivationThreads)
+    {
+        this.tenantActivationThreads = tenantActivationThreads;
+    }
+    
     public static final String PROTOCOL_STORE_USER = "user";
     public static final String PROTOCOL_STORE_WORKSPACE = "workspace";
     public static final String PROTOCOL_STORE_SYSTEM = "system";
@@ -257,7 +306,8 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
     public static final String TENANT_ATTRIBUTE_ROOT_CONTENT_STORE_DIR = "rootContentStoreDir";
     public static final String TENANT_ATTRIBUTE_DB_URL = "dbUrl"; // if not co-mingled
     
-    private List<TenantDeployer> tenantDeployers = new ArrayList<TenantDeployer>();
+    // note: tenants may be activated lazily while deployers register
+    private volatile List<TenantDeployer> tenantDeployers = new CopyOnWriteArrayList<TenantDeployer>();
     
     private static final String WARN_MSG = "system.mt.warn.upgrade_mt_admin_context";
     
@@ -308,6 +358,7 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
         }
         
         UserTransaction userTransaction = transactionService.getUserTransaction();
+        long startTime = System.currentTimeMillis();
         
         try
         {
@@ -316,6 +367,7 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
             
             // bootstrap Tenant Service internal cache
             List<Tenant> tenants = getAllTenants();
+            List<String> deferredTenants = new ArrayList<String>();
             
             int enabledCount = 0;
             int disabledCount = 0;
@@ -332,8 +384,17 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
                 
                 if (tenant.isEnabled())
                 {
-                    // notify tenant deployers registered so far ...
-                    notifyAfterEnableTenant(tenantDomain);
+                    if (ACTIVATION_SEQUENTIAL.equals(tenantActivationMode))
+                    {
+                        // notify tenant deployers registered so far ...
+                        long activationStart = System.currentTimeMillis();
+                        notifyAfterEnableTenant(tenantDomain);
+                        logActivation(tenantDomain, System.currentTimeMillis() - activationStart);
+                    }
+                    else
+                    {
+                        deferredTenants.add(tenantDomain);
+                    }
                     enabledCount++;
                 }
                 else
@@ -349,6 +410,11 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
             
             userTransaction.commit();
             
+            if (! deferredTenants.isEmpty())
+            {
+                activateTenants(deferredTenants);
+            }
+            
             if ((enabledCount+disabledCount) == 0)
             {
                 AuthenticationUtil.setMtEnabled(false); // explicitly disable if there are no tenants
@@ -356,13 +422,13 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
             
             if (logger.isInfoEnabled() && ((enabledCount+disabledCount) > 0))
             {
-                logger.info(String.format("Alfresco Multi-Tenant startup - %d enabled tenants, %d disabled tenants",
-                                          enabledCount, disabledCount));
+                logger.info(String.format("Alfresco Multi-Tenant startup - %d enabled tenants, %d disabled tenants (%s activation, %d ms)",
+                                          enabledCount, disabledCount, tenantActivationMode, System.currentTimeMillis() - startTime));
             }
             else if (logger.isDebugEnabled())
             {
-                logger.debug(String.format("Alfresco Multi-Tenant startup - %d enabled tenants, %d disabled tenants",
-                             enabledCount, disabledCount));
+                logger.debug(String.format("Alfresco Multi-Tenant startup - %d enabled tenants, %d disabled tenants (%s activation, %d ms)",
+                             enabledCount, disabledCount, tenantActivationMode, System.currentTimeMillis() - startTime));
             }
         }
         catch(Throwable e)
@@ -380,6 +446,24 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
     @Override
     public void stopTenants()
     {
+        tenantService.setTenantActivator(null);
+        if (tenantActivationExecutor != null)
+        {
+            tenantActivationExecutor.shutdownNow();
+            try
+            {
+                if (! tenantActivationExecutor.awaitTermination(TENANT_ACTIVATION_SHUTDOWN_SECONDS, TimeUnit.SECONDS))
+                {
+                    logger.warn("Tenant activations still running at shutdown");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            tenantActivationExecutor = null;
+        }
+        pendingTenantActivations.clear();
         tenantDeployers.clear();
         tenantDeployers = null;
         AuthenticationUtil.setMtEnabled(false);
@@ -672,12 +756,19 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
         // Check that all the passed values are not null
         ParameterCheck.mandatory("tenantDomain", tenantDomain);
         
+        // note: the deployers are cleared when the tenants are stopped, which may happen during a lazy activation
+        final List<TenantDeployer> deployers = tenantDeployers;
+        if (deployers == null)
+        {
+            return;
+        }
+        
         // notify listeners that tenant has been enabled
         TenantUtil.runAsSystemTenant(new TenantRunAsWork<Object>()
         {
             public Object doWork()
             {
-                for (TenantDeployer tenantDeployer : tenantDeployers)
+                for (TenantDeployer tenantDeployer : deployers)
                 {
                     tenantDeployer.onEnableTenant();
                 }
@@ -691,6 +782,115 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
         }
     }
     
+    private void logActivation(String tenantDomain, long elapsedMillis)
+    {
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Tenant activated: " + tenantDomain + " (" + elapsedMillis + " ms)");
+        }
+    }
+    
+    /**
+     * Activates tenants on the activation pool.  In <b>parallel</b> mode this waits for all of them, in <b>lazy</b>
+     * mode the tenants are left to be activated in the background or by their first use.
+     */
+    private void activateTenants(List<String> tenantDomains)
+    {
+        if (tenantActivationExecutor == null)
+        {
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setThreadDaemon(true);
+            threadFactory.setNamePrefix("TenantActivation");
+            
+            tenantActivationExecutor = new ThreadPoolExecutor(tenantActivationThreads, tenantActivationThreads,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+            tenantActivationExecutor.allowCoreThreadTimeOut(true);
+        }
+        
+        List<TenantActivation> activations = new ArrayList<TenantActivation>(tenantDomains.size());
+        for (String tenantDomain : tenantDomains)
+        {
+            TenantActivation activation = new TenantActivation(tenantDomain);
+            pendingTenantActivations.put(tenantDomain, activation);
+            activations.add(activation);
+        }
+        if (ACTIVATION_LAZY.equals(tenantActivationMode))
+        {
+            tenantService.setTenantActivator(new MultiTServiceImpl.TenantActivator()
+            {
+                @Override
+                public void activateTenant(String tenantDomain)
+                {
+                    activatePendingTenant(tenantDomain);
+                }
+            });
+        }
+        for (TenantActivation activation : activations)
+        {
+            tenantActivationExecutor.execute(activation);
+        }
+        if (ACTIVATION_LAZY.equals(tenantActivationMode))
+        {
+            return;
+        }
+        
+        List<String> failedTenants = new ArrayList<String>();
+        Throwable failure = null;
+        for (TenantActivation activation : activations)
+        {
+            try
+            {
+                activation.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException("Interrupted while activating tenants", e);
+            }
+            catch (ExecutionException e)
+            {
+                // already logged by the activation
+                failedTenants.add(activation.tenantDomain);
+                failure = e.getCause();
+            }
+        }
+        if (failure != null)
+        {
+            throw new AlfrescoRuntimeException("Failed to activate tenants: " + failedTenants, failure);
+        }
+    }
+    
+    /**
+     * Activates a tenant that is waiting for <b>lazy</b> activation, in the calling thread unless the activation
+     * pool has already started on it.  Returns at once if the tenant is active.
+     */
+    private void activatePendingTenant(String tenantDomain)
+    {
+        TenantActivation activation = pendingTenantActivations.get(tenantDomain);
+        if (activation == null || activatingTenant.get() != null)
+        {
+            // active or the tenant deployers are resolving tenant names during activation
+            return;
+        }
+        // does nothing if the activation has already run or is running
+        activation.run();
+        try
+        {
+            activation.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while activating tenant: " + tenantDomain, e);
+        }
+        catch (ExecutionException e)
+        {
+            // let the next use try again
+            pendingTenantActivations.replace(tenantDomain, activation, new TenantActivation(tenantDomain));
+            throw new AlfrescoRuntimeException("Failed to activate tenant: " + tenantDomain, e.getCause());
+        }
+    }
+    
     @Override
     public void disableTenant(String tenantDomain)
     { 
@@ -718,6 +918,9 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
     {
         tenantDomain = getTenantDomain(tenantDomain);
         
+        // a tenant that has not been used yet must be activated before its deployers can disable it
+        activatePendingTenant(tenantDomain);
+        
         // notify listeners that tenant has been disabled
         TenantUtil.runAsSystemTenant(new TenantRunAsWork<Object>()
         {
@@ -1488,4 +1691,58 @@ public class MultiTAdminServiceImpl implements TenantAdminService, ApplicationCo
         ParameterCheck.mandatory("tenantDomain", tenantDomain);
         return tenantDomain.toLowerCase(I18NUtil.getLocale());
     }
+    
+    /**
+     * Notifies the tenant deployers of an enabled tenant in a transaction of its own.  The activation runs at most
+     * once and removes itself from the pending activations when it succeeds.
+     */
+    private class TenantActivation extends FutureTask<Long>
+    {
+        private final String tenantDomain;
+        
+        private TenantActivation(final String tenantDomain)
+        {
+            super(new Callable<Long>()
+            {
+                public Long call() throws Exception
+                {
+                    long activationStart = System.currentTimeMillis();
+                    activatingTenant.set(Boolean.TRUE);
+                    try
+                    {
+                        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+                        {
+                            public Void execute() throws Throwable
+                            {
+                                notifyAfterEnableTenant(tenantDomain);
+                                return null;
+                            }
+                        }, false, true);
+                    }
+                    finally
+                    {
+                        activatingTenant.remove();
+                    }
+                    long elapsed = System.currentTimeMillis() - activationStart;
+                    logActivation(tenantDomain, elapsed);
+                    return elapsed;
+                }
+            });
+            this.tenantDomain = tenantDomain;
+        }
+        
+        @Override
+        protected void set(Long elapsed)
+        {
+            super.set(elapsed);
+            pendingTenantActivations.remove(tenantDomain, this);
+        }
+        
+        @Override
+        protected void setException(Throwable t)
+        {
+            super.setException(t);
+            logger.error("Failed to activate tenant: " + tenantDomain, t);
+        }
+    }
 }
@@ -53,12 +53,29 @@ import org.springframework.extensions.surf.util.I18NUtil;
 public class MultiTServiceImpl implements TenantService
 {
     private TenantAdminDAO tenantAdminDAO;
+    private volatile TenantActivator tenantActivator;
 
     public void setTenantAdminDAO(TenantAdminDAO tenantAdminDAO)
     {
         this.tenantAdminDAO = tenantAdminDAO;
     }
 
+    /**
+     * Activates tenants whose activation was deferred until they are first used.
+     */
+    interface TenantActivator
+    {
+        void activateTenant(String tenantDomain);
+    }
+
+    /**
+     * @param tenantActivator   called whenever an enabled tenant is used, or <tt>null</tt> if all tenants are active
+     */
+    void setTenantActivator(TenantActivator tenantActivator)
+    {
+        this.tenantActivator = tenantActivator;
+    }
+
     @Override
     public NodeRef getName(NodeRef nodeRef)
     {
@@ -741,6 +758,11 @@ public class MultiTServiceImpl implements TenantService
         {
             throw new TenantDisabledException(tenantDomain);
         }
+        TenantActivator activator = tenantActivator;
+        if (activator != null)
+        {
+            activator.activateTenant(tenantDomain);
+        }
     }
 
     @Override
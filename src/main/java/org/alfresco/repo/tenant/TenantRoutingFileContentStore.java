@@ -33,6 +33,7 @@ import java.util.Map;
 import org.alfresco.repo.content.ContentLimitProvider;
 import org.alfresco.repo.content.ContentLimitProvider.NoLimitProvider;
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.DeduplicatingFileContentStore;
 import org.alfresco.repo.content.filestore.FileContentStore;
 import org.alfresco.repo.content.filestore.FileContentUrlProvider;
 import org.springframework.context.ApplicationContext;
@@ -44,6 +45,7 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
 {
     private ContentLimitProvider contentLimitProvider = new NoLimitProvider();
     private FileContentUrlProvider fileContentUrlProvider;
+    private boolean deduplicate;
     
     /**
      * Sets a new {@link ContentLimitProvider} which will provide a maximum filesize for content.
@@ -58,7 +60,15 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
      */
     public void setFileContentUrlProvider(FileContentUrlProvider fileContentUrlProvider)
     {
-        this.fileContentUrlProvider = fileContentUrlProvider;
+        this.fileContentUrlProvider = fileContentUrlProvider;
+    }
+    
+    /**
+     * Set to <tt>true</tt> to keep identical binaries only once using a {@link DeduplicatingFileContentStore}.
+     */
+    public void setDeduplicate(boolean deduplicate)
+    {
+        this.deduplicate = deduplicate;
     }
     
     protected ContentStore initContentStore(ApplicationContext ctx, String contentRoot)
@@ -69,7 +79,9 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
     	    extendedEventParams.put("Tenant", tenantService.getCurrentUserDomain());
     	}
 
-        FileContentStore fileContentStore = new FileContentStore(ctx, new File(contentRoot), extendedEventParams);
+        FileContentStore fileContentStore = (deduplicate ?
+                new DeduplicatingFileContentStore(ctx, new File(contentRoot), extendedEventParams) :
+                new FileContentStore(ctx, new File(contentRoot), extendedEventParams));
         
         // Set the content filesize limiter if there is one.
         if (this.contentLimitProvider != null)
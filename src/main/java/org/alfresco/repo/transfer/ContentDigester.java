@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Computes the digests that let a transfer avoid sending content the target already holds.
+ * <p>
+ * The sender puts the digest of each content property into the manifest and the receiver compares it
+ * with the digest of the content it has for the node, so bytes that were rewritten without changing are
+ * not requested again.  Content URLs never change their content, so digests are cached by URL.
+ *
+ * @since 7.0
+ */
+public class ContentDigester
+{
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private ContentService contentService;
+    private SimpleCache<String, String> digestCache;
+
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "contentService", contentService);
+        PropertyCheck.mandatory(this, "digestCache", digestCache);
+    }
+
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    /**
+     * @param digestCache       cache of content digests by content URL
+     */
+    public void setDigestCache(SimpleCache<String, String> digestCache)
+    {
+        this.digestCache = digestCache;
+    }
+
+    /**
+     * @param contentUrl        the content URL
+     * @return                  the hex encoded digest of the content or <tt>null</tt> if there is no content
+     */
+    public String getDigest(String contentUrl)
+    {
+        if (contentUrl == null || contentUrl.isEmpty())
+        {
+            return null;
+        }
+        String digest = digestCache.get(contentUrl);
+        if (digest != null)
+        {
+            return digest;
+        }
+        ContentReader reader = contentService.getRawReader(contentUrl);
+        if (!reader.exists())
+        {
+            return null;
+        }
+        MessageDigest messageDigest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream is = reader.getContentInputStream())
+        {
+            int read;
+            while ((read = is.read(buffer)) != -1)
+            {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to read content: " + contentUrl, e);
+        }
+        digest = new String(Hex.encodeHex(messageDigest.digest()));
+        digestCache.put(contentUrl, digest);
+        return digest;
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new ContentIOException("Digest algorithm not available: " + DIGEST_ALGORITHM, e);
+        }
+    }
+}
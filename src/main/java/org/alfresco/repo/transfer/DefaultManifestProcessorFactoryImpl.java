@@ -50,6 +50,7 @@ public class DefaultManifestProcessorFactoryImpl implements ManifestProcessorFac
 {
     private NodeService nodeService;
     private ContentService contentService;
+    private ContentDigester contentDigester;
     private DictionaryService dictionaryService;
     private PermissionService permissionService;
     private CorrespondingNodeResolverFactory nodeResolverFactory;
@@ -157,10 +158,19 @@ public class DefaultManifestProcessorFactoryImpl implements ManifestProcessorFac
         CorrespondingNodeResolver nodeResolver = nodeResolverFactory.getResolver();       
         processor.setNodeResolver(nodeResolver);
         processor.setNodeService(nodeService);
+        processor.setContentDigester(contentDigester);
        
         return processor;
     }
 
+    /**
+     * @param contentDigester the contentDigester to set
+     */
+    public void setContentDigester(ContentDigester contentDigester)
+    {
+        this.contentDigester = contentDigester;
+    }
+
     public void setPermissionService(PermissionService permissionService)
     {
         this.permissionService = permissionService;
@@ -57,6 +57,7 @@ public class RepoRequisiteManifestProcessorImpl extends AbstractManifestProcesso
 {
     private NodeService nodeService;
     private CorrespondingNodeResolver nodeResolver;
+    private ContentDigester contentDigester;
     private TransferRequsiteWriter out;
     
     
@@ -160,6 +161,13 @@ public class RepoRequisiteManifestProcessorImpl extends AbstractManifestProcesso
                                         log.debug("part already transferred, no need to send it again, partName:" + partName + ", nodeRef:" + node.getNodeRef());
                                     }   
                                 }
+                                else if(isSameContent(node, srcContent, destContent))
+                                {
+                                    if(log.isDebugEnabled())
+                                    {
+                                        log.debug("content digest matches, no need to send it again, partName:" + partName + ", nodeRef:" + node.getNodeRef());
+                                    }
+                                }
                                 else
                                 {
                                     if(log.isDebugEnabled())
@@ -169,6 +177,13 @@ public class RepoRequisiteManifestProcessorImpl extends AbstractManifestProcesso
                                     out.missingContent(node.getNodeRef(), propEntry.getKey(), TransferCommons.URLToPartName(srcContent.getContentUrl()));
                                 }
                             }
+                            else if(isSameContent(node, srcContent, destContent))
+                            {
+                                if(log.isDebugEnabled())
+                                {
+                                    log.debug("content digest matches, no need to send it, partName:" + partName + ", nodeRef:" + node.getNodeRef());
+                                }
+                            }
                             else
                             {
                                 // dest from contents is null
@@ -228,6 +243,20 @@ public class RepoRequisiteManifestProcessorImpl extends AbstractManifestProcesso
         }        
     }
     
+    /**
+     * Compares the digest the sender supplied for the content with the digest of the content already held
+     * for the node.  The primary processor keeps the existing content of a node when none is sent.
+     */
+    private boolean isSameContent(TransferManifestNormalNode node, ContentData srcContent, ContentData destContent)
+    {
+        if (contentDigester == null || node.getContentDigests() == null || srcContent.getSize() != destContent.getSize())
+        {
+            return false;
+        }
+        String srcDigest = node.getContentDigests().get(srcContent.getContentUrl());
+        return srcDigest != null && srcDigest.equals(contentDigester.getDigest(destContent.getContentUrl()));
+    }
+
     protected void processHeader(TransferManifestHeader header)
     {
         // T.B.D
@@ -261,4 +290,13 @@ public class RepoRequisiteManifestProcessorImpl extends AbstractManifestProcesso
     {
         this.nodeResolver = nodeResolver;
     }
+
+    /**
+     * @param contentDigester
+     *            digests the content held for nodes, to match it with the content offered by the sender
+     */
+    public void setContentDigester(ContentDigester contentDigester)
+    {
+        this.contentDigester = contentDigester;
+    }
 }
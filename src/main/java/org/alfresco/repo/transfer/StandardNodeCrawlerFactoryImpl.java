@@ -26,6 +26,9 @@
 
 package org.alfresco.repo.transfer;
 
+import java.util.concurrent.ExecutorService;
+
+import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.transfer.NodeCrawler;
 import org.alfresco.service.cmr.transfer.NodeCrawlerFactory;
@@ -33,14 +36,39 @@ import org.alfresco.service.cmr.transfer.NodeCrawlerFactory;
 public class StandardNodeCrawlerFactoryImpl implements NodeCrawlerFactory
 {
     private ServiceRegistry serviceRegistry;
+    private ExecutorService executor;
+    private NodeDAO nodeDAO;
+    private int batchSize = StandardNodeCrawlerImpl.DEFAULT_BATCH_SIZE;
     
     public StandardNodeCrawlerFactoryImpl(ServiceRegistry serviceRegistry)
     {
         this.serviceRegistry = serviceRegistry;
     }
+
+    /**
+     * @param executor the executor that crawlers fan out on, or <tt>null</tt> to crawl in line
+     */
+    public void setExecutor(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
     
     public NodeCrawler getNodeCrawler()
     {
-        return new StandardNodeCrawlerImpl(serviceRegistry);
+        StandardNodeCrawlerImpl crawler = new StandardNodeCrawlerImpl(serviceRegistry);
+        crawler.setExecutor(executor);
+        crawler.setNodeDAO(nodeDAO);
+        crawler.setBatchSize(batchSize);
+        return crawler;
     }
 }
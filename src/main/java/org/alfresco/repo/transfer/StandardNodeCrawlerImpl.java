@@ -33,7 +33,19 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.transfer.NodeCrawler;
@@ -48,6 +60,11 @@ import org.alfresco.service.cmr.transfer.TransferService;
  * NodeFilter objects to determine whether it should be included or ignored. Any included nodes are then fed back into
  * the NodeFinder objects to continue the crawl. This class was originally written to assist users of the
  * {@link TransferService} in combination with the {@link ChildAssociatedNodeFinder} and the {@link ContentClassFilter}.
+ * <p>
+ * Given an executor, the crawl fans out across the executor's threads: nodes are handed out in batches, each of which
+ * is bulk loaded and then filtered and followed in a read-only transaction of its own.  The node finders and filters
+ * must then be safe for concurrent use once initialised, as the standard ones are.  The workers cannot see changes that
+ * have not been committed, so a crawl made from a transaction that has modified nodes is always done in line.
  * 
  * @author brian
  * 
@@ -57,6 +74,13 @@ public class StandardNodeCrawlerImpl implements NodeCrawler
     private ServiceRegistry serviceRegistry;
     private List<NodeFinder> nodeFinders = new ArrayList<NodeFinder>();
     private List<NodeFilter> nodeFilters = new ArrayList<NodeFilter>();
+    private ExecutorService executor;
+    private NodeDAO nodeDAO;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    /** The number of batches that may be crawling at once, which bounds the results waiting to be merged */
+    private static final int MAX_BATCHES_IN_FLIGHT = 16;
 
     /**
      * 
@@ -84,6 +108,33 @@ public class StandardNodeCrawlerImpl implements NodeCrawler
         this.serviceRegistry = serviceRegistry;
     }
 
+    /**
+     * @param executor
+     *            the executor to crawl on, or <tt>null</tt> to crawl in line
+     */
+    public void setExecutor(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * @param nodeDAO
+     *            used to load the nodes of each batch in bulk; a parallel crawl needs it
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    /**
+     * @param batchSize
+     *            the number of nodes handed to each worker of a parallel crawl
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
     /* (non-Javadoc)
      * @see org.alfresco.repo.transfer.NodeCrawler#crawl(org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -98,6 +149,10 @@ public class StandardNodeCrawlerImpl implements NodeCrawler
     public synchronized Set<NodeRef> crawl(Set<NodeRef> startingNodes)
     {
         init();
+        if (isParallel())
+        {
+            return crawlInParallel(startingNodes);
+        }
         Queue<NodeRef> nodesToProcess = new LinkedList<NodeRef>();
         nodesToProcess.addAll(startingNodes);
         Set<NodeRef> resultingNodeSet = new HashSet<NodeRef>(89);
@@ -129,6 +184,137 @@ public class StandardNodeCrawlerImpl implements NodeCrawler
         return resultingNodeSet;
     }
 
+    /**
+     * @return <tt>true</tt> if the crawl can be done by the executor
+     */
+    private boolean isParallel()
+    {
+        if (executor == null || nodeDAO == null)
+        {
+            return false;
+        }
+        // Changes made by the current transaction would not be visible to the workers
+        return AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_READ_WRITE
+                || nodeDAO.getCurrentTransactionId(false) == null;
+    }
+
+    /**
+     * Crawls in batches on the executor.  Nodes found by each batch are handed out again in new batches as the
+     * results come back, so the crawl works through all subtrees at once.
+     */
+    private Set<NodeRef> crawlInParallel(Set<NodeRef> startingNodes)
+    {
+        String runAsUser = AuthenticationUtil.getRunAsUser();
+        CompletionService<CrawledBatch> completionService = new ExecutorCompletionService<CrawledBatch>(executor);
+        Queue<NodeRef> nodesToProcess = new LinkedList<NodeRef>(startingNodes);
+        Set<NodeRef> resultingNodeSet = new HashSet<NodeRef>(89);
+        Set<NodeRef> processedNodes = new HashSet<NodeRef>(89);
+        int batchesInFlight = 0;
+        try
+        {
+            while (nodesToProcess.peek() != null || batchesInFlight > 0)
+            {
+                // Hand out batches of the nodes we haven't processed yet
+                while (nodesToProcess.peek() != null && batchesInFlight < MAX_BATCHES_IN_FLIGHT)
+                {
+                    List<NodeRef> batch = new ArrayList<NodeRef>(batchSize);
+                    while (batch.size() < batchSize && nodesToProcess.peek() != null)
+                    {
+                        NodeRef thisNode = nodesToProcess.poll();
+                        if (processedNodes.add(thisNode))
+                        {
+                            batch.add(thisNode);
+                        }
+                    }
+                    if (!batch.isEmpty())
+                    {
+                        completionService.submit(new CrawlBatch(batch, startingNodes, runAsUser));
+                        batchesInFlight++;
+                    }
+                }
+                if (batchesInFlight == 0)
+                {
+                    continue;
+                }
+                CrawledBatch crawledBatch = completionService.take().get();
+                batchesInFlight--;
+                resultingNodeSet.addAll(crawledBatch.includedNodes);
+                nodesToProcess.addAll(crawledBatch.foundNodes);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while crawling nodes", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new AlfrescoRuntimeException("Failed to crawl nodes", cause);
+        }
+        return resultingNodeSet;
+    }
+
+    /**
+     * The nodes of a batch that passed the filters and the nodes found from them.
+     */
+    private static class CrawledBatch
+    {
+        private final List<NodeRef> includedNodes = new ArrayList<NodeRef>();
+        private final Set<NodeRef> foundNodes = new HashSet<NodeRef>(89);
+    }
+
+    /**
+     * Filters and follows a batch of nodes in a read-only transaction, as the user running the crawl.
+     */
+    private class CrawlBatch implements Callable<CrawledBatch>
+    {
+        private final List<NodeRef> batch;
+        private final Set<NodeRef> startingNodes;
+        private final String runAsUser;
+
+        private CrawlBatch(List<NodeRef> batch, Set<NodeRef> startingNodes, String runAsUser)
+        {
+            this.batch = batch;
+            this.startingNodes = startingNodes;
+            this.runAsUser = runAsUser;
+        }
+
+        public CrawledBatch call() throws Exception
+        {
+            final RetryingTransactionCallback<CrawledBatch> crawlCallback = new RetryingTransactionCallback<CrawledBatch>()
+            {
+                public CrawledBatch execute() throws Throwable
+                {
+                    // Load the nodes, their properties and aspects in one go
+                    nodeDAO.cacheNodes(batch);
+                    CrawledBatch crawledBatch = new CrawledBatch();
+                    for (NodeRef thisNode : batch)
+                    {
+                        if (startingNodes.contains(thisNode) || includeNode(thisNode))
+                        {
+                            crawledBatch.includedNodes.add(thisNode);
+                            crawledBatch.foundNodes.addAll(findSubsequentNodes(thisNode));
+                        }
+                    }
+                    return crawledBatch;
+                }
+            };
+            return AuthenticationUtil.runAs(new RunAsWork<CrawledBatch>()
+            {
+                public CrawledBatch doWork() throws Exception
+                {
+                    return serviceRegistry.getTransactionService().getRetryingTransactionHelper()
+                            .doInTransaction(crawlCallback, true, true);
+                }
+            }, runAsUser);
+        }
+    }
+
     /**
      * 
      */
@@ -36,12 +36,14 @@ import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +58,7 @@ import javax.xml.parsers.SAXParserFactory;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transfer.manifest.TransferManifestDeletedNode;
 import org.alfresco.repo.transfer.manifest.TransferManifestHeader;
@@ -116,6 +119,8 @@ public class TransferServiceImpl2 implements TransferService2
 {
     private static Log logger = LogFactory.getLog(TransferServiceImpl2.class);
 
+    private static final int MANIFEST_PREFETCH_SIZE = 256;
+
     private static final String MSG_NO_HOME = "transfer_service.unable_to_find_transfer_home";
     private static final String MSG_NO_GROUP = "transfer_service.unable_to_find_transfer_group";
     private static final String MSG_NO_TARGET = "transfer_service.unable_to_find_transfer_target";
@@ -166,6 +171,8 @@ public class TransferServiceImpl2 implements TransferService2
     private TransactionService transactionService;
     private ActionService actionService;
     private TransferManifestNodeFactory transferManifestNodeFactory;
+    private ContentDigester contentDigester;
+    private NodeBulkLoader bulkLoader;
     private TransferReporter transferReporter;
     private DescriptorService descriptorService;
     private TransferVersionChecker transferVersionChecker;
@@ -971,9 +978,25 @@ public class TransferServiceImpl2 implements TransferService2
         formatter.writeTransferManifestHeader(header);
         if (nodes != null)
         {
+            Iterator<NodeRef> toPrefetch = nodes.iterator();
+            int count = 0;
             for (NodeRef nodeRef : nodes)
             {
+                if (bulkLoader != null && count++ % MANIFEST_PREFETCH_SIZE == 0)
+                {
+                    // Load the next nodes, their properties and aspects in one go
+                    List<NodeRef> prefetch = new ArrayList<NodeRef>(MANIFEST_PREFETCH_SIZE);
+                    while (prefetch.size() < MANIFEST_PREFETCH_SIZE && toPrefetch.hasNext())
+                    {
+                        prefetch.add(toPrefetch.next());
+                    }
+                    bulkLoader.cacheNodes(prefetch);
+                }
                 TransferManifestNode node = transferManifestNodeFactory.createTransferManifestNode(nodeRef, definition, transferContext);
+                if (contentDigester != null && node instanceof TransferManifestNormalNode)
+                {
+                    addContentDigests((TransferManifestNormalNode) node);
+                }
                 formatter.writeTransferManifestNode(node);
             }
         }
@@ -1007,6 +1030,30 @@ public class TransferServiceImpl2 implements TransferService2
     
         return snapshotFile;
     }
+
+    /**
+     * Digest the content of the node so that the target need not ask for content it already has.
+     */
+    private void addContentDigests(TransferManifestNormalNode node)
+    {
+        Map<String, String> contentDigests = new HashMap<String, String>();
+        for (Serializable value : node.getProperties().values())
+        {
+            if (value instanceof ContentData)
+            {
+                String contentUrl = ((ContentData) value).getContentUrl();
+                String digest = contentDigester.getDigest(contentUrl);
+                if (digest != null)
+                {
+                    contentDigests.put(contentUrl, digest);
+                }
+            }
+        }
+        if (!contentDigests.isEmpty())
+        {
+            node.setContentDigests(contentDigests);
+        }
+    }
     
     private File createRequisiteFile()
     {
@@ -1407,6 +1454,22 @@ public class TransferServiceImpl2 implements TransferService2
         this.transferManifestNodeFactory = transferManifestNodeFactory;
     }
 
+    /**
+     * @param bulkLoader loads the nodes of the manifest in batches; without one they are loaded one by one
+     */
+    public void setBulkLoader(NodeBulkLoader bulkLoader)
+    {
+        this.bulkLoader = bulkLoader;
+    }
+
+    /**
+     * @param contentDigester digests content for the manifest; without one all content is offered by its URL alone
+     */
+    public void setContentDigester(ContentDigester contentDigester)
+    {
+        this.contentDigester = contentDigester;
+    }
+
     public void setActionService(ActionService actionService)
     {
         this.actionService = actionService;
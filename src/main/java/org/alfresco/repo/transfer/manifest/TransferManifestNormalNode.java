@@ -62,6 +62,9 @@ public class TransferManifestNormalNode implements TransferManifestNode
     // NodeRef is noderef of type d:category  ManifestCategory provides the extra meta-data
     private Map<NodeRef, ManifestCategory> categories;
 
+    // Digests of the content properties by content URL, where the sender supplied them
+    private Map<String, String> contentDigests;
+
     public void setNodeRef(NodeRef nodeRef)
     {
         this.nodeRef = nodeRef;
@@ -210,5 +213,18 @@ public class TransferManifestNormalNode implements TransferManifestNode
     {
     	return this.categories;
     }
+
+    public void setContentDigests(Map<String, String> contentDigests)
+    {
+        this.contentDigests = contentDigests;
+    }
+
+    /**
+     * @return the digests of the content properties keyed by content URL, or <tt>null</tt> if none were supplied
+     */
+    public Map<String, String> getContentDigests()
+    {
+        return contentDigests;
+    }
     
 }
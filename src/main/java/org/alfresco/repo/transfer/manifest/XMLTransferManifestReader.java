@@ -322,6 +322,18 @@ public class XMLTransferManifestReader extends DefaultHandler implements Content
                 Long size = Long.valueOf(sizeStr);
                 ContentData contentHeader = new ContentData(contentURL, mimetype, size.longValue(), encoding, locale);
                 props.put("contentHeader", contentHeader);
+
+                String digest = (String)atts.getValue("", "digest");
+                Object node = props.get("node");
+                if(digest != null && node instanceof TransferManifestNormalNode)
+                {
+                    TransferManifestNormalNode normalNode = (TransferManifestNormalNode)node;
+                    if(normalNode.getContentDigests() == null)
+                    {
+                        normalNode.setContentDigests(new HashMap<String, String>());
+                    }
+                    normalNode.getContentDigests().put(contentURL, digest);
+                }
             }
             else if(elementName.equals(ManifestModel.LOCALNAME_ELEMENT_ACL))
             {
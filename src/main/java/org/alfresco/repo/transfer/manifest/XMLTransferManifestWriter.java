@@ -296,7 +296,7 @@ public class XMLTransferManifestWriter implements TransferManifestWriter
 
         writeAspects(node.getAspects());
 
-        writeProperties(node.getProperties());
+        writeProperties(node.getProperties(), node.getContentDigests());
 
         writeParentAssocs(node.getParentAssocs());
 
@@ -349,7 +349,7 @@ public class XMLTransferManifestWriter implements TransferManifestWriter
     }
 
 
-    private void writeProperties(Map<QName, Serializable> properties) throws SAXException
+    private void writeProperties(Map<QName, Serializable> properties, Map<String, String> contentDigests) throws SAXException
     {
         writer.startElement(TransferModel.TRANSFER_MODEL_1_0_URI,
                     ManifestModel.LOCALNAME_ELEMENT_PROPERTIES, PREFIX + ":"
@@ -358,7 +358,7 @@ public class XMLTransferManifestWriter implements TransferManifestWriter
         {
             for (Entry<QName, Serializable> entry : properties.entrySet())
             {
-                writeProperty(entry.getKey(), entry.getValue());
+                writeProperty(entry.getKey(), entry.getValue(), contentDigests);
             }
         }
 
@@ -368,7 +368,7 @@ public class XMLTransferManifestWriter implements TransferManifestWriter
     }
 
     @SuppressWarnings("unchecked")
-    private void writeProperty(QName propertyName, Serializable value) throws SAXException
+    private void writeProperty(QName propertyName, Serializable value, Map<String, String> contentDigests) throws SAXException
     {
         {
             AttributesImpl attributes = new AttributesImpl();
@@ -397,6 +397,12 @@ public class XMLTransferManifestWriter implements TransferManifestWriter
                         "encoding", "String", data.getEncoding());
             dataAttributes.addAttribute(TransferModel.TRANSFER_MODEL_1_0_URI, "locale", "locale",
                         "String", data.getLocale().toString());
+            String digest = (contentDigests == null ? null : contentDigests.get(data.getContentUrl()));
+            if (digest != null)
+            {
+                dataAttributes.addAttribute(TransferModel.TRANSFER_MODEL_1_0_URI, "digest", "digest",
+                            "String", digest);
+            }
             writer.startElement(TransferModel.TRANSFER_MODEL_1_0_URI,
                         ManifestModel.LOCALNAME_ELEMENT_CONTENT_HEADER, PREFIX + ":"
                                     + ManifestModel.LOCALNAME_ELEMENT_CONTENT_HEADER,
@@ -42,6 +42,7 @@ import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.security.NoSuchPersonException;
 import org.alfresco.service.cmr.security.OwnableService;
 import org.alfresco.service.cmr.security.PersonService;
@@ -446,35 +447,58 @@ public class ContentUsageImpl implements ContentUsageService,
     }
     */
     
+    /**
+     * Add to a user's usage for content that was created without the behaviours that maintain usages,
+     * as happens when content is loaded in bulk.
+     * 
+     * @param storeRef          the store that the content was created in
+     * @param typeQName         the type of the content nodes
+     * @param userName          the owner of the content
+     * @param contentSize       the combined size of the content
+     */
+    public void addUserUsage(StoreRef storeRef, QName typeQName, String userName, long contentSize)
+    {
+        if (enabled && stores.contains(tenantService.getBaseName(storeRef).toString()) && contentSize != 0 &&
+                !authenticationContext.isSystemUserName(userName) && !excludedTypes.contains(typeQName))
+        {
+            if (logger.isDebugEnabled()) logger.debug("addUserUsage: username="+userName+", contentSize="+contentSize+", storeRef="+storeRef);
+            incrementUserUsage(userName, contentSize);
+        }
+    }
+    
     private void incrementUserUsage(String userName, long contentSize, NodeRef contentNodeRef)
     {
         if (!authenticationContext.isSystemUserName(userName) && !excludedTypes.contains(nodeService.getType(contentNodeRef)))
         {
             // increment usage - add positive delta
             if (logger.isDebugEnabled()) logger.debug("incrementUserUsage: username="+userName+", contentSize="+contentSize+", contentNodeRef="+contentNodeRef);
-            
-            long currentSize = getUserUsage(userName);
-            long quotaSize = getUserQuota(userName);
-            
-            long newSize = currentSize + contentSize;
-            
-            // check whether user's quota exceeded
-            if ((quotaSize != -1) && (newSize > quotaSize))
-            {
-                if (logger.isWarnEnabled())
-                {
-                    logger.warn("User (" + userName + ") quota exceeded: content=" + contentSize +
-                                  ", usage=" + currentSize +
-                                  ", quota=" + quotaSize);
-                }
-                throw new ContentQuotaException("User quota exceeded");
-            }
-            
-            NodeRef personNodeRef = getPerson(userName);
-            if (personNodeRef != null)
+            incrementUserUsage(userName, contentSize);
+        }
+    }
+    
+    private void incrementUserUsage(String userName, long contentSize)
+    {
+        long currentSize = getUserUsage(userName);
+        long quotaSize = getUserQuota(userName);
+        
+        long newSize = currentSize + contentSize;
+        
+        // check whether user's quota exceeded
+        if ((quotaSize != -1) && (newSize > quotaSize))
+        {
+            if (logger.isWarnEnabled())
             {
-                usageService.insertDelta(personNodeRef, contentSize);
+                logger.warn("User (" + userName + ") quota exceeded: content=" + contentSize +
+                              ", usage=" + currentSize +
+                              ", quota=" + quotaSize);
             }
+            throw new ContentQuotaException("User quota exceeded");
+        }
+        
+        NodeRef personNodeRef = getPerson(userName);
+        if (personNodeRef != null)
+        {
+            usageService.insertDelta(personNodeRef, contentSize);
         }
     }
     
@@ -71,6 +71,26 @@ public interface TaskComponent
      */
     public List<WorkflowTask> getPooledTasks(List<String> authorities, boolean lazyInitialization);
     
+    /**
+     * Gets a page of the pooled tasks available to the specified authorities, sorted and paged
+     * by the workflow engine
+     * 
+     * @param authorities   the list of authorities
+     * @param orderBy  the sort order, or null for the default order of the engine
+     * @param maxItems  the maximum number of tasks, 0 for all
+     * @param skipCount  the number of tasks to skip
+     * @return  the page of pooled tasks
+     */
+    public List<WorkflowTask> getPooledTasks(List<String> authorities, WorkflowTaskQuery.OrderBy[] orderBy, int maxItems, int skipCount);
+    
+    /**
+     * Count the pooled tasks available to the specified authorities
+     * 
+     * @param authorities   the list of authorities
+     * @return  number of pooled tasks
+     */
+    public long countPooledTasks(List<String> authorities);
+    
     /**
      * @deprecated Use overloaded method with the {@code sameSession} parameter
      * (this method defaults the parameter to {@code false}).
@@ -859,15 +859,7 @@ public class WorkflowServiceImpl implements WorkflowService
     @Override
     public List<WorkflowTask> getPooledTasks(String authority,
     		boolean lazyinitialization) {
-    	 // Expand authorities to include associated groups (and parent groups)
-        List<String> authorities = new ArrayList<String>();
-        authorities.add(authority);
-        Set<String> parents = authorityService.getContainingAuthorities(AuthorityType.GROUP, authority, false);
-        authorities.addAll(parents);
-        if (maxAuthoritiesForPooledTasks > 0 && authorities.size() > maxAuthoritiesForPooledTasks)
-        {
-            authorities = authorities.subList(0, maxAuthoritiesForPooledTasks);
-        }
+        List<String> authorities = getPooledTaskAuthorities(authority);
 
         // Retrieve pooled tasks for authorities (from each of the registered task components)
         List<WorkflowTask> tasks = new ArrayList<WorkflowTask>(10);
@@ -900,6 +892,77 @@ public class WorkflowServiceImpl implements WorkflowService
         return Collections.unmodifiableList(tasks);
     }
 
+    @Override
+    public List<WorkflowTask> getPooledTasks(String authority, WorkflowTaskQuery.OrderBy[] orderBy, int maxItems, int skipCount)
+    {
+        List<String> authorities = getPooledTaskAuthorities(authority);
+        if (maxPooledTasks > 0)
+        {
+            // Clip the results if necessary
+            if (skipCount >= maxPooledTasks)
+            {
+                return Collections.emptyList();
+            }
+            if (maxItems <= 0 || maxItems > maxPooledTasks - skipCount)
+            {
+                maxItems = maxPooledTasks - skipCount;
+            }
+        }
+
+        // Each task component pages its own tasks; the pages of the components follow one another
+        List<WorkflowTask> tasks = new ArrayList<WorkflowTask>(maxItems > 0 ? maxItems : 10);
+        String[] ids = registry.getTaskComponents();
+        for (int i = 0; i < ids.length; i++)
+        {
+            TaskComponent component = registry.getTaskComponent(ids[i]);
+            if (skipCount > 0 && i < ids.length - 1)
+            {
+                long count = component.countPooledTasks(authorities);
+                if (skipCount >= count)
+                {
+                    skipCount -= count;
+                    continue;
+                }
+            }
+            List<WorkflowTask> pooledTasks = component.getPooledTasks(authorities, orderBy, maxItems > 0 ? maxItems - tasks.size() : 0, skipCount);
+            tasks.addAll(pooledTasks);
+            skipCount = 0;
+            if (maxItems > 0 && tasks.size() >= maxItems)
+            {
+                break;
+            }
+        }
+        return Collections.unmodifiableList(tasks);
+    }
+
+    @Override
+    public long countPooledTasks(String authority)
+    {
+        List<String> authorities = getPooledTaskAuthorities(authority);
+        long count = 0;
+        for (String id : registry.getTaskComponents())
+        {
+            count += registry.getTaskComponent(id).countPooledTasks(authorities);
+        }
+        return (maxPooledTasks > 0 ? Math.min(count, maxPooledTasks) : count);
+    }
+
+    /**
+     * Expand authorities to include associated groups (and parent groups)
+     */
+    private List<String> getPooledTaskAuthorities(String authority)
+    {
+        List<String> authorities = new ArrayList<String>();
+        authorities.add(authority);
+        Set<String> parents = authorityService.getContainingAuthorities(AuthorityType.GROUP, authority, false);
+        authorities.addAll(parents);
+        if (maxAuthoritiesForPooledTasks > 0 && authorities.size() > maxAuthoritiesForPooledTasks)
+        {
+            authorities = authorities.subList(0, maxAuthoritiesForPooledTasks);
+        }
+        return authorities;
+    }
+
     /*
      * (non-Javadoc)
      * @see
@@ -449,6 +449,24 @@ public class ActivitiTypeConverter
      * @return the converter task. Returns null when the domain mismatched and ignoreDomainMismatch was true.
      */
     public WorkflowTask convert(Task task, boolean ignoreDomainMismatch)
+    {
+        return convert(task, ignoreDomainMismatch, null, null);
+    }
+    
+    /**
+     * Converts the given task into a {@link WorkflowTask} using variables that were already fetched,
+     * ignoring domain mismatch (ALF-12264).
+     * @param task Task
+     * @param variables all the variables of the task, including the variables of its execution
+     * @param localVariables the local variables of the task
+     * @return the converter task. Returns null when the domain mismatched.
+     */
+    public WorkflowTask convert(Task task, Map<String, Object> variables, Map<String, Object> localVariables)
+    {
+        return convert(task, true, variables, localVariables);
+    }
+    
+    private WorkflowTask convert(Task task, boolean ignoreDomainMismatch, Map<String, Object> variables, Map<String, Object> localVariables)
     {
         if(task == null)
             return null;
@@ -474,7 +492,8 @@ public class ActivitiTypeConverter
             WorkflowTaskDefinition taskDef = factory.createTaskDefinition(taskDefId, node, taskDefId, false);
             
             // All task-properties should be fetched, not only local
-            Map<QName, Serializable> properties = propertyConverter.getTaskProperties(task);
+            Map<QName, Serializable> properties = (variables == null ? propertyConverter.getTaskProperties(task) :
+                        propertyConverter.getTaskProperties(task, variables, localVariables));
             
             return factory.createTask(id,
                         taskDef, taskDef.getId(), defaultTitle, defaultDescription, state, path, properties);
@@ -40,6 +40,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.activiti.bpmn.model.BpmnModel;
 import org.activiti.engine.ActivitiException;
@@ -64,10 +65,14 @@ import org.activiti.engine.impl.context.Context;
 import org.activiti.engine.impl.form.DefaultTaskFormHandler;
 import org.activiti.engine.impl.form.TaskFormHandler;
 import org.activiti.engine.impl.identity.Authentication;
+import org.activiti.engine.impl.interceptor.Command;
 import org.activiti.engine.impl.interceptor.CommandContext;
 import org.activiti.engine.impl.persistence.entity.ExecutionEntity;
+import org.activiti.engine.impl.persistence.entity.IdentityLinkEntity;
 import org.activiti.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.activiti.engine.impl.persistence.entity.TaskEntity;
 import org.activiti.engine.impl.persistence.entity.TimerEntity;
+import org.activiti.engine.impl.persistence.entity.VariableInstanceEntity;
 import org.activiti.engine.impl.pvm.PvmActivity;
 import org.activiti.engine.impl.pvm.ReadOnlyProcessDefinition;
 import org.activiti.engine.impl.pvm.process.ActivityImpl;
@@ -77,6 +82,8 @@ import org.activiti.engine.repository.ProcessDefinitionQuery;
 import org.activiti.engine.runtime.Execution;
 import org.activiti.engine.runtime.Job;
 import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.IdentityLinkType;
+import org.activiti.engine.task.NativeTaskQuery;
 import org.activiti.engine.task.Task;
 import org.activiti.engine.task.TaskQuery;
 import org.activiti.image.ProcessDiagramGenerator;
@@ -204,6 +211,9 @@ public class ActivitiWorkflowEngine extends BPMEngine implements WorkflowEngine
     private NamespaceService namespaceService;
     private Repository repositoryHelper;
     
+    /** Whether pooled task pages are selected with row_number(), detected from the database type */
+    private volatile Boolean rowNumberPaging;
+    
     public ActivitiWorkflowEngine()
     {
         super();
@@ -1668,6 +1678,269 @@ public class ActivitiWorkflowEngine extends BPMEngine implements WorkflowEngine
         }
     }
 
+    /**
+    * {@inheritDoc}
+    */
+    public List<WorkflowTask> getPooledTasks(List<String> authorities, OrderBy[] orderBy, int maxItems, int skipCount)
+    {
+        try
+        {
+            if (authorities == null || authorities.isEmpty())
+            {
+                return Collections.emptyList();
+            }
+            boolean paged = (maxItems > 0 || skipCount > 0);
+            List<Task> tasks;
+            if (paged && isRowNumberPaging())
+            {
+                // The page is selected by the query itself
+                tasks = createPooledTaskQuery(authorities, orderBy, false, skipCount, maxItems).list();
+            }
+            else if (paged)
+            {
+                tasks = createPooledTaskQuery(authorities, orderBy, false, -1, 0).listPage(skipCount, maxItems > 0 ? maxItems : Integer.MAX_VALUE);
+            }
+            else
+            {
+                tasks = createPooledTaskQuery(authorities, orderBy, false, -1, 0).list();
+            }
+            return convertPooledTasks(tasks);
+        }
+        catch(ActivitiException ae)
+        {
+            String msg = messageService.getMessage(ERR_GET_POOLED_TASKS, StringUtils.join(authorities.iterator(), ", "));
+            if(logger.isDebugEnabled())
+            {
+                logger.debug(msg, ae);
+            }
+            throw new WorkflowException(msg, ae);
+        }
+    }
+
+    /**
+    * {@inheritDoc}
+    */
+    public long countPooledTasks(List<String> authorities)
+    {
+        try
+        {
+            if (authorities == null || authorities.isEmpty())
+            {
+                return 0;
+            }
+            return createPooledTaskQuery(authorities, null, true, -1, 0).count();
+        }
+        catch(ActivitiException ae)
+        {
+            String msg = messageService.getMessage(ERR_GET_POOLED_TASKS, StringUtils.join(authorities.iterator(), ", "));
+            if(logger.isDebugEnabled())
+            {
+                logger.debug(msg, ae);
+            }
+            throw new WorkflowException(msg, ae);
+        }
+    }
+
+    /**
+     * Creates a single query for the unassigned tasks that any of the authorities is a candidate for, so
+     * that they can be sorted and paged by the database rather than collected per authority.
+     * 
+     * @param authorities the first authority may be a user, the others are groups
+     * @param orderBy the sort order, or null for the default order of the task IDs
+     * @param count true to count the tasks
+     * @param skipCount the number of tasks to skip when the query selects the page itself, or -1 to select all
+     * @param maxItems the size of the page the query selects, or 0 for all the tasks after those skipped
+     */
+    private NativeTaskQuery createPooledTaskQuery(List<String> authorities, OrderBy[] orderBy, boolean count, int skipCount, int maxItems)
+    {
+        NativeTaskQuery query = taskService.createNativeTaskQuery();
+        StringBuilder sql = new StringBuilder(256 + authorities.size() * 16);
+        sql.append(count ? "select count(distinct RES.ID_)" : "select distinct RES.*")
+           .append(" from ").append(managementService.getTableName(TaskEntity.class)).append(" RES")
+           .append(" inner join ").append(managementService.getTableName(IdentityLinkEntity.class)).append(" I on I.TASK_ID_ = RES.ID_")
+           .append(" where RES.ASSIGNEE_ is null and I.TYPE_ = #{linkType} and (");
+        query.parameter("linkType", IdentityLinkType.CANDIDATE);
+        
+        // As with getPooledTasks, the first authority can be a user and the others are groups
+        List<String> groupNames = authorities;
+        if (authorityManager.isUser(authorities.get(0)))
+        {
+            sql.append("I.USER_ID_ = #{userName}");
+            query.parameter("userName", authorities.get(0));
+            groupNames = authorities.subList(1, authorities.size());
+            if (!groupNames.isEmpty())
+            {
+                sql.append(" or ");
+            }
+        }
+        if (!groupNames.isEmpty())
+        {
+            sql.append("I.GROUP_ID_ in (");
+            for (int i = 0; i < groupNames.size(); i++)
+            {
+                sql.append(i == 0 ? "#{group" : ", #{group").append(i).append('}');
+                query.parameter("group" + i, groupNames.get(i));
+            }
+            sql.append(')');
+        }
+        sql.append(')');
+        
+        // Additional filtering on the tenant-property in case workflow-definitions are shared across tenants
+        if(!activitiUtil.isMultiTenantWorkflowDeploymentEnabled() && tenantService.isEnabled())
+        {
+            sql.append(" and exists (select 1 from ").append(managementService.getTableName(VariableInstanceEntity.class)).append(" V")
+               .append(" where V.PROC_INST_ID_ = RES.PROC_INST_ID_ and V.TASK_ID_ is null")
+               .append(" and V.NAME_ = #{tenantVariable} and V.TEXT_ = #{tenantDomain})");
+            query.parameter("tenantVariable", ActivitiConstants.VAR_TENANT_DOMAIN);
+            query.parameter("tenantDomain", TenantUtil.getCurrentDomain());
+        }
+        
+        if (!count && skipCount < 0)
+        {
+            sql.append(" order by ").append(getPooledTaskOrderColumns(orderBy, "RES."));
+        }
+        else if (!count)
+        {
+            // Number the distinct tasks in order and select the page by number
+            sql.insert(0, "select SUB.* from (select D.*, row_number() over (order by " + getPooledTaskOrderColumns(orderBy, "D.") + ") RNK_ from (");
+            sql.append(") D) SUB where SUB.RNK_ > #{pageStart} and SUB.RNK_ <= #{pageEnd} order by SUB.RNK_");
+            query.parameter("pageStart", skipCount);
+            query.parameter("pageEnd", maxItems > 0 ? (long) skipCount + maxItems : Long.MAX_VALUE);
+        }
+        return query.sql(sql.toString());
+    }
+    
+    /**
+     * SQL Server and DB2 don't allow ordering within the sub-select that Activiti wraps native queries in to
+     * select a page.  Their pooled task queries select the page themselves, numbering the tasks with
+     * <code>row_number()</code>.
+     */
+    private boolean isRowNumberPaging()
+    {
+        Boolean rowNumberPaging = this.rowNumberPaging;
+        if (rowNumberPaging == null)
+        {
+            String databaseType = managementService.executeCommand(new Command<String>()
+            {
+                @Override
+                public String execute(CommandContext commandContext)
+                {
+                    return commandContext.getProcessEngineConfiguration().getDatabaseType();
+                }
+            });
+            rowNumberPaging = ("mssql".equals(databaseType) || "db2".equals(databaseType));
+            this.rowNumberPaging = rowNumberPaging;
+        }
+        return rowNumberPaging;
+    }
+    
+    /**
+     * Overrides the paging of pooled tasks detected from the database type.
+     * 
+     * @param rowNumberPaging       <tt>true</tt> to select pages with <code>row_number()</code>, <tt>false</tt> to
+     *                              let Activiti select them, <tt>null</tt> to detect it
+     */
+    void setRowNumberPaging(Boolean rowNumberPaging)
+    {
+        this.rowNumberPaging = rowNumberPaging;
+    }
+    
+    private String getPooledTaskOrderColumns(OrderBy[] orderBy, String alias)
+    {
+        StringBuilder columns = new StringBuilder(64);
+        if (orderBy != null)
+        {
+            for (OrderBy orderByPart : orderBy)
+            {
+                String column = getPooledTaskOrderColumn(orderByPart);
+                if (column != null)
+                {
+                    columns.append(alias).append(column).append(", ");
+                }
+            }
+        }
+        return columns.append(alias).append("ID_ asc").toString();
+    }
+
+    private String getPooledTaskOrderColumn(OrderBy orderBy)
+    {
+        switch (orderBy)
+        {
+        case TaskCreated_Asc:
+            return "CREATE_TIME_ asc";
+        case TaskCreated_Desc:
+            return "CREATE_TIME_ desc";
+        case TaskDue_Asc:
+            return "DUE_DATE_ asc";
+        case TaskDue_Desc:
+            return "DUE_DATE_ desc";
+        case TaskId_Asc:
+            return "ID_ asc";
+        case TaskId_Desc:
+            return "ID_ desc";
+        case TaskName_Asc:
+            return "NAME_ asc";
+        case TaskName_Desc:
+            return "NAME_ desc";
+        default:
+            // Pooled tasks have no actor and all are in progress
+            return null;
+        }
+    }
+
+    /**
+     * Converts a page of pooled tasks, fetching the variables of all of them with one query instead of
+     * looking them up task by task.
+     */
+    private List<WorkflowTask> convertPooledTasks(List<Task> tasks)
+    {
+        if (tasks.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        Set<String> processInstanceIds = new TreeSet<String>();
+        for (Task task : tasks)
+        {
+            processInstanceIds.add(task.getProcessInstanceId());
+        }
+        List<Task> tasksWithVariables = taskService.createTaskQuery()
+                    .processInstanceIdIn(new ArrayList<String>(processInstanceIds))
+                    .includeProcessVariables()
+                    .includeTaskLocalVariables()
+                    .list();
+        Map<String, Task> variablesByTask = new HashMap<String, Task>(tasksWithVariables.size() * 2);
+        for (Task task : tasksWithVariables)
+        {
+            variablesByTask.put(task.getId(), task);
+        }
+        
+        List<WorkflowTask> result = new ArrayList<WorkflowTask>(tasks.size());
+        for (Task task : tasks)
+        {
+            Task taskWithVariables = variablesByTask.get(task.getId());
+            WorkflowTask workflowTask;
+            // The process variables are only all the variables of the task when it runs in the
+            // process instance itself rather than in a child execution
+            if (taskWithVariables != null && task.getProcessInstanceId().equals(task.getExecutionId()))
+            {
+                Map<String, Object> localVariables = taskWithVariables.getTaskLocalVariables();
+                Map<String, Object> variables = new HashMap<String, Object>(taskWithVariables.getProcessVariables());
+                variables.putAll(localVariables);
+                workflowTask = typeConverter.convert(task, variables, localVariables);
+            }
+            else
+            {
+                workflowTask = typeConverter.convert(task, true);
+            }
+            // ALF-12264: a null task is from another domain
+            if (workflowTask != null)
+            {
+                result.add(workflowTask);
+            }
+        }
+        return result;
+    }
+
     private void addTasksForCandidateUser(String userName, Map<String, Task> resultingTasks)
     {
         TaskQuery query = taskService.createTaskQuery().taskCandidateUser(userName);
@@ -118,6 +118,21 @@ public class ActivitiPropertyConverter
     }
 
     public Map<QName, Serializable> getTaskProperties(Task task)
+    {
+        TaskService taskService = activitiUtil.getTaskService();
+        // Get all task variables including execution vars.
+        Map<String, Object> variables = taskService.getVariables(task.getId());
+        Map<String, Object> localVariables = taskService.getVariablesLocal(task.getId());
+        return getTaskProperties(task, variables, localVariables);
+    }
+    
+    /**
+     * @param task the task
+     * @param variables all the variables of the task, including the variables of its execution
+     * @param localVariables the local variables of the task
+     * @return the properties of the task
+     */
+    public Map<QName, Serializable> getTaskProperties(Task task, Map<String, Object> variables, Map<String, Object> localVariables)
     {
         // retrieve type definition for task
         TypeDefinition taskDef = typeManager.getFullTaskDefinition(task);
@@ -125,9 +140,6 @@ public class ActivitiPropertyConverter
         Map<QName, AssociationDefinition> taskAssociations = taskDef.getAssociations();
         
         TaskService taskService = activitiUtil.getTaskService();
-        // Get all task variables including execution vars.
-        Map<String, Object> variables = taskService.getVariables(task.getId());
-        Map<String, Object> localVariables = taskService.getVariablesLocal(task.getId());
         
         // Map the arbitrary properties
         Map<QName, Serializable> properties =mapArbitraryProperties(variables, localVariables, taskProperties, taskAssociations);
@@ -495,6 +495,27 @@ public interface WorkflowService
     @Auditable(parameters = {"authority"})
     public List<WorkflowTask> getPooledTasks(String authority, boolean lazyinitialization);
     
+    /**
+     * Gets a page of the pooled tasks available to the specified authority.  The tasks are sorted and
+     * paged by the workflow engine, so only the tasks on the page are loaded.
+     * 
+     * @param authority   the authority
+     * @param orderBy  the sort order, or null for the default order of the workflow engine
+     * @param maxItems  the maximum number of tasks, 0 for all
+     * @param skipCount  the number of tasks to skip
+     * @return  the page of pooled tasks
+     */
+    @Auditable(parameters = {"authority", "maxItems", "skipCount"})
+    public List<WorkflowTask> getPooledTasks(String authority, WorkflowTaskQuery.OrderBy[] orderBy, int maxItems, int skipCount);
+    
+    /**
+     * Get the number of pooled tasks available to the specified authority
+     * 
+     * @param authority   the authority
+     * @return  count of pooled tasks
+     */
+    public long countPooledTasks(String authority);
+    
     /**
      * @deprecated Use overloaded method with the {@code sameSession} parameter
      * (this method defaults the parameter to {@code false}).
@@ -49,6 +49,7 @@ import org.junit.runners.Suite;
     org.alfresco.util.schemacomp.DbToXMLTest.class,
     org.alfresco.util.schemacomp.ExportDbTest.class,
     org.alfresco.util.schemacomp.SchemaReferenceFileTest.class,
+    org.alfresco.repo.domain.schema.SchemaBootstrapValidationTest.class,
     org.alfresco.repo.node.getchildren.GetChildrenCannedQueryTest.class,
 
 	// From AppContext05TestSuite
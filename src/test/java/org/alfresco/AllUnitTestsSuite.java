@@ -43,12 +43,15 @@ import org.junit.runners.Suite;
     org.alfresco.encryption.KeyStoreKeyProviderTest.class,
     org.alfresco.filesys.config.ServerConfigurationBeanTest.class,
     org.alfresco.filesys.repo.rules.ShuffleTest.class,
+    org.alfresco.repo.action.DurableAsynchronousActionExecutionQueueImplTest.class,
     org.alfresco.repo.admin.Log4JHierarchyInitTest.class,
     org.alfresco.repo.attributes.PropTablesCleanupJobTest.class,
+    org.alfresco.repo.bulkimport.impl.BulkImportCheckpointTest.class,
     org.alfresco.repo.cache.DefaultCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultSimpleCacheTest.class,
     org.alfresco.repo.cache.lookup.EntityLookupCacheTest.class,
     org.alfresco.repo.calendar.CalendarHelpersTest.class,
+    org.alfresco.repo.content.transform.RemoteTransformerConnectionPoolTest.class,
     org.alfresco.repo.copy.CopyServiceImplUnitTest.class,
     org.alfresco.repo.dictionary.RepoDictionaryDAOTest.class,
     org.alfresco.repo.forms.processor.node.FieldProcessorTest.class,
@@ -165,6 +168,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.content.transform.TransformerConfigTestSuite.class,
     org.alfresco.service.cmr.repository.TemporalSourceOptionsTest.class,
     org.alfresco.repo.content.metadata.MetadataExtracterLimitsTest.class,
+    org.alfresco.repo.content.metadata.ContainerMetadataSamplerTest.class,
     org.alfresco.repo.content.caching.quota.StandardQuotaStrategyMockTest.class,
     org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategyTest.class,
     org.alfresco.repo.content.caching.CachingContentStoreTest.class,
@@ -75,6 +75,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.imap.ImapServiceImplCacheTest.class,
     org.alfresco.repo.imap.ImapServiceImplTest.class,
     org.alfresco.repo.bulkimport.impl.BulkImportTest.class,
+    org.alfresco.repo.bulkimport.impl.PipelinedBulkImportTest.class,
     org.alfresco.repo.discussion.DiscussionServiceImplTest.class,
     org.alfresco.repo.transfer.NodeCrawlerTest.class,
     org.alfresco.repo.transfer.TransferServiceCallbackTest.class,
@@ -85,6 +86,7 @@ import org.junit.runners.Suite;
     org.alfresco.util.schemacomp.DbToXMLTest.class,
     org.alfresco.util.schemacomp.ExportDbTest.class,
     org.alfresco.util.schemacomp.SchemaReferenceFileTest.class,
+    org.alfresco.repo.domain.schema.SchemaBootstrapValidationTest.class,
     org.alfresco.repo.module.ModuleComponentHelperTest.class,
     org.alfresco.repo.node.getchildren.GetChildrenCannedQueryTest.class,
 
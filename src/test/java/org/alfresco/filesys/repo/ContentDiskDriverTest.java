@@ -25,12 +25,15 @@
  */
 package org.alfresco.filesys.repo;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -86,6 +89,7 @@ import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.MimetypeService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
@@ -8151,6 +8155,213 @@ public class ContentDiskDriverTest extends TestCase
         }
     }
     
+    /**
+     * ContentNetworkFile serves small requests from a read-ahead buffer and coalesces small
+     * sequential writes.  Reads must see the right data whichever buffer it is in, across buffer
+     * boundaries, after truncation and once the file has been closed.
+     */
+    public void testContentNetworkFileBuffering() throws Exception
+    {
+        logger.debug("start of testContentNetworkFileBuffering");
+        final MimetypeService mimetypeService = (MimetypeService) applicationContext.getBean("mimetypeService");
+        final RetryingTransactionHelper tran = transactionService.getRetryingTransactionHelper();
+        
+        // More than two buffers' worth, so that reads cross buffer boundaries
+        final int BUFFER_SIZE = 64 * 1024;
+        final byte[] original = new byte[BUFFER_SIZE * 2 + 1000];
+        for (int i = 0; i < original.length; i++)
+        {
+            original[i] = (byte) (i % 251);
+        }
+        
+        RetryingTransactionCallback<NodeRef> createFileCB = new RetryingTransactionCallback<NodeRef>()
+        {
+            @Override
+            public NodeRef execute() throws Throwable
+            {
+                NodeRef companyHome = repositoryHelper.getCompanyHome();
+                NodeRef testDir = nodeService.createNode(companyHome, ContentModel.ASSOC_CONTAINS, 
+                        QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, TEST_ROOT_PATH), ContentModel.TYPE_FOLDER, 
+                        Collections.<QName, Serializable>singletonMap(ContentModel.PROP_NAME, TEST_ROOT_PATH)).getChildRef();
+                NodeRef testFile = nodeService.createNode(testDir, ContentModel.ASSOC_CONTAINS, 
+                        QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "buffering.bin"), ContentModel.TYPE_CONTENT, 
+                        Collections.<QName, Serializable>singletonMap(ContentModel.PROP_NAME, "buffering.bin")).getChildRef();
+                ContentWriter writer = contentService.getWriter(testFile, ContentModel.PROP_CONTENT, true);
+                writer.setMimetype(MimetypeMap.MIMETYPE_BINARY);
+                writer.putContent(new ByteArrayInputStream(original));
+                return testFile;
+            }
+        };
+        final NodeRef testFile = tran.doInTransaction(createFileCB, false, true);
+        
+        logger.debug("a) read across buffer boundaries");
+        RetryingTransactionCallback<Void> readCB = new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                ContentNetworkFile file = new ContentNetworkFile(nodeService, contentService, mimetypeService, testFile, "buffering.bin");
+                file.setGrantedAccess(NetworkFile.READONLY);
+                
+                // Sequential reads that don't line up with the buffer
+                byte[] read = new byte[original.length];
+                int offset = 0;
+                while (offset < read.length)
+                {
+                    int count = file.readFile(read, Math.min(5000, read.length - offset), offset, offset);
+                    assertTrue("Read nothing at offset " + offset, count > 0);
+                    offset += count;
+                }
+                assertTrue("Sequential reads returned the wrong data", Arrays.equals(original, read));
+                
+                // A read that starts in one buffer and ends beyond it, then a read backwards
+                byte[] chunk = new byte[2000];
+                assertEquals(2000, file.readFile(chunk, 2000, 0, BUFFER_SIZE - 1000));
+                assertTrue(Arrays.equals(Arrays.copyOfRange(original, BUFFER_SIZE - 1000, BUFFER_SIZE + 1000), chunk));
+                assertEquals(2000, file.readFile(chunk, 2000, 0, 10));
+                assertTrue(Arrays.equals(Arrays.copyOfRange(original, 10, 2010), chunk));
+                
+                // A short read at the end and nothing beyond it
+                assertEquals(500, file.readFile(chunk, 2000, 0, original.length - 500));
+                assertTrue(Arrays.equals(Arrays.copyOfRange(original, original.length - 500, original.length), Arrays.copyOf(chunk, 500)));
+                assertEquals(0, file.readFile(chunk, 2000, 0, original.length));
+                
+                file.closeFile();
+                return null;
+            }
+        };
+        tran.doInTransaction(readCB, true, true);
+        
+        logger.debug("b) write then read, truncate and close");
+        final byte[] update = new byte[3000];
+        Arrays.fill(update, (byte) 'x');
+        RetryingTransactionCallback<Void> writeCB = new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                ContentNetworkFile file = new ContentNetworkFile(nodeService, contentService, mimetypeService, testFile, "buffering.bin");
+                file.setGrantedAccess(NetworkFile.READWRITE);
+                
+                // Prime the read-ahead buffer, then overwrite part of it with small writes
+                byte[] chunk = new byte[1000];
+                file.readFile(chunk, chunk.length, 0, 0);
+                for (int i = 0; i < update.length; i += 1000)
+                {
+                    file.writeFile(update, 1000, i, 500 + i);
+                }
+                
+                // The pending writes must be seen by the next read, and the stale read-ahead must not
+                assertEquals(1000, file.readFile(chunk, chunk.length, 0, 0));
+                assertTrue(Arrays.equals(Arrays.copyOf(original, 500), Arrays.copyOf(chunk, 500)));
+                assertTrue(Arrays.equals(Arrays.copyOf(update, 500), Arrays.copyOfRange(chunk, 500, 1000)));
+                assertEquals(original.length, file.getFileSize());
+                
+                // Writes still pending when the file is truncated are flushed first
+                file.writeFile(update, 100, 0, 4000);
+                file.truncateFile(4050);
+                assertEquals(4050, file.getFileSize());
+                assertEquals(50, file.readFile(chunk, chunk.length, 0, 4000));
+                assertTrue(Arrays.equals(Arrays.copyOf(update, 50), Arrays.copyOf(chunk, 50)));
+                
+                // Writes still pending when the file is closed are flushed too
+                file.writeFile(update, 200, 0, 4050);
+                file.closeFile();
+                return null;
+            }
+        };
+        tran.doInTransaction(writeCB, false, true);
+        
+        RetryingTransactionCallback<Void> validateCB = new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                byte[] expected = Arrays.copyOf(original, 4250);
+                System.arraycopy(update, 0, expected, 500, update.length);
+                System.arraycopy(update, 0, expected, 4000, 250);
+                
+                ContentReader reader = contentService.getReader(testFile, ContentModel.PROP_CONTENT);
+                assertEquals(expected.length, reader.getSize());
+                byte[] content = new byte[expected.length];
+                InputStream is = reader.getContentInputStream();
+                try
+                {
+                    int offset = 0;
+                    int count;
+                    while (offset < content.length && (count = is.read(content, offset, content.length - offset)) > 0)
+                    {
+                        offset += count;
+                    }
+                }
+                finally
+                {
+                    is.close();
+                }
+                assertTrue("Content written through the buffers is wrong", Arrays.equals(expected, content));
+                return null;
+            }
+        };
+        tran.doInTransaction(validateCB, true, true);
+    }
+    
+    /**
+     * Closing a spooled file links the temp file into a file based store where it can, rather
+     * than copying it.  Removing the temp file afterwards must leave the content intact.
+     */
+    public void testCloseFileLinksTempFile() throws Exception
+    {
+        logger.debug("start of testCloseFileLinksTempFile");
+        ServerConfiguration scfg = new ServerConfiguration("testServer");
+        TestServer testServer = new TestServer("testServer", scfg);
+        final SrvSession testSession = new TestSrvSession(666, testServer, "test", "remoteName");
+        DiskSharedDevice share = getDiskSharedDevice();
+        final TreeConnection testConnection = testServer.getTreeConnection(share);
+        final RetryingTransactionHelper tran = transactionService.getRetryingTransactionHelper();
+        
+        final String FILE_PATH = TEST_ROOT_DOS_PATH + "\\testCloseFileLinksTempFile.txt";
+        final String testString = "Linked into the content store";
+        
+        FileOpenParams dirParams = new FileOpenParams(TEST_ROOT_DOS_PATH, 0, AccessMode.ReadOnly, FileAttribute.NTDirectory, 0);
+        driver.createDirectory(testSession, testConnection, dirParams);
+        
+        RetryingTransactionCallback<NetworkFile> createFileCB = new RetryingTransactionCallback<NetworkFile>()
+        {
+            @Override
+            public NetworkFile execute() throws Throwable
+            {
+                FileOpenParams createFileParams = new FileOpenParams(FILE_PATH, 0, AccessMode.ReadWrite, FileAttribute.NTNormal, 0);
+                return driver.createFile(testSession, testConnection, createFileParams);
+            }
+        };
+        NetworkFile file = tran.doInTransaction(createFileCB, false, true);
+        assertTrue("Expected a spooled file", file instanceof TempNetworkFile);
+        TempNetworkFile tempFile = (TempNetworkFile) file;
+        File spooled = tempFile.getFile();
+        
+        byte[] stuff = testString.getBytes("UTF-8");
+        driver.writeFile(testSession, testConnection, file, stuff, 0, stuff.length, 0);
+        driver.closeFile(testSession, testConnection, file);
+        
+        assertFalse("The temp file was not removed", spooled.exists());
+        
+        logger.debug("temp file linked into the content store: " + tempFile.isContentLinked());
+        final NodeRef targetNodeRef = getNodeForPath(testConnection, FILE_PATH);
+        RetryingTransactionCallback<Void> validateCB = new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                ContentReader reader = contentService.getReader(targetNodeRef, ContentModel.PROP_CONTENT);
+                assertNotNull("No content", reader);
+                assertTrue("The content is missing", reader.exists());
+                assertEquals("content not written", testString, reader.getContentString());
+                return null;
+            }
+        };
+        tran.doInTransaction(validateCB, true, true);
+    }
+    
     private NodeRef getNodeForPath(TreeConnection tree, String path)
     throws FileNotFoundException
     {
@@ -1519,6 +1519,75 @@ public class CMISTest
         }
     }
 
+    /**
+     * Allowable actions shared between the children of a folder must match those of each child on its own.
+     */
+    @Test
+    public void testGetChildrenAllowableActions()
+    {
+        final List<NodeRef> docs = new ArrayList<NodeRef>(5);
+
+        AuthenticationUtil.pushAuthentication();
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+        final NodeRef folderNodeRef;
+        try
+        {
+            folderNodeRef = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<NodeRef>()
+            {
+                @Override
+                public NodeRef execute() throws Throwable
+                {
+                    NodeRef companyHomeNodeRef = repositoryHelper.getCompanyHome();
+                    NodeRef folderNodeRef = fileFolderService.create(companyHomeNodeRef, GUID.generate(), ContentModel.TYPE_FOLDER).getNodeRef();
+                    fileFolderService.create(folderNodeRef, GUID.generate(), ContentModel.TYPE_FOLDER);
+                    for (int i = 0; i < 5; i++)
+                    {
+                        docs.add(fileFolderService.create(folderNodeRef, GUID.generate(), ContentModel.TYPE_CONTENT).getNodeRef());
+                    }
+                    // siblings that differ only by lock state
+                    lockService.lock(docs.get(0), LockType.READ_ONLY_LOCK, 0, true);
+                    return folderNodeRef;
+                }
+            });
+        }
+        finally
+        {
+            AuthenticationUtil.popAuthentication();
+        }
+
+        withCmisService(new CmisServiceCallback<Void>()
+        {
+            @Override
+            public Void execute(CmisService cmisService)
+            {
+                String repositoryId = cmisService.getRepositoryInfos(null).get(0).getId();
+                // a checked out document and its working copy
+                cmisService.checkOut(repositoryId, new Holder<String>(docs.get(1).getId()), null, new Holder<Boolean>(true));
+                return null;
+            }
+        });
+
+        withCmisService(new CmisServiceCallback<Void>()
+        {
+            @Override
+            public Void execute(CmisService cmisService)
+            {
+                String repositoryId = cmisService.getRepositoryInfos(null).get(0).getId();
+                ObjectInFolderList children = cmisService.getChildren(repositoryId, folderNodeRef.getId(), null, null, true, IncludeRelationships.NONE,
+                        null, false, BigInteger.valueOf(Integer.MAX_VALUE), BigInteger.valueOf(0), null);
+                assertEquals(7, children.getObjects().size());
+                for (ObjectInFolderData child : children.getObjects())
+                {
+                    String objectId = child.getObject().getId();
+                    AllowableActions expected = cmisService.getAllowableActions(repositoryId, objectId, null);
+                    assertEquals("Allowable actions of " + objectId, expected.getAllowableActions(),
+                            child.getObject().getAllowableActions().getAllowableActions());
+                }
+                return null;
+            }
+        });
+    }
+
     /**
      * ALF-18455
      */
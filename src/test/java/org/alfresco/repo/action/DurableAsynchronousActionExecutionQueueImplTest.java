@@ -0,0 +1,355 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.rule.RuleServiceImpl;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.AttributeService.AttributeQueryCallback;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.GUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the coalescing, prioritisation and persistence of the {@link DurableAsynchronousActionExecutionQueueImpl}.
+ * Pending actions are persisted to an in-memory stand-in for the {@link AttributeService}, so no application
+ * context is needed.
+ * 
+ * @since 7.0
+ */
+public class DurableAsynchronousActionExecutionQueueImplTest
+{
+    private static final NodeRef NODE_1 = new NodeRef("workspace://SpacesStore/node-1");
+    private static final NodeRef NODE_2 = new NodeRef("workspace://SpacesStore/node-2");
+
+    private ThreadPoolExecutor threadPoolExecutor;
+    private TestQueue queue;
+    private RuntimeActionService actionService;
+    private final List<String> executed = new CopyOnWriteArrayList<String>();
+    private final CountDownLatch blocker = new CountDownLatch(1);
+    /** The persisted attributes, serialized as they would be in the database */
+    private final Map<List<Serializable>, byte[]> attributes = new ConcurrentHashMap<List<Serializable>, byte[]>();
+    /** The job locks held, as they would be in the database */
+    private final Map<QName, String> locks = new ConcurrentHashMap<QName, String>();
+
+    @Before
+    public void setUp()
+    {
+        threadPoolExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        queue = new TestQueue();
+        queue.setThreadPoolExecutor(threadPoolExecutor);
+        queue.setPersistent(false);
+        queue.setActionPriorities(Map.of("interactive-action", "interactive", "bulk-action", "BULK"));
+        actionService = mock(RuntimeActionService.class);
+    }
+
+    @After
+    public void tearDown()
+    {
+        blocker.countDown();
+        threadPoolExecutor.shutdownNow();
+    }
+
+    private void queue(String actionDefinitionName, NodeRef nodeRef, Map<String, Serializable> parameters)
+    {
+        Action action = new ActionImpl(null, GUID.generate(), actionDefinitionName, parameters);
+        queue.executeAction(actionService, action, nodeRef, false, null);
+    }
+
+    private void awaitExecuted(int expected) throws InterruptedException
+    {
+        blocker.countDown();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (executed.size() < expected && System.currentTimeMillis() < timeout)
+        {
+            Thread.sleep(10);
+        }
+        // Give any unexpected extra action the chance to run
+        Thread.sleep(100);
+        assertEquals(0, threadPoolExecutor.getActiveCount() + threadPoolExecutor.getQueue().size());
+    }
+
+    /**
+     * Creates a queue that persists its pending actions to {@link #attributes} and locks them in {@link #locks}.
+     */
+    @SuppressWarnings("unchecked")
+    private TestQueue createPersistentQueue(ThreadPoolExecutor executor, String serverId) throws Throwable
+    {
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenAnswer(
+                invocation -> ((RetryingTransactionCallback<Object>) invocation.getArgument(0)).execute());
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+
+        AttributeService attributeService = mock(AttributeService.class);
+        doAnswer(invocation ->
+        {
+            Object[] args = invocation.getArguments();
+            attributes.put(keys(args, 1), serialize((Serializable) args[0]));
+            return null;
+        }).when(attributeService).setAttribute(any(Serializable.class), any(Serializable.class), any(Serializable.class), any(Serializable.class));
+        doAnswer(invocation ->
+        {
+            attributes.remove(keys(invocation.getArguments(), 0));
+            return null;
+        }).when(attributeService).removeAttribute(any(Serializable.class), any(Serializable.class), any(Serializable.class), any(Serializable.class));
+        doAnswer(invocation ->
+        {
+            AttributeQueryCallback callback = invocation.getArgument(0);
+            List<Serializable> prefix = keys(invocation.getArguments(), 1);
+            long id = 0;
+            for (Map.Entry<List<Serializable>, byte[]> entry : attributes.entrySet())
+            {
+                if (entry.getKey().subList(0, prefix.size()).equals(prefix))
+                {
+                    callback.handleAttribute(id++, deserialize(entry.getValue()), entry.getKey().toArray(new Serializable[0]));
+                }
+            }
+            return null;
+        }).when(attributeService).getAttributes(any(AttributeQueryCallback.class), any(Serializable.class), any(Serializable.class));
+
+        JobLockService jobLockService = mock(JobLockService.class);
+        when(jobLockService.getLock(any(QName.class), anyLong(), anyLong(), anyInt())).thenAnswer(invocation ->
+        {
+            QName lockQName = invocation.getArgument(0);
+            String lockToken = GUID.generate();
+            if (locks.putIfAbsent(lockQName, lockToken) != null)
+            {
+                throw new LockAcquisitionException(lockQName, lockToken);
+            }
+            return lockToken;
+        });
+        doAnswer(invocation ->
+        {
+            locks.remove(invocation.getArgument(1), invocation.getArgument(0));
+            return null;
+        }).when(jobLockService).releaseLock(anyString(), any(QName.class));
+
+        TestQueue persistentQueue = new TestQueue();
+        persistentQueue.setThreadPoolExecutor(executor);
+        persistentQueue.setTransactionService(transactionService);
+        persistentQueue.setAttributeService(attributeService);
+        persistentQueue.setJobLockService(jobLockService);
+        persistentQueue.setServerId(serverId);
+        persistentQueue.setActionPriorities(Map.of("interactive-action", "interactive", "bulk-action", "BULK"));
+        return persistentQueue;
+    }
+
+    private static List<Serializable> keys(Object[] args, int from)
+    {
+        List<Serializable> keys = new ArrayList<Serializable>();
+        for (int i = from; i < args.length; i++)
+        {
+            keys.add((Serializable) args[i]);
+        }
+        return keys;
+    }
+
+    private static byte[] serialize(Serializable value) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Serializable deserialize(byte[] bytes) throws Exception
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return (Serializable) in.readObject();
+        }
+    }
+
+    private static void queue(TestQueue target, String actionDefinitionName, NodeRef nodeRef)
+    {
+        Action action = new ActionImpl(null, GUID.generate(), actionDefinitionName, null);
+        target.executeAction(mock(RuntimeActionService.class), action, nodeRef, false, null);
+    }
+
+    @Test
+    public void testPendingActionsReplayedAfterRestart() throws Throwable
+    {
+        // A pool that has stopped stands in for a server that stops before any action runs
+        ThreadPoolExecutor stopped = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        stopped.shutdown();
+        TestQueue beforeRestart = createPersistentQueue(stopped, "server1");
+        queue(beforeRestart, "bulk-action", NODE_1);
+        queue(beforeRestart, "normal-action", NODE_1);
+        queue(beforeRestart, "normal-action", NODE_1);
+        queue(beforeRestart, "interactive-action", NODE_1);
+        // Another server queued an equivalent action before it stopped
+        queue(createPersistentQueue(stopped, "server2"), "normal-action", NODE_1);
+        assertEquals("Waiting duplicates should not be persisted", 4, attributes.size());
+        assertTrue(executed.isEmpty());
+
+        TestQueue afterRestart = createPersistentQueue(threadPoolExecutor, "server1");
+        afterRestart.recoverPendingActions();
+        awaitExecuted(3);
+
+        assertEquals("Recovered actions should run once each, in priority order",
+                List.of("interactive-action:" + NODE_1, "normal-action:" + NODE_1, "bulk-action:" + NODE_1), executed);
+        assertTrue("Completed actions should no longer be persisted", attributes.isEmpty());
+
+        // The server's lock expires once it has stopped
+        locks.clear();
+        createPersistentQueue(threadPoolExecutor, "server1").recoverPendingActions();
+        Thread.sleep(100);
+        assertEquals("Nothing should be replayed after a second restart", 3, executed.size());
+    }
+
+    @Test
+    public void testPendingActionsOfRunningServerNotTakenOver() throws Throwable
+    {
+        // server2 is running, but its pool is busy elsewhere and has not started its action
+        ThreadPoolExecutor stopped = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        stopped.shutdown();
+        TestQueue server2 = createPersistentQueue(stopped, "server2");
+        server2.recoverPendingActions();
+        queue(server2, "normal-action", NODE_1);
+        assertEquals(1, attributes.size());
+
+        createPersistentQueue(threadPoolExecutor, "server1").recoverPendingActions();
+        Thread.sleep(100);
+        assertTrue("Another running server's actions should be left to it", executed.isEmpty());
+        assertEquals(1, attributes.size());
+
+        // Once server2 has stopped and its lock has expired, the next server to start takes over its action
+        locks.clear();
+        createPersistentQueue(threadPoolExecutor, "server3").recoverPendingActions();
+        awaitExecuted(1);
+        assertEquals(List.of("normal-action:" + NODE_1), executed);
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    public void testWaitingDuplicatesAreCoalesced() throws Exception
+    {
+        // Occupy the only thread so that the rest of the actions wait
+        queue("block", NODE_1, null);
+        queue("extract", NODE_1, null);
+        queue("extract", NODE_1, null);
+        queue("extract", NODE_2, null);
+        queue("extract", NODE_1, Collections.<String, Serializable>singletonMap("p", "v"));
+        awaitExecuted(4);
+
+        assertEquals(List.of("block:" + NODE_1, "extract:" + NODE_1, "extract:" + NODE_2, "extract:" + NODE_1), executed);
+    }
+
+    @Test
+    public void testRunningActionIsNotCoalesced() throws Exception
+    {
+        queue("block", NODE_1, null);
+        // The first action is running, so an equivalent one must still run afterwards
+        queue("block", NODE_1, null);
+        awaitExecuted(2);
+
+        assertEquals(List.of("block:" + NODE_1, "block:" + NODE_1), executed);
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception
+    {
+        queue("block", NODE_1, null);
+        queue("bulk-action", NODE_1, null);
+        queue("normal-action", NODE_1, null);
+        queue("interactive-action", NODE_1, null);
+        awaitExecuted(4);
+
+        assertEquals(List.of("block:" + NODE_1, "interactive-action:" + NODE_1, "normal-action:" + NODE_1,
+                "bulk-action:" + NODE_1), executed);
+    }
+
+    /**
+     * Records the actions instead of running them in a transaction. The "block" action waits for the test.
+     */
+    private class TestQueue extends DurableAsynchronousActionExecutionQueueImpl
+    {
+        @Override
+        protected Runnable createActionExecutionWrapper(RuntimeActionService actionService, final Action action,
+                final NodeRef actionedUponNodeRef, boolean checkConditions, Set<String> actionChain,
+                Set<RuleServiceImpl.ExecutedRuleData> executedRules)
+        {
+            return new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if ("block".equals(action.getActionDefinitionName()))
+                    {
+                        try
+                        {
+                            blocker.await(10, TimeUnit.SECONDS);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    executed.add(action.getActionDefinitionName() + ":" + actionedUponNodeRef);
+                }
+            };
+        }
+    }
+}
@@ -54,8 +54,10 @@ import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransacti
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ActionService;
 import org.alfresco.service.cmr.preference.PreferenceService;
+import org.alfresco.service.cmr.repository.MLText;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.security.AuthorityService;
 import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.PermissionService;
@@ -69,6 +71,8 @@ import org.alfresco.util.test.junitrules.ApplicationContextInit;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.context.ApplicationContext;
+import org.springframework.extensions.surf.util.I18NUtil;
+import org.springframework.mail.javamail.MimeMessageHelper;
 
 /**
  * Provides tests for the MailActionExecuter class.  Most of this logic was in MailActionExecuterTest.
@@ -472,6 +476,148 @@ public abstract class AbstractMailActionExecuterTest
         Assert.assertNotNull("We should support null value for PARAM_SUBJECT_PARAMS", ACTION_EXECUTER.prepareEmail(mailAction, null, recipient, null));
     }
 
+    /**
+     * The template model is shared between the recipients of one action, but each recipient must still see the
+     * multilingual properties of the document in their own locale.
+     */
+    @Test
+    public void testMultilingualDocumentToRecipientsWithDifferentLocales() throws Exception
+    {
+        final NodeRef document = createMultilingualDocument();
+        final Locale contentLocale = I18NUtil.getContentLocaleOrNull();
+        try
+        {
+            I18NUtil.setContentLocale(null);
+
+            ArrayList<String> recipients = new ArrayList<String>(3);
+            recipients.add(FRENCH_USER.getUsername());
+            recipients.add(BRITISH_USER.getUsername());
+            recipients.add(AUSTRALIAN_USER.getUsername());
+
+            final Action mailAction = ACTION_SERVICE.createAction(MailActionExecuter.NAME);
+            mailAction.setParameterValue(MailActionExecuter.PARAM_FROM, "some.body@example.com");
+            mailAction.setParameterValue(MailActionExecuter.PARAM_TO_MANY, recipients);
+            mailAction.setParameterValue(MailActionExecuter.PARAM_SUBJECT, "Testing");
+            mailAction.setParameterValue(MailActionExecuter.PARAM_TEMPLATE, "alfresco/templates/mail/testDocumentTitle.txt.ftl");
+
+            MimeMessageHelper[] messages = prepareEmails(mailAction, document);
+            Assert.assertEquals(3, messages.length);
+
+            Map<String, String> expected = new HashMap<String, String>();
+            expected.put(getEmail(FRENCH_USER.getUsername()), "Rapport");
+            expected.put(getEmail(BRITISH_USER.getUsername()), "Report");
+            expected.put(getEmail(AUSTRALIAN_USER.getUsername()), "Report");
+            for (MimeMessageHelper message : messages)
+            {
+                MimeMessage mimeMessage = message.getMimeMessage();
+                String to = ((InternetAddress) mimeMessage.getRecipients(Message.RecipientType.TO)[0]).getAddress();
+                Assert.assertEquals("Wrong title for " + to, expected.get(to), (String) mimeMessage.getContent());
+            }
+        }
+        finally
+        {
+            I18NUtil.setContentLocale(contentLocale);
+            NODE_SERVICE.deleteNode(document);
+        }
+    }
+
+    /**
+     * Checks that the emails of one action for many recipients, prepared with the template model shared
+     * between the recipients, are the same as those prepared with a new model for each recipient.
+     * See MailActionExecuterPerformanceTester for the time taken.
+     */
+    @Test
+    public void testPrepareEmailsForManyRecipients() throws Exception
+    {
+        final int recipientCount = 10;
+        final NodeRef document = createMultilingualDocument();
+        try
+        {
+            ArrayList<String> recipients = new ArrayList<String>(recipientCount);
+            for (int i = 0; i < recipientCount; i++)
+            {
+                recipients.add("recipient" + i + "@example.com");
+            }
+
+            final Action mailAction = ACTION_SERVICE.createAction(MailActionExecuter.NAME);
+            mailAction.setParameterValue(MailActionExecuter.PARAM_FROM, "some.body@example.com");
+            mailAction.setParameterValue(MailActionExecuter.PARAM_TO_MANY, recipients);
+            mailAction.setParameterValue(MailActionExecuter.PARAM_SUBJECT, "Testing");
+            mailAction.setParameterValue(MailActionExecuter.PARAM_TEMPLATE, "alfresco/templates/mail/testDocumentTitle.txt.ftl");
+
+            MimeMessageHelper[] shared = prepareEmails(mailAction, document);
+
+            final List<MimeMessageHelper> unshared = new ArrayList<MimeMessageHelper>(recipientCount);
+            TRANSACTION_SERVICE.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    for (int i = 0; i < recipientCount; i++)
+                    {
+                        Pair<String, Locale> recipient = new Pair<String, Locale>("recipient" + i + "@example.com", Locale.ENGLISH);
+                        unshared.add(ACTION_EXECUTER.prepareEmail(mailAction, document, recipient, null));
+                    }
+                    return null;
+                }
+            }, true);
+
+            // The emails prepared with a shared model are the same as those prepared one recipient at a time
+            Assert.assertEquals(recipientCount, shared.length);
+            Assert.assertEquals(recipientCount, unshared.size());
+            for (int i = 0; i < recipientCount; i++)
+            {
+                Assert.assertEquals(unshared.get(i).getMimeMessage().getContent(), shared[i].getMimeMessage().getContent());
+            }
+        }
+        finally
+        {
+            NODE_SERVICE.deleteNode(document);
+        }
+    }
+
+    private MimeMessageHelper[] prepareEmails(final Action mailAction, final NodeRef document)
+    {
+        return TRANSACTION_SERVICE.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<MimeMessageHelper[]>()
+        {
+            @Override
+            public MimeMessageHelper[] execute() throws Throwable
+            {
+                return ACTION_EXECUTER.prepareEmails(mailAction, document);
+            }
+        }, true);
+    }
+
+    /**
+     * Creates a document with an English and a French title.
+     */
+    private NodeRef createMultilingualDocument()
+    {
+        return TRANSACTION_SERVICE.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<NodeRef>()
+        {
+            @Override
+            public NodeRef execute() throws Throwable
+            {
+                StoreRef storeRef = NODE_SERVICE.createStore(StoreRef.PROTOCOL_WORKSPACE, "Test_" + System.nanoTime());
+                NodeRef rootNodeRef = NODE_SERVICE.getRootNode(storeRef);
+
+                MLText title = new MLText();
+                title.addValue(Locale.ENGLISH, "Report");
+                title.addValue(Locale.FRENCH, "Rapport");
+                Map<QName, Serializable> properties = new HashMap<QName, Serializable>(2);
+                properties.put(ContentModel.PROP_NAME, "report.txt");
+                properties.put(ContentModel.PROP_TITLE, title);
+                return NODE_SERVICE.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, ContentModel.ASSOC_CHILDREN,
+                            ContentModel.TYPE_CONTENT, properties).getChildRef();
+            }
+        });
+    }
+
+    private String getEmail(String userName)
+    {
+        return (String) NODE_SERVICE.getProperty(PERSON_SERVICE.getPerson(userName), ContentModel.PROP_EMAIL);
+    }
+
     /**
      * Creates a test user with the specified username and optionally custom email.
      * 
@@ -0,0 +1,198 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action.executer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.management.subsystems.ApplicationContextFactory;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.action.ActionService;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+/**
+ * Measures the time taken to prepare the emails of one action for many recipients, with the template
+ * model shared between the recipients and with a new model for each recipient.
+ * <p>
+ * Note that this test is not designed to validate performance figures, but is
+ * rather a handy tool for doing benchmarking.  It is therefore not named <i>*Test</i> as is the
+ * pattern for getting tests run by the continuous build.
+ *
+ * @since 7.0
+ */
+@Category(OwnJVMTestsCategory.class)
+public class MailActionExecuterPerformanceTester extends TestCase
+{
+    private static Log logger = LogFactory.getLog(MailActionExecuterPerformanceTester.class);
+
+    private static ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private static final int RECIPIENT_COUNT = 200;
+    private static final int RUN_COUNT = 10;
+
+    private RetryingTransactionHelper retryingTransactionHelper;
+    private ActionService actionService;
+    private NodeService nodeService;
+    private MailActionExecuter mailActionExecuter;
+    private boolean wasInTestMode;
+
+    private NodeRef document;
+    private Action mailAction;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        retryingTransactionHelper = ((TransactionService) ctx.getBean("TransactionService")).getRetryingTransactionHelper();
+        actionService = (ActionService) ctx.getBean("ActionService");
+        nodeService = (NodeService) ctx.getBean("NodeService");
+        mailActionExecuter = ctx.getBean("OutboundSMTP", ApplicationContextFactory.class).getApplicationContext().getBean("mail", MailActionExecuter.class);
+        wasInTestMode = mailActionExecuter.isTestMode();
+        mailActionExecuter.setTestMode(true);
+
+        AuthenticationUtil.setRunAsUserSystem();
+        document = retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<NodeRef>()
+        {
+            public NodeRef execute() throws Throwable
+            {
+                StoreRef storeRef = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "Test_" + System.nanoTime());
+                MLText title = new MLText();
+                title.addValue(Locale.ENGLISH, "Report");
+                title.addValue(Locale.FRENCH, "Rapport");
+                Map<QName, Serializable> properties = new HashMap<QName, Serializable>(2);
+                properties.put(ContentModel.PROP_NAME, "report.txt");
+                properties.put(ContentModel.PROP_TITLE, title);
+                return nodeService.createNode(nodeService.getRootNode(storeRef), ContentModel.ASSOC_CHILDREN,
+                        ContentModel.ASSOC_CHILDREN, ContentModel.TYPE_CONTENT, properties).getChildRef();
+            }
+        });
+
+        ArrayList<String> recipients = new ArrayList<String>(RECIPIENT_COUNT);
+        for (int i = 0; i < RECIPIENT_COUNT; i++)
+        {
+            recipients.add("recipient" + i + "@example.com");
+        }
+        mailAction = actionService.createAction(MailActionExecuter.NAME);
+        mailAction.setParameterValue(MailActionExecuter.PARAM_FROM, "some.body@example.com");
+        mailAction.setParameterValue(MailActionExecuter.PARAM_TO_MANY, recipients);
+        mailAction.setParameterValue(MailActionExecuter.PARAM_SUBJECT, "Testing");
+        mailAction.setParameterValue(MailActionExecuter.PARAM_TEMPLATE, "alfresco/templates/mail/testDocumentTitle.txt.ftl");
+
+        // Warm up the template cache
+        prepareShared();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                nodeService.deleteNode(document);
+                return null;
+            }
+        });
+        mailActionExecuter.setTestMode(wasInTestMode);
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    public void testSharedModel() throws Exception
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < RUN_COUNT; i++)
+        {
+            prepareShared();
+        }
+        report("a shared model", System.nanoTime() - start);
+    }
+
+    public void testModelPerRecipient() throws Exception
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < RUN_COUNT; i++)
+        {
+            prepareUnshared();
+        }
+        report("a model per recipient", System.nanoTime() - start);
+    }
+
+    private MimeMessageHelper[] prepareShared()
+    {
+        return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<MimeMessageHelper[]>()
+        {
+            public MimeMessageHelper[] execute() throws Throwable
+            {
+                return mailActionExecuter.prepareEmails(mailAction, document);
+            }
+        }, true);
+    }
+
+    private List<MimeMessageHelper> prepareUnshared()
+    {
+        return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<List<MimeMessageHelper>>()
+        {
+            public List<MimeMessageHelper> execute() throws Throwable
+            {
+                List<MimeMessageHelper> messages = new ArrayList<MimeMessageHelper>(RECIPIENT_COUNT);
+                for (int i = 0; i < RECIPIENT_COUNT; i++)
+                {
+                    Pair<String, Locale> recipient = new Pair<String, Locale>("recipient" + i + "@example.com", Locale.ENGLISH);
+                    messages.add(mailActionExecuter.prepareEmail(mailAction, document, recipient, null));
+                }
+                return messages;
+            }
+        }, true);
+    }
+
+    private void report(String description, long elapsedNanos)
+    {
+        logger.info("Prepared the emails of one action for " + RECIPIENT_COUNT + " recipients with " + description + ": " +
+                String.format("%.1f ms per action", elapsedNanos / 1000000.0 / RUN_COUNT));
+    }
+}
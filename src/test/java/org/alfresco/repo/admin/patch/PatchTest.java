@@ -25,21 +25,28 @@
  */
 package org.alfresco.repo.admin.patch;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.security.authentication.AuthenticationContext;
 import org.alfresco.repo.tenant.TenantAdminService;
 import org.alfresco.service.cmr.admin.PatchException;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.search.SearchService;
 import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
 import org.junit.experimental.categories.Category;
 import org.springframework.context.ApplicationContext;
 
@@ -62,6 +69,7 @@ public class PatchTest extends TestCase
     private AuthenticationContext authenticationContext;
     private TenantAdminService tenantAdminService;
     private PatchService patchService;
+    private JobLockService jobLockService;
     
     public PatchTest(String name)
     {
@@ -78,6 +86,7 @@ public class PatchTest extends TestCase
         tenantAdminService = (TenantAdminService) ctx.getBean("tenantAdminService");
         
         patchService = (PatchService) ctx.getBean("PatchService");
+        jobLockService = (JobLockService) ctx.getBean("jobLockService");
         
         // get the patches to play with
         patchService.registerPatch((Patch)ctx.getBean("patch.sample.02"));
@@ -93,7 +102,11 @@ public class PatchTest extends TestCase
     
     private SamplePatch constructSamplePatch(boolean mustFail)
     {
-        SamplePatch patch = new SamplePatch(mustFail, transactionService);
+        return initSamplePatch(new SamplePatch(mustFail, transactionService));
+    }
+    
+    private SamplePatch initSamplePatch(SamplePatch patch)
+    {
         patch.setNamespaceService(namespaceService);
         patch.setNodeService(nodeService);
         patch.setSearchService(searchService);
@@ -212,6 +225,124 @@ public class PatchTest extends TestCase
         assertTrue("Patch info didn't indicate success: " + appliedPatch, appliedPatch.getSucceeded());
     }
     
+    public void testApplyResumablePatchInBackground() throws Exception
+    {
+        SamplePatch patch = constructSamplePatch(false);
+        patch.setId("SampleResumable-" + GUID.generate());
+        patch.setResumable(true);
+        patchService.registerPatch(patch);
+        
+        boolean success = patchService.applyOutstandingPatches();
+        assertTrue(success);
+        
+        // the patch is applied in the background
+        AppliedPatch appliedPatch = null;
+        for (int i = 0; i < 100 && appliedPatch == null; i++)
+        {
+            Thread.sleep(100L);
+            appliedPatch = patchService.getPatch(patch.getId());
+        }
+        assertNotNull("Resumable patch wasn't applied in the background", appliedPatch);
+        assertTrue("Patch info didn't indicate success: " + appliedPatch, appliedPatch.getSucceeded());
+    }
+    
+    public void testFailedResumablePatchSkipsDependents() throws Exception
+    {
+        SamplePatch failingPatch = constructSamplePatch(true);
+        failingPatch.setId("SampleResumableFailing-" + GUID.generate());
+        failingPatch.setResumable(true);
+        SamplePatch dependentPatch = constructSamplePatch(false);
+        dependentPatch.setId("SampleResumableDependent-" + GUID.generate());
+        dependentPatch.setResumable(true);
+        dependentPatch.setDependsOn(Collections.<Patch>singletonList(failingPatch));
+        patchService.registerPatch(dependentPatch);
+        patchService.registerPatch(failingPatch);
+        
+        // startup doesn't fail because of patches applied in the background
+        PatchExecuter patchExecuter = new PatchExecuter();
+        patchExecuter.setPatchService(patchService);
+        patchExecuter.applyOutstandingPatches();
+        assertTrue(patchService.getBackgroundPatchIds().contains(failingPatch.getId()));
+        assertTrue(patchService.getBackgroundPatchIds().contains(dependentPatch.getId()));
+        
+        AppliedPatch appliedPatch = null;
+        for (int i = 0; i < 100 && appliedPatch == null; i++)
+        {
+            Thread.sleep(100L);
+            appliedPatch = patchService.getPatch(failingPatch.getId());
+        }
+        assertNotNull("Resumable patch wasn't applied in the background", appliedPatch);
+        assertFalse("Patch info didn't indicate failure: " + appliedPatch, appliedPatch.getSucceeded());
+        
+        // the dependent patch is left for the next startup
+        Thread.sleep(1000L);
+        assertNull("Patch was applied after the patch it depends on failed", patchService.getPatch(dependentPatch.getId()));
+    }
+    
+    public void testIndependentResumablePatchesAppliedConcurrently() throws Exception
+    {
+        // each patch waits for the other to be applied at the same time
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final AtomicInteger concurrent = new AtomicInteger();
+        SamplePatch[] patches = new SamplePatch[2];
+        for (int i = 0; i < patches.length; i++)
+        {
+            patches[i] = initSamplePatch(new SamplePatch(false, transactionService)
+            {
+                @Override
+                protected String applyInternal() throws Exception
+                {
+                    barrier.await(10L, TimeUnit.SECONDS);
+                    concurrent.incrementAndGet();
+                    return super.applyInternal();
+                }
+            });
+            patches[i].setId("SampleResumableConcurrent" + i + "-" + GUID.generate());
+            patches[i].setResumable(true);
+            patchService.registerPatch(patches[i]);
+        }
+        
+        boolean success = patchService.applyOutstandingPatches();
+        assertTrue(success);
+        
+        for (SamplePatch patch : patches)
+        {
+            AppliedPatch appliedPatch = null;
+            for (int i = 0; i < 200 && appliedPatch == null; i++)
+            {
+                Thread.sleep(100L);
+                appliedPatch = patchService.getPatch(patch.getId());
+            }
+            assertNotNull("Resumable patch wasn't applied in the background", appliedPatch);
+            assertTrue("Patch info didn't indicate success: " + appliedPatch, appliedPatch.getSucceeded());
+        }
+        assertEquals("The patches were not applied at the same time", 2, concurrent.get());
+    }
+    
+    public void testResumablePatchLockedByAnotherServerSkipped() throws Exception
+    {
+        SamplePatch patch = constructSamplePatch(false);
+        patch.setId("SampleResumableLocked-" + GUID.generate());
+        patch.setResumable(true);
+        patchService.registerPatch(patch);
+        
+        // another server is applying the patch
+        QName lockQName = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "PatchServiceImpl." + patch.getId());
+        String lockToken = jobLockService.getLock(lockQName, 60000L);
+        try
+        {
+            boolean success = patchService.applyOutstandingPatches();
+            assertTrue(success);
+            assertTrue(patchService.getBackgroundPatchIds().contains(patch.getId()));
+            Thread.sleep(2000L);
+            assertNull("Patch was applied while another server held its lock", patchService.getPatch(patch.getId()));
+        }
+        finally
+        {
+            jobLockService.releaseLock(lockToken, lockQName);
+        }
+    }
+    
     public void testGetPatchesByDate() throws Exception
     {
         // ensure that there are some applied patches
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the {@link BulkImportCheckpoint} journal used by the pipelined bulk importer.
+ * 
+ * @since 7.0
+ */
+public class BulkImportCheckpointTest
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final NodeRef target = new NodeRef("workspace://SpacesStore/target");
+    private final NodeRef folderNode = new NodeRef("workspace://SpacesStore/folder");
+
+    private File checkpointDirectory;
+    private Path source;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        checkpointDirectory = tempFolder.newFolder("checkpoints");
+        source = tempFolder.newFolder("source").toPath();
+    }
+
+    @Test
+    public void testResumeFromJournal()
+    {
+        BulkImportCheckpoint checkpoint = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        assertFalse("A new import should not be resuming", checkpoint.open());
+        checkpoint.folderCommitted(source.resolve("a"), folderNode);
+        checkpoint.folderCompleted(source.resolve("a"));
+        checkpoint.folderCompleted(source);
+        checkpoint.close(false);
+
+        BulkImportCheckpoint resumed = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        assertTrue("An unfinished import should be resumed", resumed.open());
+        assertEquals(folderNode, resumed.getCommittedFolder(source.resolve("a")));
+        assertNull(resumed.getCommittedFolder(source.resolve("b")));
+        assertTrue(resumed.isFolderCompleted(source.resolve("a")));
+        assertTrue(resumed.isFolderCompleted(source));
+        assertFalse(resumed.isFolderCompleted(source.resolve("b")));
+        resumed.close(false);
+    }
+
+    @Test
+    public void testCommittedFilesKeptForResume()
+    {
+        BulkImportCheckpoint checkpoint = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        checkpoint.open();
+        checkpoint.folderCommitted(source.resolve("a"), folderNode);
+        checkpoint.fileCommitted(source.resolve("a/one.txt"));
+        // a/two.txt failed, so a is never completed
+        checkpoint.close(false);
+
+        BulkImportCheckpoint resumed = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        assertTrue(resumed.open());
+        assertFalse(resumed.isFolderCompleted(source.resolve("a")));
+        assertTrue("A committed file should be skipped", resumed.isFileCommitted(source.resolve("a/one.txt")));
+        assertFalse("A failed file should be retried", resumed.isFileCommitted(source.resolve("a/two.txt")));
+        resumed.close(false);
+    }
+
+    @Test
+    public void testJournalDeletedWhenFinished()
+    {
+        BulkImportCheckpoint checkpoint = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        checkpoint.open();
+        checkpoint.folderCommitted(source.resolve("a"), folderNode);
+        checkpoint.close(true);
+        assertFalse(Files.exists(checkpoint.getJournal()));
+
+        BulkImportCheckpoint rerun = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        assertFalse("A finished import should start again from scratch", rerun.open());
+        rerun.close(true);
+    }
+
+    @Test
+    public void testJournalIsPerSourceAndTarget()
+    {
+        BulkImportCheckpoint checkpoint = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        BulkImportCheckpoint other = new BulkImportCheckpoint(checkpointDirectory, source, folderNode);
+        assertFalse(checkpoint.getJournal().equals(other.getJournal()));
+    }
+
+    @Test
+    public void testTruncatedRecordIgnored() throws Exception
+    {
+        BulkImportCheckpoint checkpoint = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        checkpoint.open();
+        checkpoint.folderCommitted(source.resolve("a"), folderNode);
+        checkpoint.close(false);
+        // Simulate a crash part way through writing a record
+        Files.write(checkpoint.getJournal(), "D\tb\tworkspace://Spa".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        BulkImportCheckpoint resumed = new BulkImportCheckpoint(checkpointDirectory, source, target);
+        assertTrue(resumed.open());
+        assertEquals(folderNode, resumed.getCommittedFolder(source.resolve("a")));
+        assertNull(resumed.getCommittedFolder(source.resolve("b")));
+        resumed.close(false);
+    }
+}
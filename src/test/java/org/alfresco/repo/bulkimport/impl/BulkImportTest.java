@@ -32,13 +32,20 @@ import org.alfresco.repo.action.executer.MoveActionExecuter;
 import org.alfresco.repo.bulkimport.BulkImportParameters;
 import org.alfresco.repo.bulkimport.NodeImporter;
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.node.NodeServicePolicies.OnCreateNodePolicy;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.usage.ContentUsageImpl;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ActionCondition;
 import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.rule.Rule;
 import org.alfresco.service.cmr.rule.RuleType;
+import org.alfresco.service.cmr.security.PersonService;
 import org.alfresco.service.cmr.version.Version;
 import org.alfresco.service.cmr.version.VersionHistory;
 import org.alfresco.test_category.OwnJVMTestsCategory;
@@ -63,15 +70,22 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 /**
  * @since 4.0
@@ -224,6 +238,113 @@ public class BulkImportTest extends AbstractBulkImportTests
                 });
     }
 
+    @Test
+    public void testBulkLoadImport() throws Throwable
+    {
+        BulkLoadNodeImporterFactory bulkLoadNodeImporterFactory = (BulkLoadNodeImporterFactory)ctx.getBean("bulkLoadNodeImporterFactory");
+        PolicyComponent policyComponent = (PolicyComponent)ctx.getBean("policyComponent");
+        ContentUsageImpl contentUsage = (ContentUsageImpl)ctx.getBean("contentUsageImpl");
+        PersonService personService = (PersonService)ctx.getBean("PersonService");
+
+        // Files that are loaded directly are created without the behaviours of their type
+        OnCreateNodePolicy onCreateContent = mock(OnCreateNodePolicy.class);
+        policyComponent.bindClassBehaviour(OnCreateNodePolicy.QNAME, ContentModel.TYPE_CONTENT,
+                new JavaBehaviour(onCreateContent, OnCreateNodePolicy.QNAME.getLocalName()));
+
+        // Usages are added up for the loaded files when the transaction commits
+        File source = ResourceUtils.getFile("classpath:bulkimport");
+        List<Path> sourceFiles;
+        try (Stream<Path> paths = Files.walk(source.toPath()))
+        {
+            sourceFiles = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        long sourceSize = 0L;
+        for (Path path : sourceFiles)
+        {
+            sourceSize += Files.size(path);
+        }
+        String userName = AuthenticationUtil.getFullyAuthenticatedUser();
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+        boolean usagesEnabled = contentUsage.getEnabled();
+        List<String> usageStores = contentUsage.getStores();
+        List<String> testUsageStores = new ArrayList<String>(usageStores);
+        testUsageStores.add(folderNode.getStoreRef().toString());
+        contentUsage.setEnabled(true);
+        contentUsage.setStores(testUsageStores);
+
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef personNodeRef = personService.getPerson(userName);
+        if (contentUsage.getUserStoredUsage(personNodeRef) == -1)
+        {
+            contentUsage.setUserStoredUsage(personNodeRef, 0L);
+        }
+        long usageBefore = contentUsage.getUserUsage(userName);
+        txn.commit();
+
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        try
+        {
+            NodeImporter nodeImporter = bulkLoadNodeImporterFactory.getNodeImporter(source);
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setReplaceExisting(true);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(40);
+            bulkImporter.bulkImport(bulkImportParameters, nodeImporter);
+        }
+        catch(Throwable e)
+        {
+            fail(e.getMessage());
+        }
+        finally
+        {
+            contentUsage.setEnabled(usagesEnabled);
+            contentUsage.setStores(usageStores);
+        }
+
+        System.out.println(bulkImporter.getStatus());
+
+        // Every file took the bulk-load path and none was streamed
+        verify(onCreateContent, never()).onCreateNode(any(ChildAssociationRef.class));
+        assertEquals(sourceFiles.size(), bulkImporter.getStatus().getNumberOfContentNodesCreated());
+        assertEquals(sourceSize, bulkImporter.getStatus().getNumberOfContentBytesWritten());
+        assertEquals("The usage of the loaded files should be added for the user",
+                sourceSize, contentUsage.getUserUsage(userName) - usageBefore);
+
+        // The files are loaded directly, with the same results as streaming them
+        checkFiles(folderNode, null, 2, 9,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quickImg1.xls", MimetypeMap.MIMETYPE_EXCEL),
+                    new ExpectedFile("quickImg1.doc", MimetypeMap.MIMETYPE_WORD),
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1"),
+                    new ExpectedFolder("folder2")
+                });
+
+        List<FileInfo> folders = getFolders(folderNode, "folder2");
+        assertEquals("", 1, folders.size());
+        folders = getFolders(folders.get(0).getNodeRef(), "folder2.1");
+        assertEquals("", 1, folders.size());
+        checkFiles(folders.get(0).getNodeRef(), null, 0, 17,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.png", MimetypeMap.MIMETYPE_IMAGE_PNG),
+                    new ExpectedFile("quick.pdf", MimetypeMap.MIMETYPE_PDF),
+                    new ExpectedFile("quick.odt", MimetypeMap.MIMETYPE_OPENDOCUMENT_TEXT),
+                },
+                new ExpectedFolder[]
+                {
+                });
+    }
+
     protected Rule createCopyRule(NodeRef targetNode, boolean isAppliedToChildren)
     {
         Rule rule = new Rule();
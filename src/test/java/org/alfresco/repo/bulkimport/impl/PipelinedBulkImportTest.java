@@ -0,0 +1,285 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.transaction.NotSupportedException;
+import javax.transaction.SystemException;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.bulkimport.BulkImportParameters;
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * Tests for the {@link PipelinedBulkFilesystemImporter}.
+ * 
+ * @since 7.0
+ */
+@Category(OwnJVMTestsCategory.class)
+public class PipelinedBulkImportTest extends AbstractBulkImportTests
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private StreamingNodeImporterFactory streamingNodeImporterFactory;
+    private PipelinedBulkFilesystemImporter pipelinedImporter;
+    private String originalCheckpointDirectory;
+    private File checkpointDirectory;
+
+    @BeforeClass
+    public static void beforeTests()
+    {
+        startContext();
+    }
+
+    @Before
+    public void setup() throws SystemException, NotSupportedException
+    {
+        super.setup();
+        streamingNodeImporterFactory = (StreamingNodeImporterFactory)ctx.getBean("streamingNodeImporterFactory");
+        pipelinedImporter = (PipelinedBulkFilesystemImporter)ctx.getBean("pipelinedBulkFilesystemImporter");
+        bulkImporter = pipelinedImporter;
+
+        originalCheckpointDirectory = pipelinedImporter.getCheckpointDirectory();
+        try
+        {
+            checkpointDirectory = tempFolder.newFolder("checkpoints");
+        }
+        catch (IOException e)
+        {
+            fail(e.getMessage());
+        }
+        pipelinedImporter.setCheckpointDirectory(checkpointDirectory.getAbsolutePath());
+    }
+
+    @After
+    public void resetCheckpointDirectory()
+    {
+        pipelinedImporter.setCheckpointDirectory(originalCheckpointDirectory);
+    }
+
+    @Test
+    public void testNestedFolders() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+        File source = ResourceUtils.getFile("classpath:bulkimport");
+
+        bulkImporter.bulkImport(createParameters(folderNode), streamingNodeImporterFactory.getNodeImporter(source));
+        assertFalse(bulkImporter.getStatus().inProgress());
+
+        checkFiles(folderNode, null, 2, 9,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1"),
+                    new ExpectedFolder("folder2")
+                });
+
+        // Each level is imported as soon as its parent commits, all the way down
+        NodeRef folder1 = getFolder(folderNode, "folder1");
+        checkFiles(folder1, null, 1, 0, null, new ExpectedFolder[] { new ExpectedFolder("folder1.1") });
+        NodeRef folder1_1 = getFolder(folder1, "folder1.1");
+        checkFiles(folder1_1, null, 2, 12,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1.1.1"),
+                    new ExpectedFolder("folder1.1.2")
+                });
+        checkFiles(getFolder(folder1_1, "folder1.1.1"), null, 0, 14, null, null);
+        checkFiles(getFolder(folder1_1, "folder1.1.2"), null, 0, 22, null, null);
+        NodeRef folder2 = getFolder(folderNode, "folder2");
+        checkFiles(getFolder(folder2, "folder2.1"), null, 0, 17,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.pdf", MimetypeMap.MIMETYPE_PDF),
+                },
+                null);
+
+        // A finished import leaves no checkpoint behind
+        assertFalse(Files.exists(getJournal(source.toPath(), folderNode)));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Throwable
+    {
+        Path source = tempFolder.newFolder("resume").toPath();
+        writeFile(source.resolve("done/one.txt"), "one");
+        writeFile(source.resolve("done/two.txt"), "two");
+        writeFile(source.resolve("todo/three.txt"), "three");
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+
+        // A previous run committed "done" and "done/one.txt" before it was interrupted
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+        NodeRef done = fileFolderService.create(folderNode, "done", ContentModel.TYPE_FOLDER).getNodeRef();
+        NodeRef one = fileFolderService.create(done, "one.txt", ContentModel.TYPE_CONTENT).getNodeRef();
+        ContentWriter writer = contentService.getWriter(one, ContentModel.PROP_CONTENT, true);
+        writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        writer.putContent("imported before the interruption");
+        txn.commit();
+
+        BulkImportCheckpoint checkpoint = new BulkImportCheckpoint(checkpointDirectory, source, folderNode);
+        checkpoint.open();
+        checkpoint.folderCommitted(source.resolve("done"), done);
+        checkpoint.fileCommitted(source.resolve("done/one.txt"));
+        checkpoint.close(false);
+
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+        bulkImporter.bulkImport(createParameters(folderNode), streamingNodeImporterFactory.getNodeImporter(source.toFile()));
+
+        checkFiles(folderNode, null, 2, 0, null,
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("done"),
+                    new ExpectedFolder("todo")
+                });
+        // The committed folder is descended into rather than imported again...
+        assertEquals(done, getFolder(folderNode, "done"));
+        // ...and the committed file is not replaced, while the rest of the folder is imported
+        checkFiles(done, null, 0, 2,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("one.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "imported before the interruption"),
+                    new ExpectedFile("two.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "two")
+                },
+                null);
+        checkFiles(getFolder(folderNode, "todo"), null, 0, 1,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("three.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "three")
+                },
+                null);
+
+        assertFalse(Files.exists(checkpoint.getJournal()));
+    }
+
+    @Test
+    public void testFailedFolderContentsSkipped() throws Throwable
+    {
+        Path source = tempFolder.newFolder("failure").toPath();
+        writeFile(source.resolve("good/ok.txt"), "ok");
+        writeFile(source.resolve("bad/inside.txt"), "inside");
+        writeFile(source.resolve("bad/deeper/deep.txt"), "deep");
+        // The folder cannot be created as a node of an unknown type
+        writeFile(source.resolve("bad.metadata.properties.xml"),
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n" +
+                "<properties>\n" +
+                "  <entry key=\"type\">cm:noSuchType</entry>\n" +
+                "</properties>\n");
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+        try
+        {
+            bulkImporter.bulkImport(createParameters(folderNode), streamingNodeImporterFactory.getNodeImporter(source.toFile()));
+            fail("The failed folder should be reported once the rest of the import has finished");
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // Expected
+        }
+        assertFalse(bulkImporter.getStatus().inProgress());
+
+        // The import carried on past the failed folder but did not try to import its contents
+        checkFiles(folderNode, null, 1, 0, null, new ExpectedFolder[] { new ExpectedFolder("good") });
+        assertNull(fileFolderService.searchSimple(folderNode, "bad"));
+        checkFiles(getFolder(folderNode, "good"), null, 0, 1,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("ok.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "ok")
+                },
+                null);
+
+        // The checkpoint is kept so that running the import again retries only what failed
+        assertTrue(Files.exists(getJournal(source, folderNode)));
+    }
+
+    private BulkImportParameters createParameters(NodeRef target)
+    {
+        BulkImportParameters bulkImportParameters = new BulkImportParameters();
+        bulkImportParameters.setTarget(target);
+        bulkImportParameters.setReplaceExisting(true);
+        bulkImportParameters.setDisableRulesService(true);
+        bulkImportParameters.setBatchSize(5);
+        return bulkImportParameters;
+    }
+
+    private NodeRef getFolder(NodeRef parent, String name)
+    {
+        List<FileInfo> folders = getFolders(parent, name);
+        assertEquals("Expected one folder called " + name, 1, folders.size());
+        return folders.get(0).getNodeRef();
+    }
+
+    private Path getJournal(Path source, NodeRef target)
+    {
+        return new BulkImportCheckpoint(checkpointDirectory, source, target).getJournal();
+    }
+
+    private static void writeFile(Path file, String content) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -26,6 +26,9 @@
 package org.alfresco.repo.cache.lookup;
 
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -34,6 +37,7 @@ import junit.framework.TestCase;
 
 import org.alfresco.repo.cache.MemoryCache;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.BatchEntityLookupCallbackDAO;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAO;
 import org.alfresco.repo.domain.control.ControlDAO;
 import org.alfresco.util.EqualsHelper;
@@ -188,6 +192,37 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         assertEquals(id, entityPairOneCheck.getFirst());
     }
     
+    public void testGetOrCreateByValues() throws Exception
+    {
+        BatchLookup batchLookup = new BatchLookup();
+        EntityLookupCache<Long, Object, String> entityLookupCache = new EntityLookupCache<Long, Object, String>(cache, "Batch", batchLookup);
+        TestValue valueOne = new TestValue(getName() + "-ONE");
+        TestValue valueTwo = new TestValue(getName() + "-TWO");
+        TestValue valueThree = new TestValue(getName() + "-THREE");
+        // One is cached, two is only in the database and three doesn't exist
+        Long idOne = entityLookupCache.getOrCreateByValue(valueOne).getFirst();
+        Long idTwo = createValue(valueTwo).getFirst();
+        
+        List<Pair<Long, Object>> entityPairs = entityLookupCache.getOrCreateByValues(
+                Arrays.<Object>asList(valueOne, valueTwo, valueThree, valueTwo, null));
+        assertEquals(5, entityPairs.size());
+        assertEquals(idOne, entityPairs.get(0).getFirst());
+        assertEquals(idTwo, entityPairs.get(1).getFirst());
+        Long idThree = entityPairs.get(2).getFirst();
+        assertEquals(valueThree.val, database.get(idThree));
+        assertEquals(idTwo, entityPairs.get(3).getFirst());
+        assertTrue(database.containsKey(entityPairs.get(4).getFirst()));
+        assertNull(database.get(entityPairs.get(4).getFirst()));
+        assertEquals("Uncached values should be looked up together", 1, batchLookup.batchCount);
+        assertEquals(Arrays.<Object>asList(valueTwo, valueThree), batchLookup.lastBatch);
+        
+        // Everything is cached now
+        entityPairs = entityLookupCache.getOrCreateByValues(Arrays.<Object>asList(valueThree, valueTwo));
+        assertEquals(idThree, entityPairs.get(0).getFirst());
+        assertEquals(idTwo, entityPairs.get(1).getFirst());
+        assertEquals(1, batchLookup.batchCount);
+    }
+    
     public void testCreateOrGet() throws Exception
     {
         TestValue valueOne = new TestValue(getName() + "-ONE");
@@ -408,4 +443,61 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
             return 1;
         }
     }
+    
+    /**
+     * Looks values up in batches against the same database
+     */
+    private class BatchLookup implements BatchEntityLookupCallbackDAO<Long, Object, String>
+    {
+        private int batchCount;
+        private List<Object> lastBatch;
+        
+        public List<Pair<Long, Object>> findByValues(List<Object> values)
+        {
+            batchCount++;
+            lastBatch = new ArrayList<Object>(values);
+            List<Pair<Long, Object>> entityPairs = new ArrayList<Pair<Long, Object>>(values.size());
+            for (Object value : values)
+            {
+                assertNotNull(value);
+                entityPairs.add(findByValue(value));
+            }
+            return entityPairs;
+        }
+
+        public String getValueKey(Object value)
+        {
+            return EntityLookupCacheTest.this.getValueKey(value);
+        }
+
+        public Pair<Long, Object> findByKey(Long key)
+        {
+            return EntityLookupCacheTest.this.findByKey(key);
+        }
+
+        public Pair<Long, Object> findByValue(Object value)
+        {
+            return EntityLookupCacheTest.this.findByValue(value);
+        }
+
+        public Pair<Long, Object> createValue(Object value)
+        {
+            return EntityLookupCacheTest.this.createValue(value);
+        }
+
+        public int updateValue(Long key, Object value)
+        {
+            return EntityLookupCacheTest.this.updateValue(key, value);
+        }
+
+        public int deleteByKey(Long key)
+        {
+            return EntityLookupCacheTest.this.deleteByKey(key);
+        }
+
+        public int deleteByValue(Object value)
+        {
+            return EntityLookupCacheTest.this.deleteByValue(value);
+        }
+    }
 }
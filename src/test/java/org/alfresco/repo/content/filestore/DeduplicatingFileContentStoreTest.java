@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.alfresco.repo.content.AbstractWritableContentStoreTest;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.TempFileProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the file-based store that shares identical binaries.
+ * 
+ * @see org.alfresco.repo.content.filestore.DeduplicatingFileContentStore
+ * 
+ * @since 7.0
+ */
+@Category(OwnJVMTestsCategory.class)
+public class DeduplicatingFileContentStoreTest extends AbstractWritableContentStoreTest
+{
+    private DeduplicatingFileContentStore store;
+    
+    @Before
+    public void before() throws Exception
+    {
+        // create a store that uses a subdirectory of the temp directory
+        File tempDir = TempFileProvider.getTempDir();
+        store = new DeduplicatingFileContentStore(ctx,
+                new File(tempDir.getAbsolutePath() +
+                File.separatorChar +
+                getName()));
+    }
+    
+    @Override
+    protected ContentStore getStore()
+    {
+        return store;
+    }
+    
+    private File write(String content)
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(content);
+        return store.makeFile(writer.getContentUrl());
+    }
+    
+    @Test
+    public void testIdenticalContentIsShared() throws Exception
+    {
+        assumeTrue(store.isDeduplicationSupported());
+        
+        String content = "Shared content " + getName() + System.nanoTime();
+        File fileOne = write(content);
+        File fileTwo = write(content);
+        File fileOther = write(content + " changed");
+        
+        assertFalse(fileOne.equals(fileTwo));
+        assertTrue("Identical content must be shared", Files.isSameFile(fileOne.toPath(), fileTwo.toPath()));
+        assertFalse("Different content must not be shared", Files.isSameFile(fileOne.toPath(), fileOther.toPath()));
+        // Two content URLs and the blob
+        assertEquals(3, Files.getAttribute(fileOne.toPath(), "unix:nlink"));
+        assertEquals(2, Files.getAttribute(fileOther.toPath(), "unix:nlink"));
+    }
+    
+    @Test
+    public void testBlobRemovedWithLastContentUrl() throws Exception
+    {
+        assumeTrue(store.isDeduplicationSupported());
+        
+        String content = "Deleted content " + getName() + System.nanoTime();
+        File fileOne = write(content);
+        File fileTwo = write(content);
+        
+        assertTrue(store.delete(store.makeContentUrl(fileOne)));
+        assertFalse(fileOne.exists());
+        assertEquals("Shared content must remain readable", content,
+                store.getReader(store.makeContentUrl(fileTwo)).getContentString());
+        assertEquals(2, Files.getAttribute(fileTwo.toPath(), "unix:nlink"));
+        
+        assertTrue(store.delete(store.makeContentUrl(fileTwo)));
+        assertFalse(fileTwo.exists());
+        
+        // The content can be written again without a blob in the way
+        File fileThree = write(content);
+        assertEquals(2, Files.getAttribute(fileThree.toPath(), "unix:nlink"));
+    }
+}
@@ -27,7 +27,9 @@ package org.alfresco.repo.content.filestore;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.alfresco.repo.content.AbstractWritableContentStoreTest;
 import org.alfresco.repo.content.ContentContext;
@@ -38,6 +40,7 @@ import org.alfresco.repo.content.ContentLimitViolationException;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.TempFileProvider;
@@ -116,6 +119,39 @@ public class FileContentStoreTest extends AbstractWritableContentStoreTest
         }
     }
 
+    /**
+     * Checks that a finished file can be linked into the store instead of being copied.
+     */
+    @Test
+    public void testLinkContent() throws Exception
+    {
+        File source = TempFileProvider.createTempFile(getName(), ".txt");
+        Files.write(source.toPath(), "Linked content".getBytes("UTF-8"));
+        
+        FileContentWriter writer = (FileContentWriter) getStore().getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        writer.addListener(new ContentStreamListener()
+        {
+            public void contentStreamClosed()
+            {
+                closed.set(true);
+            }
+        });
+        assertTrue("Content should have been written", writer.linkContent(source));
+        assertTrue("Listeners must be called", closed.get());
+        assertTrue("Writer should be closed", writer.isClosed());
+        assertTrue("Content should share the source file", Files.isSameFile(source.toPath(), writer.getFile().toPath()));
+        
+        // The content survives the source file
+        source.delete();
+        ContentReader reader = getStore().getReader(writer.getContentUrl());
+        assertEquals("Linked content", reader.getContentString());
+        assertEquals(14L, writer.getContentData().getSize());
+        
+        // A writer can only be used once
+        assertFalse(writer.linkContent(source));
+    }
+
     @Override
     @Test
     public void testRootLocation() throws Exception
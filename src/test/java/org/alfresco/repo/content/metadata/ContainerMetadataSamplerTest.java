@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Map;
+
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.transform.AbstractContentTransformerTest;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.junit.Test;
+
+/**
+ * Tests the sampling of document properties from OOXML and PDF containers.
+ *
+ * @see ContainerMetadataSampler
+ */
+public class ContainerMetadataSamplerTest
+{
+    @Test
+    public void testOOXMLFromFile() throws Exception
+    {
+        File file = AbstractContentTransformerTest.loadQuickTestFile("docx");
+        Map<String, String> core = ContainerMetadataSampler.readOOXMLCoreProperties(new FileContentReader(file));
+
+        assertNotNull(core);
+        assertEquals(AbstractMetadataExtracterTest.QUICK_TITLE, core.get(ContainerMetadataSampler.OOXML_TITLE));
+        assertEquals(AbstractMetadataExtracterTest.QUICK_DESCRIPTION, core.get(ContainerMetadataSampler.OOXML_SUBJECT));
+        assertEquals(AbstractMetadataExtracterTest.QUICK_CREATOR, core.get(ContainerMetadataSampler.OOXML_CREATOR));
+        assertEquals("2010-01-06T17:32:00Z", core.get(ContainerMetadataSampler.OOXML_CREATED));
+    }
+
+    @Test
+    public void testOOXMLFromStream() throws Exception
+    {
+        File file = AbstractContentTransformerTest.loadQuickTestFile("xlsx");
+        ContentReader reader = mock(ContentReader.class);
+        when(reader.getReader()).thenReturn(reader);
+        when(reader.getContentInputStream()).thenReturn(new FileInputStream(file));
+
+        Map<String, String> core = ContainerMetadataSampler.readOOXMLCoreProperties(reader);
+
+        assertNotNull(core);
+        assertEquals(AbstractMetadataExtracterTest.QUICK_TITLE, core.get(ContainerMetadataSampler.OOXML_TITLE));
+        assertEquals(AbstractMetadataExtracterTest.QUICK_CREATOR, core.get(ContainerMetadataSampler.OOXML_CREATOR));
+    }
+
+    /**
+     * The quick PDF has been incrementally updated, so the Info dictionary is found through a previous section
+     */
+    @Test
+    public void testPdfInfo() throws Exception
+    {
+        File file = AbstractContentTransformerTest.loadQuickTestFile("pdf");
+        Map<String, String> info = ContainerMetadataSampler.readPdfInfo(new FileContentReader(file));
+
+        assertNotNull(info);
+        assertEquals(AbstractMetadataExtracterTest.QUICK_TITLE, info.get(ContainerMetadataSampler.PDF_TITLE));
+        assertEquals(AbstractMetadataExtracterTest.QUICK_DESCRIPTION, info.get(ContainerMetadataSampler.PDF_SUBJECT));
+        assertEquals(AbstractMetadataExtracterTest.QUICK_CREATOR, info.get(ContainerMetadataSampler.PDF_AUTHOR));
+        assertEquals("2005-05-26T20:52:58+01:00", info.get(ContainerMetadataSampler.PDF_CREATION_DATE));
+        // UTF-16 hex string
+        assertEquals("Writer", info.get("Creator"));
+    }
+
+    /**
+     * Encrypted with an empty user password and using a cross-reference stream
+     */
+    @Test
+    public void testPdfInfoSecured() throws Exception
+    {
+        File secured = AbstractContentTransformerTest.loadNamedQuickTestFile("quick-secured.pdf");
+        Map<String, String> info = ContainerMetadataSampler.readPdfInfo(new FileContentReader(secured));
+
+        assertNotNull(info);
+        assertEquals("Microsoft Word - Document1", info.get(ContainerMetadataSampler.PDF_TITLE));
+        assertEquals("jpotts", info.get(ContainerMetadataSampler.PDF_AUTHOR));
+        assertEquals("2011-01-11T10:21:52-07:00", info.get(ContainerMetadataSampler.PDF_CREATION_DATE));
+    }
+
+    @Test
+    public void testPdfFallsBack() throws Exception
+    {
+        File corrupt = AbstractContentTransformerTest.loadNamedQuickTestFile("quickCorrupt.pdf");
+        assertNull(ContainerMetadataSampler.readPdfInfo(new FileContentReader(corrupt)));
+
+        ContentReader streamOnly = mock(ContentReader.class);
+        when(streamOnly.getReader()).thenReturn(streamOnly);
+        assertNull(ContainerMetadataSampler.readPdfInfo(streamOnly));
+    }
+
+    @Test
+    public void testPdfDates()
+    {
+        assertEquals("2013-01-11T12:28:17-05:00", ContainerMetadataSampler.toISO8601("D:20130111122817-05'00'"));
+        assertEquals("2013-01-11T12:28:17Z", ContainerMetadataSampler.toISO8601("D:20130111122817Z"));
+        assertEquals("2013-01-01T00:00:00", ContainerMetadataSampler.toISO8601("D:2013"));
+        assertNull(ContainerMetadataSampler.toISO8601("yesterday"));
+    }
+}
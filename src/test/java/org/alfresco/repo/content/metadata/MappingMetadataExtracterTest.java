@@ -39,6 +39,7 @@ import junit.framework.TestCase;
 
 import org.alfresco.MiscContextTestSuite;
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.DefaultSimpleCache;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.filestore.FileContentWriter;
@@ -281,6 +282,42 @@ public class MappingMetadataExtracterTest extends TestCase
         assertEquals(null, destination.get(DummyMappingMetadataExtracter.QNAME_B));
     }
     
+    public void testExtractionCache()
+    {
+        extracter.setExtractionCache(new DefaultSimpleCache<String, Map<String, Serializable>>());
+        extracter.register();
+        
+        destination.clear();
+        extracter.extract(reader, destination);
+        assertEquals(1, extracter.extractCount);
+        
+        // The same content is not extracted again, even through another reader
+        Map<QName, Serializable> copyDestination = new HashMap<QName, Serializable>(7);
+        extracter.extract(reader.getReader(), copyDestination);
+        assertEquals(1, extracter.extractCount);
+        assertEquals(destination, copyDestination);
+    }
+    
+    public void testSampledExtraction()
+    {
+        extracter.sampled = Collections.<String, Serializable>singletonMap(DummyMappingMetadataExtracter.PROP_B, "Sampled");
+        extracter.setSampledExtraction(true);
+        extracter.register();
+        
+        destination.clear();
+        extracter.extract(reader, destination);
+        assertEquals(0, extracter.extractCount);
+        assertEquals(1, destination.size());
+        assertEquals("Sampled", destination.get(DummyMappingMetadataExtracter.QNAME_B));
+        
+        // Nothing sampled falls back to the full extraction
+        extracter.sampled = null;
+        destination.clear();
+        extracter.extract(reader, destination);
+        assertEquals(1, extracter.extractCount);
+        assertEquals(4, destination.size());
+    }
+    
     /**
      * @see <a href="https://issues.alfresco.com/jira/browse/MNT-13919">MNT-13919</a>
      */
@@ -364,6 +401,8 @@ public class MappingMetadataExtracterTest extends TestCase
         
         Map<String, Set<QName>> defaultMapping;
         private boolean initCheck;
+        private int extractCount;
+        private Map<String, Serializable> sampled;
         
         public DummyMappingMetadataExtracter()
         {
@@ -391,10 +430,17 @@ public class MappingMetadataExtracterTest extends TestCase
             return defaultMapping;
         }
         
+        @Override
+        protected Map<String, Serializable> extractRawSampled(ContentReader reader)
+        {
+            return sampled;
+        }
+        
         @Override
         protected Map<String, Serializable> extractRaw(ContentReader reader)
         {
             reader.getContentString();
+            extractCount++;
             
             Map<String, Serializable> ret = new HashMap<String, Serializable>(7);
             ret.put(PROP_A, VALUE_A);
@@ -31,11 +31,14 @@ import java.io.Serializable;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.transform.AbstractContentTransformerTest;
 import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.apache.pdfbox.util.DateConverter;
 
@@ -138,4 +141,24 @@ public class PdfBoxMetadataExtracterTest extends AbstractMetadataExtracterTest
         Map<QName, Serializable> properties = extractFromFile(sourceFile, MimetypeMap.MIMETYPE_PDF);
         assertTrue(properties.isEmpty());
     }
+
+    /**
+     * Sampling only reads the document information, so it is skipped once other properties are mapped
+     */
+    public void testSampledExtraction() throws Throwable
+    {
+        File sourceFile = AbstractContentTransformerTest.loadQuickTestFile("pdf");
+        Map<String, Serializable> rawProperties = extracter.extractRawSampled(new FileContentReader(sourceFile));
+        assertNotNull(rawProperties);
+        assertEquals(QUICK_TITLE, rawProperties.get("title"));
+        assertEquals(QUICK_CREATOR, rawProperties.get("author"));
+
+        Properties props = new Properties();
+        props.put("namespace.prefix.cm", NamespaceService.CONTENT_MODEL_1_0_URI);
+        props.put("xmpTPg:NPages", "cm:name");
+        extracter.setMappingProperties(props);
+        extracter.setInheritDefaultMapping(true);
+        extracter.register();
+        assertNull(extracter.extractRawSampled(new FileContentReader(sourceFile)));
+    }
 }
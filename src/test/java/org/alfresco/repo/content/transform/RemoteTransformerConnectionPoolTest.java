@@ -0,0 +1,281 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import com.sun.net.httpserver.HttpServer;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the {@link RemoteTransformerConnectionPool} used by the {@link RemoteTransformerClient} against a stub
+ * T-Engine running in a local HTTP server.
+ *
+ * @since 7.0
+ */
+public class RemoteTransformerConnectionPoolTest
+{
+    private static final Log logger = LogFactory.getLog(RemoteTransformerConnectionPoolTest.class);
+    private static final int MAX_IN_FLIGHT = 2;
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private RemoteTransformerConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/transform", exchange ->
+        {
+            int now = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            try (InputStream in = exchange.getRequestBody())
+            {
+                IOUtils.toByteArray(in);
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                concurrent.decrementAndGet();
+            }
+            byte[] response = "transformed".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(response);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(10));
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+
+        pool = new RemoteTransformerConnectionPool();
+        pool.setBeanName("stubConnectionPool");
+        pool.setMaxConnections(MAX_IN_FLIGHT);
+        pool.setMaxInFlight(MAX_IN_FLIGHT);
+        pool.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+        pool.destroy();
+    }
+
+    private RemoteTransformerClient createClient()
+    {
+        RemoteTransformerClient client = new RemoteTransformerClient("STUB", baseUrl);
+        client.setConnectionPool(pool);
+        return client;
+    }
+
+    private String transform(RemoteTransformerClient client) throws Exception
+    {
+        ContentReader reader = mock(ContentReader.class);
+        when(reader.getContentInputStream()).thenReturn(new ByteArrayInputStream(new byte[64 * 1024]));
+        ContentWriter writer = mock(ContentWriter.class);
+        StringBuilder result = new StringBuilder();
+        doAnswer(invocation ->
+        {
+            InputStream in = invocation.getArgument(0);
+            result.append(IOUtils.toString(in, StandardCharsets.UTF_8));
+            return null;
+        }).when(writer).putContent(any(InputStream.class));
+
+        client.request(reader, writer, "application/msword", "doc", "pdf", 0, logger);
+        return result.toString();
+    }
+
+    @Test
+    public void testClientsShareTheirPool()
+    {
+        assertTrue(createClient().getPool() == pool);
+        assertTrue(createClient().getPool() == createClient().getPool());
+    }
+
+    @Test
+    public void testClientWithoutPoolHasItsOwn()
+    {
+        RemoteTransformerClient client = new RemoteTransformerClient("STUB", baseUrl);
+        RemoteTransformerConnectionPool ownPool = client.getPool();
+        try
+        {
+            assertTrue(ownPool != pool);
+            assertEquals(RemoteTransformerConnectionPool.DEFAULT_MAX_IN_FLIGHT, ownPool.getMaxInFlight());
+        }
+        finally
+        {
+            ownPool.destroy();
+        }
+    }
+
+    @Test
+    public void testExportedOverJmxAndClosed() throws Exception
+    {
+        DynamicMBeanExportOperations exporter = mock(DynamicMBeanExportOperations.class);
+        RemoteTransformerConnectionPool exported = new RemoteTransformerConnectionPool();
+        exported.setBeanName("exportedConnectionPool");
+        exported.setMbeanExporter(exporter);
+        exported.afterPropertiesSet();
+
+        ObjectName objectName = new ObjectName("Alfresco:Type=TransformerConnectionPool,Name=\"exportedConnectionPool\"");
+        verify(exporter).registerMBean(exported, objectName);
+
+        exported.destroy();
+        verify(exporter).unregisterMBean(objectName);
+        try
+        {
+            exported.getHttpClient();
+            fail("A closed pool should not be used");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInFlightLimitIsPerEngine() throws Exception
+    {
+        assertTrue(pool.acquire(baseUrl, 10));
+        assertTrue(pool.acquire(baseUrl, 10));
+        assertFalse("The engine's slots are all in use", pool.acquire(baseUrl, 10));
+        assertTrue("Another engine has its own slots", pool.acquire("http://localhost:1/", 10));
+        assertEquals(3, pool.getInFlight());
+        assertEquals(1, pool.getRejectedCount());
+
+        long now = System.currentTimeMillis();
+        pool.release(baseUrl, now);
+        pool.release(baseUrl, now);
+        pool.release("http://localhost:1/", now);
+        assertEquals(0, pool.getInFlight());
+    }
+
+    @Test
+    public void testResponseStreamedToWriter() throws Exception
+    {
+        assertEquals("transformed", transform(createClient()));
+    }
+
+    @Test
+    public void testIdleConnectionsEvicted() throws Exception
+    {
+        RemoteTransformerConnectionPool idlePool = new RemoteTransformerConnectionPool();
+        idlePool.setBeanName("idleConnectionPool");
+        idlePool.setIdleTimeoutMs(200);
+        idlePool.afterPropertiesSet();
+        try
+        {
+            RemoteTransformerClient client = new RemoteTransformerClient("STUB", baseUrl);
+            client.setConnectionPool(idlePool);
+            assertEquals("transformed", transform(client));
+            assertEquals("The connection should be kept for reuse", 1, idlePool.getAvailableConnections());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (idlePool.getAvailableConnections() > 0 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(50);
+            }
+            assertEquals("The idle connection should have been closed", 0, idlePool.getAvailableConnections());
+        }
+        finally
+        {
+            idlePool.destroy();
+        }
+    }
+
+    @Test
+    public void testInFlightLimitAndConnectionReuse() throws Exception
+    {
+        RemoteTransformerClient client = createClient();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+            {
+                results.add(executor.submit(() -> transform(client)));
+            }
+            for (Future<String> result : results)
+            {
+                assertEquals("transformed", result.get());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        RemoteTransformerConnectionPool pool = client.getPool();
+        assertTrue("In-flight limit exceeded: " + maxConcurrent.get(), maxConcurrent.get() <= MAX_IN_FLIGHT);
+        assertTrue("Connections were not reused: " + clientPorts, clientPorts.size() <= MAX_IN_FLIGHT);
+        assertEquals(20, pool.getRequestCount());
+        assertEquals(0, pool.getFailureCount());
+        assertEquals(0, pool.getInFlight());
+        assertEquals(0, pool.getLeasedConnections());
+    }
+}
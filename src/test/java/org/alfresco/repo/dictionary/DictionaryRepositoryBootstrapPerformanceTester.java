@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.dictionary;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.i18n.MessageService;
+import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantAdminService;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Measures how long it takes to load the models stored in the repository into the dictionary, reading
+ * and parsing every model as happens when the server starts (cold) and taking the parsed models from the
+ * model cache as happens when the dictionary is reloaded or a tenant is activated (cached).
+ * <p>
+ * The model cache lives in memory only, so the first load after startup is always cold.
+ * <p>
+ * Note that this test is not designed to validate performance figures, but is
+ * rather a handy tool for doing benchmarking.  It is therefore not named <i>*Test</i> as is the
+ * pattern for getting tests run by the continuous build.
+ *
+ * @since 7.0
+ */
+@Category(OwnJVMTestsCategory.class)
+public class DictionaryRepositoryBootstrapPerformanceTester extends TestCase
+{
+    private static Log logger = LogFactory.getLog(DictionaryRepositoryBootstrapPerformanceTester.class);
+
+    private static ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private static final int MODEL_COUNT = 100;
+    private static final int LOAD_COUNT = 20;
+
+    private RetryingTransactionHelper retryingTransactionHelper;
+    private NodeService nodeService;
+    private ContentService contentService;
+    private BehaviourFilter behaviourFilter;
+    private DictionaryRepositoryBootstrap bootstrap;
+
+    private StoreRef storeRef;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        TransactionService transactionService = (TransactionService) ctx.getBean("transactionComponent");
+        retryingTransactionHelper = transactionService.getRetryingTransactionHelper();
+        nodeService = (NodeService) ctx.getBean("nodeService");
+        contentService = (ContentService) ctx.getBean("contentService");
+        behaviourFilter = (BehaviourFilter) ctx.getBean("policyBehaviourFilter");
+
+        AuthenticationUtil.setRunAsUserSystem();
+        retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                createModels();
+                return null;
+            }
+        });
+
+        RepositoryLocation location = new RepositoryLocation();
+        location.setStoreProtocol(storeRef.getProtocol());
+        location.setStoreId(storeRef.getIdentifier());
+        location.setQueryLanguage(RepositoryLocation.LANGUAGE_PATH);
+
+        bootstrap = new DictionaryRepositoryBootstrap();
+        bootstrap.setContentService(contentService);
+        bootstrap.setDictionaryDAO((DictionaryDAO) ctx.getBean("dictionaryDAO"));
+        bootstrap.setTransactionService(transactionService);
+        bootstrap.setTenantAdminService((TenantAdminService) ctx.getBean("tenantAdminService"));
+        bootstrap.setNodeService(nodeService);
+        bootstrap.setNamespaceService((NamespaceService) ctx.getBean("namespaceService"));
+        bootstrap.setMessageService((MessageService) ctx.getBean("messageService"));
+        bootstrap.setPolicyComponent((PolicyComponent) ctx.getBean("policyComponent"));
+        bootstrap.setRepositoryModelsLocations(Collections.singletonList(location));
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    private void createModels()
+    {
+        storeRef = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, getName() + "_" + System.currentTimeMillis());
+        NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+        behaviourFilter.disableBehaviour(ContentModel.TYPE_DICTIONARY_MODEL);
+        for (int i = 0; i < MODEL_COUNT; i++)
+        {
+            String prefix = "perf" + i;
+            NodeRef modelNodeRef = nodeService.createNode(
+                    rootNodeRef,
+                    ContentModel.ASSOC_CHILDREN,
+                    QName.createQName("{test}models"),
+                    ContentModel.TYPE_DICTIONARY_MODEL).getChildRef();
+            ContentWriter writer = contentService.getWriter(modelNodeRef, ContentModel.PROP_CONTENT, true);
+            writer.setEncoding("UTF-8");
+            writer.setMimetype(MimetypeMap.MIMETYPE_XML);
+            writer.putContent(MessageFormat.format(
+                    DictionaryRepositoryBootstrapTest.TEMPLATE_MODEL_XML,
+                    new Object[] {
+                            "'" + prefix + ":model'",
+                            "Performance model " + i,
+                            "",
+                            "'http://www.alfresco.org/model/" + storeRef.getIdentifier() + "/" + prefix + "/1.0'",
+                            "'" + prefix + "'",
+                            "'" + prefix + ":base'",
+                            "'" + prefix + ":prop'"}));
+            nodeService.setProperty(modelNodeRef, ContentModel.PROP_MODEL_ACTIVE, Boolean.TRUE);
+        }
+    }
+
+    public void testColdLoads() throws Exception
+    {
+        bootstrap.setModelCacheSize(0);
+        run("cold");
+    }
+
+    public void testCachedLoads() throws Exception
+    {
+        bootstrap.setModelCacheSize(MODEL_COUNT);
+        // Startup
+        bootstrap.onDictionaryInit();
+        run("cached");
+    }
+
+    private void run(String description)
+    {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < LOAD_COUNT; i++)
+        {
+            bootstrap.onDictionaryInit();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        logger.info("Repository model loads (" + description + "): " +
+                String.format("%.1f ms to load %d models; cache hits: %d, misses: %d",
+                        (double) elapsed / LOAD_COUNT, MODEL_COUNT, bootstrap.getModelCacheHits(), bootstrap.getModelCacheMisses()));
+    }
+}
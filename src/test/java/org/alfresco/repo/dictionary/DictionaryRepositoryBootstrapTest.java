@@ -254,6 +254,54 @@ public class DictionaryRepositoryBootstrapTest extends BaseSpringTest
         txn.commit();
     }
 
+    /**
+     * Test that reloading the dictionary does not parse unchanged models again
+     */
+    @Test
+    public void testModelCache() throws Exception
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+        this.behaviourFilter.disableBehaviour(ContentModel.TYPE_DICTIONARY_MODEL);
+        NodeRef modelNodeRef = createModelNode(
+                "http://www.alfresco.org/model/test4DictionaryBootstrapFromRepo/1.0",
+                "test4",
+                "testModel4",
+                "",
+                "Test model four",
+                "base4",
+                "prop4");
+
+        this.bootstrap.init();
+        assertEquals(1, this.bootstrap.getModelCacheMisses());
+        assertEquals(0, this.bootstrap.getModelCacheHits());
+
+        // Unchanged model
+        this.bootstrap.init();
+        assertEquals(1, this.bootstrap.getModelCacheMisses());
+        assertEquals(1, this.bootstrap.getModelCacheHits());
+
+        // Changed model
+        ContentWriter contentWriter = this.contentService.getWriter(modelNodeRef, ContentModel.PROP_CONTENT, true);
+        contentWriter.setEncoding("UTF-8");
+        contentWriter.setMimetype(MimetypeMap.MIMETYPE_XML);
+        contentWriter.putContent(getModelString(
+                "http://www.alfresco.org/model/test4DictionaryBootstrapFromRepo/1.0",
+                "test4",
+                "testModel4",
+                "",
+                "Test model four, changed",
+                "base4",
+                "prop4"));
+        this.bootstrap.init();
+        assertEquals(2, this.bootstrap.getModelCacheMisses());
+        assertEquals(1, this.bootstrap.getModelCacheHits());
+        assertNotNull(this.dictionaryDAO.getModel(
+                QName.createQName("http://www.alfresco.org/model/test4DictionaryBootstrapFromRepo/1.0", "testModel4")));
+
+        txn.commit();
+    }
+
     /**
      * Create model node 
      * 
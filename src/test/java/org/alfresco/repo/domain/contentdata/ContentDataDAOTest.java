@@ -26,6 +26,7 @@
 package org.alfresco.repo.domain.contentdata;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -227,6 +228,43 @@ public class ContentDataDAOTest extends TestCase
         assertEquals("text/myformat", result.getSecond().getMimetype());
     }
 
+    /**
+     * Check that values created together resolve new and existing content URLs and mimetypes as they
+     * would one at a time.
+     */
+    public void testCreateContentDataList() throws Exception
+    {
+        ContentData existing = getContentData();
+        create(existing);
+        Long existingContentUrlId = contentDataDAO.getContentUrl(existing.getContentUrl()).getId();
+        ContentData shared = new ContentData(existing.getContentUrl(), "TEXT/MYLISTFORMAT", existing.getSize(), "UTF-8", Locale.FRENCH);
+        ContentData created = getContentData();
+        ContentData createdAgain = new ContentData(created.getContentUrl(), MimetypeMap.MIMETYPE_PDF, created.getSize(), "UTF-8", Locale.ENGLISH);
+        ContentData empty = new ContentData(null, null, 0L, null, null);
+        final List<ContentData> values = Arrays.asList(shared, created, createdAgain, empty);
+
+        List<Pair<Long, ContentData>> results = txnHelper.doInTransaction(new RetryingTransactionCallback<List<Pair<Long, ContentData>>>()
+        {
+            public List<Pair<Long, ContentData>> execute() throws Throwable
+            {
+                return contentDataDAO.createContentData(values);
+            }
+        }, false, false);
+
+        assertEquals(values.size(), results.size());
+        assertEquals("Mimetypes are stored in lowercase", "text/mylistformat", results.get(0).getSecond().getMimetype());
+        getAndCheck(results.get(0).getFirst(), new ContentData(
+                shared.getContentUrl(), "text/mylistformat", shared.getSize(), "UTF-8", Locale.FRENCH));
+        getAndCheck(results.get(1).getFirst(), created);
+        getAndCheck(results.get(2).getFirst(), createdAgain);
+        getAndCheck(results.get(3).getFirst(), empty);
+        assertEquals("The existing content URL should be reused",
+                existingContentUrlId, contentDataDAO.getContentUrl(shared.getContentUrl()).getId());
+        ContentUrlEntity createdUrl = contentDataDAO.getContentUrl(created.getContentUrl());
+        assertNotNull(createdUrl);
+        assertEquals(created.getSize(), createdUrl.getSize());
+    }
+
     public void testUpdate() throws Exception
     {
         ContentData contentData = getContentData();
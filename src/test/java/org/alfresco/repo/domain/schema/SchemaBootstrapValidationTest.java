@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.testing.category.DBTests;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests the background validation of the database schema against the schema reference files.
+ * Like the {@link org.alfresco.util.schemacomp.SchemaReferenceFileTest}, it expects the schema
+ * to match the reference files of the database the tests are run against.
+ * 
+ * @see SchemaBootstrap#setValidateSchemaInBackground(boolean)
+ */
+@Category({OwnJVMTestsCategory.class, DBTests.class})
+public class SchemaBootstrapValidationTest
+{
+    private static final long VALIDATION_TIMEOUT_MS = 120000L;
+
+    private SchemaBootstrap schemaBootstrap;
+    private AttributeService attributeService;
+    private TransactionService transactionService;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+        schemaBootstrap = (SchemaBootstrap) ctx.getBean("schemaBootstrap");
+        attributeService = (AttributeService) ctx.getBean("attributeService");
+        transactionService = (TransactionService) ctx.getBean("transactionService");
+
+        // Forget the digests of earlier validations, so that the schema is validated again
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                attributeService.removeAttributes(SchemaBootstrap.KEY_SCHEMA_BOOTSTRAP, SchemaBootstrap.KEY_VALIDATED_DIGEST);
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testUnchangedSchemaNotValidatedAgain()
+    {
+        schemaBootstrap.validateSchemaInBackground(false);
+        assertEquals(SchemaBootstrap.VALIDATION_COMPLETED, schemaBootstrap.getValidationStatus());
+        assertEquals(0, schemaBootstrap.getValidationProblems());
+
+        // Nothing has changed since the schema was validated without problems
+        schemaBootstrap.validateSchemaInBackground(false);
+        assertEquals(SchemaBootstrap.VALIDATION_UNCHANGED, schemaBootstrap.getValidationStatus());
+        assertEquals(0, schemaBootstrap.getValidationProblems());
+    }
+
+    @Test
+    public void testBackgroundValidation() throws Exception
+    {
+        // Only a bootstrap with background validation enabled leaves a validation to start
+        assertFalse(schemaBootstrap.startBackgroundValidation());
+
+        schemaBootstrap.startBackgroundValidation(false);
+        long start = System.currentTimeMillis();
+        while (SchemaBootstrap.VALIDATION_RUNNING.equals(schemaBootstrap.getValidationStatus()))
+        {
+            assertTrue("Background validation did not complete", System.currentTimeMillis() - start < VALIDATION_TIMEOUT_MS);
+            Thread.sleep(100);
+        }
+        assertEquals(SchemaBootstrap.VALIDATION_COMPLETED, schemaBootstrap.getValidationStatus());
+        assertEquals(0, schemaBootstrap.getValidationProblems());
+    }
+}
@@ -27,6 +27,7 @@ package org.alfresco.repo.download;
 
 import net.sf.acegisecurity.Authentication;
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.model.Repository;
 import org.alfresco.repo.node.SystemNodeUtils;
 import org.alfresco.repo.node.integrity.IntegrityChecker;
@@ -55,12 +56,14 @@ import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.GUID;
+import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyMap;
 import org.alfresco.util.test.junitrules.AlfrescoPerson;
 import org.alfresco.util.test.junitrules.ApplicationContextInit;
 import org.alfresco.util.test.junitrules.TemporaryNodes;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -76,10 +79,12 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.zip.ZipEntry;
 
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.fail;
@@ -316,6 +321,27 @@ public class DownloadServiceIntegrationTest
         validateEntries(entryNames, allEntries, true);
     }
 
+    @Test public void storedAndCompressedEntries() throws InterruptedException
+    {
+        testNodes.createQuickFile(MimetypeMap.MIMETYPE_IMAGE_JPEG, level1Folder1, "quick.jpg", AuthenticationUtil.getAdminUserName());
+        
+        final NodeRef downloadNode = DOWNLOAD_SERVICE.createDownload(new NodeRef[] {level1Folder1},  true);
+        testNodes.addNodeRef(downloadNode);
+        waitForDownload(downloadNode);
+        
+        Map<String, Pair<Integer, byte[]>> entries = getEntryContents(downloadNode);
+        Assert.assertEquals(3, entries.size());
+        
+        // Already compressed content is stored as it is
+        Pair<Integer, byte[]> image = entries.get("level1Folder1/quick.jpg");
+        Assert.assertEquals(ZipEntry.STORED, image.getFirst().intValue());
+        Assert.assertTrue(image.getSecond().length > 0);
+        
+        Pair<Integer, byte[]> text = entries.get("level1Folder1/level2File.txt");
+        Assert.assertEquals(ZipEntry.DEFLATED, text.getFirst().intValue());
+        Assert.assertEquals("Level 2 file content", new String(text.getSecond()));
+    }
+
     private void validateEntries(final Set<String> entryNames, final Set<String> expectedEntries, boolean onlyExpected)
     {
         Set<String> copy = new TreeSet<String>(entryNames);
@@ -361,6 +387,34 @@ public class DownloadServiceIntegrationTest
         });
     }
 
+    private Map<String, Pair<Integer, byte[]>> getEntryContents(final NodeRef downloadNode)
+    {
+        return TRANSACTION_HELPER.doInTransaction(new RetryingTransactionCallback<Map<String, Pair<Integer, byte[]>>>()
+        {
+            @Override
+            public Map<String, Pair<Integer, byte[]>> execute() throws Throwable
+            {
+                Map<String, Pair<Integer, byte[]>> entries = new HashMap<String, Pair<Integer, byte[]>>();
+                ContentReader reader = CONTENT_SERVICE.getReader(downloadNode, ContentModel.PROP_CONTENT);
+                ZipArchiveInputStream zipInputStream = new ZipArchiveInputStream(reader.getContentInputStream());
+                try 
+                {
+                    ZipArchiveEntry zipEntry = zipInputStream.getNextZipEntry();
+                    while (zipEntry != null)
+                    {
+                        entries.put(zipEntry.getName(), new Pair<Integer, byte[]>(zipEntry.getMethod(), IOUtils.toByteArray(zipInputStream)));
+                        zipEntry = zipInputStream.getNextZipEntry();
+                    }
+                }
+                finally
+                {
+                    zipInputStream.close();
+                }
+                return entries;
+            }
+        });
+    }
+
     private long waitForDownload(final NodeRef downloadNode) throws InterruptedException
     {
         long startTime = System.currentTimeMillis();
@@ -30,9 +30,15 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
+import javax.mail.Flags;
+
 import junit.framework.TestCase;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.model.ImapModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.imap.AlfrescoImapConst.ImapViewMode;
+import org.alfresco.repo.imap.ImapService.FolderStatus;
 import org.alfresco.repo.management.subsystems.ChildApplicationContextFactory;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.model.FileFolderService;
@@ -48,6 +54,7 @@ import org.alfresco.service.cmr.security.MutableAuthenticationService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.Pair;
 import org.alfresco.util.config.RepositoryFolderConfigBean;
 import org.alfresco.util.testing.category.LuceneTests;
 import org.junit.experimental.categories.Category;
@@ -79,9 +86,11 @@ public class ImapServiceImplCacheTest extends TestCase
     private FileInfo oldFile;
     
     private ImapService imapService;
+    private SimpleCache<Pair<String, String>, FolderStatus> folderStatusCache;
 
     private NodeRef testImapFolderNodeRef;
     
+    @SuppressWarnings("unchecked")
     @Override
     public void setUp() throws Exception
     {
@@ -94,6 +103,7 @@ public class ImapServiceImplCacheTest extends TestCase
         namespaceService = serviceRegistry.getNamespaceService();
         fileFolderService = serviceRegistry.getFileFolderService();
         contentService = serviceRegistry.getContentService();
+        folderStatusCache = (SimpleCache<Pair<String, String>, FolderStatus>) ctx.getBean("imapFolderStatusCache");
         
         authenticationService.authenticate(USER_NAME, USER_PASSWORD.toCharArray());
 
@@ -238,6 +248,53 @@ public class ImapServiceImplCacheTest extends TestCase
         
     }
     
+    public void testFolderStatusDerivedFromChanges() throws Exception
+    {
+        String userName = authenticationService.getCurrentUserName();
+        FileInfo folder = fileFolderService.create(testImapFolderNodeRef, "folderStatus", ContentModel.TYPE_FOLDER);
+        NodeRef folderNodeRef = folder.getNodeRef();
+        List<FileInfo> messages = createTestContent(folder, 3);
+        FolderStatus status = imapService.getFolderStatus(userName, folderNodeRef, ImapViewMode.MIXED);
+        assertEquals(3, status.messageCount);
+        assertEquals(3, status.unseenCount);
+        long seenUid = (Long) nodeService.getProperty(messages.get(0).getNodeRef(), ContentModel.PROP_NODE_DBID);
+        long removedUid = (Long) nodeService.getProperty(messages.get(1).getNodeRef(), ContentModel.PROP_NODE_DBID);
+
+        // Mark a message as seen, remove another and add a new one, each in its own transaction
+        imapService.setFlag(messages.get(0), Flags.Flag.SEEN, true);
+        fileFolderService.delete(messages.get(1).getNodeRef());
+        FileInfo newMessage = fileFolderService.create(folderNodeRef, "content_new", ContentModel.TYPE_CONTENT);
+
+        // Only the status for the old change token is cached, so the new one is derived from the changes
+        String changeToken = (String) nodeService.getProperty(folderNodeRef, ImapModel.PROP_CHANGE_TOKEN);
+        Pair<String, String> key = new Pair<String, String>(changeToken, userName);
+        assertNull(folderStatusCache.get(key));
+        FolderStatus derived = imapService.getFolderStatus(userName, folderNodeRef, ImapViewMode.MIXED);
+        assertEquals(changeToken, derived.changeToken);
+        assertSame("The derived folder status was not cached for the user", derived, folderStatusCache.get(key));
+
+        // The derived status must match a fresh listing of the folder
+        folderStatusCache.remove(key);
+        folderStatusCache.remove(new Pair<String, String>(status.changeToken, userName));
+        FolderStatus listed = imapService.getFolderStatus(userName, folderNodeRef, ImapViewMode.MIXED);
+        assertEquals(listed.search.keySet(), derived.search.keySet());
+        assertEquals(3, derived.messageCount);
+        assertEquals(listed.messageCount, derived.messageCount);
+        assertEquals(listed.recentCount, derived.recentCount);
+        assertEquals(listed.unseenCount, derived.unseenCount);
+        assertEquals(listed.firstUnseen, derived.firstUnseen);
+        assertEquals(listed.uidValidity, derived.uidValidity);
+
+        // Message sequence numbers follow the UIDs
+        long newUid = (Long) nodeService.getProperty(newMessage.getNodeRef(), ContentModel.PROP_NODE_DBID);
+        assertEquals(1, derived.getMsn(seenUid));
+        assertEquals(0, derived.getMsn(removedUid));
+        assertEquals(3, derived.getMsn(newUid));
+        assertEquals(2, derived.firstUnseen);
+
+        fileFolderService.delete(folderNodeRef);
+    }
+
     private List<FileInfo> createTestContent(FileInfo parent, int count)
     {
         List<FileInfo> result = new ArrayList<FileInfo>(count);
@@ -247,6 +304,7 @@ public class ImapServiceImplCacheTest extends TestCase
             ContentWriter contentWriter = contentService.getWriter(contentItem.getNodeRef(), ContentModel.PROP_CONTENT, false);
             contentWriter.setEncoding("UTF-8");
             contentWriter.putContent("TEST" + i);
+            result.add(contentItem);
         }
         return result;
     }
@@ -431,8 +431,62 @@ public class RhinoScriptTest extends TestCase
 
                 return null;
             }
-        });
-
+        });
+
+    }
+    
+    public void testNodeScriptCache()
+    {
+        final RhinoScriptProcessor processor = (RhinoScriptProcessor)ctx.getBean("javaScriptProcessor");
+        transactionService.getRetryingTransactionHelper().doInTransaction(
+            new RetryingTransactionCallback<Object>()
+            {
+                public Object execute() throws Exception
+                {
+                    StoreRef store = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "rhino_" + System.currentTimeMillis());
+                    NodeRef root = nodeService.getRootNode(store);
+                    
+                    NodeRef includeRef = nodeService.createNode(
+                            root,
+                            ContentModel.ASSOC_CHILDREN,
+                            QName.createQName(BaseNodeServiceTest.NAMESPACE, "include_content"),
+                            ContentModel.TYPE_CONTENT).getChildRef();
+                    putScript(includeRef, "var message = \"one\";");
+                    NodeRef scriptRef = nodeService.createNode(
+                            root,
+                            ContentModel.ASSOC_CHILDREN,
+                            QName.createQName(BaseNodeServiceTest.NAMESPACE, "script_content"),
+                            ContentModel.TYPE_CONTENT).getChildRef();
+                    putScript(scriptRef, "<import resource=\"" + includeRef + "\">\nmessage;");
+                    
+                    Map<String, Object> model = new HashMap<String, Object>();
+                    long hits = processor.getNodeScriptCacheHits();
+                    long misses = processor.getNodeScriptCacheMisses();
+                    assertEquals("one", scriptService.executeScript(scriptRef, ContentModel.PROP_CONTENT, model));
+                    assertEquals(misses + 1, processor.getNodeScriptCacheMisses());
+                    assertEquals("one", scriptService.executeScript(scriptRef, ContentModel.PROP_CONTENT, model));
+                    assertEquals(hits + 1, processor.getNodeScriptCacheHits());
+                    
+                    // changing an imported script must not leave the compiled script in use
+                    putScript(includeRef, "var message = \"two\";");
+                    assertEquals("two", scriptService.executeScript(scriptRef, ContentModel.PROP_CONTENT, model));
+                    assertEquals(misses + 2, processor.getNodeScriptCacheMisses());
+                    
+                    // nor must changing the script itself
+                    putScript(scriptRef, "<import resource=\"" + includeRef + "\">\nmessage + \"!\";");
+                    assertEquals("two!", scriptService.executeScript(scriptRef, ContentModel.PROP_CONTENT, model));
+                    assertEquals(misses + 3, processor.getNodeScriptCacheMisses());
+                    
+                    return null;
+                }
+            });
+    }
+    
+    private void putScript(NodeRef nodeRef, String script)
+    {
+        ContentWriter writer = contentService.getWriter(nodeRef, ContentModel.PROP_CONTENT, true);
+        writer.setMimetype("application/x-javascript");
+        writer.putContent(script);
     }
     
     private static final String TESTSCRIPT_CLASSPATH1 = "org/alfresco/repo/jscript/test_script1.js";
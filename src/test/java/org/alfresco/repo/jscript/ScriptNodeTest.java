@@ -28,6 +28,7 @@ package org.alfresco.repo.jscript;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -94,6 +95,7 @@ import org.junit.Test;
 import org.junit.rules.RuleChain;
 import org.junit.rules.TestName;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeArray;
 import org.mozilla.javascript.ScriptableObject;
 import org.springframework.extensions.surf.util.InputStreamContent;
 
@@ -803,6 +805,60 @@ public class ScriptNodeTest
         }
     }
 
+    @Test
+    public void testChildFileFoldersPaged()
+    {
+        Repository repositoryHelper = (Repository) APP_CONTEXT_INIT.getApplicationContext().getBean("repositoryHelper");
+        NodeRef companyHome = repositoryHelper.getCompanyHome();
+
+        NodeRef folderNodeRef = testNodes.createNode(companyHome, "pagetest", ContentModel.TYPE_FOLDER, AuthenticationUtil.getFullyAuthenticatedUser()); 
+        List<NodeRef> childRefs = new ArrayList<NodeRef>();
+        for (int i = 0; i < 5; i++)
+        {
+            childRefs.add(testNodes.createNode(folderNodeRef, "child" + i, ContentModel.TYPE_CONTENT, AuthenticationUtil.getFullyAuthenticatedUser()));
+        }
+
+        Context.enter();
+        try
+        {
+            ScriptNode folderNode = new ScriptNode(folderNodeRef, SERVICE_REGISTRY, getScope());
+
+            ScriptPagingNodes page = folderNode.childFileFolders(true, true, null, 0, 10, 0, "cm:name", true, null);
+            assertEquals(5L, ((NativeArray) page.getPage()).getLength());
+            assertFalse(page.hasMoreItems());
+            List<NodeRef> allRefs = new ArrayList<NodeRef>();
+            for (int i = 0; i < 5; i++)
+            {
+                allRefs.add(((ScriptNode) page.getPage().get(i, page.getPage())).getNodeRef());
+            }
+            assertEquals(childRefs, allRefs);
+
+            page = folderNode.childFileFolders(true, true, null, 0, 2, 0, "cm:name", true, null);
+            assertEquals(2L, ((NativeArray) page.getPage()).getLength());
+            assertEquals(allRefs.get(0), ((ScriptNode) page.getPage().get(0, page.getPage())).getNodeRef());
+            assertEquals(allRefs.get(1), ((ScriptNode) page.getPage().get(1, page.getPage())).getNodeRef());
+            assertTrue(page.hasMoreItems());
+
+            page = folderNode.childFileFolders(true, true, null, 4, 2, 0, "cm:name", true, null);
+            assertEquals(1L, ((NativeArray) page.getPage()).getLength());
+            assertEquals(allRefs.get(4), ((ScriptNode) page.getPage().get(0, page.getPage())).getNodeRef());
+            assertFalse(page.hasMoreItems());
+
+            page = folderNode.childFileFolders(true, true, null, 2, 10, 0, "cm:name", true, null);
+            assertEquals(3L, ((NativeArray) page.getPage()).getLength());
+            assertEquals(allRefs.get(2), ((ScriptNode) page.getPage().get(0, page.getPage())).getNodeRef());
+            assertFalse(page.hasMoreItems());
+
+            page = folderNode.childFileFolders(true, true, null, 10, 2, 0, "cm:name", true, null);
+            assertEquals(0L, ((NativeArray) page.getPage()).getLength());
+            assertFalse(page.hasMoreItems());
+        }
+        finally
+        {
+            Context.exit();
+        }
+    }
+
     private ScriptableObject getScope() 
     {
         // Create a scope for the value conversion. This scope will be an empty scope exposing basic Object and Function, sufficient for value-conversion.
@@ -40,6 +40,7 @@ import org.alfresco.repo.action.executer.AddFeaturesActionExecuter;
 import org.alfresco.repo.action.executer.CopyActionExecuter;
 import org.alfresco.repo.action.executer.ImageTransformActionExecuter;
 import org.alfresco.repo.action.executer.MoveActionExecuter;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.content.transform.AbstractContentTransformerTest;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
@@ -461,6 +462,91 @@ public class RuleServiceImplTest extends BaseRuleTest
         assertEquals("rule6", rules3.get(3).getTitle());        
     }
     
+    /**
+     * Test that inherited rules follow a node when it is moved and reflect changes to the rules
+     */
+    @Test
+    public void testInheritedRulesAfterMove()
+    {
+        // Create the nodes and rules
+        this.ruleService.saveRule(this.nodeRef, createTestRule(true, "rule1"));
+        NodeRef folder1 = createNewNode(this.nodeRef);
+        NodeRef folder2 = createNewNode(this.rootNodeRef);
+        this.ruleService.saveRule(folder2, createTestRule(true, "rule2"));
+        NodeRef child = createNewNode(folder1);
+        
+        // Get the rules
+        List<Rule> rules1 = this.ruleService.getRules(child);
+        assertEquals(1, rules1.size());
+        assertEquals("rule1", rules1.get(0).getTitle());
+        
+        // Move the parent of the node
+        this.nodeService.moveNode(folder1, folder2, ContentModel.ASSOC_CHILDREN, QName.createQName("{test}testnode"));
+        
+        // Get the rules
+        List<Rule> rules2 = this.ruleService.getRules(child);
+        assertEquals(1, rules2.size());
+        assertEquals("rule2", rules2.get(0).getTitle());
+        
+        // Change the inherited rule
+        Rule rule = rules2.get(0);
+        rule.setTitle("rule2a");
+        this.ruleService.saveRule(folder2, rule);
+        
+        // Get the rules
+        List<Rule> rules3 = this.ruleService.getRules(child);
+        assertEquals(1, rules3.size());
+        assertEquals("rule2a", rules3.get(0).getTitle());
+    }
+    
+    /**
+     * Test that the rule index is only invalidated by parent changes that can change the inherited rules
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRuleIndexInvalidatedByParentChanges()
+    {
+        SimpleCache<Serializable, Serializable> ruleIndexCache =
+                (SimpleCache<Serializable, Serializable>) this.applicationContext.getBean("ruleIndexCache");
+        
+        // Create the nodes and rules
+        this.ruleService.saveRule(this.nodeRef, createTestRule(true, "rule1"));
+        NodeRef folder1 = createNewNode(this.rootNodeRef);
+        NodeRef folder2 = createNewNode(this.rootNodeRef);
+        NodeRef child = createNewNode(folder1);
+        NodeRef ruledChild = createNewNode(this.nodeRef);
+        
+        // Index the rules
+        assertEquals(1, this.ruleService.getRules(ruledChild).size());
+        assertEquals(0, this.ruleService.getRules(child).size());
+        Serializable generation = ruleIndexCache.get(RuleServiceImpl.RULE_INDEX_GENERATION);
+        assertNotNull(generation);
+        
+        // Move the node between parents that have no rules
+        this.nodeService.moveNode(child, folder2, ContentModel.ASSOC_CHILDREN, QName.createQName("{test}moved"));
+        assertEquals(generation, ruleIndexCache.get(RuleServiceImpl.RULE_INDEX_GENERATION));
+        
+        // Rename the node within a parent that has rules
+        this.nodeService.moveNode(ruledChild, this.nodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{test}renamed"));
+        assertEquals(generation, ruleIndexCache.get(RuleServiceImpl.RULE_INDEX_GENERATION));
+        assertEquals(1, this.ruleService.getRules(ruledChild).size());
+        
+        // Add a secondary parent that has rules
+        this.nodeService.addChild(this.nodeRef, child, ContentModel.ASSOC_CHILDREN, QName.createQName("{test}secondary"));
+        assertFalse(generation.equals(ruleIndexCache.get(RuleServiceImpl.RULE_INDEX_GENERATION)));
+        List<Rule> rules = this.ruleService.getRules(child);
+        assertEquals(1, rules.size());
+        assertEquals("rule1", rules.get(0).getTitle());
+        
+        // Remove it again
+        this.nodeService.removeChild(this.nodeRef, child);
+        assertEquals(0, this.ruleService.getRules(child).size());
+        
+        // Move the node into a parent that has rules
+        this.nodeService.moveNode(child, this.nodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{test}moved"));
+        assertEquals(1, this.ruleService.getRules(child).size());
+    }
+    
     /**
      * Test disabling the rules
      */
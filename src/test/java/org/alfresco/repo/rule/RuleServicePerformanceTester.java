@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.rule;
+
+import java.io.Serializable;
+
+import junit.framework.TestCase;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.action.evaluator.CompareMimeTypeEvaluator;
+import org.alfresco.repo.action.evaluator.ComparePropertyValueEvaluator;
+import org.alfresco.repo.action.evaluator.IsSubTypeEvaluator;
+import org.alfresco.repo.action.executer.AddFeaturesActionExecuter;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.action.ActionCondition;
+import org.alfresco.service.cmr.action.ActionService;
+import org.alfresco.service.cmr.model.FileFolderService;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.rule.Rule;
+import org.alfresco.service.cmr.rule.RuleService;
+import org.alfresco.service.cmr.rule.RuleType;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Measures the throughput of uploads into a deep folder structure whose top folder has inherited
+ * inbound rules with mimetype, name and type conditions, with and without the rule index that
+ * holds the effective rules of each folder.
+ * <p>
+ * Note that this test is not designed to validate performance figures, but is
+ * rather a handy tool for doing benchmarking.  It is therefore not named <i>*Test</i> as is the
+ * pattern for getting tests run by the continuous build.
+ *
+ * @since 7.0
+ */
+@Category(OwnJVMTestsCategory.class)
+public class RuleServicePerformanceTester extends TestCase
+{
+    private static Log logger = LogFactory.getLog(RuleServicePerformanceTester.class);
+
+    private static ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private static final int FOLDER_DEPTH = 15;
+    private static final int UPLOAD_COUNT = 500;
+
+    private RetryingTransactionHelper retryingTransactionHelper;
+    private NodeService nodeService;
+    private FileFolderService fileFolderService;
+    private ContentService contentService;
+    private ActionService actionService;
+    private RuleService ruleService;
+    private RuleServiceImpl ruleServiceImpl;
+    private SimpleCache<Serializable, Serializable> ruleIndexCache;
+
+    private NodeRef uploadFolderRef;
+    private NodeRef lastUploadRef;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void setUp() throws Exception
+    {
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        retryingTransactionHelper = (RetryingTransactionHelper) ctx.getBean("retryingTransactionHelper");
+        nodeService = serviceRegistry.getNodeService();
+        fileFolderService = serviceRegistry.getFileFolderService();
+        contentService = serviceRegistry.getContentService();
+        actionService = serviceRegistry.getActionService();
+        ruleService = serviceRegistry.getRuleService();
+        ruleServiceImpl = (RuleServiceImpl) ctx.getBean("ruleService");
+        ruleIndexCache = (SimpleCache<Serializable, Serializable>) ctx.getBean("ruleIndexCache");
+
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+        retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                buildStructure();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        ruleServiceImpl.setRuleIndexCache(ruleIndexCache);
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    private void buildStructure()
+    {
+        NodeRef storeRootNodeRef = nodeService.getRootNode(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+        NodeRef rootFolderRef = fileFolderService.create(
+                storeRootNodeRef,
+                getName() + "_" + System.currentTimeMillis(),
+                ContentModel.TYPE_FOLDER).getNodeRef();
+
+        ActionCondition mimetypeCondition = actionService.createActionCondition(CompareMimeTypeEvaluator.NAME);
+        mimetypeCondition.setParameterValue(ComparePropertyValueEvaluator.PARAM_VALUE, MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        ruleService.saveRule(rootFolderRef, createRule("mimetype", mimetypeCondition, ContentModel.ASPECT_TITLED));
+
+        ActionCondition nameCondition = actionService.createActionCondition(ComparePropertyValueEvaluator.NAME);
+        nameCondition.setParameterValue(ComparePropertyValueEvaluator.PARAM_VALUE, "*.txt");
+        ruleService.saveRule(rootFolderRef, createRule("name", nameCondition, ContentModel.ASPECT_AUTHOR));
+
+        ActionCondition typeCondition = actionService.createActionCondition(IsSubTypeEvaluator.NAME);
+        typeCondition.setParameterValue(IsSubTypeEvaluator.PARAM_TYPE, ContentModel.TYPE_CONTENT);
+        ruleService.saveRule(rootFolderRef, createRule("type", typeCondition, ContentModel.ASPECT_EFFECTIVITY));
+
+        uploadFolderRef = rootFolderRef;
+        for (int i = 0; i < FOLDER_DEPTH; i++)
+        {
+            uploadFolderRef = fileFolderService.create(uploadFolderRef, "folder-" + i, ContentModel.TYPE_FOLDER).getNodeRef();
+        }
+    }
+
+    private Rule createRule(String title, ActionCondition condition, QName aspectQName)
+    {
+        Action action = actionService.createAction(AddFeaturesActionExecuter.NAME);
+        action.setParameterValue(AddFeaturesActionExecuter.PARAM_ASPECT_NAME, aspectQName);
+        action.addActionCondition(condition);
+
+        Rule rule = new Rule();
+        rule.setRuleType(RuleType.INBOUND);
+        rule.setTitle(title);
+        rule.applyToChildren(true);
+        rule.setAction(action);
+        return rule;
+    }
+
+    public void testWithRuleIndex() throws Exception
+    {
+        ruleServiceImpl.setRuleIndexCache(ruleIndexCache);
+        run("with rule index");
+    }
+
+    public void testWithoutRuleIndex() throws Exception
+    {
+        ruleServiceImpl.setRuleIndexCache(null);
+        run("without rule index");
+    }
+
+    private void run(String description) throws Exception
+    {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < UPLOAD_COUNT; i++)
+        {
+            retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    upload();
+                    return null;
+                }
+            });
+        }
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        logger.info("Rule-triggered uploads " + description + ": " +
+                String.format("%.1f uploads/s into a folder %d levels below the rules", UPLOAD_COUNT / seconds, FOLDER_DEPTH));
+
+        // Check that the rules were applied
+        assertTrue(nodeService.hasAspect(lastUploadRef, ContentModel.ASPECT_TITLED));
+        assertTrue(nodeService.hasAspect(lastUploadRef, ContentModel.ASPECT_AUTHOR));
+        assertTrue(nodeService.hasAspect(lastUploadRef, ContentModel.ASPECT_EFFECTIVITY));
+    }
+
+    private void upload()
+    {
+        NodeRef fileRef = fileFolderService.create(uploadFolderRef, "upload-" + GUID.generate() + ".txt", ContentModel.TYPE_CONTENT).getNodeRef();
+        ContentWriter writer = contentService.getWriter(fileRef, ContentModel.PROP_CONTENT, true);
+        writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        writer.setEncoding("UTF-8");
+        writer.putContent("Rule-triggered upload");
+        lastUploadRef = fileRef;
+    }
+}
@@ -255,4 +255,15 @@ public class AbstractPermissionTest extends TestCase
         return permissionModelDAO.getPermissionReference(null, permission);
     }
 
+    /**
+     * Commits the test transaction and begins another, so that later checks go through the shared caches.
+     * Whatever was done so far is not rolled back by {@link #tearDown()}.
+     */
+    protected void commitAndBeginNewTransaction() throws Exception
+    {
+        testTX.commit();
+        testTX = transactionService.getUserTransaction();
+        testTX.begin();
+    }
+
 }
@@ -0,0 +1,320 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.model.FileFolderService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.AuthorityType;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.alfresco.util.PropertyMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Measures permission check throughput while other threads upload documents, move folders and
+ * change group membership, with and without the access generation cache that allows those
+ * changes to invalidate only the affected cached permission checks.
+ * <p>
+ * Note that this test is not designed to validate performance figures, but is
+ * rather a handy tool for doing benchmarking.  It is therefore not named <i>*Test</i> as is the
+ * pattern for getting tests run by the continuous build.
+ *
+ * @since 7.0
+ */
+@Category(OwnJVMTestsCategory.class)
+public class PermissionServicePerformanceTester extends TestCase
+{
+    private static Log logger = LogFactory.getLog(PermissionServicePerformanceTester.class);
+
+    private static ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private static final int FOLDER_COUNT = 20;
+    private static final int FILES_PER_FOLDER = 50;
+    private static final int READER_COUNT = 8;
+    private static final long RUN_MILLIS = 30000L;
+
+    private RetryingTransactionHelper retryingTransactionHelper;
+    private NodeService nodeService;
+    private FileFolderService fileFolderService;
+    private PermissionService permissionService;
+    private AuthorityService authorityService;
+    private PersonService personService;
+    private PermissionServiceImpl permissionServiceImpl;
+    private SimpleCache<Serializable, Long> accessGenerationCache;
+
+    private NodeRef rootFolderRef;
+    private List<NodeRef> folderRefs;
+    private List<NodeRef> fileRefs;
+    private String groupName;
+    private List<String> readers;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void setUp() throws Exception
+    {
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        retryingTransactionHelper = (RetryingTransactionHelper) ctx.getBean("retryingTransactionHelper");
+        nodeService = serviceRegistry.getNodeService();
+        fileFolderService = serviceRegistry.getFileFolderService();
+        permissionService = serviceRegistry.getPermissionService();
+        authorityService = serviceRegistry.getAuthorityService();
+        personService = serviceRegistry.getPersonService();
+        permissionServiceImpl = (PermissionServiceImpl) ctx.getBean("permissionServiceImpl");
+        accessGenerationCache = (SimpleCache<Serializable, Long>) ctx.getBean("permissionsAccessGenerationCache");
+
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+        retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                buildStructure();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        permissionServiceImpl.setAccessGenerationCache(accessGenerationCache);
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    private void buildStructure()
+    {
+        NodeRef storeRootNodeRef = nodeService.getRootNode(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+        rootFolderRef = fileFolderService.create(
+                storeRootNodeRef,
+                getName() + "_" + System.currentTimeMillis(),
+                ContentModel.TYPE_FOLDER).getNodeRef();
+        permissionService.setInheritParentPermissions(rootFolderRef, false);
+
+        groupName = authorityService.createAuthority(AuthorityType.GROUP, "perf-" + GUID.generate());
+        permissionService.setPermission(rootFolderRef, groupName, PermissionService.CONSUMER, true);
+
+        readers = new ArrayList<String>(READER_COUNT);
+        for (int i = 0; i < READER_COUNT; i++)
+        {
+            String userName = "perf-reader-" + GUID.generate();
+            PropertyMap properties = new PropertyMap();
+            properties.put(ContentModel.PROP_USERNAME, userName);
+            personService.createPerson(properties);
+            authorityService.addAuthority(groupName, userName);
+            readers.add(userName);
+        }
+
+        folderRefs = new ArrayList<NodeRef>(FOLDER_COUNT);
+        fileRefs = new ArrayList<NodeRef>(FOLDER_COUNT * FILES_PER_FOLDER);
+        for (int i = 0; i < FOLDER_COUNT; i++)
+        {
+            NodeRef folderRef = fileFolderService.create(rootFolderRef, "folder-" + i, ContentModel.TYPE_FOLDER).getNodeRef();
+            folderRefs.add(folderRef);
+            for (int j = 0; j < FILES_PER_FOLDER; j++)
+            {
+                fileRefs.add(fileFolderService.create(folderRef, "file-" + j, ContentModel.TYPE_CONTENT).getNodeRef());
+            }
+        }
+    }
+
+    public void testWithAccessGenerations() throws Exception
+    {
+        permissionServiceImpl.setAccessGenerationCache(accessGenerationCache);
+        run("with access generations");
+    }
+
+    public void testWithoutAccessGenerations() throws Exception
+    {
+        permissionServiceImpl.setAccessGenerationCache(null);
+        run("without access generations");
+    }
+
+    private void run(String description) throws Exception
+    {
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicLong checks = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(READER_COUNT + 1);
+
+        for (final String reader : readers)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        AuthenticationUtil.runAs(new RunAsWork<Void>()
+                        {
+                            public Void doWork() throws Exception
+                            {
+                                readPermissions(stop, checks);
+                                return null;
+                            }
+                        }, reader);
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }, "PermissionReader-" + reader);
+            thread.start();
+        }
+
+        Thread writer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    AuthenticationUtil.runAs(new RunAsWork<Void>()
+                    {
+                        public Void doWork() throws Exception
+                        {
+                            write(stop, writes);
+                            return null;
+                        }
+                    }, AuthenticationUtil.getAdminUserName());
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }
+        }, "PermissionWriter");
+        writer.start();
+
+        Thread.sleep(RUN_MILLIS);
+        stop.set(true);
+        done.await();
+
+        double seconds = RUN_MILLIS / 1000.0;
+        logger.info("Permission checks " + description + ": " +
+                String.format("%.0f checks/s by %d readers while making %.1f changes/s", checks.get() / seconds, READER_COUNT, writes.get() / seconds));
+    }
+
+    private void readPermissions(final AtomicBoolean stop, final AtomicLong checks)
+    {
+        while (!stop.get())
+        {
+            retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    for (NodeRef fileRef : fileRefs)
+                    {
+                        if (nodeService.exists(fileRef) &&
+                                permissionService.hasPermission(fileRef, PermissionService.READ) != AccessStatus.ALLOWED)
+                        {
+                            fail("Reader should be allowed to read " + fileRef);
+                        }
+                    }
+                    return null;
+                }
+            }, true);
+            checks.addAndGet(fileRefs.size());
+        }
+    }
+
+    private void write(final AtomicBoolean stop, final AtomicLong writes)
+    {
+        final String otherUser = "perf-member-" + GUID.generate();
+        retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                PropertyMap properties = new PropertyMap();
+                properties.put(ContentModel.PROP_USERNAME, otherUser);
+                personService.createPerson(properties);
+                return null;
+            }
+        });
+
+        int count = 0;
+        while (!stop.get())
+        {
+            final int iteration = count++;
+            retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    NodeRef folderRef = folderRefs.get(iteration % FOLDER_COUNT);
+                    switch (iteration % 3)
+                    {
+                    case 0:
+                        // Upload
+                        fileFolderService.create(folderRef, "upload-" + GUID.generate(), ContentModel.TYPE_CONTENT);
+                        break;
+                    case 1:
+                        // Move a folder to a sibling and back again
+                        NodeRef targetRef = folderRefs.get((iteration + 1) % FOLDER_COUNT);
+                        fileFolderService.move(folderRef, targetRef, null);
+                        fileFolderService.move(folderRef, rootFolderRef, null);
+                        break;
+                    default:
+                        // Membership change for a user that is not reading
+                        if (authorityService.getContainedAuthorities(AuthorityType.USER, groupName, true).contains(otherUser))
+                        {
+                            authorityService.removeAuthority(groupName, otherUser);
+                        }
+                        else
+                        {
+                            authorityService.addAuthority(groupName, otherUser);
+                        }
+                    }
+                    return null;
+                }
+            });
+            writes.incrementAndGet();
+        }
+    }
+}
@@ -1506,6 +1506,123 @@ public class PermissionServiceTest extends AbstractPermissionTest
         assertTrue(permissionService.hasPermission(n2, getPermission(PermissionService.READ)) == AccessStatus.DENIED);
     }
 
+    /**
+     * The access cache must reflect a grant or revoke immediately and in later transactions
+     */
+    public void testAccessCacheOnGrantAndRevoke() throws Exception
+    {
+        runAs(AuthenticationUtil.getAdminUserName());
+        NodeRef n1 = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}one"), ContentModel.TYPE_FOLDER).getChildRef();
+        NodeRef n2 = nodeService.createNode(n1, ContentModel.ASSOC_CONTAINS, QName.createQName("{namespace}two"), ContentModel.TYPE_FOLDER).getChildRef();
+        assertAccess(n2, "andy", AccessStatus.DENIED);
+
+        runAs(AuthenticationUtil.getAdminUserName());
+        permissionService.setPermission(new SimplePermissionEntry(n1, getPermission(PermissionService.READ), "andy", AccessStatus.ALLOWED));
+        assertAccess(n2, "andy", AccessStatus.ALLOWED);
+        commitAndBeginNewTransaction();
+        assertAccess(n2, "andy", AccessStatus.ALLOWED);
+
+        runAs(AuthenticationUtil.getAdminUserName());
+        permissionService.deletePermission(new SimplePermissionEntry(n1, getPermission(PermissionService.READ), "andy", AccessStatus.ALLOWED));
+        assertAccess(n2, "andy", AccessStatus.DENIED);
+        commitAndBeginNewTransaction();
+        assertAccess(n2, "andy", AccessStatus.DENIED);
+    }
+
+    /**
+     * The access cache must reflect a change of ACL inheritance immediately and in later transactions
+     */
+    public void testAccessCacheOnInheritanceChange() throws Exception
+    {
+        runAs(AuthenticationUtil.getAdminUserName());
+        NodeRef n1 = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}one"), ContentModel.TYPE_FOLDER).getChildRef();
+        NodeRef n2 = nodeService.createNode(n1, ContentModel.ASSOC_CONTAINS, QName.createQName("{namespace}two"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setPermission(new SimplePermissionEntry(n1, getPermission(PermissionService.READ), "andy", AccessStatus.ALLOWED));
+        assertAccess(n2, "andy", AccessStatus.ALLOWED);
+
+        runAs(AuthenticationUtil.getAdminUserName());
+        permissionService.setInheritParentPermissions(n2, false);
+        assertAccess(n2, "andy", AccessStatus.DENIED);
+        commitAndBeginNewTransaction();
+        assertAccess(n2, "andy", AccessStatus.DENIED);
+
+        runAs(AuthenticationUtil.getAdminUserName());
+        permissionService.setInheritParentPermissions(n2, true);
+        assertAccess(n2, "andy", AccessStatus.ALLOWED);
+        commitAndBeginNewTransaction();
+        assertAccess(n2, "andy", AccessStatus.ALLOWED);
+    }
+
+    /**
+     * Membership changes only invalidate the cached checks of the affected users, which must still see
+     * the change immediately and in later transactions
+     */
+    public void testAccessCacheOnMembershipChange() throws Exception
+    {
+        runAs(AuthenticationUtil.getAdminUserName());
+        String group = authorityService.createAuthority(AuthorityType.GROUP, "PermissionCache" + System.nanoTime());
+        try
+        {
+            NodeRef n1 = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}one"), ContentModel.TYPE_FOLDER).getChildRef();
+            permissionService.setPermission(new SimplePermissionEntry(n1, getPermission(PermissionService.READ), group, AccessStatus.ALLOWED));
+            assertAccess(n1, "andy", AccessStatus.DENIED);
+            assertAccess(n1, "lemur", AccessStatus.DENIED);
+            commitAndBeginNewTransaction();
+
+            runAs(AuthenticationUtil.getAdminUserName());
+            authorityService.addAuthority(group, "andy");
+            assertAccess(n1, "andy", AccessStatus.ALLOWED);
+            assertAccess(n1, "lemur", AccessStatus.DENIED);
+            commitAndBeginNewTransaction();
+            assertAccess(n1, "andy", AccessStatus.ALLOWED);
+            assertAccess(n1, "lemur", AccessStatus.DENIED);
+
+            runAs(AuthenticationUtil.getAdminUserName());
+            authorityService.removeAuthority(group, "andy");
+            assertAccess(n1, "andy", AccessStatus.DENIED);
+            commitAndBeginNewTransaction();
+            assertAccess(n1, "andy", AccessStatus.DENIED);
+        }
+        finally
+        {
+            runAs(AuthenticationUtil.getAdminUserName());
+            authorityService.deleteAuthority(group);
+            commitAndBeginNewTransaction();
+        }
+    }
+
+    /**
+     * The owner is a dynamic authority, so the access cache must reflect a change of owner immediately
+     * and in later transactions
+     */
+    public void testAccessCacheOnOwnershipChange() throws Exception
+    {
+        runAs(AuthenticationUtil.getAdminUserName());
+        NodeRef n1 = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}one"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setPermission(new SimplePermissionEntry(n1, getPermission(PermissionService.READ), "lemur", AccessStatus.ALLOWED));
+        assertAccess(n1, "andy", AccessStatus.DENIED);
+
+        runAs(AuthenticationUtil.getAdminUserName());
+        serviceRegistry.getOwnableService().setOwner(n1, "andy");
+        assertAccess(n1, "andy", AccessStatus.ALLOWED);
+        commitAndBeginNewTransaction();
+        assertAccess(n1, "andy", AccessStatus.ALLOWED);
+
+        runAs(AuthenticationUtil.getAdminUserName());
+        serviceRegistry.getOwnableService().setOwner(n1, "lemur");
+        assertAccess(n1, "andy", AccessStatus.DENIED);
+        commitAndBeginNewTransaction();
+        assertAccess(n1, "andy", AccessStatus.DENIED);
+    }
+
+    private void assertAccess(NodeRef nodeRef, String userName, AccessStatus expected)
+    {
+        runAs(userName);
+        // Twice, so that the second check is answered by the access cache
+        assertEquals(expected, permissionService.hasPermission(nodeRef, getPermission(PermissionService.READ)));
+        assertEquals(expected, permissionService.hasPermission(nodeRef, getPermission(PermissionService.READ)));
+    }
+
     public void testSetInheritFalse()
     {
         runAs("andy");
@@ -373,6 +373,64 @@ public class ChainingUserRegistrySynchronizerTest extends TestCase
         tearDownTestUsersAndGroups();
     }
 
+    /**
+     * Tests that a forced update skips users and groups that are unchanged since they were last synchronized, unless
+     * skipping is switched off, and that a user deleted from the repository is recreated along with its memberships.
+     * 
+     * @throws Exception
+     *             the exception
+     */
+    public void testForcedUpdateSkipsUnchangedAuthorities() throws Exception
+    {
+        setUpTestUsersAndGroups();
+        final ChainingUserRegistrySynchronizer chainingSynchronizer = (ChainingUserRegistrySynchronizer) this.synchronizer;
+        try
+        {
+            // Change a synchronized user behind the synchronizer's back and delete another
+            this.retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+            {
+                public Object execute() throws Throwable
+                {
+                    NodeRef personRef = ChainingUserRegistrySynchronizerTest.this.personService.getPerson("U1", false);
+                    ChainingUserRegistrySynchronizerTest.this.nodeService.setProperty(personRef, ContentModel.PROP_EMAIL,
+                            "local@alfresco.com");
+                    ChainingUserRegistrySynchronizerTest.this.personService.deletePerson("U2");
+                    return null;
+                }
+            }, false, true);
+
+            // The unchanged user is skipped and the deleted user is recreated in its group
+            this.synchronizer.synchronize(true, true);
+            this.retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+            {
+                public Object execute() throws Throwable
+                {
+                    assertEmailEquals("U1", "local@alfresco.com");
+                    assertExists("Z1", "U2");
+                    assertExists("Z1", "G3", "U2", "G4", "G5");
+                    return null;
+                }
+            }, false, true);
+
+            // Without skipping, the user is restored from the directory
+            chainingSynchronizer.setSkipUnchangedAuthorities(false);
+            this.synchronizer.synchronize(true, true);
+            this.retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+            {
+                public Object execute() throws Throwable
+                {
+                    assertEmailEquals("U1", "U1@alfresco.com");
+                    return null;
+                }
+            }, false, true);
+        }
+        finally
+        {
+            chainingSynchronizer.setSkipUnchangedAuthorities(true);
+        }
+        tearDownTestUsersAndGroups();
+    }
+
     /**
      * Tests a forced update of the test users and groups. Also tests that groups and users that previously existed in
      * Z2 get moved when they appear in Z1. Also tests that 'dangling references' to removed users (U4, U5) do not cause
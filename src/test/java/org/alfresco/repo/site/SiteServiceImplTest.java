@@ -93,6 +93,7 @@ import org.alfresco.test_category.BaseSpringTestsCategory;
 import org.alfresco.util.ApplicationContextHelper;
 import org.alfresco.util.BaseAlfrescoSpringTest;
 import org.alfresco.util.GUID;
+import org.alfresco.util.Pair;
 import org.alfresco.util.testing.category.LuceneTests;
 import org.alfresco.util.testing.category.RedundantTests;
 import org.junit.After;
@@ -1643,6 +1644,19 @@ public class SiteServiceImplTest extends BaseAlfrescoSpringTest
                 assertEquals(SiteModel.SITE_COLLABORATOR, members.get(4).getRole());
                 assertEquals(siteName3, members.get(4).getSiteInfo().getShortName());
 
+                // Only the requested page is returned, with the full site information
+                List<Pair<SiteService.SortFields, Boolean>> sortProps = new ArrayList<Pair<SiteService.SortFields, Boolean>>(1);
+                sortProps.add(new Pair<SiteService.SortFields, Boolean>(SiteService.SortFields.SiteShortName, Boolean.TRUE));
+                siteM = siteService.listSitesPaged(USER_ONE, sortProps, new PagingRequest(1, 2));
+                assertTrue(siteM.hasMoreItems());
+                assertEquals(Integer.valueOf(5), siteM.getTotalResultCount().getFirst());
+                assertEquals(2, siteM.getPage().size());
+                assertEquals(publicSite, siteM.getPage().get(0).getSiteInfo().getShortName());
+                assertEquals(SiteModel.SITE_CONSUMER, siteM.getPage().get(0).getRole());
+                assertEquals(TEST_DESCRIPTION, siteM.getPage().get(0).getSiteInfo().getDescription());
+                assertEquals(siteName1, siteM.getPage().get(1).getSiteInfo().getShortName());
+                assertEquals(SiteModel.SITE_MANAGER, siteM.getPage().get(1).getRole());
+
                 authenticationComponent.setCurrentUser(USER_TWO);
                 // (MNT-19035) USER_TWO list sites membership for USER_ONE - only sites that are public should be visible
                 members = siteService.listSiteMemberships(USER_ONE, 0);
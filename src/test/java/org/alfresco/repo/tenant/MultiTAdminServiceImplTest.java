@@ -26,23 +26,68 @@
 package org.alfresco.repo.tenant;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.UserTransaction;
+
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.content.AbstractContentStore;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.content.ContentStoreCaps;
+import org.alfresco.repo.dictionary.DictionaryComponent;
+import org.alfresco.repo.domain.tenant.TenantAdminDAO;
+import org.alfresco.repo.domain.tenant.TenantEntity;
+import org.alfresco.repo.domain.tenant.TenantUpdateEntity;
+import org.alfresco.repo.security.authentication.AuthenticationContext;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 public class MultiTAdminServiceImplTest
 {
+    private static final String CONTENT_ROOT = "contentstore";
+    
     private MultiTAdminServiceImpl tenantAdmin;
+    private MultiTServiceImpl tenantService;
+    private TenantAdminDAO tenantAdminDAO;
+    private RecordingTenantDeployer tenantDeployer;
     
     @Before
     public void setUp() throws Exception
     {
         tenantAdmin = new MultiTAdminServiceImpl();
     }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        if (tenantService != null)
+        {
+            tenantDeployer.unblock.countDown();
+            tenantAdmin.stopTenants();
+        }
+    }
 
     @Test
     public void testTenantDeployer()
@@ -110,6 +155,197 @@ public class MultiTAdminServiceImplTest
         assertNull(router);
     }
     
+    @Test
+    public void testTenantActivationModes()
+    {
+        tenantAdmin.setTenantActivationMode(MultiTAdminServiceImpl.ACTIVATION_SEQUENTIAL);
+        tenantAdmin.setTenantActivationMode(MultiTAdminServiceImpl.ACTIVATION_PARALLEL);
+        tenantAdmin.setTenantActivationMode(MultiTAdminServiceImpl.ACTIVATION_LAZY);
+        try
+        {
+            tenantAdmin.setTenantActivationMode("eager");
+            fail("Unknown activation mode should be rejected");
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testParallelActivation() throws Exception
+    {
+        // each activation waits for the others, so startup only completes if they run at the same time
+        tenantDeployer = new RecordingTenantDeployer();
+        tenantDeployer.barrier = new CyclicBarrier(3);
+        startTenants(MultiTAdminServiceImpl.ACTIVATION_PARALLEL, 3, "a", "b", "c");
+        
+        assertEquals(new HashSet<String>(Arrays.asList("enable a", "enable b", "enable c")), new HashSet<String>(tenantDeployer.events));
+        assertEquals(3, new HashSet<Thread>(tenantDeployer.enablingThreads.values()).size());
+        assertFalse(tenantDeployer.enablingThreads.containsValue(Thread.currentThread()));
+    }
+    
+    @Test
+    public void testLazyActivationOnFirstUse() throws Exception
+    {
+        // the single activation thread is kept busy with the first tenant
+        tenantDeployer = new RecordingTenantDeployer();
+        tenantDeployer.blockedTenant = "a";
+        startTenants(MultiTAdminServiceImpl.ACTIVATION_LAZY, 1, "a", "b");
+        
+        tenantService.checkTenantEnabled("b");
+        assertSame("The first use should activate the tenant", Thread.currentThread(), tenantDeployer.enablingThreads.get("b"));
+        tenantService.checkTenantEnabled("b");
+        assertEquals(Collections.singletonList("enable b"), tenantDeployer.events);
+        
+        // the first use of a tenant that the pool is activating waits for it
+        tenantDeployer.unblock.countDown();
+        tenantService.checkTenantEnabled("a");
+        assertEquals(Arrays.asList("enable b", "enable a"), tenantDeployer.events);
+    }
+    
+    @Test
+    public void testLazyActivationRetriedAfterFailure() throws Exception
+    {
+        tenantDeployer = new RecordingTenantDeployer();
+        tenantDeployer.failingTenants.add("a");
+        startTenants(MultiTAdminServiceImpl.ACTIVATION_LAZY, 1, "a");
+        
+        try
+        {
+            tenantService.checkTenantEnabled("a");
+            fail("The failed activation should be reported to the first use");
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // expected
+        }
+        assertTrue(tenantDeployer.events.isEmpty());
+        
+        tenantService.checkTenantEnabled("a");
+        tenantService.checkTenantEnabled("a");
+        assertEquals(Collections.singletonList("enable a"), tenantDeployer.events);
+    }
+    
+    @Test
+    public void testDisablePendingTenant() throws Exception
+    {
+        tenantDeployer = new RecordingTenantDeployer();
+        tenantDeployer.blockedTenant = "a";
+        startTenants(MultiTAdminServiceImpl.ACTIVATION_LAZY, 1, "a", "b");
+        TenantUpdateEntity tenantUpdateEntity = new TenantUpdateEntity("b");
+        tenantUpdateEntity.setEnabled(true);
+        when(tenantAdminDAO.getTenantForUpdate("b")).thenReturn(tenantUpdateEntity);
+        
+        tenantAdmin.disableTenant("b");
+        
+        // the deployers are told about the tenant before they are asked to disable it
+        assertEquals(Arrays.asList("enable b", "disable b"), tenantDeployer.events);
+        assertFalse(tenantUpdateEntity.getEnabled());
+        verify(tenantAdminDAO).updateTenant(tenantUpdateEntity);
+    }
+    
+    /**
+     * Starts enabled tenants with the given activation mode and the {@link #tenantDeployer}.
+     */
+    @SuppressWarnings("unchecked")
+    private void startTenants(String activationMode, int activationThreads, String... tenantDomains) throws Exception
+    {
+        new AuthenticationUtil().afterPropertiesSet();
+        
+        tenantAdminDAO = mock(TenantAdminDAO.class);
+        List<TenantEntity> tenantEntities = new ArrayList<TenantEntity>();
+        for (String tenantDomain : tenantDomains)
+        {
+            TenantEntity tenantEntity = new TenantEntity(tenantDomain);
+            tenantEntity.setEnabled(true);
+            tenantEntity.setContentRoot(CONTENT_ROOT);
+            tenantEntities.add(tenantEntity);
+            when(tenantAdminDAO.getTenant(tenantDomain)).thenReturn(tenantEntity);
+        }
+        when(tenantAdminDAO.listTenants(false)).thenReturn(tenantEntities);
+        
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenAnswer(
+                invocation -> ((RetryingTransactionCallback<Object>) invocation.getArgument(0)).execute());
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.getUserTransaction()).thenReturn(mock(UserTransaction.class));
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+        
+        ContentStore contentStore = mock(ContentStore.class);
+        when(contentStore.getRootLocation()).thenReturn(CONTENT_ROOT);
+        
+        tenantService = new MultiTServiceImpl();
+        tenantService.setTenantAdminDAO(tenantAdminDAO);
+        
+        tenantAdmin.setTenantService(tenantService);
+        tenantAdmin.setTenantAdminDAO(tenantAdminDAO);
+        tenantAdmin.setTransactionService(transactionService);
+        tenantAdmin.setAuthenticationContext(mock(AuthenticationContext.class));
+        tenantAdmin.setDictionaryComponent(mock(DictionaryComponent.class));
+        tenantAdmin.setTenantFileContentStore(contentStore);
+        tenantAdmin.setTenantActivationMode(activationMode);
+        tenantAdmin.setTenantActivationThreads(activationThreads);
+        tenantAdmin.register(tenantDeployer);
+        
+        tenantAdmin.startTenants();
+    }
+    
+    /**
+     * Records the tenants it is told about and can hold up or fail their activation.
+     */
+    private static class RecordingTenantDeployer implements TenantDeployer
+    {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        private final Map<String, Thread> enablingThreads = new ConcurrentHashMap<String, Thread>();
+        private final Set<String> failingTenants = Collections.synchronizedSet(new HashSet<String>());
+        private final CountDownLatch unblock = new CountDownLatch(1);
+        private volatile String blockedTenant;
+        private volatile CyclicBarrier barrier;
+        
+        @Override
+        public void onEnableTenant()
+        {
+            String tenantDomain = TenantUtil.getCurrentDomain();
+            if (failingTenants.remove(tenantDomain))
+            {
+                throw new AlfrescoRuntimeException("Failed to activate tenant: " + tenantDomain);
+            }
+            try
+            {
+                if (tenantDomain.equals(blockedTenant))
+                {
+                    unblock.await(10, TimeUnit.SECONDS);
+                }
+                if (barrier != null)
+                {
+                    barrier.await(10, TimeUnit.SECONDS);
+                }
+            }
+            catch (Exception e)
+            {
+                throw new AlfrescoRuntimeException("Interrupted activation of tenant: " + tenantDomain, e);
+            }
+            enablingThreads.put(tenantDomain, Thread.currentThread());
+            events.add("enable " + tenantDomain);
+        }
+        
+        @Override
+        public void onDisableTenant()
+        {
+            events.add("disable " + TenantUtil.getCurrentDomain());
+        }
+        
+        @Override
+        public void init()
+        {
+        }
+        
+        @Override
+        public void destroy()
+        {
+        }
+    }
 
     
     
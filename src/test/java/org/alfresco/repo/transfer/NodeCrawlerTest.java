@@ -30,9 +30,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.model.RenditionModel;
+import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.model.Repository;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -197,6 +200,48 @@ public class NodeCrawlerTest extends BaseAlfrescoSpringTest
         assertEquals(6, crawledNodes.size());
     }
 
+    @Test
+    public void testParallelCrawler()
+    {
+        NodeRef root = makeNode(companyHome, ContentModel.TYPE_FOLDER);
+        for (int i = 0; i < 4; i++)
+        {
+            NodeRef folder = makeNode(root, ContentModel.TYPE_FOLDER);
+            for (int j = 0; j < 3; j++)
+            {
+                NodeRef subFolder = makeNode(folder, ContentModel.TYPE_FOLDER);
+                makeNode(subFolder, ContentModel.TYPE_CONTENT);
+                makeNode(subFolder, ContentModel.TYPE_CONTENT);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try
+        {
+            final StandardNodeCrawlerImpl crawler = new StandardNodeCrawlerImpl(serviceRegistry);
+            crawler.setExecutor(executor);
+            crawler.setNodeDAO((NodeDAO) applicationContext.getBean("nodeDAO"));
+            // Small batches so that the crawl is spread over the workers
+            crawler.setBatchSize(2);
+            crawler.setNodeFinders(new ChildAssociatedNodeFinder(ContentModel.ASSOC_CONTAINS));
+
+            // The nodes are committed and the crawl is made from a transaction without changes, so it goes parallel
+            Set<NodeRef> crawledNodes = transactionService.getRetryingTransactionHelper().doInTransaction(
+                    () -> crawler.crawl(root), true, true);
+            assertEquals(41, crawledNodes.size());
+            assertTrue(crawledNodes.contains(root));
+
+            crawler.setNodeFilters(new ContentClassFilter(ContentModel.TYPE_FOLDER));
+            crawledNodes = transactionService.getRetryingTransactionHelper().doInTransaction(
+                    () -> crawler.crawl(root), true, true);
+            assertEquals(17, crawledNodes.size());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
     /**
      * @param parent NodeRef
      * @param nodeType QName
@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.model.Repository;
 import org.alfresco.repo.security.authentication.AuthenticationComponent;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
@@ -2658,6 +2659,115 @@ public class TransferServiceImplTest extends BaseAlfrescoSpringTest
         }
     } // test repeat update content
 
+    /**
+     * Test that content rewritten with the same bytes is not sent again: the target already holds content
+     * with the same digest, so it keeps its content while content that really changed is sent.
+     *
+     * This is a unit test so it does some shenanigans to send to the same instance of alfresco.
+     */
+    @Test
+    public void testIdenticalContentNotResent() throws Exception
+    {
+        final TransferTransmitter transmitter = new UnitTestInProcessTransmitterImpl(receiver, contentService, transactionService);
+        transferServiceImpl.setTransmitter(transmitter);
+        final UnitTestTransferManifestNodeFactory testNodeFactory = new UnitTestTransferManifestNodeFactory(this.transferManifestNodeFactory); 
+        transferServiceImpl.setTransferManifestNodeFactory(testNodeFactory); 
+        final List<Pair<Path, Path>> pathMap = testNodeFactory.getPathMap();
+        // Map company_home/guest_home to company_home so tranferred nodes and moved "up" one level.
+        pathMap.add(new Pair<Path, Path>(PathHelper.stringToPath(GUEST_HOME_XPATH_QUERY), PathHelper.stringToPath(COMPANY_HOME_XPATH_QUERY)));
+        
+        DescriptorService mockedDescriptorService = getMockDescriptorService(REPO_ID_A);
+        transferServiceImpl.setDescriptorService(mockedDescriptorService);
+        
+        final String targetName = "testIdenticalContentNotResent";
+        
+        class TestContext
+        {
+           NodeRef contentNodeRef;
+           String contentString;
+        };
+        final TestContext testContext = new TestContext();
+       
+        RetryingTransactionCallback<Void> setupCB = new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+               NodeRef guestHome = repositoryHelper.getGuestHome();
+               String name = GUID.generate();
+               ChildAssociationRef child = nodeService.createNode(guestHome, ContentModel.ASSOC_CONTAINS, QName.createQName(name), ContentModel.TYPE_CONTENT);
+               testContext.contentNodeRef = child.getChildRef();
+               nodeService.setProperty(testContext.contentNodeRef, ContentModel.PROP_NAME, name);
+           
+               if(!transferService.targetExists(targetName))
+               {
+                   createTransferTarget(targetName);
+               }
+               transferService.enableTransferTarget(targetName, true);
+               return null;
+            } 
+        };
+        transactionService.getRetryingTransactionHelper().doInTransaction(setupCB);
+        
+        RetryingTransactionCallback<Void> updateContentCB = new RetryingTransactionCallback<Void>() {
+
+            @Override
+            public Void execute() throws Throwable
+            {
+                ContentWriter writer = contentService.getWriter(testContext.contentNodeRef, ContentModel.PROP_CONTENT, true);
+                writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                writer.setEncoding("UTF-8");
+                writer.putContent(testContext.contentString);
+                return null;
+            }
+        };
+        
+        RetryingTransactionCallback<Void> transferCB = new RetryingTransactionCallback<Void>() {
+
+            @Override
+            public Void execute() throws Throwable
+            {
+               TransferDefinition definition = new TransferDefinition();
+               Set<NodeRef>nodes = new HashSet<NodeRef>();
+               nodes.add(testContext.contentNodeRef);
+               definition.setNodes(nodes);
+               transferService.transfer(targetName, definition);
+               return null;
+            }
+        };
+        
+        RetryingTransactionCallback<String> checkTransferCB = new RetryingTransactionCallback<String>() {
+
+            @Override
+            public String execute() throws Throwable
+            {
+               NodeRef destNodeRef = testNodeFactory.getMappedNodeRef(testContext.contentNodeRef);
+               ContentReader reader = contentService.getReader(destNodeRef, ContentModel.PROP_CONTENT);
+               assertNotNull("content reader is null", reader);
+               assertEquals("Content is wrong", testContext.contentString, reader.getContentString());
+               return reader.getContentUrl();
+            }
+        };
+
+        RetryingTransactionHelper tran = transactionService.getRetryingTransactionHelper();
+        testContext.contentString = "Same content";
+        tran.doInTransaction(updateContentCB);
+        tran.doInTransaction(transferCB);
+        String firstUrl = tran.doInTransaction(checkTransferCB);
+
+        // Rewrite the same bytes to a new content URL
+        tran.doInTransaction(updateContentCB);
+        tran.doInTransaction(transferCB);
+        String secondUrl = tran.doInTransaction(checkTransferCB);
+        assertEquals("Identical content should not have been sent again", firstUrl, secondUrl);
+
+        testContext.contentString = "Changed content";
+        tran.doInTransaction(updateContentCB);
+        tran.doInTransaction(transferCB);
+        String thirdUrl = tran.doInTransaction(checkTransferCB);
+        assertFalse("Changed content should have been sent", secondUrl.equals(thirdUrl));
+    }
+
     /**
      * Test the transfer method with regard to replacing a node.  ALF-5109
      * 
@@ -32,6 +32,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
@@ -474,6 +475,95 @@ public class ActivitiTaskComponentTest extends AbstractActivitiComponentTest
         Assert.assertEquals(theTask.getId(), pooledGroupTasks.get(0).getId());
     }
     
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGetPooledTasksPaged() throws Exception 
+    {
+        // Two tasks, both pooled for testUser and testGroup
+        List<String> taskIds = new ArrayList<String>(2);
+        for (int i = 0; i < 2; i++)
+        {
+            WorkflowPath path = workflowEngine.startWorkflow(workflowDef.getId(), new HashMap<QName, Serializable>());
+            WorkflowTask startTask = workflowEngine.getStartTask(path.getInstance().getId());
+            workflowEngine.endTask(startTask.getId(), null);
+            taskIds.add(workflowEngine.getTasksForWorkflowPath(path.getId()).get(0).getId());
+        }
+        
+        List<String> authorities = Arrays.asList(TEST_USER, TEST_GROUP);
+        Assert.assertEquals(2, workflowEngine.countPooledTasks(authorities));
+        Assert.assertEquals(2, workflowEngine.countPooledTasks(Arrays.asList(TEST_GROUP)));
+        Assert.assertEquals(0, workflowEngine.countPooledTasks(Arrays.asList("unexisting")));
+        
+        // Each task is only returned once, on its own page
+        WorkflowTaskQuery.OrderBy[] orderBy = new WorkflowTaskQuery.OrderBy[] { WorkflowTaskQuery.OrderBy.TaskCreated_Desc };
+        List<WorkflowTask> firstPage = workflowEngine.getPooledTasks(authorities, orderBy, 1, 0);
+        List<WorkflowTask> secondPage = workflowEngine.getPooledTasks(authorities, orderBy, 1, 1);
+        Assert.assertEquals(1, firstPage.size());
+        Assert.assertEquals(1, secondPage.size());
+        Assert.assertTrue(taskIds.contains(firstPage.get(0).getId()));
+        Assert.assertTrue(taskIds.contains(secondPage.get(0).getId()));
+        Assert.assertFalse(firstPage.get(0).getId().equals(secondPage.get(0).getId()));
+        Assert.assertEquals(0, workflowEngine.getPooledTasks(authorities, orderBy, 1, 2).size());
+        
+        // The properties are the same as when the variables are fetched task by task
+        WorkflowTask task = workflowEngine.getTaskById(firstPage.get(0).getId());
+        Assert.assertEquals(task.getProperties().keySet(), firstPage.get(0).getProperties().keySet());
+        List<NodeRef> pooledActorNodes = (List<NodeRef>) firstPage.get(0).getProperties().get(WorkflowModel.ASSOC_POOLED_ACTORS);
+        Assert.assertTrue(pooledActorNodes.contains(testUserNode));
+        Assert.assertTrue(pooledActorNodes.contains(testGroupNode));
+    }
+    
+    @Test
+    public void testGetPooledTasksPagedAndOrdered() throws Exception 
+    {
+        // Three tasks, all pooled for testUser and testGroup
+        List<String> taskIds = new ArrayList<String>(3);
+        for (int i = 0; i < 3; i++)
+        {
+            WorkflowPath path = workflowEngine.startWorkflow(workflowDef.getId(), new HashMap<QName, Serializable>());
+            WorkflowTask startTask = workflowEngine.getStartTask(path.getInstance().getId());
+            workflowEngine.endTask(startTask.getId(), null);
+            taskIds.add(workflowEngine.getTasksForWorkflowPath(path.getId()).get(0).getId());
+        }
+        Collections.sort(taskIds, Collections.reverseOrder());
+        
+        List<String> authorities = Arrays.asList(TEST_USER, TEST_GROUP);
+        WorkflowTaskQuery.OrderBy[] orderBy = new WorkflowTaskQuery.OrderBy[] { WorkflowTaskQuery.OrderBy.TaskId_Desc };
+        try
+        {
+            // Pages selected by Activiti and, as on SQL Server and DB2, by the query itself
+            for (Boolean rowNumberPaging : Arrays.asList(Boolean.FALSE, Boolean.TRUE))
+            {
+                workflowEngine.setRowNumberPaging(rowNumberPaging);
+                List<String> pagedIds = getIds(workflowEngine.getPooledTasks(authorities, orderBy, 2, 0));
+                Assert.assertEquals(2, pagedIds.size());
+                pagedIds.addAll(getIds(workflowEngine.getPooledTasks(authorities, orderBy, 2, 2)));
+                Assert.assertEquals("Paging with row_number(): " + rowNumberPaging, taskIds, pagedIds);
+                
+                // All the tasks after those skipped
+                Assert.assertEquals(taskIds.subList(1, 3), getIds(workflowEngine.getPooledTasks(authorities, orderBy, 0, 1)));
+                Assert.assertEquals(0, workflowEngine.getPooledTasks(authorities, orderBy, 2, 3).size());
+            }
+        }
+        finally
+        {
+            workflowEngine.setRowNumberPaging(null);
+        }
+        
+        // Unpaged
+        Assert.assertEquals(taskIds, getIds(workflowEngine.getPooledTasks(authorities, orderBy, 0, 0)));
+    }
+    
+    private List<String> getIds(List<WorkflowTask> tasks)
+    {
+        List<String> ids = new ArrayList<String>(tasks.size());
+        for (WorkflowTask task : tasks)
+        {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+    
     @Test
     public void testQueryTasksInProgress() throws Exception 
     {
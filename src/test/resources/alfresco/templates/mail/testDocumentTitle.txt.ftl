@@ -0,0 +1 @@
+${document.properties.title}
\ No newline at end of file